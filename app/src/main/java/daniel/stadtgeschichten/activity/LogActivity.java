@@ -194,19 +194,22 @@ public class LogActivity extends AppCompatActivity
     }
 
     /**
-     * Get the latitude, longitude and accuracy of each location as string.
-     * The first line contains the three different data types seperated by commas.
-     * The locations follow with one line per location.
+     * Get the latitude, longitude, accuracy, time and speed of each location as string, in the
+     * trace format that the replayer of the core module reads.
+     * The first line contains the five different data types seperated by commas.
+     * The locations follow with one line per location. An unknown speed is left empty.
      * @return string, in which the lines are separated by "\r\n"
      */
     private String getLocationsAsString()
     {
-        String output = "Latitude,Longitude,Accuracy\r\n";
+        String output = "Latitude,Longitude,Accuracy,Time,Speed\r\n";
         for (int i = 0; i < locations.size(); i++)
         {
             output += locations.get(i).getLatitude() + ","
                     + locations.get(i).getLongitude() + ","
-                    + locations.get(i).getAccuracy() + "\r\n";
+                    + locations.get(i).getAccuracy() + ","
+                    + locations.get(i).getTime() + ","
+                    + (locations.get(i).hasSpeed() ? locations.get(i).getSpeed() : "") + "\r\n";
         }
         return output;
     }
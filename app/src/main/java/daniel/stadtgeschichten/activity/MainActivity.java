@@ -22,18 +22,19 @@ import android.widget.Toast;
 
 import org.apache.commons.lang3.StringEscapeUtils;
 
-import org.xmlpull.v1.XmlPullParserException;
-
-import java.io.IOException;
+import java.util.ArrayList;
 
 import daniel.stadtgeschichten.R;
 import daniel.stadtgeschichten.helper.Helper;
 import daniel.stadtgeschichten.helper.Logger;
+import daniel.stadtgeschichten.helper.StoryLoader;
 import daniel.stadtgeschichten.helper.StoryReader;
+import daniel.stadtgeschichten.model.StoryHeader;
 import daniel.stadtgeschichten.service.LocationPlayerService;
 
 
-public class MainActivity extends AppCompatActivity implements OnItemSelectedListener
+public class MainActivity extends AppCompatActivity implements OnItemSelectedListener,
+        StoryLoader.OnStoryLoadedListener
 {
     public final static String EXTRA_TITLE = "daniel.stadtgeschichten.TITLE";
     private final static String LOG_TAG = "MainActivity";
@@ -48,9 +49,20 @@ public class MainActivity extends AppCompatActivity implements OnItemSelectedLis
     private Logger logger;
 
     /**
-     * Story reader
+     * Story loader filling the spinner
+     */
+    private StoryLoader storyLoader;
+
+    /**
+     * Adapter of the spinner containing the titles of the loaded stories
+     */
+    private ArrayAdapter<String> adapter;
+
+    /**
+     * True if a story has been selected by the user or passed in, false if the first story is
+     * selected as default
      */
-    private StoryReader storyReader;
+    private boolean isStorySelected = false;
 
     /**
      * Selected story's title
@@ -80,20 +92,10 @@ public class MainActivity extends AppCompatActivity implements OnItemSelectedLis
 
         logger = Logger.getLogger(this);
 
-        // Create an ArrayAdapter using the the stories title list and the default spinner layout.
-        try
-        {
-            storyReader = new StoryReader(this);
-        }
-        catch (IOException | XmlPullParserException e)
-        {
-            logger.e(LOG_TAG, e.toString());
-            Toast.makeText(this, getString(R.string.stories_read_failure),Toast.LENGTH_SHORT)
-                    .show();
-        }
-        String[] stories = storyReader.getStoryTitles();
-        ArrayAdapter<String> adapter = new ArrayAdapter<>(this,
-                android.R.layout.simple_spinner_item, stories);
+        // Create an empty ArrayAdapter using the default spinner layout, which is filled while the
+        // stories are loaded.
+        adapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item,
+                new ArrayList<String>());
 
         // Specify the layout to use when the list of choices appears
         adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
@@ -107,16 +109,10 @@ public class MainActivity extends AppCompatActivity implements OnItemSelectedLis
         Intent intent = getIntent();
         if (intent.hasExtra(LocationPlayerService.EXTRA_TITLE))
         {
-            // The service has passed in the selected story.
+            // The service has passed in the selected story, which is set in the spinner as soon
+            // as it has been loaded.
             selectedStoryTitle = intent.getStringExtra(LocationPlayerService.EXTRA_TITLE);
-
-            // Search and the set the current story in the spinner.
-            spinner.setSelection(adapter.getPosition(selectedStoryTitle));
-        }
-        else
-        {
-            // Select the first story as default.
-            selectedStoryTitle = stories[0];
+            isStorySelected = true;
         }
         if (intent.hasExtra(LocationPlayerService.EXTRA_IS_PLAYING))
         {
@@ -134,6 +130,71 @@ public class MainActivity extends AppCompatActivity implements OnItemSelectedLis
         // Presses on the volume keys should change the media playback volume, also when nothing is
         // currently being played.
         setVolumeControlStream(AudioManager.STREAM_MUSIC);
+
+        // Load the stories in the background.
+        storyLoader = new StoryLoader(this, this);
+        storyLoader.start();
+    }
+
+    @Override
+    protected void onDestroy()
+    {
+        storyLoader.cancel();
+
+        // Throw away the warmed up story unless it is played.
+        if (isFinishing() && Helper.isMyServiceRunning(this, LocationPlayerService.class))
+        {
+            Intent intent = new Intent(this, LocationPlayerService.class);
+            intent.setAction(LocationPlayerService.ACTION_COOL_DOWN);
+            startService(intent);
+        }
+
+        // Write the remaining log lines.
+        if (isFinishing())
+            logger.flush();
+
+        super.onDestroy();
+    }
+
+    @Override
+    public void onStoryLoaded(StoryHeader header, String[] titles)
+    {
+        // Replace all titles, since the story may have been inserted anywhere or may have taken
+        // the place of a story with the same title.
+        adapter.setNotifyOnChange(false);
+        adapter.clear();
+        for (String title : titles)
+            adapter.add(title);
+        adapter.notifyDataSetChanged();
+
+        // Select the first story as default, and keep the selected story selected while other
+        // stories are inserted in front of it.
+        if (!isStorySelected)
+            selectedStoryTitle = adapter.getItem(0);
+        int selectedPosition = adapter.getPosition(selectedStoryTitle);
+        if (selectedPosition >= 0)
+        {
+            spinnerCurrentIndex = selectedPosition;
+            Spinner spinner = (Spinner) findViewById(R.id.stories_spinner);
+            spinner.setSelection(selectedPosition);
+        }
+    }
+
+    @Override
+    public void onStoryFailed(String folderName, Exception e)
+    {
+        logger.e(LOG_TAG, "Cannot read story {}: {}", folderName, e);
+        Toast.makeText(this, getString(R.string.stories_read_failure), Toast.LENGTH_SHORT).show();
+    }
+
+    @Override
+    public void onStoriesLoaded(StoryReader reader)
+    {
+        logger.i(LOG_TAG, "{} stories loaded", adapter.getCount());
+
+        // Warm up the default story, unless a story is being played.
+        if (!Helper.isMyServiceRunning(this, LocationPlayerService.class))
+            warmUp();
     }
 
     @Override
@@ -247,10 +308,20 @@ public class MainActivity extends AppCompatActivity implements OnItemSelectedLis
         TextView textView = (TextView) findViewById(R.id.record);
         textView.setText(savedInstanceState.getCharSequence(STATE_TEXT));
 
-        // Restore current spinner index.
+        // Restore current spinner index. The selected story is set in the spinner as soon as it
+        // has been loaded.
         spinnerCurrentIndex = savedInstanceState.getInt(STATE_CURRENT_SPINNER_INDEX);
-        Spinner spinner = (Spinner) findViewById(R.id.stories_spinner);
-        spinner.setSelection(spinnerCurrentIndex);
+        if (selectedStoryTitle != null)
+        {
+            isStorySelected = true;
+            int selectedPosition = adapter.getPosition(selectedStoryTitle);
+            if (selectedPosition >= 0)
+            {
+                spinnerCurrentIndex = selectedPosition;
+                Spinner spinner = (Spinner) findViewById(R.id.stories_spinner);
+                spinner.setSelection(selectedPosition);
+            }
+        }
 
         // Restore play/pause button text.
         Button button = (Button) findViewById(R.id.play_pause);
@@ -276,6 +347,10 @@ public class MainActivity extends AppCompatActivity implements OnItemSelectedLis
         Intent intent = new Intent(this, LocationPlayerService.class);
         if (button.getText().equals(getString(R.string.play)))
         {
+            // Wait until a story has been loaded.
+            if (selectedStoryTitle == null)
+                return;
+
             // Play.
             intent.setAction(LocationPlayerService.ACTION_PLAY);
             intent.putExtra(EXTRA_TITLE, selectedStoryTitle);
@@ -340,10 +415,27 @@ public class MainActivity extends AppCompatActivity implements OnItemSelectedLis
 
         spinnerCurrentIndex = parent.getSelectedItemPosition();
         selectedStoryTitle = (String) parent.getItemAtPosition(position);
+        isStorySelected = true;
 
-        // Do not start service to stop it.
+        // The service throws away the previous story while warming up the selected one.
         if (Helper.isMyServiceRunning(this, LocationPlayerService.class))
-            stopPlaying();
+            reset();
+        warmUp();
+    }
+
+    /**
+     * Let the service load the selected story and prepare its intro audio file in the background,
+     * so that it starts immediately when it is played.
+     */
+    private void warmUp()
+    {
+        if (selectedStoryTitle == null)
+            return;
+
+        Intent intent = new Intent(this, LocationPlayerService.class);
+        intent.setAction(LocationPlayerService.ACTION_WARM_UP);
+        intent.putExtra(EXTRA_TITLE, selectedStoryTitle);
+        startService(intent);
     }
 
     @Override
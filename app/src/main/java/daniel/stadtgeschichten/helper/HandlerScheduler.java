@@ -0,0 +1,35 @@
+package daniel.stadtgeschichten.helper;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * This scheduler runs tasks on the main thread and tells the time since boot, which does not
+ * jump when the user changes the wall clock. Tasks may be scheduled from any thread.
+ */
+public class HandlerScheduler implements Scheduler
+{
+    /**
+     * Handler posting to the main thread
+     */
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public long getTime()
+    {
+        return SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public void schedule(Runnable task, long delay)
+    {
+        handler.postDelayed(task, delay);
+    }
+
+    @Override
+    public void cancel(Runnable task)
+    {
+        handler.removeCallbacks(task);
+    }
+}
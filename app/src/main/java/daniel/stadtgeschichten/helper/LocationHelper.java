@@ -5,6 +5,7 @@ import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
+import android.util.Log;
 import android.util.Pair;
 
 import java.util.ArrayList;
@@ -18,19 +19,14 @@ import daniel.stadtgeschichten.model.Spot;
 public class LocationHelper
 {
     /**
-     * Radius of the earth
+     * Suspension mode in which no locations are requested
      */
-    private static final double EARTH_RADIUS = 6371.0; // kilometers
+    public static final int SUSPEND_PAUSE = LocationTracker.SUSPEND_PAUSE;
 
     /**
-     * Minimum time interval between location updates, in milliseconds
+     * Suspension mode in which locations are requested at a low rate, but not matched
      */
-    private static final long LOCATION_UPDATE_TIME_INTERVAL = 500;
-
-    /**
-     * Minimum number of measurements to do before comparing locations
-     */
-    private static final int MINIMUM_MEASUREMENTS = 5;
+    public static final int SUSPEND_KEEP_WARM = LocationTracker.SUSPEND_KEEP_WARM;
 
     /**
      * Log tag
@@ -52,11 +48,6 @@ public class LocationHelper
      */
     private LocationListener locationListener;
 
-    /**
-     * Current number of measurements
-     */
-    private long currentMeasurements;
-
     /**
      * List of location listener
      */
@@ -65,16 +56,100 @@ public class LocationHelper
     /**
      * Listener interface to implement by callee
      */
-    public interface OnLocationListener
+    public interface OnLocationListener extends LocationMatcher.OnMatchListener
     {
-        void onLocationArrived(Circle circle);
-        void onFirstLocation();
     }
 
     /**
-     * Possible spots
+     * Listener forwarding the matched circles to the registered listeners
      */
-    private Spot[] spots = new Spot[0];
+    private final LocationMatcher.OnMatchListener matchListener =
+            new LocationMatcher.OnMatchListener()
+            {
+                @Override
+                public void onFirstLocation()
+                {
+                    for (OnLocationListener l : listeners)
+                        l.onFirstLocation();
+                }
+
+                @Override
+                public void onCirclesPredicted(Circle[] circles, int count)
+                {
+                    for (OnLocationListener l : listeners)
+                        l.onCirclesPredicted(circles, count);
+                }
+
+                @Override
+                public void onCircleEntered(Circle circle)
+                {
+                    logger.d(LOG_TAG, "Entered: circle with title {}", circle.getTitle());
+                    for (OnLocationListener l : listeners)
+                        l.onCircleEntered(circle);
+                }
+
+                @Override
+                public void onCircleDwelling(Circle circle, long dwellTime)
+                {
+                    for (OnLocationListener l : listeners)
+                        l.onCircleDwelling(circle, dwellTime);
+                }
+
+                @Override
+                public void onCircleExited(Circle circle)
+                {
+                    logger.d(LOG_TAG, "Exited: circle with title {}", circle.getTitle());
+                    for (OnLocationListener l : listeners)
+                        l.onCircleExited(circle);
+                }
+            };
+
+    /**
+     * Source requesting the locations from the location manager
+     */
+    private final LocationTracker.LocationSource locationSource =
+            new LocationTracker.LocationSource()
+            {
+                @Override
+                public void requestUpdates(long interval, float minimumDistance)
+                {
+                    logger.d(LOG_TAG, "Sampling every {}ms or {}m", interval, minimumDistance);
+                    locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, interval,
+                            minimumDistance, locationListener);
+                }
+
+                @Override
+                public void removeUpdates()
+                {
+                    locationManager.removeUpdates(locationListener);
+                }
+
+                @Override
+                public void deliverFreshestFix()
+                {
+                    Location location = locationManager.getLastKnownLocation(
+                            LocationManager.GPS_PROVIDER);
+                    if (location != null && (lastLocation == null
+                            || location.getTime() > lastLocation.getTime()))
+                    {
+                        tracker.filter(location.getLatitude(), location.getLongitude(),
+                                location.hasAccuracy() ? location.getAccuracy() : 0,
+                                location.hasSpeed() ? location.getSpeed() : Double.NaN,
+                                location.getTime());
+                        lastLocation = location;
+                    }
+                }
+            };
+
+    /**
+     * Tracker deciding what happens to the received locations
+     */
+    private final LocationTracker tracker;
+
+    /**
+     * Matcher of the tracker turning the received locations into circle events
+     */
+    private final LocationMatcher matcher;
 
     /**
      * Last received location
@@ -88,6 +163,20 @@ public class LocationHelper
      */
     public LocationHelper(final Context context, final OnLocationListener listener)
     {
+        this(context, listener, new HandlerScheduler());
+    }
+
+    /**
+     * Initialize a LocationHelper object.
+     * @param context application's context
+     * @param listener listener to add
+     * @param scheduler scheduler telling the time of the matched locations
+     */
+    public LocationHelper(final Context context, final OnLocationListener listener,
+                          Scheduler scheduler)
+    {
+        tracker = new LocationTracker(locationSource, scheduler, matchListener);
+        matcher = tracker.getMatcher();
         addListener(listener);
 
         logger = Logger.getLogger(context);
@@ -97,28 +186,28 @@ public class LocationHelper
             @Override
             public void onLocationChanged(Location location)
             {
-                logger.d(LOG_TAG, "Current location: latitude: " + location.getLatitude() +
-                        ", longitude: " + location.getLongitude() + ", accuracy: " +
-                        location.getAccuracy());
+                if (Logger.isLoggable(Log.DEBUG))
+                    logger.d(LOG_TAG, "Current location: latitude: {}, longitude: {}, accuracy: {}",
+                            location.getLatitude(), location.getLongitude(),
+                            location.getAccuracy());
 
+                boolean wasWarmedUp = matcher.isWarmedUp();
                 lastLocation = location;
-
-                currentMeasurements++;
-                if (currentMeasurements >= MINIMUM_MEASUREMENTS)
-                {
-                    // Inform listeners about first location that is taken into account.
-                    if (currentMeasurements == MINIMUM_MEASUREMENTS)
-                        for (OnLocationListener l: listeners)
-                            l.onFirstLocation();
-
-                    // Inform the listeners about the circle that matches the current location.
-                    Circle circle = getMatchedCircle(location);
-                    if (circle != null)
-                        for (OnLocationListener l : listeners)
-                            l.onLocationArrived(circle);
-                }
-                else
+                int outcome = tracker.onFix(location.getLatitude(), location.getLongitude(),
+                        location.hasAccuracy() ? location.getAccuracy() : 0,
+                        location.hasSpeed() ? location.getSpeed() : Double.NaN,
+                        location.getTime());
+                if (!wasWarmedUp && matcher.isWarmedUp())
+                    logger.d(LOG_TAG, "Warmed up after {}ms", matcher.getWarmUpTime());
+
+                if (outcome == LocationTracker.FIX_WARMING_UP)
                     logger.d(LOG_TAG, "Warming up: Ignored last location.");
+                else if (outcome == LocationTracker.FIX_SUSPENDED)
+                    logger.v(LOG_TAG, "Suspended: Kept last location.");
+                else if (outcome == LocationTracker.FIX_REJECTED)
+                    logger.d(LOG_TAG, "Rejected last location.");
+                else if (Logger.isLoggable(Log.DEBUG))
+                    logPickedCircle();
             }
 
             @Override
@@ -142,44 +231,25 @@ public class LocationHelper
     }
 
     /**
-     * Get the smallest circle that contains the provided location.
-     * @param location location
-     * @return matched circle, null if there has been no match
+     * Log the circle that contains the last matched location.
      */
-    private Circle getMatchedCircle(Location location)
+    private void logPickedCircle()
     {
-        Circle result = null;
-        for (Spot spot : spots)
-        {
-            for (Circle circle : spot.getCircles())
-            {
-                // As the circles are ordered, the smallest one will always be taken.
-                if (hasLocationInRadius(location, spot.getLatitude(), spot.getLongitude(),
-                        circle.getRadius() / 1000.0, circle.getTitle())
-                        && (result == null || circle.getRadius() <= result.getRadius()))
-                    // Check if there is an smaller circle of one spot that may be overlapped by a
-                    // bigger circle of another spot.
-                {
-                    result = circle;
-                    break;
-                }
-            }
-        }
-        if (result == null)
+        Circle circle = matcher.getMatchedCircle();
+        if (circle == null)
             logger.d(LOG_TAG, "Picked: none");
         else
-            logger.d(LOG_TAG, "Picked: circle with title " + result.getTitle() + ", radius " +
-                    result.getRadius());
-        return result;
+            logger.d(LOG_TAG, "Picked: circle with title {}, radius {}", circle.getTitle(),
+                    circle.getRadius());
     }
 
     /**
-     * Set the possible spots.
+     * Set the possible spots and index their circles.
      * @param spots possible spots
      */
     public void setSpots(Spot[] spots)
     {
-        this.spots = spots;
+        matcher.setSpots(spots);
     }
 
     /**
@@ -187,8 +257,29 @@ public class LocationHelper
      */
     public void startLogging()
     {
-        locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER,
-                LOCATION_UPDATE_TIME_INTERVAL, 0, locationListener);
+        tracker.start();
+    }
+
+    /**
+     * Stop matching locations, for example while audio is playing, until
+     * {@link LocationHelper#resumeProcessing()} is called.
+     * @param mode SUSPEND_PAUSE to stop requesting locations, SUSPEND_KEEP_WARM to request them
+     *             at a low rate
+     */
+    public void suspendProcessing(int mode)
+    {
+        if (tracker.suspend(mode))
+            logger.d(LOG_TAG, "Suspended location processing in mode {}", mode);
+    }
+
+    /**
+     * Resume matching locations. The freshest known location is processed at once, and locations
+     * are requested at the fastest rate again, since the listener may have moved in the meantime.
+     */
+    public void resumeProcessing()
+    {
+        if (tracker.resume())
+            logger.d(LOG_TAG, "Resumed location processing");
     }
 
     /**
@@ -196,47 +287,92 @@ public class LocationHelper
      */
     public void stopLogging()
     {
-        locationManager.removeUpdates(locationListener);
+        tracker.stop();
+
+        long matchCount = matcher.getMatchCount();
+        if (matchCount > 0)
+            logger.d(LOG_TAG, "Reused {} of {} matches ({}%)", matcher.getReusedMatchCount(),
+                    matchCount, 100 * matcher.getReusedMatchCount() / matchCount);
     }
 
     /**
-     * Check whether the given location is strictly in the circle with a center defined by the given
-     * latitude and longitude as as well as radius.
-     * @param location location
-     * @param latitude latitude of the circle's center
-     * @param longitude longitude of the circle's center
-     * @param radius radius of the circle, in kilometers
-     * @return true if that is the case, false otherwise
+     * @return number of matches requested since the counters have been reset
      */
-    private boolean hasLocationInRadius(Location location, double latitude, double longitude,
-                                        double radius, String title)
+    public long getMatchCount()
     {
-        double distance = distFrom(location.getLatitude(), location.getLongitude(), latitude,
-                longitude);
+        return matcher.getMatchCount();
+    }
 
-        logger.d(LOG_TAG, "Distance to " + title + " with radius " + radius + "km: " + distance +
-                "km");
-        return distance < radius;
+    /**
+     * @return number of matches answered by reusing the last full match since the counters have
+     * been reset
+     */
+    public long getReusedMatchCount()
+    {
+        return matcher.getReusedMatchCount();
     }
 
     /**
-     * Calculate the distance between two given locations using the Haversine formula.
-     * @param lat1 latitude of first location
-     * @param lng1 longitude of firs location
-     * @param lat2 latitude of second location
-     * @param lng2 longitude of second location
-     * @return distance in kilometers
+     * @return number of locations rejected by the position filter since the counters have been
+     * reset
      */
-    private static double distFrom(double lat1, double lng1, double lat2, double lng2)
+    public long getRejectedLocationCount()
     {
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLng = Math.toRadians(lng2 - lng1);
-        double sindLat = Math.sin(dLat / 2);
-        double sindLng = Math.sin(dLng / 2);
-        double a = Math.pow(sindLat, 2) + Math.pow(sindLng, 2) * Math.cos(Math.toRadians(lat1))
-                * Math.cos(Math.toRadians(lat2));
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        return EARTH_RADIUS * c;
+        return matcher.getRejectedLocationCount();
+    }
+
+    /**
+     * @return time from the first location to the location that has stabilised the position, in
+     * milliseconds, -1 if the position has not stabilised yet
+     */
+    public long getWarmUpTime()
+    {
+        return matcher.getWarmUpTime();
+    }
+
+    /**
+     * Reset the match counters.
+     */
+    public void resetMatchCounters()
+    {
+        matcher.resetMatchCounters();
+    }
+
+    /**
+     * Set the distance engine used to compare locations.
+     * @param distanceEngine distance engine
+     */
+    public void setDistanceEngine(DistanceEngine distanceEngine)
+    {
+        matcher.setDistanceEngine(distanceEngine);
+    }
+
+    /**
+     * Set when the position filter rejects locations.
+     * @param maximumAccuracy accuracy above which locations are rejected, in meters
+     * @param maximumSpeed reported speed above which locations are rejected, in meters per second
+     * @param gate squared Mahalanobis distance from the predicted position above which locations
+     *             are rejected
+     * @param maximumRejections number of consecutive rejected locations after which the filter
+     *                          starts over
+     */
+    public void setOutlierRejection(double maximumAccuracy, double maximumSpeed, double gate,
+                                    int maximumRejections)
+    {
+        matcher.setOutlierRejection(maximumAccuracy, maximumSpeed, gate, maximumRejections);
+    }
+
+    /**
+     * Set the hysteresis margin and the debounce of the circle occupancy.
+     * @param hysteresisMargin margin by which the radius of the occupied circle is enlarged
+     *                         before the circle is left, in meters
+     * @param debounceFixes number of consecutive fixes confirming a transition
+     * @param debounceTime time span confirming a transition, in milliseconds
+     */
+    public void setOccupancyParameters(double hysteresisMargin, int debounceFixes,
+                                       long debounceTime)
+    {
+        matcher.setOccupancyParameters(hysteresisMargin, debounceFixes, debounceTime);
     }
 
     /**
@@ -246,18 +382,8 @@ public class LocationHelper
      */
     public Pair<Double, Double> getClosestSpot()
     {
-        Spot nearestSpot = null;
-        double minDistance = Double.MAX_VALUE;
-        for (Spot spot : spots)
-        {
-            double currentDistance = distFrom(spot.getLatitude(), spot.getLongitude(),
-                    lastLocation.getLatitude(), lastLocation.getLongitude());
-            if (currentDistance < minDistance)
-            {
-                nearestSpot = spot;
-                minDistance = currentDistance;
-            }
-        }
+        Spot nearestSpot = matcher.getClosestSpot(lastLocation.getLatitude(),
+                lastLocation.getLongitude());
         if (nearestSpot == null)
             return Pair.create(360.0, 360.0);
         else
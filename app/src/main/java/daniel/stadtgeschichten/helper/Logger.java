@@ -2,11 +2,12 @@ package daniel.stadtgeschichten.helper;
 
 import android.content.Context;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.widget.Toast;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 
 import daniel.stadtgeschichten.R;
@@ -17,9 +18,21 @@ import daniel.stadtgeschichten.R;
 public class Logger
 {
     /**
-     * Indicates whether the logging is enabled or disabled
+     * Placeholder in message templates that is replaced by the next argument
      */
-    private static final boolean IS_LOGGING = true;
+    private static final String PLACEHOLDER = "{}";
+
+    /**
+     * Indicates per priority level ({@link Log#VERBOSE} to {@link Log#ASSERT}) whether logging is
+     * enabled; verbose logging is disabled by default
+     */
+    private static final boolean[] enabledLevels = {false, false, false, true, true, true, true,
+            true};
+
+    /**
+     * Letter written in front of every line in the log file per priority level
+     */
+    private static final String[] levelLetters = {"", "", "V", "D", "I", "W", "E", "A"};
 
     /**
      * Name of the log file
@@ -32,20 +45,40 @@ public class Logger
     private static final String LOG_TAG = "Logger";
 
     /**
-     * File to log to
+     * Size after which the log file is rotated, in bytes
+     */
+    private static final long LOG_FILE_MAX_SIZE = 1024 * 1024;
+
+    /**
+     * Number of rotated log file segments to keep
+     */
+    private static final int LOG_FILE_SEGMENTS = 4;
+
+    /**
+     * Indicates whether rotated log file segments are compressed
+     */
+    private static final boolean IS_COMPRESSING_SEGMENTS = true;
+
+    /**
+     * Logger shared by the whole process
+     */
+    private static Logger instance;
+
+    /**
+     * Writer appending to the log file on a background thread
      */
-    private File logFile;
+    private final AsyncLogWriter writer;
 
     /**
      * Application's context
      */
-    private Context context;
+    private final Context context;
 
     /**
-     * Create a logger.
+     * Create a logger and open its log file.
      * @param context application's context
      */
-    public Logger(Context context)
+    private Logger(Context context)
     {
         this.context = context;
 
@@ -58,7 +91,7 @@ public class Logger
             folder.mkdir();
 
         // Get file.
-        logFile = new File(folder, logFileName);
+        File logFile = new File(folder, logFileName);
 
         // Create log file if it does not exist.
         if (!logFile.exists())
@@ -73,82 +106,203 @@ public class Logger
                         Toast.LENGTH_SHORT).show();
             }
         }
+
+        // Open the log file once for the whole process.
+        writer = new AsyncLogWriter(logFile, AsyncLogWriter.DEFAULT_CAPACITY, false,
+                AsyncLogWriter.DEFAULT_FLUSH_LINES, AsyncLogWriter.DEFAULT_FLUSH_INTERVAL,
+                LOG_FILE_MAX_SIZE, LOG_FILE_SEGMENTS, IS_COMPRESSING_SEGMENTS);
+        final Handler handler = new Handler(Looper.getMainLooper());
+        writer.setOnErrorListener(new AsyncLogWriter.OnErrorListener()
+        {
+            @Override
+            public void onWriteError(IOException e)
+            {
+                Log.e(LOG_TAG, e.toString());
+
+                // Toasts can only be shown on the main thread.
+                handler.post(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        Toast.makeText(Logger.this.context, Logger.this.context.getString(
+                                R.string.log_file_writing_failure), Toast.LENGTH_SHORT).show();
+                    }
+                });
+            }
+        });
     }
 
     /**
-     * Get a logger.
+     * Get the logger shared by the whole process, and create it on the first call.
      * @param context application's context
      * @return logger
      */
-    public static Logger getLogger(Context context)
+    public static synchronized Logger getLogger(Context context)
     {
-        return new Logger(context);
+        if (instance == null)
+            instance = new Logger(context.getApplicationContext());
+        return instance;
     }
 
     /**
-     * Write the given text to the log file and append a carriage return and a line feed.
+     * Queue the given text for writing to the log file. A carriage return and a line feed are
+     * appended when it is written.
      * @param text text to write
      */
     private void writeLine(String text)
+    {
+        writer.append(text);
+    }
+
+    /**
+     * Block until every queued line has been written to the log file, for example before the
+     * process may be killed.
+     */
+    public void flush()
     {
         try
         {
-            FileWriter writer = new FileWriter(logFile, true);
-            writer.append(text);
-            writer.append("\r\n");
             writer.flush();
-            writer.close();
         }
-        catch (IOException e)
+        catch (InterruptedException e)
         {
-            Log.e(LOG_TAG, e.toString());
-            Toast.makeText(context, context.getString(R.string.log_file_writing_failure),
-                    Toast.LENGTH_SHORT).show();
+            Thread.currentThread().interrupt();
         }
     }
 
+    /**
+     * @return number of lines that have been dropped because the log file could not keep up
+     */
+    public long getDroppedLines()
+    {
+        return writer.getDroppedLines();
+    }
+
+    /**
+     * Enable or disable logging of the given priority level at runtime.
+     * @param level priority level, from {@link Log#VERBOSE} to {@link Log#ASSERT}
+     * @param isEnabled true to enable logging, false to disable it
+     */
+    public static void setLoggable(int level, boolean isEnabled)
+    {
+        enabledLevels[level] = isEnabled;
+    }
+
+    /**
+     * Check whether messages of the given priority level are logged. Callers should check this
+     * before computing arguments for a message that would be expensive to compute.
+     * @param level priority level, from {@link Log#VERBOSE} to {@link Log#ASSERT}
+     * @return true if that is the case, false otherwise
+     */
+    public static boolean isLoggable(int level)
+    {
+        return enabledLevels[level];
+    }
+
+    /**
+     * Log a message built from a template if its priority level is enabled. Every {@code {}} in
+     * the template is replaced by the next argument; the message is only built if it is logged.
+     * @param level priority level, from {@link Log#VERBOSE} to {@link Log#ASSERT}
+     * @param tag log tag
+     * @param template message template
+     * @param args arguments to insert into the template
+     */
+    public void log(int level, String tag, String template, Object... args)
+    {
+        if (enabledLevels[level])
+            write(level, tag, format(template, args));
+    }
+
+    /**
+     * Write a message to LogCat and to the log file.
+     * @param level priority level, from {@link Log#VERBOSE} to {@link Log#ASSERT}
+     * @param tag log tag
+     * @param message message
+     */
+    private void write(int level, String tag, String message)
+    {
+        Log.println(level, tag, message);
+        writeLine(levelLetters[level] + ": " + tag + " : " + message);
+    }
+
+    /**
+     * Replace the placeholders of a template with the given arguments.
+     * @param template message template
+     * @param args arguments to insert into the template
+     * @return message
+     */
+    private static String format(String template, Object[] args)
+    {
+        if (args == null || args.length == 0)
+            return template;
+
+        StringBuilder builder = new StringBuilder(template.length() + 16 * args.length);
+        int start = 0;
+        for (Object arg : args)
+        {
+            int position = template.indexOf(PLACEHOLDER, start);
+            if (position < 0)
+                break;
+            builder.append(template, start, position).append(arg);
+            start = position + PLACEHOLDER.length();
+        }
+        builder.append(template, start, template.length());
+        return builder.toString();
+    }
+
     public void d(String tag, String message)
     {
-        if (!IS_LOGGING)
-            return;
+        if (enabledLevels[Log.DEBUG])
+            write(Log.DEBUG, tag, message);
+    }
 
-        Log.d(tag, message);
-        writeLine("D: " + tag + " : " + message);
+    public void d(String tag, String template, Object... args)
+    {
+        log(Log.DEBUG, tag, template, args);
     }
 
     public void e(String tag, String message)
     {
-        if (!IS_LOGGING)
-            return;
+        if (enabledLevels[Log.ERROR])
+            write(Log.ERROR, tag, message);
+    }
 
-        Log.e(tag, message);
-        writeLine("E: " + tag + " : " + message);
+    public void e(String tag, String template, Object... args)
+    {
+        log(Log.ERROR, tag, template, args);
     }
 
     public void i(String tag, String message)
     {
-        if (!IS_LOGGING)
-            return;
+        if (enabledLevels[Log.INFO])
+            write(Log.INFO, tag, message);
+    }
 
-        Log.i(tag, message);
-        writeLine("I: " + tag + " : " + message);
+    public void i(String tag, String template, Object... args)
+    {
+        log(Log.INFO, tag, template, args);
     }
 
     public void v(String tag, String message)
     {
-        if (!IS_LOGGING)
-            return;
+        if (enabledLevels[Log.VERBOSE])
+            write(Log.VERBOSE, tag, message);
+    }
 
-        Log.v(tag, message);
-        writeLine("V: " + tag + " : " + message);
+    public void v(String tag, String template, Object... args)
+    {
+        log(Log.VERBOSE, tag, template, args);
     }
 
     public void w(String tag, String message)
     {
-        if (!IS_LOGGING)
-            return;
+        if (enabledLevels[Log.WARN])
+            write(Log.WARN, tag, message);
+    }
 
-        Log.w(tag, message);
-        writeLine("W: " + tag + " : " + message);
+    public void w(String tag, String template, Object... args)
+    {
+        log(Log.WARN, tag, template, args);
     }
 }
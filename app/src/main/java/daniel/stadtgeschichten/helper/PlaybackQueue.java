@@ -0,0 +1,676 @@
+package daniel.stadtgeschichten.helper;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.os.Build;
+import android.os.PowerManager;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import daniel.stadtgeschichten.compiler.StoryInterpreter;
+import daniel.stadtgeschichten.model.PlayStatement;
+
+/**
+ * This queue plays back the audio files of play statements one after another. It draws its media
+ * players from a small pool: one plays the current item, one prepares the next item while the
+ * current one is playing, and one prepares the audio file that is predicted to be queued next.
+ * On Jelly Bean and later, a prepared next item is chained to the current one, so that it starts
+ * without any gap. On older versions, it is started as soon as the current one has completed. If
+ * the current item cannot be prepared within a maximum time, it is skipped like a file that cannot
+ * be opened, so that a stalled media player does not hold up the story.
+ */
+public class PlaybackQueue implements StoryInterpreter.Player, MediaPlayer.OnPreparedListener,
+        MediaPlayer.OnCompletionListener, MediaPlayer.OnErrorListener
+{
+    /**
+     * Maximum number of media players: current item, next item and prefetched item
+     */
+    private static final int MAXIMUM_PLAYERS = 3;
+
+    /**
+     * Time after which the preparation of the current item is given up, in milliseconds
+     */
+    private static final long PREPARATION_TIMEOUT = 10000;
+
+    /**
+     * Log tag
+     */
+    private static final String LOG_TAG = "PlaybackQueue";
+
+    /**
+     * Application's context
+     */
+    private final Context context;
+
+    /**
+     * Listener that is informed about the playback
+     */
+    private final OnPlaybackListener listener;
+
+    /**
+     * Logger
+     */
+    private final Logger logger;
+
+    /**
+     * Scheduler timing the preparation of the current item
+     */
+    private final Scheduler scheduler;
+
+    /**
+     * Media players that are not assigned to any item
+     */
+    private final ArrayList<MediaPlayer> idlePlayers = new ArrayList<>();
+
+    /**
+     * Number of media players that have been created and not released
+     */
+    private int playerCount;
+
+    /**
+     * Asset folder containing the audio files
+     */
+    private String folder;
+
+    /**
+     * Item that is playing or about to play, null if the queue is empty
+     */
+    private Item current;
+
+    /**
+     * Items that are played after the current one
+     */
+    private final ArrayDeque<Item> queue = new ArrayDeque<>();
+
+    /**
+     * Item prepared in advance for an audio file that is predicted to be queued, null if there is
+     * none
+     */
+    private Item prefetched;
+
+    /**
+     * True if the media players have been released, false otherwise
+     */
+    private boolean isReleased = true;
+
+    /**
+     * Number of queued items whose audio file had been prepared in advance
+     */
+    private int prefetchHits;
+
+    /**
+     * Number of queued items whose audio file had not been prepared in advance
+     */
+    private int prefetchMisses;
+
+    /**
+     * Current item whose preparation is timed, null if there is none
+     */
+    private Item watchedItem;
+
+    /**
+     * Task skipping the current item if it has not been prepared in time
+     */
+    private final Runnable preparationTimeout = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            Item item = watchedItem;
+            watchedItem = null;
+            if (item == null || item != current || item.isPrepared)
+                return;
+            String fileName = item.statement.getAudioFileName();
+            logger.w(LOG_TAG, "Preparing {} timed out", fileName);
+            listener.onItemFailed(item.statement,
+                    new IOException("Preparing " + fileName + " timed out"));
+            skip(item);
+        }
+    };
+
+    /**
+     * Interface of the listener that is informed about the playback
+     */
+    public interface OnPlaybackListener
+    {
+        /**
+         * Called before an item is started for the first time.
+         * @return true if the item may start, false to keep it prepared until
+         * {@link PlaybackQueue#resume()} is called
+         */
+        boolean onStartRequested();
+
+        /**
+         * Called when an item has been started for the first time.
+         * @param title title of the circle the item belongs to, may be null or empty
+         * @param statement play statement of the item
+         */
+        void onItemStarted(String title, PlayStatement statement);
+
+        /**
+         * Called when the audio file of an item cannot be opened, prepared or played. The item
+         * is skipped.
+         * @param statement play statement of the item
+         * @param e exception
+         */
+        void onItemFailed(PlayStatement statement, Exception e);
+
+        /**
+         * Called when the last queued item has completed.
+         */
+        void onQueueFinished();
+    }
+
+    /**
+     * This item is a play statement waiting in the queue.
+     */
+    private static class Item
+    {
+        /**
+         * Title of the circle the item belongs to, may be null or empty
+         */
+        private String title;
+
+        /**
+         * Play statement
+         */
+        private final PlayStatement statement;
+
+        /**
+         * Media player assigned to the item, null if there is none yet
+         */
+        private MediaPlayer player;
+
+        /**
+         * True if the media player has been prepared, false otherwise
+         */
+        private boolean isPrepared;
+
+        /**
+         * True if the item has been started, false otherwise
+         */
+        private boolean isStarted;
+
+        /**
+         * True if the next item starts automatically after this one, false otherwise
+         */
+        private boolean isChained;
+
+        private Item(String title, PlayStatement statement)
+        {
+            this.title = title;
+            this.statement = statement;
+        }
+    }
+
+    public PlaybackQueue(Context context, OnPlaybackListener listener)
+    {
+        this(context, listener, new HandlerScheduler());
+    }
+
+    /**
+     * Initialize a PlaybackQueue object.
+     * @param context application's context
+     * @param listener listener that is informed about the playback
+     * @param scheduler scheduler timing the preparation of the current item
+     */
+    public PlaybackQueue(Context context, OnPlaybackListener listener, Scheduler scheduler)
+    {
+        this.context = context;
+        this.listener = listener;
+        this.scheduler = scheduler;
+        logger = Logger.getLogger(context);
+    }
+
+    /**
+     * Drop all items and get ready to play the audio files of a story.
+     * @param folder asset folder containing the audio files
+     */
+    public void open(String folder)
+    {
+        release();
+        current = null;
+        queue.clear();
+        this.folder = folder;
+        isReleased = false;
+    }
+
+    /**
+     * Append an item to the queue. It is started at once if the queue is empty.
+     * @param title title of the circle the statement belongs to, may be null or empty
+     * @param statement play statement
+     */
+    @Override
+    public void enqueue(String title, PlayStatement statement)
+    {
+        // Take the prefetched item if it has been predicted correctly.
+        Item item;
+        if (prefetched != null && isSameAudio(prefetched.statement, statement))
+        {
+            prefetchHits++;
+            item = prefetched;
+            item.title = title;
+            prefetched = null;
+        }
+        else
+        {
+            prefetchMisses++;
+            item = new Item(title, statement);
+        }
+        logger.d(LOG_TAG, "Prefetched {} of {} audio files", prefetchHits,
+                prefetchHits + prefetchMisses);
+
+        if (current == null)
+        {
+            current = item;
+            if (item.isPrepared)
+                start(item);
+            else if (item.player == null)
+                prepare(item, true);
+        }
+        else
+        {
+            // Only the first item after the current one holds a media player, so a prefetched
+            // item queued further back gives its media player back to the pool.
+            if (!queue.isEmpty())
+                recycle(item);
+            queue.add(item);
+            chain();
+        }
+        prepareNext();
+        watchPreparation();
+    }
+
+    /**
+     * Prepare the audio file of the given play statement in advance, since it is predicted to be
+     * queued next. Failures are only logged, since the file is prepared again when it is queued.
+     * @param statement play statement, null to keep the current prediction
+     */
+    @Override
+    public void prefetch(PlayStatement statement)
+    {
+        if (statement == null || isReleased
+                || (prefetched != null && isSameAudio(prefetched.statement, statement)))
+            return;
+
+        if (prefetched != null)
+            recycle(prefetched);
+        Item item = new Item(null, statement);
+        if (prepare(item, false))
+        {
+            prefetched = item;
+            logger.d(LOG_TAG, "Prefetching {}", statement.getAudioFileName());
+        }
+        else
+            prefetched = null;
+    }
+
+    /**
+     * @return true if an item is playing or about to play, false if the queue is empty
+     */
+    @Override
+    public boolean isBusy()
+    {
+        return current != null;
+    }
+
+    /**
+     * @return true if the current item is playing, false otherwise
+     */
+    public boolean isPlaying()
+    {
+        return current != null && current.player != null && current.player.isPlaying();
+    }
+
+    /**
+     * @return true if the media players have been released, false otherwise
+     */
+    public boolean isReleased()
+    {
+        return isReleased;
+    }
+
+    /**
+     * Pause the current item.
+     */
+    public void pause()
+    {
+        if (isPlaying())
+            current.player.pause();
+    }
+
+    /**
+     * Continue the current item. If the media players have been released, the current item is
+     * prepared again and played from its beginning.
+     */
+    public void resume()
+    {
+        if (isReleased)
+        {
+            isReleased = false;
+            if (current != null)
+                prepare(current, true);
+            prepareNext();
+            watchPreparation();
+        }
+        else if (current != null && current.isPrepared && !current.player.isPlaying())
+            start(current);
+    }
+
+    /**
+     * Release all media players, for example after the audio focus has been lost. The queued
+     * items are kept, but the prefetched one is dropped.
+     */
+    public void release()
+    {
+        if (current != null)
+            detach(current);
+        for (Item item : queue)
+            detach(item);
+        if (prefetched != null)
+            detach(prefetched);
+        prefetched = null;
+        for (MediaPlayer player : idlePlayers)
+            player.release();
+        idlePlayers.clear();
+        playerCount = 0;
+        isReleased = true;
+        watchPreparation();
+    }
+
+    /**
+     * Release the media player of an item and forget its state.
+     * @param item item
+     */
+    private void detach(Item item)
+    {
+        if (item.player != null)
+        {
+            if (item.player.isPlaying())
+                item.player.stop();
+            item.player.release();
+        }
+        item.player = null;
+        item.isPrepared = false;
+        item.isStarted = false;
+        item.isChained = false;
+    }
+
+    /**
+     * Prepare the media player of the first item after the current one.
+     */
+    private void prepareNext()
+    {
+        Item next = queue.peek();
+        if (next != null && next.player == null)
+            prepare(next, true);
+    }
+
+    /**
+     * Assign a media player to an item and prepare it.
+     * @param item item without media player
+     * @param isReported true if the listener is informed about failures, false otherwise
+     * @return true if the item is being prepared, false otherwise
+     */
+    private boolean prepare(Item item, boolean isReported)
+    {
+        if (isReleased)
+            return false;
+        MediaPlayer player = obtainPlayer();
+        if (player == null)
+            return false;
+
+        item.player = player;
+        item.isPrepared = false;
+        try
+        {
+            AssetFileDescriptor fileDescriptor = context.getAssets().openFd(folder + "/"
+                    + item.statement.getAudioFileName());
+            player.setDataSource(fileDescriptor.getFileDescriptor(),
+                    fileDescriptor.getStartOffset(),
+                    fileDescriptor.getLength());
+            player.setVolume(item.statement.getVolume(), item.statement.getVolume());
+            player.prepareAsync();
+            return true;
+        }
+        catch (IOException | IllegalStateException e)
+        {
+            logger.w(LOG_TAG, "Cannot prepare {}: {}", item.statement.getAudioFileName(), e);
+            recycle(item);
+            if (isReported)
+            {
+                listener.onItemFailed(item.statement, e);
+                skip(item);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Start an item, asking the listener if it is started for the first time.
+     * @param item prepared item
+     */
+    private void start(Item item)
+    {
+        if (!item.isStarted)
+        {
+            if (!listener.onStartRequested())
+                return;
+            item.player.start();
+            item.isStarted = true;
+            listener.onItemStarted(item.title, item.statement);
+        }
+        else
+            item.player.start();
+        chain();
+    }
+
+    /**
+     * Let the prepared next item start automatically after the current one.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void chain()
+    {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN)
+            return;
+        Item next = queue.peek();
+        if (current == null || !current.isStarted || current.isChained || next == null
+                || !next.isPrepared)
+            return;
+        current.player.setNextMediaPlayer(next.player);
+        current.isChained = true;
+    }
+
+    /**
+     * Remove an item from the queue, for example after it has failed.
+     * @param item item
+     */
+    private void skip(Item item)
+    {
+        if (item == current)
+            advance();
+        else if (item == queue.peek())
+        {
+            // Cut the chain to the dropped item.
+            if (current != null && current.isChained)
+            {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+                    current.player.setNextMediaPlayer(null);
+                current.isChained = false;
+            }
+            queue.poll();
+            recycle(item);
+            prepareNext();
+            chain();
+        }
+        else
+        {
+            queue.remove(item);
+            recycle(item);
+        }
+    }
+
+    /**
+     * Make the first queued item the current one.
+     */
+    private void advance()
+    {
+        Item finished = current;
+        recycle(finished);
+        current = queue.poll();
+        if (current == null)
+        {
+            watchPreparation();
+            listener.onQueueFinished();
+            return;
+        }
+
+        if (finished.isChained)
+        {
+            // The media player has already started the item.
+            current.isStarted = true;
+            listener.onItemStarted(current.title, current.statement);
+            chain();
+        }
+        else if (current.isPrepared)
+            start(current);
+        else if (current.player == null)
+            prepare(current, true);
+        prepareNext();
+        watchPreparation();
+    }
+
+    /**
+     * Time the preparation of the current item, unless it is timed already. The timeout is
+     * cancelled once the current item has been prepared or replaced.
+     */
+    private void watchPreparation()
+    {
+        Item item = current != null && current.player != null && !current.isPrepared ? current
+                : null;
+        if (item == watchedItem)
+            return;
+        scheduler.cancel(preparationTimeout);
+        watchedItem = item;
+        if (item != null)
+            scheduler.schedule(preparationTimeout, PREPARATION_TIMEOUT);
+    }
+
+    /**
+     * Get a media player from the pool.
+     * @return idle media player, null if all media players are in use
+     */
+    private MediaPlayer obtainPlayer()
+    {
+        if (!idlePlayers.isEmpty())
+            return idlePlayers.remove(idlePlayers.size() - 1);
+        if (playerCount >= MAXIMUM_PLAYERS)
+            return null;
+
+        playerCount++;
+        MediaPlayer player = new MediaPlayer();
+        player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        player.setOnPreparedListener(this);
+        player.setOnCompletionListener(this);
+        player.setOnErrorListener(this);
+        player.setWakeMode(context, PowerManager.PARTIAL_WAKE_LOCK);
+        return player;
+    }
+
+    /**
+     * Return the media player of an item to the pool.
+     * @param item item
+     */
+    private void recycle(Item item)
+    {
+        if (item.player != null)
+        {
+            item.player.reset();
+            idlePlayers.add(item.player);
+        }
+        item.player = null;
+        item.isPrepared = false;
+    }
+
+    /**
+     * Find the item a media player is assigned to.
+     * @param player media player
+     * @return item, null if the media player is idle
+     */
+    private Item findItem(MediaPlayer player)
+    {
+        if (current != null && current.player == player)
+            return current;
+        for (Item item : queue)
+            if (item.player == player)
+                return item;
+        if (prefetched != null && prefetched.player == player)
+            return prefetched;
+        return null;
+    }
+
+    /**
+     * Check whether two play statements play the same audio file in the same way.
+     * @param statement1 first play statement
+     * @param statement2 second play statement
+     * @return true if that is the case, false otherwise
+     */
+    private static boolean isSameAudio(PlayStatement statement1, PlayStatement statement2)
+    {
+        return statement1.getAudioFileName().equals(statement2.getAudioFileName())
+                && statement1.getVolume() == statement2.getVolume();
+    }
+
+    @Override
+    public void onPrepared(MediaPlayer player)
+    {
+        Item item = findItem(player);
+        if (item == null)
+            return;
+
+        item.isPrepared = true;
+        if (item == current)
+        {
+            watchPreparation();
+            start(item);
+        }
+        else
+            chain();
+    }
+
+    @Override
+    public void onCompletion(MediaPlayer player)
+    {
+        if (current != null && current.player == player)
+            advance();
+    }
+
+    @Override
+    public boolean onError(MediaPlayer player, int what, int extra)
+    {
+        logger.w(LOG_TAG, "Playback error {}, {}", what, extra);
+        Item item = findItem(player);
+        if (item == null)
+            player.reset();
+        else if (item == prefetched)
+        {
+            recycle(item);
+            prefetched = null;
+        }
+        else
+        {
+            // A chained item does not start after a failed one.
+            if (item == current)
+                item.isChained = false;
+            listener.onItemFailed(item.statement,
+                    new IOException("Playback error " + what + ", " + extra));
+            skip(item);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,342 @@
+package daniel.stadtgeschichten.helper;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+import daniel.stadtgeschichten.model.Story;
+import daniel.stadtgeschichten.parser.StoryBinarySerializer;
+import daniel.stadtgeschichten.parser.StoryParser;
+
+/**
+ * This cache keeps every parsed story in a binary file in the application's cache folder, so that
+ * the story's XML file only has to be parsed once. A cache file is keyed by the asset path of the
+ * XML file and the CRC32 of its content. As long as the application has not been updated, the
+ * content cannot have changed and the cache file is loaded with a single read. Otherwise, the
+ * content is checked against the stored checksum first.
+ */
+public class StoryCache
+{
+    /**
+     * Name of the subfolder of the cache folder that contains the cache files
+     */
+    private static final String CACHE_FOLDER = "stories";
+
+    /**
+     * Extension of the cache files
+     */
+    private static final String CACHE_FILE_EXTENSION = ".bin";
+
+    /**
+     * Number at the beginning of every cache file
+     */
+    private static final int MAGIC = 0x53474243;
+
+    /**
+     * Size of the buffer used to read assets
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Log tag
+     */
+    private static final String LOG_TAG = "StoryCache";
+
+    /**
+     * Application's context
+     */
+    private final Context context;
+
+    /**
+     * Folder containing the cache files
+     */
+    private final File folder;
+
+    /**
+     * Time of the application's last update, -1 if unknown
+     */
+    private final long updateTime;
+
+    /**
+     * Parser of the XML files
+     */
+    private final StoryParser parser;
+
+    /**
+     * Logger
+     */
+    private final Logger logger;
+
+    /**
+     * This header precedes the story in every cache file.
+     */
+    private static class Header
+    {
+        /**
+         * Asset path of the story's XML file
+         */
+        private String assetPath;
+
+        /**
+         * Time of the application's update when the cache file has been written
+         */
+        private long updateTime;
+
+        /**
+         * CRC32 of the XML file's content
+         */
+        private long checksum;
+
+        /**
+         * Length of the XML file's content
+         */
+        private int length;
+    }
+
+    /**
+     * Initialize a StoryCache object.
+     * @param context context
+     * @param parser parser of the XML files, used when a story is not cached
+     */
+    public StoryCache(Context context, StoryParser parser)
+    {
+        this.context = context;
+        this.parser = parser;
+        folder = new File(context.getCacheDir(), CACHE_FOLDER);
+        logger = Logger.getLogger(context);
+
+        long updateTime;
+        try
+        {
+            updateTime = context.getPackageManager().getPackageInfo(context.getPackageName(), 0)
+                    .lastUpdateTime;
+        }
+        catch (PackageManager.NameNotFoundException e)
+        {
+            updateTime = -1;
+        }
+        this.updateTime = updateTime;
+    }
+
+    /**
+     * Get the story described by the given XML file from the cache, and parse it if it is not
+     * cached yet or has changed.
+     * @param assetPath asset path of the story's XML file
+     * @param folderName name of the folder that contains the story's files
+     * @return story
+     * @throws IOException if the XML file cannot be read
+     * @throws XmlPullParserException if the XML file cannot be parsed
+     */
+    public Story load(String assetPath, String folderName)
+            throws IOException, XmlPullParserException
+    {
+        File file = getCacheFile(assetPath);
+
+        // Read the whole cache file at once.
+        DataInputStream cached = null;
+        Header header = null;
+        if (file.exists())
+        {
+            try
+            {
+                cached = new DataInputStream(new ByteArrayInputStream(readFile(file)));
+                header = readHeader(cached);
+            }
+            catch (IOException e)
+            {
+                logger.w(LOG_TAG, "Cannot read {}: {}", file, e);
+            }
+        }
+        if (header != null && !header.assetPath.equals(assetPath))
+            header = null;
+
+        // The assets cannot have changed since the cache file has been written.
+        if (header != null && updateTime != -1 && header.updateTime == updateTime)
+        {
+            Story story = readStory(cached, folderName, file);
+            if (story != null)
+                return story;
+            header = null;
+        }
+
+        // Compare the checksums.
+        byte[] content = readAsset(assetPath);
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        if (header != null && header.checksum == crc.getValue()
+                && header.length == content.length)
+        {
+            Story story = readStory(cached, folderName, file);
+            if (story != null)
+            {
+                write(file, assetPath, crc.getValue(), content.length, story);
+                return story;
+            }
+        }
+
+        // Parse the XML file.
+        Story story = parser.parse(new ByteArrayInputStream(content), folderName);
+        write(file, assetPath, crc.getValue(), content.length, story);
+        return story;
+    }
+
+    /**
+     * Get the cache file of the given XML file.
+     * @param assetPath asset path of the story's XML file
+     * @return cache file
+     */
+    private File getCacheFile(String assetPath)
+    {
+        return new File(folder, assetPath.replace('/', '_') + CACHE_FILE_EXTENSION);
+    }
+
+    /**
+     * Read the header of a cache file.
+     * @param in input stream positioned at the beginning of the cache file
+     * @return header, null if the cache file has been written in another format
+     * @throws IOException
+     */
+    private static Header readHeader(DataInputStream in) throws IOException
+    {
+        if (in.readInt() != MAGIC || in.readInt() != StoryBinarySerializer.FORMAT_VERSION)
+            return null;
+        Header header = new Header();
+        header.assetPath = in.readUTF();
+        header.updateTime = in.readLong();
+        header.checksum = in.readLong();
+        header.length = in.readInt();
+        return header;
+    }
+
+    /**
+     * Read the story of a cache file.
+     * @param in input stream positioned behind the header
+     * @param folderName name of the folder that contains the story's files
+     * @param file cache file
+     * @return story, null if the cache file is corrupt
+     */
+    private Story readStory(DataInputStream in, String folderName, File file)
+    {
+        try
+        {
+            return StoryBinarySerializer.read(in, folderName);
+        }
+        catch (IOException e)
+        {
+            logger.w(LOG_TAG, "Cannot read {}: {}", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Write a story to its cache file. Failures are only logged, since the story can always be
+     * parsed again.
+     * @param file cache file
+     * @param assetPath asset path of the story's XML file
+     * @param checksum CRC32 of the XML file's content
+     * @param length length of the XML file's content
+     * @param story story
+     */
+    private void write(File file, String assetPath, long checksum, int length, Story story)
+    {
+        // Write to a temporary file first, so that an interrupted write leaves no corrupt file.
+        File temporaryFile = new File(folder, file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try
+        {
+            if (!folder.exists() && !folder.mkdirs())
+                throw new IOException("Cannot create " + folder);
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temporaryFile), BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeInt(StoryBinarySerializer.FORMAT_VERSION);
+            out.writeUTF(assetPath);
+            out.writeLong(updateTime);
+            out.writeLong(checksum);
+            out.writeInt(length);
+            StoryBinarySerializer.write(story, out);
+            out.close();
+            out = null;
+            if (!temporaryFile.renameTo(file))
+                throw new IOException("Cannot rename " + temporaryFile + " to " + file);
+        }
+        catch (IOException e)
+        {
+            logger.w(LOG_TAG, "Cannot write {}: {}", file, e);
+            temporaryFile.delete();
+        }
+        finally
+        {
+            if (out != null)
+            {
+                try
+                {
+                    out.close();
+                }
+                catch (IOException e)
+                {
+                    // Nothing left to do.
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a whole file.
+     * @param file file
+     * @return content
+     * @throws IOException
+     */
+    private static byte[] readFile(File file) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try
+        {
+            byte[] content = new byte[(int) file.length()];
+            in.readFully(content);
+            return content;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Read a whole asset.
+     * @param assetPath asset path
+     * @return content
+     * @throws IOException
+     */
+    private byte[] readAsset(String assetPath) throws IOException
+    {
+        InputStream in = context.getAssets().open(assetPath);
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(),
+                    BUFFER_SIZE));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) != -1)
+                out.write(buffer, 0, count);
+            return out.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package daniel.stadtgeschichten.helper;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import daniel.stadtgeschichten.model.StoryHeader;
+
+/**
+ * This loader reads the headers of all stories concurrently on a bounded thread pool and reports
+ * every story on the main thread as soon as it has been read, so that a list of stories can be
+ * filled progressively. A story that cannot be read is reported as well and does not keep the
+ * other stories from being loaded.
+ */
+public class StoryLoader
+{
+    /**
+     * Maximum number of threads reading stories
+     */
+    private static final int MAXIMUM_THREADS = 4;
+
+    /**
+     * Time after which idle threads are terminated, in seconds
+     */
+    private static final long KEEP_ALIVE_TIME = 1;
+
+    /**
+     * Application's context
+     */
+    private final Context context;
+
+    /**
+     * Listener that is informed about the loaded stories
+     */
+    private final OnStoryLoadedListener listener;
+
+    /**
+     * Handler posting to the main thread
+     */
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Thread pool reading the stories
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Number of stories that are still being read
+     */
+    private final AtomicInteger remainingStories = new AtomicInteger();
+
+    /**
+     * True if the loading has been cancelled, false otherwise
+     */
+    private volatile boolean isCancelled = false;
+
+    /**
+     * Interface of the listener that is informed about the loaded stories. All methods are called
+     * on the main thread.
+     */
+    public interface OnStoryLoadedListener
+    {
+        /**
+         * Called when the header of a story has been read and added to the reader. The calls are
+         * made in the order in which the stories have been added, so the titles of the last call
+         * are always the current ones.
+         * @param header header of the story
+         * @param titles titles of all stories that have been loaded so far, in the order of the
+         *               folders
+         */
+        void onStoryLoaded(StoryHeader header, String[] titles);
+
+        /**
+         * Called when a story could not be read.
+         * @param folderName name of the story's folder, or of the stories folder if the folders
+         *                   could not be listed
+         * @param e exception
+         */
+        void onStoryFailed(String folderName, Exception e);
+
+        /**
+         * Called when all stories have been read.
+         * @param reader reader containing all loaded stories, null if the folders could not be
+         *               listed
+         */
+        void onStoriesLoaded(StoryReader reader);
+    }
+
+    /**
+     * Initialize a StoryLoader object.
+     * @param context context
+     * @param listener listener that is informed about the loaded stories
+     */
+    public StoryLoader(Context context, OnStoryLoadedListener listener)
+    {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+
+        int threads = Math.max(1, Math.min(MAXIMUM_THREADS,
+                Runtime.getRuntime().availableProcessors()));
+        executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Start loading the stories in the background.
+     */
+    public void start()
+    {
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // List the folders.
+                final StoryReader reader;
+                try
+                {
+                    reader = new StoryReader(context, false);
+                }
+                catch (IOException e)
+                {
+                    postFailure(StoryReader.STORIES_FOLDER, e);
+                    postCompletion(null);
+                    return;
+                }
+
+                // Read the headers concurrently.
+                remainingStories.set(reader.getFolderCount());
+                if (reader.getFolderCount() == 0)
+                    postCompletion(reader);
+                for (int i = 0; i < reader.getFolderCount(); i++)
+                {
+                    final int folderIndex = i;
+                    executor.execute(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            readHeader(reader, folderIndex);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop loading the stories. The listener is not called anymore.
+     */
+    public void cancel()
+    {
+        isCancelled = true;
+        executor.shutdownNow();
+    }
+
+    /**
+     * Read the header of the story in the given folder and report the result.
+     * @param reader reader to add the header to
+     * @param folderIndex index of the folder
+     */
+    private void readHeader(StoryReader reader, int folderIndex)
+    {
+        if (!isCancelled)
+        {
+            try
+            {
+                final StoryHeader header = reader.readHeader(folderIndex);
+
+                // Add the header and post the titles while holding the reader's lock, so that
+                // the titles arrive on the main thread in the order in which they have changed.
+                synchronized (reader)
+                {
+                    if (reader.addHeader(folderIndex, header))
+                    {
+                        final String[] titles = reader.getStoryTitles();
+                        post(new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                listener.onStoryLoaded(header, titles);
+                            }
+                        });
+                    }
+                }
+            }
+            catch (IOException | XmlPullParserException e)
+            {
+                postFailure(reader.getFolder(folderIndex), e);
+            }
+        }
+
+        if (remainingStories.decrementAndGet() == 0)
+            postCompletion(reader);
+    }
+
+    /**
+     * Report a story that could not be read.
+     * @param folderName name of the story's folder
+     * @param e exception
+     */
+    private void postFailure(final String folderName, final Exception e)
+    {
+        post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                listener.onStoryFailed(folderName, e);
+            }
+        });
+    }
+
+    /**
+     * Report that all stories have been read, and let the threads terminate.
+     * @param reader reader containing all loaded stories
+     */
+    private void postCompletion(final StoryReader reader)
+    {
+        executor.shutdown();
+        post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                listener.onStoriesLoaded(reader);
+            }
+        });
+    }
+
+    /**
+     * Run the given runnable on the main thread unless the loading has been cancelled.
+     * @param runnable runnable
+     */
+    private void post(final Runnable runnable)
+    {
+        handler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (!isCancelled)
+                    runnable.run();
+            }
+        });
+    }
+}
@@ -6,12 +6,19 @@ import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import daniel.stadtgeschichten.model.Story;
-import daniel.stadtgeschichten.parser.StoryXmlParser;
+import daniel.stadtgeschichten.model.StoryHeader;
+import daniel.stadtgeschichten.parser.ScanningStoryParser;
+import daniel.stadtgeschichten.parser.StoryParser;
 
 /**
- * This class helps reading the different stories.
+ * This class helps reading the different stories. Only the attributes of the stories' root tags
+ * are parsed up front; a story is fully loaded when it is requested, and the most recently
+ * requested stories are kept.
  */
 public class StoryReader
 {
@@ -20,31 +27,160 @@ public class StoryReader
      */
     public static final String STORIES_FOLDER = "stories";
 
+    /**
+     * Number of fully loaded stories that are kept
+     */
+    private static final int MAXIMUM_LOADED_STORIES = 2;
+
+    /**
+     * Log tag
+     */
+    private static final String LOG_TAG = "StoryReader";
+
     /**
      * Application's context
      */
     private Context context;
 
     /**
-     * List of stories
+     * Parser of the XML files
+     */
+    private StoryParser parser = new ScanningStoryParser();
+
+    /**
+     * Cache of the parsed stories
+     */
+    private StoryCache cache;
+
+    /**
+     * Sub folders of {@link StoryReader#STORIES_FOLDER} containing the stories
+     */
+    private ArrayList<String> folders;
+
+    /**
+     * Header of the story of every folder, null if it has not been added, could not be read or
+     * has the same title as the story of a preceding folder
      */
-    private ArrayList<Story> stories = new ArrayList<>();
+    private StoryHeader[] folderHeaders;
 
     /**
-     * Initialize this class by parsing the the XML files.
+     * Index of the folder of every added story mapped by the story's title
+     */
+    private HashMap<String, Integer> titleFolders = new HashMap<>();
+
+    /**
+     * Loaded stories mapped by their title, from the least to the most recently requested one
+     */
+    private LinkedHashMap<String, Story> stories = new LinkedHashMap<String, Story>(
+            MAXIMUM_LOADED_STORIES + 1, 1.0f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Story> eldest)
+        {
+            return size() > MAXIMUM_LOADED_STORIES;
+        }
+    };
+
+    /**
+     * Initialize this class by parsing the root tags of the XML files. Stories that cannot be
+     * read are logged and left out.
      * @param context application's context
-     * @throws IOException
-     * @throws XmlPullParserException
+     * @throws IOException if the folders cannot be listed
+     */
+    public StoryReader(Context context) throws IOException
+    {
+        this(context, true);
+    }
+
+    /**
+     * Initialize this class by listing the folders of the stories.
+     * @param context application's context
+     * @param isReadingHeaders true to parse the root tags of the XML files one after another,
+     *                         false if the headers are added by the caller, e.g. a
+     *                         {@link StoryLoader}
+     * @throws IOException if the folders cannot be listed
      */
-    public StoryReader(Context context) throws IOException, XmlPullParserException
+    public StoryReader(Context context, boolean isReadingHeaders) throws IOException
     {
         this.context = context;
+        cache = new StoryCache(context, parser);
+        folders = getAssetsStoriesSubFolders();
+        folderHeaders = new StoryHeader[folders.size()];
+
+        if (!isReadingHeaders)
+            return;
 
-        // Parse the XML files.
-        ArrayList<String> folders = getAssetsStoriesSubFolders();
+        // Parse the root tags of the XML files.
         for (int i = 0; i < folders.size(); i++)
-            stories.add(StoryXmlParser.parse(context.getAssets().open(STORIES_FOLDER + "/"
-                    + folders.get(i) + "/" + getFirstXMLFileName(folders.get(i))), folders.get(i)));
+        {
+            try
+            {
+                addHeader(i, readHeader(i));
+            }
+            catch (IOException | XmlPullParserException e)
+            {
+                Logger.getLogger(context).e(LOG_TAG, "Cannot read story {}: {}", folders.get(i), e);
+            }
+        }
+    }
+
+    /**
+     * @return number of folders containing stories
+     */
+    public int getFolderCount()
+    {
+        return folders.size();
+    }
+
+    /**
+     * @param folderIndex index of a folder
+     * @return name of the folder
+     */
+    public String getFolder(int folderIndex)
+    {
+        return folders.get(folderIndex);
+    }
+
+    /**
+     * Parse the root tag of the XML file in the given folder. This method may be called from any
+     * thread.
+     * @param folderIndex index of the folder
+     * @return header of the story
+     * @throws IOException
+     * @throws XmlPullParserException
+     */
+    public StoryHeader readHeader(int folderIndex) throws IOException, XmlPullParserException
+    {
+        String folder = folders.get(folderIndex);
+        String fileName = getFirstXMLFileName(folder);
+        if (fileName == null)
+            throw new IOException("There is no XML file in " + folder);
+        String assetPath = STORIES_FOLDER + "/" + folder + "/" + fileName;
+        return parser.parseHeader(context.getAssets().open(assetPath), folder, assetPath);
+    }
+
+    /**
+     * Add the header of the story in the given folder. If several stories have the same title,
+     * the one of the first folder is kept, regardless of the order in which they are added.
+     * @param folderIndex index of the folder
+     * @param header header of the story
+     * @return true if the story has been added, possibly replacing a story with the same title of
+     * a later folder, false if a story with the same title of a preceding folder has already been
+     * added
+     */
+    public synchronized boolean addHeader(int folderIndex, StoryHeader header)
+    {
+        Integer existingIndex = titleFolders.get(header.getTitle());
+        if (existingIndex != null)
+        {
+            if (existingIndex < folderIndex)
+                return false;
+            folderHeaders[existingIndex] = null;
+        }
+
+        folderHeaders[folderIndex] = header;
+        titleFolders.put(header.getTitle(), folderIndex);
+        return true;
     }
 
     /**
@@ -79,36 +215,50 @@ public class StoryReader
     }
 
     /**
-     * Get the stories.
-     * @return list of stories
+     * Get the headers of the stories.
+     * @return list of headers in the order of the folders
      */
-    public ArrayList<Story> getStories()
+    public synchronized ArrayList<StoryHeader> getStoryHeaders()
     {
-        return stories;
+        ArrayList<StoryHeader> headers = new ArrayList<>(titleFolders.size());
+        for (StoryHeader header : folderHeaders)
+            if (header != null)
+                headers.add(header);
+        return headers;
     }
 
     /**
      * Get the stories' title.
      * @return list of stories' title, which is empty if there are no stories
      */
-    public String[] getStoryTitles()
+    public synchronized String[] getStoryTitles()
     {
-        String[] titles = new String[stories.size()];
-        for (int i = 0; i < stories.size(); i++)
-            titles[i] = stories.get(i).getTitle();
+        ArrayList<StoryHeader> headers = getStoryHeaders();
+        String[] titles = new String[headers.size()];
+        for (int i = 0; i < headers.size(); i++)
+            titles[i] = headers.get(i).getTitle();
         return titles;
     }
 
     /**
-     * Get the story with the given title.
+     * Get the story with the given title, and load it if it has not been requested recently.
      * @param title story's title
      * @return story if found, null otherwise
+     * @throws IOException
+     * @throws XmlPullParserException
      */
-    public Story getStory(String title)
+    public synchronized Story getStory(String title) throws IOException, XmlPullParserException
     {
-        for (int i = 0; i < stories.size(); i++)
-            if (stories.get(i).getTitle().equals(title))
-                return stories.get(i);
-        return null;
+        Story story = stories.get(title);
+        if (story != null)
+            return story;
+
+        Integer folderIndex = titleFolders.get(title);
+        if (folderIndex == null)
+            return null;
+        StoryHeader header = folderHeaders[folderIndex];
+        story = cache.load(header.getAssetPath(), header.getFolderName());
+        stories.put(title, story);
+        return story;
     }
-}
\ No newline at end of file
+}
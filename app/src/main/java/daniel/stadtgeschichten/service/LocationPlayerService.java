@@ -7,11 +7,8 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Intent;
 import android.content.Context;
-import android.content.res.AssetFileDescriptor;
 import android.media.AudioManager;
-import android.media.MediaPlayer;
 import android.os.IBinder;
-import android.os.PowerManager;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
 import android.support.v4.content.LocalBroadcastManager;
@@ -21,22 +18,20 @@ import android.widget.Toast;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import daniel.stadtgeschichten.activity.MainActivity;
 import daniel.stadtgeschichten.R;
-import daniel.stadtgeschichten.exception.AlreadyPlayingException;
+import daniel.stadtgeschichten.compiler.CompiledStory;
+import daniel.stadtgeschichten.compiler.StoryCompiler;
+import daniel.stadtgeschichten.compiler.StoryInterpreter;
+import daniel.stadtgeschichten.helper.HandlerScheduler;
 import daniel.stadtgeschichten.helper.LocationHelper;
 import daniel.stadtgeschichten.helper.Logger;
+import daniel.stadtgeschichten.helper.PlaybackQueue;
 import daniel.stadtgeschichten.helper.StoryReader;
-import daniel.stadtgeschichten.helper.VariableHelper;
-import daniel.stadtgeschichten.model.AbsOperator;
-import daniel.stadtgeschichten.model.AbsStatement;
-import daniel.stadtgeschichten.model.AssignmentStatement;
 import daniel.stadtgeschichten.model.Circle;
-import daniel.stadtgeschichten.model.EndStatement;
-import daniel.stadtgeschichten.model.EqualityOperator;
-import daniel.stadtgeschichten.model.IfStatement;
-import daniel.stadtgeschichten.model.IncrementStatement;
 import daniel.stadtgeschichten.model.PlayStatement;
 import daniel.stadtgeschichten.model.Story;
 
@@ -45,13 +40,14 @@ import daniel.stadtgeschichten.model.Story;
  * on a separate handler thread.
  */
 public class LocationPlayerService extends Service
-        implements MediaPlayer.OnPreparedListener, MediaPlayer.OnErrorListener,
-                MediaPlayer.OnCompletionListener, AudioManager.OnAudioFocusChangeListener,
-                LocationHelper.OnLocationListener
+        implements PlaybackQueue.OnPlaybackListener, AudioManager.OnAudioFocusChangeListener,
+                LocationHelper.OnLocationListener, StoryInterpreter.OnInterpreterListener
 {
     public static final String ACTION_PLAY = "daniel.stadtgeschichten.action.PLAY";
     public static final String ACTION_PAUSE = "daniel.stadtgeschichten.action.PAUSE";
     public static final String ACTION_STOP = "daniel.stadtgeschichten.action.STOP";
+    public static final String ACTION_WARM_UP = "daniel.stadtgeschichten.action.WARM_UP";
+    public static final String ACTION_COOL_DOWN = "daniel.stadtgeschichten.action.COOL_DOWN";
     public static final String EVENT_NEW_RECORD = "daniel.stadtgeschichten.action.NEW_RECORD";
     public static final String EVENT_END = "daniel.stadtgeschichten.action.END";
     public static final String EVENT_NEXT_POI = "daniel.stadtgeschichten.action.NEXT_POI";
@@ -67,15 +63,21 @@ public class LocationPlayerService extends Service
      */
     private static final int NOTIFICATION_ID = 424242;
 
+    /**
+     * Suspension mode of the location processing while audio is playing. Locations are kept warm,
+     * so that the next location after playback does not need a cold GPS start.
+     */
+    private static final int PLAYBACK_SUSPEND_MODE = LocationHelper.SUSPEND_KEEP_WARM;
+
     /**
      * Logger
      */
     private Logger logger;
 
     /**
-     * Media player used for playback
+     * Queue playing back the audio files
      */
-    private MediaPlayer player = null;
+    private PlaybackQueue playbackQueue;
 
     /**
      * Audio manager used to request and abandon audio focus
@@ -88,9 +90,9 @@ public class LocationPlayerService extends Service
     private LocationHelper locationHelper;
 
     /**
-     * Variable helper used to manage the used variables
+     * Interpreter executing the statements of the entered circles
      */
-    private VariableHelper variableHelper;
+    private StoryInterpreter interpreter;
 
     /**
      * Notification manager used to update the notification
@@ -108,14 +110,47 @@ public class LocationPlayerService extends Service
     private Story selectedStory;
 
     /**
-     * Current play statement.
+     * Selected story compiled for execution
+     */
+    private CompiledStory compiledStory;
+
+    /**
+     * True if the selected story has been started, false if it has only been warmed up
+     */
+    private boolean isStarted = false;
+
+    /**
+     * True if the selected story is being loaded in the background, false otherwise
+     */
+    private boolean isWarmingUp = false;
+
+    /**
+     * True if the selected story is started as soon as it has been loaded in the background,
+     * false otherwise
+     */
+    private boolean isPlayRequested = false;
+
+    /**
+     * Number of the current warm-up, used to drop the results of outdated ones
      */
-    private PlayStatement currentPlayStatement;
+    private int warmUpCount = 0;
 
     /**
-     * True if an end tag has been read, false otherwise
+     * Thread loading and compiling stories in the background
      */
-    private boolean isEndTagRead = false;
+    private ExecutorService warmUpExecutor;
+
+    /**
+     * Reader of the stories, which keeps the recently loaded ones. It is created when the first
+     * story is loaded and only used by {@link LocationPlayerService#warmUpExecutor}.
+     */
+    private StoryReader storyReader;
+
+    /**
+     * Scheduler running tasks on the main thread, shared by the location helper and the playback
+     * queue
+     */
+    private HandlerScheduler scheduler;
 
     @Override
     public void onCreate()
@@ -123,8 +158,11 @@ public class LocationPlayerService extends Service
         logger = Logger.getLogger(this);
         audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
         notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        locationHelper = new LocationHelper(this, this);
-        variableHelper = new VariableHelper();
+        scheduler = new HandlerScheduler();
+        locationHelper = new LocationHelper(this, this, scheduler);
+        playbackQueue = new PlaybackQueue(this, this, scheduler);
+        interpreter = new StoryInterpreter(playbackQueue, this);
+        warmUpExecutor = Executors.newSingleThreadExecutor();
     }
 
     @Override
@@ -140,11 +178,11 @@ public class LocationPlayerService extends Service
         // React depending on the requested action.
         if (intent.getAction().equals(ACTION_PLAY))
         {
-            selectedStoryTitle = intent.getStringExtra(MainActivity.EXTRA_TITLE);
+            String title = intent.getStringExtra(MainActivity.EXTRA_TITLE);
 
             // Play or resume.
-            if (player == null)
-                play();
+            if (!isStarted || playbackQueue.isReleased() || !title.equals(selectedStoryTitle))
+                play(title);
             else
                 resume();
         }
@@ -152,6 +190,10 @@ public class LocationPlayerService extends Service
             pause();
         else if (intent.getAction().equals(ACTION_STOP))
             stop();
+        else if (intent.getAction().equals(ACTION_WARM_UP))
+            warmUp(intent.getStringExtra(MainActivity.EXTRA_TITLE));
+        else if (intent.getAction().equals(ACTION_COOL_DOWN))
+            coolDown();
         else
         {
             logger.e(LOG_TAG, "Unknown action");
@@ -164,61 +206,222 @@ public class LocationPlayerService extends Service
     }
 
     /**
-     * Get the current story, start location tracking and prepare the player.
+     * Load the given story in the background, and prepare it and its intro audio file, so that
+     * it starts immediately when it is played. A different story that has been warmed up or
+     * started before is thrown away.
+     * @param title story's title
      */
-    private void play()
+    private void warmUp(final String title)
     {
-        // Get StoryReader.
-        StoryReader reader;
-        try
+        if (title == null || (title.equals(selectedStoryTitle)
+                && (isWarmingUp || isStarted || selectedStory != null)))
+            return;
+
+        // Throw away the previous story.
+        discard();
+        selectedStoryTitle = title;
+        isWarmingUp = true;
+
+        // Load and compile the story in the background.
+        final int count = warmUpCount;
+        warmUpExecutor.execute(new Runnable()
         {
-            reader = new StoryReader(this);
-        }
-        catch (IOException | XmlPullParserException e)
+            @Override
+            public void run()
+            {
+                Story story = null;
+                CompiledStory compiled = null;
+                Exception exception = null;
+                try
+                {
+                    story = loadStory(title);
+                    compiled = StoryCompiler.compile(story);
+                }
+                catch (IOException | XmlPullParserException e)
+                {
+                    exception = e;
+                }
+                postWarmUp(count, story, compiled, exception);
+            }
+        });
+    }
+
+    /**
+     * Hand a story loaded in the background over to the main thread, unless it has been thrown
+     * away in the meantime.
+     * @param count number of the warm-up that has loaded the story
+     * @param story loaded story, null if it could not be loaded
+     * @param compiled compiled story, null if the story could not be loaded
+     * @param exception exception thrown while loading the story, null if there is none
+     */
+    private void postWarmUp(final int count, final Story story, final CompiledStory compiled,
+                            final Exception exception)
+    {
+        scheduler.schedule(new Runnable()
         {
-            logger.e(LOG_TAG, e.toString());
-            Toast.makeText(this, getString(R.string.stories_read_failure),
-                    Toast.LENGTH_SHORT).show();
-            stopSelf();
+            @Override
+            public void run()
+            {
+                if (count != warmUpCount)
+                    return;
+                isWarmingUp = false;
+
+                if (exception != null)
+                {
+                    // Give up if the story is to be played, or try again when it is played.
+                    if (isPlayRequested)
+                    {
+                        isPlayRequested = false;
+                        logger.e(LOG_TAG, exception.toString());
+                        Toast.makeText(LocationPlayerService.this,
+                                getString(R.string.stories_read_failure),
+                                Toast.LENGTH_SHORT).show();
+                        stopSelf();
+                    }
+                    else
+                        logger.w(LOG_TAG, "Cannot warm up {}: {}", selectedStoryTitle,
+                                exception);
+                    return;
+                }
+
+                logger.d(LOG_TAG, "Warmed up {}", selectedStoryTitle);
+                selectedStory = story;
+                compiledStory = compiled;
+                openStory();
+                if (isPlayRequested)
+                {
+                    isPlayRequested = false;
+                    start();
+                }
+            }
+        }, 0);
+    }
+
+    /**
+     * Throw away the warmed up story, and stop this service, unless the story has been started.
+     */
+    private void coolDown()
+    {
+        if (isStarted || isPlayRequested)
+            return;
+        discard();
+        stopSelf();
+    }
+
+    /**
+     * Play the given story, loading it in the background first if it has not been warmed up.
+     * @param title story's title
+     */
+    private void play(String title)
+    {
+        // Load the selected story unless it has been loaded already, and start as soon as the
+        // warm-up has finished.
+        if (selectedStory == null || !title.equals(selectedStoryTitle))
+        {
+            warmUp(title);
+            isPlayRequested = true;
             return;
         }
 
-        // Get selected story.
-        selectedStory = reader.getStory(selectedStoryTitle);
+        // Prepare the story again if the players have been released since it was opened.
+        if (playbackQueue.isReleased())
+            openStory();
+        start();
+    }
 
-        // Process initialisation statements.
-        variableHelper.processStatements(selectedStory.getInitStatements());
+    /**
+     * Load the story with the given title. This method is called by
+     * {@link LocationPlayerService#warmUpExecutor}.
+     * @param title story's title
+     * @return story
+     * @throws IOException if there is no such story or it cannot be read
+     * @throws XmlPullParserException if the story cannot be parsed
+     */
+    private Story loadStory(String title) throws IOException, XmlPullParserException
+    {
+        // List the stories only once.
+        if (storyReader == null)
+            storyReader = new StoryReader(this);
+        Story story = storyReader.getStory(title);
+        if (story == null)
+            throw new IOException("There is no story called " + title);
+        return story;
+    }
 
+    /**
+     * Set the spots of the selected story and prepare its intro audio file, without starting
+     * anything.
+     */
+    private void openStory()
+    {
         // Set possible spots in the LocationHelper.
         locationHelper.setSpots(selectedStory.getSpots());
 
+        // Prepare the intro audio file in advance.
+        playbackQueue.open(StoryReader.STORIES_FOLDER + "/" + selectedStory.getFolderName());
+        playbackQueue.prefetch(getIntroStatement());
+    }
+
+    /**
+     * Start the selected story, which has been opened: start location tracking and play the
+     * intro audio file.
+     */
+    private void start()
+    {
+        isStarted = true;
+
+        // Process initialisation statements.
+        interpreter.start(selectedStory, compiledStory);
+
         // Send the record of the intro audio file to the activity.
         Intent intent = new Intent(EVENT_NEW_RECORD);
         intent.putExtra(EXTRA_RECORD, selectedStory.getIntroRecord());
         LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
 
-        // Reset current play statement.
-        currentPlayStatement = null;
-
         // Start location tracking.
         locationHelper.startLogging();
 
-        initializePlayer();
         registerAsForeground();
         prepareIntroAudio();
     }
 
+    /**
+     * Throw away the selected story, whether it has been started, warmed up or is being loaded.
+     */
+    private void discard()
+    {
+        // Drop the results of a running warm-up.
+        warmUpCount++;
+        isWarmingUp = false;
+        isPlayRequested = false;
+
+        // Stop location tracking and player.
+        if (isStarted)
+        {
+            locationHelper.stopLogging();
+            abandonAudioFocus();
+            unregisterAsForeground();
+        }
+        playbackQueue.release();
+
+        isStarted = false;
+        selectedStory = null;
+        compiledStory = null;
+    }
+
     /**
      * Pause location tracking and player if it is playing.
      */
     private void pause()
     {
+        // Do not start a story that is still being loaded.
+        isPlayRequested = false;
+
         // Pause location tracking.
         locationHelper.stopLogging();
 
         // Pause player.
-        if (player != null && player.isPlaying())
-            player.pause();
+        playbackQueue.pause();
     }
 
     /**
@@ -230,8 +433,7 @@ public class LocationPlayerService extends Service
         locationHelper.startLogging();
 
         // Resume player.
-        if (player != null && !player.isPlaying())
-            player.start();
+        playbackQueue.resume();
     }
 
     /**
@@ -243,7 +445,7 @@ public class LocationPlayerService extends Service
         locationHelper.stopLogging();
 
         // Stop player.
-        releasePlayer();
+        playbackQueue.release();
 
         // Stop service.
         unregisterAsForeground();
@@ -260,6 +462,10 @@ public class LocationPlayerService extends Service
     @Override
     public void onDestroy()
     {
+        // Stop warming up.
+        warmUpCount++;
+        warmUpExecutor.shutdownNow();
+
         // Abandon audio focus.
         abandonAudioFocus();
 
@@ -267,24 +473,14 @@ public class LocationPlayerService extends Service
         locationHelper.stopLogging();
 
         // Stop player.
-        releasePlayer();
+        playbackQueue.release();
 
         // Stop service.
         unregisterAsForeground();
         stopSelf();
-    }
 
-    /**
-     * Initialize the player.
-     */
-    private void initializePlayer()
-    {
-        player = new MediaPlayer();
-        player.setAudioStreamType(AudioManager.STREAM_MUSIC);
-        player.setOnPreparedListener(this);
-        player.setOnCompletionListener(this);
-        player.setOnErrorListener(this);
-        player.setWakeMode(this, PowerManager.PARTIAL_WAKE_LOCK);
+        // Write the remaining log lines.
+        logger.flush();
     }
 
     /**
@@ -292,54 +488,15 @@ public class LocationPlayerService extends Service
      */
     private void prepareIntroAudio()
     {
-        prepareAudioFile(selectedStory.getIntroAudioFileName(), 1.0f);
-    }
-
-    /**
-     * Prepare the audio file with the given name for playback.
-     * @param fileName name of the audio file to play
-     * @param volume volume, ranging from 0.0 to 1.0
-     */
-    private void prepareAudioFile(String fileName, float volume)
-    {
-        try
-        {
-            AssetFileDescriptor fileDescriptor = getAssets().openFd(StoryReader.STORIES_FOLDER + "/"
-                    + selectedStory.getFolderName() + "/" + fileName);
-            player.setDataSource(fileDescriptor.getFileDescriptor(),
-                    fileDescriptor.getStartOffset(),
-                    fileDescriptor.getLength());
-            player.setVolume(volume, volume);
-            player.prepareAsync();
-        }
-        catch (IOException e)
-        {
-            logger.e(LOG_TAG, e.toString());
-            Toast.makeText(this, getString(R.string.stories_read_failure), Toast.LENGTH_SHORT)
-                    .show();
-            stopSelf();
-        }
-        catch (IllegalStateException e)
-        {
-            logger.e(LOG_TAG, "With file " + fileName + ": " + e.toString());
-            Toast.makeText(this, getString(R.string.stories_read_failure), Toast.LENGTH_SHORT)
-                    .show();
-            stopSelf();
-        }
+        playbackQueue.enqueue(null, getIntroStatement());
     }
 
     /**
-     * Stop playback if the player is still playing, release the player and set it to null.
+     * @return play statement of the intro audio file of the selected story
      */
-    private void releasePlayer()
+    private PlayStatement getIntroStatement()
     {
-        if (player == null)
-            return;
-
-        if (player.isPlaying())
-            player.stop();
-        player.release();
-        player = null;
+        return new PlayStatement(selectedStory.getIntroAudioFileName(), null);
     }
 
     /**
@@ -368,8 +525,8 @@ public class LocationPlayerService extends Service
 
         // Append the playback state.
         boolean isPlaying = true;
-        if (player != null)
-            isPlaying = player.isPlaying();
+        if (!playbackQueue.isReleased())
+            isPlaying = playbackQueue.isPlaying();
         notificationIntent.putExtra(LocationPlayerService.EXTRA_IS_PLAYING, isPlaying);
 
         // Create a back stack for the started activity to ensure that navigating backward from the
@@ -391,28 +548,60 @@ public class LocationPlayerService extends Service
     }
 
     @Override
-    public void onPrepared(MediaPlayer player)
+    public boolean onStartRequested()
     {
-        // Start playback.
-        if (requestAudioFocus())
-            player.start();
+        return requestAudioFocus();
+    }
+
+    @Override
+    public void onItemStarted(String title, PlayStatement statement)
+    {
+        // Send the title of the current circle to the activity.
+        Intent intent;
+        if (title != null && !title.isEmpty())
+        {
+            intent = new Intent(EVENT_NEW_RECORD);
+            intent.putExtra(EXTRA_RECORD, title);
+            LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
+        }
+
+        // Send the record of the audio file to the activity.
+        if (statement.getText() != null && !statement.getText().isEmpty())
+        {
+            intent = new Intent(EVENT_NEW_RECORD);
+            intent.putExtra(EXTRA_RECORD, statement.getText());
+            LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
+        }
+
+        // Stop matching locations in the meantime.
+        locationHelper.suspendProcessing(PLAYBACK_SUSPEND_MODE);
 
         // Update notification.
         notificationManager.notify(NOTIFICATION_ID, buildNotification());
     }
 
     @Override
-    public void onCompletion(MediaPlayer mp)
+    public void onItemFailed(PlayStatement statement, Exception e)
+    {
+        // The queue skips the item, so the tour goes on.
+        logger.e(LOG_TAG, "With file {}: {}", statement.getAudioFileName(), e);
+    }
+
+    @Override
+    public void onQueueFinished()
     {
         // Stop this service when the end tag has been read.
-        if (isEndTagRead)
+        if (interpreter.isEndTagRead())
+        {
             stop(); // TODO what happens when activity is in background?
+            return;
+        }
 
         // Update notification.
         notificationManager.notify(NOTIFICATION_ID, buildNotification());
 
-        // Reset the player.
-        player.reset();
+        // Match the freshest location again.
+        locationHelper.resumeProcessing();
 
         // Send the coordinates of the closest spot to the activity.
         sendCoordinatesToActivity();
@@ -433,14 +622,6 @@ public class LocationPlayerService extends Service
         }
     }
 
-    @Override
-    public boolean onError(MediaPlayer player, int what, int extra)
-    {
-        player.reset();
-        //initializePlayer(); // TODO -> http://developer.android.com/reference/android/media/MediaPlayer.OnErrorListener.html
-        return false;
-    }
-
     /**
      * Request permanent audio focus as music stream.
      * @return true if the request has been successful, false otherwise
@@ -470,20 +651,13 @@ public class LocationPlayerService extends Service
         switch (focusChange)
         {
             case AudioManager.AUDIOFOCUS_GAIN:
-                // Resume playback.
-                if (player == null)
-                {
-                    initializePlayer();
-                    prepareAudioFile(currentPlayStatement.getAudioFileName(),
-                            currentPlayStatement.getVolume());
-                }
-                else if (!player.isPlaying())
-                    player.start();
+                // Resume playback, preparing the released players again.
+                playbackQueue.resume();
                 break;
             case AudioManager.AUDIOFOCUS_LOSS:
                 // Lost focus for an unknown amount of time.
                 locationHelper.stopLogging();
-                releasePlayer();
+                playbackQueue.release();
                 break;
             case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT:
                 // Lost focus for a short time.
@@ -499,203 +673,47 @@ public class LocationPlayerService extends Service
     }
 
     @Override
-    public void onLocationArrived(Circle circle)
+    public void onCircleEntered(Circle circle)
     {
-        // Ignore event since the player is already playing.
-        if (player.isPlaying())
-            return;
-
-        // Process statements.
-        for (AbsStatement statement : circle.getStatements())
-        {
-            if (statement instanceof AssignmentStatement)
-                processAssignmentStatement((AssignmentStatement) statement);
-            else if (statement instanceof EndStatement)
-                processEndStatement((EndStatement) statement);
-            else if (statement instanceof IfStatement)
-            {
-                try
-                {
-                    processIfStatement(circle.getTitle(), (IfStatement) statement);
-                }
-                catch (AlreadyPlayingException e)
-                {
-                    break; // Stop processing.
-                }
-            }
-            else if (statement instanceof IncrementStatement)
-                processIncrementStatement((IncrementStatement) statement);
-            else if (statement instanceof PlayStatement)
-            {
-                try
-                {
-                    processPlayStatement(circle.getTitle(), (PlayStatement) statement);
-                }
-                catch (AlreadyPlayingException e)
-                {
-                    break; // Stop processing.
-                }
-            }
-            else
-                logger.w(LOG_TAG, "An unknown statement was ignored.");
-        }
+        interpreter.onCircleEntered(circle);
     }
 
     @Override
-    public void onFirstLocation()
+    public void onCircleDwelling(Circle circle, long dwellTime)
     {
-        // Send the coordinates of the closest spot to the activity.
-        sendCoordinatesToActivity();
+        interpreter.onCircleDwelling(circle, dwellTime);
     }
 
-    /**
-     * Execute an assignment statement.
-     * @param statement statement
-     */
-    private void processAssignmentStatement(AssignmentStatement statement)
+    @Override
+    public void onCirclesPredicted(Circle[] circles, int count)
     {
-        variableHelper.setVariable(statement.getVariable(), statement.getValue());
+        interpreter.onCirclesPredicted(circles, count);
     }
 
-    /**
-     * Execute an end statement.
-     * @param statement statement
-     */
-    private void processEndStatement(EndStatement statement)
+    @Override
+    public void onCircleExited(Circle circle)
     {
-        // Notify activity.
-        Intent intent = new Intent(EVENT_END);
-        LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
-
-        isEndTagRead = true;
+        interpreter.onCircleExited(circle);
     }
 
-    /**
-     * Execute an if statement.
-     * @param title title to display
-     * @param statement statement
-     */
-    private void processIfStatement(String title, IfStatement statement)
-            throws AlreadyPlayingException
+    @Override
+    public void onFirstLocation()
     {
-        boolean isConditionFulfilled = true;
-        for (AbsOperator operator : statement.getConditions())
-        {
-            if (operator instanceof EqualityOperator)
-            {
-                EqualityOperator equalityOperator = (EqualityOperator) operator;
-
-                // Treat the elements as variable names if there actually exist variables with these
-                // names.
-                long value1;
-                long value2;
-                if (variableHelper.hasVariable(equalityOperator.getElement1()))
-                    value1 = variableHelper.getValue(equalityOperator.getElement1());
-                else
-                    value1 = Integer.parseInt(equalityOperator.getElement1());
-                if (variableHelper.hasVariable(equalityOperator.getElement2()))
-                    value2 = variableHelper.getValue(equalityOperator.getElement2());
-                else
-                    value2 = Integer.parseInt(equalityOperator.getElement2());
-
-                if (value1 != value2)
-                {
-                    // Every condition must be true.
-                    isConditionFulfilled = false;
-                    break;
-                }
-            }
-            else
-                logger.w(LOG_TAG, "An unknown operator was ignored");
-        }
-
-        if (isConditionFulfilled)
-        {
-            // Process Then statements.
-            for (AbsStatement thenStatement : statement.getThenStatements())
-            {
-                if (thenStatement instanceof AssignmentStatement)
-                    processAssignmentStatement((AssignmentStatement) thenStatement);
-                else if (thenStatement instanceof EndStatement)
-                    processEndStatement((EndStatement) thenStatement);
-                else if (thenStatement instanceof IncrementStatement)
-                    processIncrementStatement((IncrementStatement) thenStatement);
-                else if (thenStatement instanceof PlayStatement)
-                    processPlayStatement(title, (PlayStatement) thenStatement);
-                else if (!(thenStatement instanceof IfStatement))
-                {
-                    // Ignore if statements at this level.
-                    logger.w(LOG_TAG, "An unknown statement was ignored.");
-                }
-            }
-        }
-        else
-        {
-            // Process Else statements.
-            for (AbsStatement elseStatement : statement.getElseStatements())
-            {
-                if (elseStatement instanceof AssignmentStatement)
-                    processAssignmentStatement((AssignmentStatement) elseStatement);
-                else if (elseStatement instanceof EndStatement)
-                    processEndStatement((EndStatement) elseStatement);
-                else if (elseStatement instanceof IncrementStatement)
-                    processIncrementStatement((IncrementStatement) elseStatement);
-                else if (elseStatement instanceof PlayStatement)
-                    processPlayStatement(title, (PlayStatement) elseStatement);
-                else if (!(elseStatement instanceof IfStatement))
-                {
-                    // Ignore if statements at this level.
-                    logger.w(LOG_TAG, "An unknown statement was ignored.");
-                }
-            }
-        }
+        // Send the coordinates of the closest spot to the activity.
+        sendCoordinatesToActivity();
     }
 
-    /**
-     * Execute an incrementation statement.
-     * @param statement statement
-     */
-    private void processIncrementStatement(IncrementStatement statement)
+    @Override
+    public void onEndRead()
     {
-        int oldValue;
-        if (variableHelper.hasVariable(statement.getVariable()))
-            oldValue = variableHelper.getValue(statement.getVariable());
-        else
-            oldValue = 0;
-        variableHelper.setVariable(statement.getVariable(), oldValue + statement.getValue());
+        // Notify activity.
+        Intent intent = new Intent(EVENT_END);
+        LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
     }
 
-    /**
-     * Execute a play statement.
-     * @param title title to display
-     * @param statement statement
-     * @throws AlreadyPlayingException
-     */
-    private void processPlayStatement(String title, PlayStatement statement)
-            throws AlreadyPlayingException
+    @Override
+    public void onWarning(String message)
     {
-        if (player.isPlaying())
-            throw new AlreadyPlayingException();
-
-        // Send the title of the current circle to the activity.
-        Intent intent;
-        if (title != null && !title.isEmpty())
-        {
-            intent = new Intent(EVENT_NEW_RECORD);
-            intent.putExtra(EXTRA_RECORD, title);
-            LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
-        }
-
-        // Send the record of the audio file to the activity.
-        if (statement.getText() != null && !statement.getText().isEmpty())
-        {
-            intent = new Intent(EVENT_NEW_RECORD);
-            intent.putExtra(EXTRA_RECORD, statement.getText());
-            LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
-        }
-
-        // Prepare playback.
-        currentPlayStatement = statement;
-        prepareAudioFile(statement.getAudioFileName(), statement.getVolume());
+        logger.w(LOG_TAG, message);
     }
 }
@@ -0,0 +1,133 @@
+package daniel.stadtgeschichten.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import daniel.stadtgeschichten.compiler.CompiledStory;
+import daniel.stadtgeschichten.compiler.StoryCompiler;
+import daniel.stadtgeschichten.generator.StoryGenerator;
+import daniel.stadtgeschichten.model.Circle;
+import daniel.stadtgeschichten.model.Spot;
+import daniel.stadtgeschichten.model.Story;
+import daniel.stadtgeschichten.parser.ScanningStoryParser;
+import daniel.stadtgeschichten.parser.StoryBinarySerializer;
+import daniel.stadtgeschichten.replay.Trace;
+
+/**
+ * This state holds a synthetic story shared by the benchmarks. Its size is set by the parameters,
+ * which can be overridden on the command line, e.g. -p spotCount=100000.
+ */
+@State(Scope.Benchmark)
+public class GeneratedStory
+{
+    /**
+     * Seed of the generated story
+     */
+    public static final long SEED = 2015;
+
+    /**
+     * Name of the folder the story pretends to be in
+     */
+    public static final String FOLDER_NAME = "synthetic";
+
+    /**
+     * Distance between neighbouring spots on average, in meters, which keeps the density of the
+     * spots the same for every number of spots
+     */
+    public static final double SPOT_SPACING = 200;
+
+    /**
+     * Number of spots
+     */
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int spotCount;
+
+    /**
+     * Number of circles of every spot
+     */
+    @Param({"3"})
+    public int circlesPerSpot;
+
+    /**
+     * Number of top-level statements of every circle
+     */
+    @Param({"4"})
+    public int statementsPerCircle;
+
+    /**
+     * Number of chained if statements of every circle
+     */
+    @Param({"2"})
+    public int branchDepth;
+
+    /**
+     * Placement of the spots, one of the DISTRIBUTION constants of {@link StoryGenerator}: 0 for
+     * uniform, 1 for clustered and 2 for streets
+     */
+    @Param({"0"})
+    public int distribution;
+
+    /**
+     * XML of the story, encoded in UTF-8
+     */
+    public byte[] xml;
+
+    /**
+     * Story written by {@link StoryBinarySerializer}
+     */
+    public byte[] binary;
+
+    /**
+     * Parsed story
+     */
+    public Story story;
+
+    /**
+     * Compiled story
+     */
+    public CompiledStory compiledStory;
+
+    /**
+     * All circles of the story
+     */
+    public Circle[] circles;
+
+    /**
+     * Walk through the story
+     */
+    public Trace trace;
+
+    @Setup
+    public void setUp() throws XmlPullParserException, IOException
+    {
+        StoryGenerator generator = new StoryGenerator(SEED);
+        generator.setSpotCount(spotCount);
+        generator.setCirclesPerSpot(circlesPerSpot);
+        generator.setStatementsPerCircle(statementsPerCircle);
+        generator.setBranchDepth(branchDepth);
+        generator.setDistribution(distribution);
+        generator.setExtent(SPOT_SPACING * Math.sqrt(spotCount));
+        xml = generator.generateXml().getBytes(Charset.forName("UTF-8"));
+        trace = generator.generateTrace();
+
+        story = new ScanningStoryParser().parse(new ByteArrayInputStream(xml), FOLDER_NAME);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StoryBinarySerializer.write(story, new DataOutputStream(out));
+        binary = out.toByteArray();
+        compiledStory = StoryCompiler.compile(story);
+        circles = new Circle[spotCount * circlesPerSpot];
+        int i = 0;
+        for (Spot spot : story.getSpots())
+            for (Circle circle : spot.getCircles())
+                circles[i++] = circle;
+    }
+}
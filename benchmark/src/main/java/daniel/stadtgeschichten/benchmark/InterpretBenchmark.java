@@ -0,0 +1,97 @@
+package daniel.stadtgeschichten.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import daniel.stadtgeschichten.compiler.CompiledStory;
+import daniel.stadtgeschichten.compiler.StoryCompiler;
+import daniel.stadtgeschichten.compiler.StoryHost;
+import daniel.stadtgeschichten.helper.VariableHelper;
+import daniel.stadtgeschichten.model.PlayStatement;
+
+/**
+ * This benchmark measures compiling a story and executing the statements of its circles, one
+ * circle after another, as if the listener walked through all of them. The tree interpreter the
+ * service used before the stories were compiled executes the same circles as a baseline.
+ */
+@State(Scope.Thread)
+public class InterpretBenchmark implements StoryHost
+{
+    /**
+     * Variables of the story
+     */
+    private VariableHelper variables;
+
+    /**
+     * Interpreter walking the statement trees
+     */
+    private TreeInterpreter treeInterpreter;
+
+    /**
+     * Index of the next circle
+     */
+    private int next;
+
+    /**
+     * Number of played statements
+     */
+    private int playCount;
+
+    @Setup
+    public void setUp(GeneratedStory generated)
+    {
+        variables = new VariableHelper();
+        variables.reset(generated.story.getSymbolTable());
+        variables.processStatements(generated.story.getInitStatements());
+        treeInterpreter = new TreeInterpreter(generated.story, this);
+    }
+
+    @Benchmark
+    public int executeCircle(GeneratedStory generated)
+    {
+        next = next + 1 == generated.circles.length ? 0 : next + 1;
+        generated.compiledStory.execute(generated.circles[next], variables, this);
+        return playCount;
+    }
+
+    @Benchmark
+    public int executeCircleTree(GeneratedStory generated)
+    {
+        next = next + 1 == generated.circles.length ? 0 : next + 1;
+        treeInterpreter.execute(generated.circles[next]);
+        return playCount;
+    }
+
+    @Benchmark
+    public PlayStatement predictPlay(GeneratedStory generated)
+    {
+        next = next + 1 == generated.circles.length ? 0 : next + 1;
+        return generated.compiledStory.predictPlay(generated.circles[next], variables);
+    }
+
+    @Benchmark
+    public CompiledStory compileStory(GeneratedStory generated)
+    {
+        return StoryCompiler.compile(generated.story);
+    }
+
+    @Override
+    public void play(String title, PlayStatement statement)
+    {
+        playCount++;
+    }
+
+    @Override
+    public void end()
+    {
+        // Keep executing.
+    }
+
+    @Override
+    public void warn(String message)
+    {
+        // Keep executing.
+    }
+}
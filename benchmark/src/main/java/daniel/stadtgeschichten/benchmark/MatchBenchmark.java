@@ -0,0 +1,154 @@
+package daniel.stadtgeschichten.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import daniel.stadtgeschichten.helper.EquirectangularDistanceEngine;
+import daniel.stadtgeschichten.helper.HaversineDistanceEngine;
+import daniel.stadtgeschichten.helper.LocationMatcher;
+import daniel.stadtgeschichten.helper.SamplingPolicy;
+import daniel.stadtgeschichten.model.Circle;
+import daniel.stadtgeschichten.model.Spot;
+import daniel.stadtgeschichten.replay.Trace;
+
+/**
+ * This benchmark measures matching a fix against the circles of a story and finding the closest
+ * spot with either distance engine. The fixes follow the generated walk through the story and
+ * lead back the same way, so that they can be replayed endlessly without being rejected as
+ * outliers.
+ */
+@State(Scope.Thread)
+public class MatchBenchmark implements LocationMatcher.OnMatchListener
+{
+    /**
+     * Time between two fixes, in milliseconds
+     */
+    private static final long FIX_INTERVAL = 1000;
+
+    /**
+     * Name of the haversine distance engine
+     */
+    public static final String ENGINE_HAVERSINE = "haversine";
+
+    /**
+     * Name of the equirectangular distance engine
+     */
+    public static final String ENGINE_EQUIRECTANGULAR = "equirectangular";
+
+    /**
+     * Distance engine used by the matcher, {@link MatchBenchmark#ENGINE_HAVERSINE} or
+     * {@link MatchBenchmark#ENGINE_EQUIRECTANGULAR}
+     */
+    @Param({ENGINE_EQUIRECTANGULAR, ENGINE_HAVERSINE})
+    public String engine;
+
+    /**
+     * Matcher with the spots of the story
+     */
+    private LocationMatcher matcher;
+
+    /**
+     * Latitudes of the walk, in degrees
+     */
+    private double[] latitudes;
+
+    /**
+     * Longitudes of the walk, in degrees
+     */
+    private double[] longitudes;
+
+    /**
+     * Accuracies of the walk, in meters
+     */
+    private double[] accuracies;
+
+    /**
+     * Speeds of the walk, in meters per second
+     */
+    private double[] speeds;
+
+    /**
+     * Number of fixes passed to the matcher
+     */
+    private long fixCount;
+
+    @Setup
+    public void setUp(GeneratedStory generated)
+    {
+        matcher = new LocationMatcher(this);
+        matcher.setSpots(generated.story.getSpots());
+        if (engine.equals(ENGINE_HAVERSINE))
+            matcher.setDistanceEngine(new HaversineDistanceEngine());
+        else
+            matcher.setDistanceEngine(new EquirectangularDistanceEngine());
+
+        // Search the closest border as far as the sampling policy does at walking pace.
+        matcher.setMaximumBorderDistance(new SamplingPolicy().getMaximumUsefulDistance());
+
+        // Follow the generated walk, and go back the same way.
+        Trace trace = generated.trace;
+        int length = trace.size();
+        latitudes = new double[2 * length];
+        longitudes = new double[2 * length];
+        accuracies = new double[2 * length];
+        speeds = new double[2 * length];
+        for (int i = 0; i < length; i++)
+        {
+            latitudes[i] = latitudes[latitudes.length - 1 - i] = trace.getLatitude(i);
+            longitudes[i] = longitudes[longitudes.length - 1 - i] = trace.getLongitude(i);
+            accuracies[i] = accuracies[accuracies.length - 1 - i] = trace.getAccuracy(i);
+            speeds[i] = speeds[speeds.length - 1 - i] = trace.getSpeed(i);
+        }
+    }
+
+    @Benchmark
+    public Circle matchFix()
+    {
+        int i = (int) (fixCount % latitudes.length);
+        long time = fixCount * FIX_INTERVAL;
+        fixCount++;
+        matcher.filter(latitudes[i], longitudes[i], accuracies[i], speeds[i], time);
+        matcher.match(time);
+        return matcher.getMatchedCircle();
+    }
+
+    @Benchmark
+    public Spot getClosestSpot()
+    {
+        int i = (int) (fixCount++ % latitudes.length);
+        return matcher.getClosestSpot(latitudes[i], longitudes[i]);
+    }
+
+    @Override
+    public void onFirstLocation()
+    {
+        // Only the matching is measured.
+    }
+
+    @Override
+    public void onCircleEntered(Circle circle)
+    {
+        // Only the matching is measured.
+    }
+
+    @Override
+    public void onCircleDwelling(Circle circle, long dwellTime)
+    {
+        // Only the matching is measured.
+    }
+
+    @Override
+    public void onCircleExited(Circle circle)
+    {
+        // Only the matching is measured.
+    }
+
+    @Override
+    public void onCirclesPredicted(Circle[] circles, int count)
+    {
+        // Only the matching is measured.
+    }
+}
@@ -0,0 +1,63 @@
+package daniel.stadtgeschichten.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import daniel.stadtgeschichten.model.Story;
+import daniel.stadtgeschichten.parser.ScanningStoryParser;
+import daniel.stadtgeschichten.parser.StoryBinarySerializer;
+import daniel.stadtgeschichten.parser.StoryXmlParser;
+
+/**
+ * This benchmark measures parsing the XML of a story into its objects, and loading the same story
+ * from the binary form the story cache keeps.
+ */
+@State(Scope.Thread)
+public class ParseBenchmark
+{
+    /**
+     * Parser using the XmlPull implementation on the class path
+     */
+    private StoryXmlParser xmlParser;
+
+    /**
+     * Parser scanning the bytes itself
+     */
+    private ScanningStoryParser scanningParser;
+
+    @Setup
+    public void setUp() throws XmlPullParserException
+    {
+        xmlParser = new StoryXmlParser();
+        scanningParser = new ScanningStoryParser();
+    }
+
+    @Benchmark
+    public Story parseXmlPull(GeneratedStory generated) throws XmlPullParserException, IOException
+    {
+        return xmlParser.parse(new ByteArrayInputStream(generated.xml),
+                GeneratedStory.FOLDER_NAME);
+    }
+
+    @Benchmark
+    public Story parseScanning(GeneratedStory generated)
+            throws XmlPullParserException, IOException
+    {
+        return scanningParser.parse(new ByteArrayInputStream(generated.xml),
+                GeneratedStory.FOLDER_NAME);
+    }
+
+    @Benchmark
+    public Story loadBinary(GeneratedStory generated) throws IOException
+    {
+        return StoryBinarySerializer.read(new DataInputStream(
+                new ByteArrayInputStream(generated.binary)), GeneratedStory.FOLDER_NAME);
+    }
+}
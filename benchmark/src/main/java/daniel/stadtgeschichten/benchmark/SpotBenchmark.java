@@ -0,0 +1,55 @@
+package daniel.stadtgeschichten.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+import daniel.stadtgeschichten.model.AbsStatement;
+import daniel.stadtgeschichten.model.Circle;
+import daniel.stadtgeschichten.model.Spot;
+import daniel.stadtgeschichten.model.SymbolTable;
+
+/**
+ * This benchmark measures constructing spots, which sorts their circles by radius, and building
+ * the symbol table of a story.
+ */
+@State(Scope.Thread)
+public class SpotBenchmark
+{
+    /**
+     * Number of circles of the constructed spot
+     */
+    @Param({"2", "8", "32"})
+    public int circleCount;
+
+    /**
+     * Circles in random order of their radii
+     */
+    private Circle[] circles;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(GeneratedStory.SEED);
+        circles = new Circle[circleCount];
+        for (int i = 0; i < circles.length; i++)
+            circles[i] = new Circle(10 + random.nextInt(1000), "C" + i, new AbsStatement[0]);
+    }
+
+    @Benchmark
+    public Spot constructSpot()
+    {
+        // Copy the circles, since the spot sorts them in place.
+        return new Spot(0, 0, circles.clone());
+    }
+
+    @Benchmark
+    public SymbolTable buildSymbolTable(GeneratedStory generated)
+    {
+        return new SymbolTable(generated.story.getInitStatements(), generated.story.getSpots());
+    }
+}
@@ -0,0 +1,172 @@
+package daniel.stadtgeschichten.benchmark;
+
+import java.util.HashMap;
+
+import daniel.stadtgeschichten.compiler.StoryHost;
+import daniel.stadtgeschichten.exception.AlreadyPlayingException;
+import daniel.stadtgeschichten.model.AbsOperator;
+import daniel.stadtgeschichten.model.AbsStatement;
+import daniel.stadtgeschichten.model.AssignmentStatement;
+import daniel.stadtgeschichten.model.Circle;
+import daniel.stadtgeschichten.model.EndStatement;
+import daniel.stadtgeschichten.model.EqualityOperator;
+import daniel.stadtgeschichten.model.IfStatement;
+import daniel.stadtgeschichten.model.IncrementStatement;
+import daniel.stadtgeschichten.model.PlayStatement;
+import daniel.stadtgeschichten.model.Story;
+
+/**
+ * This interpreter is a reference copy of the one LocationPlayerService used before stories were
+ * compiled. It walks the statement trees with instanceof chains, parses the operands of every
+ * condition on every execution and keeps the variables in a map by name. It is only kept as the
+ * baseline of {@link InterpretBenchmark}.
+ */
+public class TreeInterpreter
+{
+    /**
+     * Values of the variables mapped by their names
+     */
+    private final HashMap<String, Integer> variables = new HashMap<>();
+
+    /**
+     * Host carrying out the effects beyond the variables
+     */
+    private final StoryHost host;
+
+    /**
+     * Set the variables to the initial values of the given story.
+     * @param story story
+     * @param host host carrying out the effects beyond the variables
+     */
+    public TreeInterpreter(Story story, StoryHost host)
+    {
+        this.host = host;
+        for (AssignmentStatement statement : story.getInitStatements())
+            variables.put(statement.getVariable(), statement.getValue());
+    }
+
+    /**
+     * Execute the statements of the given circle. The execution stops as soon as the host is
+     * already playing.
+     * @param circle circle
+     */
+    public void execute(Circle circle)
+    {
+        for (AbsStatement statement : circle.getStatements())
+        {
+            if (statement instanceof AssignmentStatement)
+                processAssignmentStatement((AssignmentStatement) statement);
+            else if (statement instanceof EndStatement)
+                host.end();
+            else if (statement instanceof IfStatement)
+            {
+                try
+                {
+                    processIfStatement(circle.getTitle(), (IfStatement) statement);
+                }
+                catch (AlreadyPlayingException e)
+                {
+                    break; // Stop processing.
+                }
+            }
+            else if (statement instanceof IncrementStatement)
+                processIncrementStatement((IncrementStatement) statement);
+            else if (statement instanceof PlayStatement)
+            {
+                try
+                {
+                    host.play(circle.getTitle(), (PlayStatement) statement);
+                }
+                catch (AlreadyPlayingException e)
+                {
+                    break; // Stop processing.
+                }
+            }
+            else
+                host.warn("An unknown statement was ignored.");
+        }
+    }
+
+    /**
+     * Execute an assignment statement.
+     * @param statement statement
+     */
+    private void processAssignmentStatement(AssignmentStatement statement)
+    {
+        variables.put(statement.getVariable(), statement.getValue());
+    }
+
+    /**
+     * Execute an if statement.
+     * @param title title to display
+     * @param statement statement
+     * @throws AlreadyPlayingException
+     */
+    private void processIfStatement(String title, IfStatement statement)
+            throws AlreadyPlayingException
+    {
+        boolean isConditionFulfilled = true;
+        for (AbsOperator operator : statement.getConditions())
+        {
+            if (operator instanceof EqualityOperator)
+            {
+                EqualityOperator equalityOperator = (EqualityOperator) operator;
+
+                // Treat the elements as variable names if there actually exist variables with these
+                // names.
+                long value1;
+                long value2;
+                if (variables.containsKey(equalityOperator.getElement1()))
+                    value1 = variables.get(equalityOperator.getElement1());
+                else
+                    value1 = Integer.parseInt(equalityOperator.getElement1());
+                if (variables.containsKey(equalityOperator.getElement2()))
+                    value2 = variables.get(equalityOperator.getElement2());
+                else
+                    value2 = Integer.parseInt(equalityOperator.getElement2());
+
+                if (value1 != value2)
+                {
+                    // Every condition must be true.
+                    isConditionFulfilled = false;
+                    break;
+                }
+            }
+            else
+                host.warn("An unknown operator was ignored");
+        }
+
+        AbsStatement[] statements = isConditionFulfilled ? statement.getThenStatements()
+                : statement.getElseStatements();
+        for (AbsStatement branchStatement : statements)
+        {
+            if (branchStatement instanceof AssignmentStatement)
+                processAssignmentStatement((AssignmentStatement) branchStatement);
+            else if (branchStatement instanceof EndStatement)
+                host.end();
+            else if (branchStatement instanceof IncrementStatement)
+                processIncrementStatement((IncrementStatement) branchStatement);
+            else if (branchStatement instanceof PlayStatement)
+                host.play(title, (PlayStatement) branchStatement);
+            else if (!(branchStatement instanceof IfStatement))
+            {
+                // Ignore if statements at this level.
+                host.warn("An unknown statement was ignored.");
+            }
+        }
+    }
+
+    /**
+     * Execute an incrementation statement.
+     * @param statement statement
+     */
+    private void processIncrementStatement(IncrementStatement statement)
+    {
+        int oldValue;
+        if (variables.containsKey(statement.getVariable()))
+            oldValue = variables.get(statement.getVariable());
+        else
+            oldValue = 0;
+        variables.put(statement.getVariable(), oldValue + statement.getValue());
+    }
+}
@@ -0,0 +1,82 @@
+package daniel.stadtgeschichten.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import daniel.stadtgeschichten.helper.VariableHelper;
+import daniel.stadtgeschichten.model.SymbolTable;
+
+/**
+ * This benchmark measures the variable operations of a story, by name and by slot.
+ */
+@State(Scope.Thread)
+public class VariableBenchmark
+{
+    /**
+     * Variables of the story
+     */
+    private VariableHelper variables;
+
+    /**
+     * Names of the variables, indexed by their slot
+     */
+    private String[] names;
+
+    /**
+     * Index of the next variable
+     */
+    private int next;
+
+    @Setup
+    public void setUp(GeneratedStory generated)
+    {
+        variables = new VariableHelper();
+        variables.reset(generated.story.getSymbolTable());
+        variables.processStatements(generated.story.getInitStatements());
+
+        SymbolTable symbolTable = generated.story.getSymbolTable();
+        names = new String[symbolTable.size()];
+        for (int i = 0; i < names.length; i++)
+            names[i] = symbolTable.getName(i);
+    }
+
+    /**
+     * @return slot of the next variable
+     */
+    private int nextSlot()
+    {
+        next = next + 1 == names.length ? 0 : next + 1;
+        return next;
+    }
+
+    @Benchmark
+    public int getValueByName()
+    {
+        return variables.getValue(names[nextSlot()]);
+    }
+
+    @Benchmark
+    public void setVariableByName()
+    {
+        int slot = nextSlot();
+        variables.setVariable(names[slot], slot);
+    }
+
+    @Benchmark
+    public int incrementBySlot()
+    {
+        int slot = nextSlot();
+        variables.increment(slot, 1);
+        return variables.getValue(slot);
+    }
+
+    @Benchmark
+    public VariableHelper.Snapshot snapshotAndRestore()
+    {
+        VariableHelper.Snapshot snapshot = variables.snapshot();
+        variables.restore(snapshot);
+        return snapshot;
+    }
+}
@@ -0,0 +1,17 @@
+package daniel.stadtgeschichten.compiler;
+
+import daniel.stadtgeschichten.helper.VariableHelper;
+
+/**
+ * Abstract condition of a compiled if instruction
+ */
+abstract public class AbsCondition
+{
+    /**
+     * Check this condition.
+     * @param variables variables of the story
+     * @param host host to report ignored parts to
+     * @return true if this condition is fulfilled, false otherwise
+     */
+    abstract boolean isFulfilled(VariableHelper variables, StoryHost host);
+}
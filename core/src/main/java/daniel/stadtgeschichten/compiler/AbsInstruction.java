@@ -0,0 +1,18 @@
+package daniel.stadtgeschichten.compiler;
+
+import daniel.stadtgeschichten.exception.AlreadyPlayingException;
+import daniel.stadtgeschichten.helper.VariableHelper;
+
+/**
+ * Abstract instruction of a compiled story
+ */
+abstract public class AbsInstruction
+{
+    /**
+     * Execute this instruction.
+     * @param variables variables of the story
+     * @param host host carrying out the effects beyond the variables
+     * @throws AlreadyPlayingException if the host is already playing
+     */
+    abstract void execute(VariableHelper variables, StoryHost host) throws AlreadyPlayingException;
+}
@@ -0,0 +1,31 @@
+package daniel.stadtgeschichten.compiler;
+
+import daniel.stadtgeschichten.helper.VariableHelper;
+
+/**
+ * This instruction assigns a value to a variable.
+ */
+public class AssignInstruction extends AbsInstruction
+{
+    /**
+     * Slot of the variable
+     */
+    private final int slot;
+
+    /**
+     * Value to assign to the variable
+     */
+    private final int value;
+
+    public AssignInstruction(int slot, int value)
+    {
+        this.slot = slot;
+        this.value = value;
+    }
+
+    @Override
+    void execute(VariableHelper variables, StoryHost host)
+    {
+        variables.setValue(slot, value);
+    }
+}
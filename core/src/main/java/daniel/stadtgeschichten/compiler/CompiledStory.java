@@ -0,0 +1,122 @@
+package daniel.stadtgeschichten.compiler;
+
+import java.util.IdentityHashMap;
+
+import daniel.stadtgeschichten.exception.AlreadyPlayingException;
+import daniel.stadtgeschichten.helper.VariableHelper;
+import daniel.stadtgeschichten.model.Circle;
+import daniel.stadtgeschichten.model.PlayStatement;
+
+/**
+ * This class holds the instructions of a story compiled by {@link StoryCompiler}.
+ */
+public class CompiledStory
+{
+    /**
+     * Signal stopping a dry run at its first play statement. It is thrown on every prediction, so
+     * it is allocated once and does not fill in a stack trace.
+     */
+    private static final AlreadyPlayingException STOP_SIGNAL = new AlreadyPlayingException()
+    {
+        @Override
+        public synchronized Throwable fillInStackTrace()
+        {
+            return this;
+        }
+    };
+
+    /**
+     * Instructions of every circle of the story
+     */
+    private final IdentityHashMap<Circle, AbsInstruction[]> circleInstructions;
+
+    /**
+     * Host recording the play statement of a dry run, which is reused by every prediction
+     */
+    private final PredictingHost predictingHost = new PredictingHost();
+
+    public CompiledStory(IdentityHashMap<Circle, AbsInstruction[]> circleInstructions)
+    {
+        this.circleInstructions = circleInstructions;
+    }
+
+    /**
+     * Execute the instructions of the given circle. The execution stops as soon as the host is
+     * already playing.
+     * @param circle circle of the compiled story
+     * @param variables variables of the story, reset with the story's symbol table
+     * @param host host carrying out the effects beyond the variables
+     */
+    public void execute(Circle circle, VariableHelper variables, StoryHost host)
+    {
+        AbsInstruction[] instructions = circleInstructions.get(circle);
+        if (instructions == null)
+            return;
+
+        try
+        {
+            for (AbsInstruction instruction : instructions)
+                instruction.execute(variables, host);
+        }
+        catch (AlreadyPlayingException e)
+        {
+            // Stop processing.
+        }
+    }
+
+    /**
+     * Find out which audio file the given circle would play with the current variable values,
+     * without changing them. The circle is executed in a dry run of the variables, so only the
+     * variables it changes are restored. This method must be called from one thread only.
+     * @param circle circle of the compiled story
+     * @param variables variables of the story, reset with the story's symbol table
+     * @return first play statement the circle would execute, null if there is none
+     */
+    public PlayStatement predictPlay(Circle circle, VariableHelper variables)
+    {
+        if (!circleInstructions.containsKey(circle))
+            return null;
+
+        predictingHost.statement = null;
+        variables.startDryRun();
+        try
+        {
+            execute(circle, variables, predictingHost);
+        }
+        finally
+        {
+            variables.endDryRun();
+        }
+        return predictingHost.statement;
+    }
+
+    /**
+     * This host records the first play statement and stops the execution there.
+     */
+    private static class PredictingHost implements StoryHost
+    {
+        /**
+         * First play statement, null if there has been none
+         */
+        private PlayStatement statement;
+
+        @Override
+        public void play(String title, PlayStatement statement) throws AlreadyPlayingException
+        {
+            this.statement = statement;
+            throw STOP_SIGNAL;
+        }
+
+        @Override
+        public void end()
+        {
+            // Ignore the end of the story.
+        }
+
+        @Override
+        public void warn(String message)
+        {
+            // Ignore warnings, since they are reported on execution.
+        }
+    }
+}
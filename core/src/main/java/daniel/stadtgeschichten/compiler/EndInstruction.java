@@ -0,0 +1,15 @@
+package daniel.stadtgeschichten.compiler;
+
+import daniel.stadtgeschichten.helper.VariableHelper;
+
+/**
+ * This instruction ends the story.
+ */
+public class EndInstruction extends AbsInstruction
+{
+    @Override
+    void execute(VariableHelper variables, StoryHost host)
+    {
+        host.end();
+    }
+}
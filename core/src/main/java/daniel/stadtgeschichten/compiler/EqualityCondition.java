@@ -0,0 +1,31 @@
+package daniel.stadtgeschichten.compiler;
+
+import daniel.stadtgeschichten.helper.VariableHelper;
+
+/**
+ * This condition checks whether two operands have the same value.
+ */
+public class EqualityCondition extends AbsCondition
+{
+    /**
+     * First operand
+     */
+    private final Operand operand1;
+
+    /**
+     * Second operand
+     */
+    private final Operand operand2;
+
+    public EqualityCondition(Operand operand1, Operand operand2)
+    {
+        this.operand1 = operand1;
+        this.operand2 = operand2;
+    }
+
+    @Override
+    boolean isFulfilled(VariableHelper variables, StoryHost host)
+    {
+        return operand1.getValue(variables) == operand2.getValue(variables);
+    }
+}
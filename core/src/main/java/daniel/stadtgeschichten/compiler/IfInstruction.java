@@ -0,0 +1,52 @@
+package daniel.stadtgeschichten.compiler;
+
+import daniel.stadtgeschichten.exception.AlreadyPlayingException;
+import daniel.stadtgeschichten.helper.VariableHelper;
+
+/**
+ * This instruction executes one of two instruction lists depending on its conditions.
+ */
+public class IfInstruction extends AbsInstruction
+{
+    /**
+     * Conditions that must all be fulfilled
+     */
+    private final AbsCondition[] conditions;
+
+    /**
+     * Instructions executed when the conditions are fulfilled
+     */
+    private final AbsInstruction[] thenInstructions;
+
+    /**
+     * Instructions executed when the conditions are not fulfilled
+     */
+    private final AbsInstruction[] elseInstructions;
+
+    public IfInstruction(AbsCondition[] conditions, AbsInstruction[] thenInstructions,
+                         AbsInstruction[] elseInstructions)
+    {
+        this.conditions = conditions;
+        this.thenInstructions = thenInstructions;
+        this.elseInstructions = elseInstructions;
+    }
+
+    @Override
+    void execute(VariableHelper variables, StoryHost host) throws AlreadyPlayingException
+    {
+        boolean isConditionFulfilled = true;
+        for (AbsCondition condition : conditions)
+        {
+            // Every condition must be true.
+            if (!condition.isFulfilled(variables, host))
+            {
+                isConditionFulfilled = false;
+                break;
+            }
+        }
+
+        AbsInstruction[] instructions = isConditionFulfilled ? thenInstructions : elseInstructions;
+        for (AbsInstruction instruction : instructions)
+            instruction.execute(variables, host);
+    }
+}
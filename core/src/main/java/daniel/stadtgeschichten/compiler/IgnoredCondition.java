@@ -0,0 +1,27 @@
+package daniel.stadtgeschichten.compiler;
+
+import daniel.stadtgeschichten.helper.VariableHelper;
+
+/**
+ * This condition stands for an unknown operator. It reports the operator to the host and is always
+ * fulfilled.
+ */
+public class IgnoredCondition extends AbsCondition
+{
+    /**
+     * Description of the ignored operator
+     */
+    private final String message;
+
+    public IgnoredCondition(String message)
+    {
+        this.message = message;
+    }
+
+    @Override
+    boolean isFulfilled(VariableHelper variables, StoryHost host)
+    {
+        host.warn(message);
+        return true;
+    }
+}
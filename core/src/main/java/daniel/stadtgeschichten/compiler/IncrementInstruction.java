@@ -0,0 +1,31 @@
+package daniel.stadtgeschichten.compiler;
+
+import daniel.stadtgeschichten.helper.VariableHelper;
+
+/**
+ * This instruction raises a variable by a value. Variables without a value are treated as 0.
+ */
+public class IncrementInstruction extends AbsInstruction
+{
+    /**
+     * Slot of the variable
+     */
+    private final int slot;
+
+    /**
+     * Value to increase the variable with
+     */
+    private final int value;
+
+    public IncrementInstruction(int slot, int value)
+    {
+        this.slot = slot;
+        this.value = value;
+    }
+
+    @Override
+    void execute(VariableHelper variables, StoryHost host)
+    {
+        variables.increment(slot, value);
+    }
+}
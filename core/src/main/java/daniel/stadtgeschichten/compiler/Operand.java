@@ -0,0 +1,68 @@
+package daniel.stadtgeschichten.compiler;
+
+import daniel.stadtgeschichten.helper.VariableHelper;
+
+/**
+ * This operand is an element of a condition. An element that names a variable of the story is
+ * resolved to the variable's slot; its value is used as long as the variable has one. Otherwise,
+ * the element is treated as integral literal, which is parsed once at compile time.
+ */
+public class Operand
+{
+    /**
+     * Slot of the variable named by the element, -1 if there is no such variable
+     */
+    private final int slot;
+
+    /**
+     * Element as written in the story
+     */
+    private final String text;
+
+    /**
+     * True if the element is an integral literal
+     */
+    private final boolean isLiteral;
+
+    /**
+     * Value of the literal
+     */
+    private final int literal;
+
+    public Operand(int slot, String text)
+    {
+        this.slot = slot;
+        this.text = text;
+
+        boolean isLiteral;
+        int literal;
+        try
+        {
+            literal = Integer.parseInt(text);
+            isLiteral = true;
+        }
+        catch (NumberFormatException e)
+        {
+            literal = 0;
+            isLiteral = false;
+        }
+        this.isLiteral = isLiteral;
+        this.literal = literal;
+    }
+
+    /**
+     * Get the value of this operand.
+     * @param variables variables of the story
+     * @return value
+     * @throws NumberFormatException if the element is neither a variable with a value nor an
+     * integral literal
+     */
+    long getValue(VariableHelper variables)
+    {
+        if (slot >= 0 && variables.hasValue(slot))
+            return variables.getValue(slot);
+        if (isLiteral)
+            return literal;
+        return Integer.parseInt(text);
+    }
+}
@@ -0,0 +1,41 @@
+package daniel.stadtgeschichten.compiler;
+
+import daniel.stadtgeschichten.exception.AlreadyPlayingException;
+import daniel.stadtgeschichten.helper.VariableHelper;
+import daniel.stadtgeschichten.model.PlayStatement;
+
+/**
+ * This instruction plays back an audio file.
+ */
+public class PlayInstruction extends AbsInstruction
+{
+    /**
+     * Title of the circle the statement belongs to
+     */
+    private final String title;
+
+    /**
+     * Play statement to pass to the host
+     */
+    private final PlayStatement statement;
+
+    public PlayInstruction(String title, PlayStatement statement)
+    {
+        this.title = title;
+        this.statement = statement;
+    }
+
+    /**
+     * @return {@link PlayInstruction#statement}
+     */
+    public PlayStatement getStatement()
+    {
+        return statement;
+    }
+
+    @Override
+    void execute(VariableHelper variables, StoryHost host) throws AlreadyPlayingException
+    {
+        host.play(title, statement);
+    }
+}
@@ -0,0 +1,114 @@
+package daniel.stadtgeschichten.compiler;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import daniel.stadtgeschichten.model.AbsOperator;
+import daniel.stadtgeschichten.model.AbsStatement;
+import daniel.stadtgeschichten.model.AssignmentStatement;
+import daniel.stadtgeschichten.model.Circle;
+import daniel.stadtgeschichten.model.EndStatement;
+import daniel.stadtgeschichten.model.EqualityOperator;
+import daniel.stadtgeschichten.model.IfStatement;
+import daniel.stadtgeschichten.model.IncrementStatement;
+import daniel.stadtgeschichten.model.PlayStatement;
+import daniel.stadtgeschichten.model.Spot;
+import daniel.stadtgeschichten.model.Story;
+
+/**
+ * This compiler turns the statement trees of a parsed story into trees of instructions, which can
+ * be executed without inspecting the statements' types. Variables are referred to by the slots
+ * assigned when the story has been parsed, and literal operands are parsed once.
+ */
+public class StoryCompiler
+{
+    private static final String UNKNOWN_STATEMENT = "An unknown statement was ignored.";
+    private static final String UNKNOWN_OPERATOR = "An unknown operator was ignored";
+
+    /**
+     * Compile the given story.
+     * @param story parsed story whose variables have been assigned slots
+     * @return compiled story
+     */
+    public static CompiledStory compile(Story story)
+    {
+        IdentityHashMap<Circle, AbsInstruction[]> circleInstructions = new IdentityHashMap<>();
+        for (Spot spot : story.getSpots())
+            for (Circle circle : spot.getCircles())
+                circleInstructions.put(circle, compileStatements(circle.getTitle(),
+                        circle.getStatements(), true));
+        return new CompiledStory(circleInstructions);
+    }
+
+    /**
+     * Compile a list of statements.
+     * @param title title of the circle the statements belong to
+     * @param statements statements
+     * @param isTopLevel true if the statements are not nested in an if statement; nested if
+     *                   statements are ignored
+     * @return instructions
+     */
+    private static AbsInstruction[] compileStatements(String title,
+                                                      AbsStatement[] statements,
+                                                      boolean isTopLevel)
+    {
+        ArrayList<AbsInstruction> instructions = new ArrayList<>(statements.length);
+        for (AbsStatement statement : statements)
+        {
+            if (statement instanceof AssignmentStatement)
+            {
+                AssignmentStatement assignment = (AssignmentStatement) statement;
+                instructions.add(new AssignInstruction(assignment.getSlot(),
+                        assignment.getValue()));
+            }
+            else if (statement instanceof EndStatement)
+                instructions.add(new EndInstruction());
+            else if (statement instanceof IfStatement)
+            {
+                // Ignore if statements below the top level.
+                if (isTopLevel)
+                    instructions.add(compileIfStatement(title,
+                            (IfStatement) statement));
+            }
+            else if (statement instanceof IncrementStatement)
+            {
+                IncrementStatement increment = (IncrementStatement) statement;
+                instructions.add(new IncrementInstruction(increment.getSlot(),
+                        increment.getValue()));
+            }
+            else if (statement instanceof PlayStatement)
+                instructions.add(new PlayInstruction(title, (PlayStatement) statement));
+            else
+                instructions.add(new WarningInstruction(UNKNOWN_STATEMENT));
+        }
+        return instructions.toArray(new AbsInstruction[instructions.size()]);
+    }
+
+    /**
+     * Compile an if statement.
+     * @param title title of the circle the statement belongs to
+     * @param statement if statement
+     * @return if instruction
+     */
+    private static IfInstruction compileIfStatement(String title,
+                                                    IfStatement statement)
+    {
+        AbsOperator[] operators = statement.getConditions();
+        AbsCondition[] conditions = new AbsCondition[operators.length];
+        for (int i = 0; i < operators.length; i++)
+        {
+            if (operators[i] instanceof EqualityOperator)
+            {
+                EqualityOperator operator = (EqualityOperator) operators[i];
+                conditions[i] = new EqualityCondition(
+                        new Operand(operator.getSlot1(), operator.getElement1()),
+                        new Operand(operator.getSlot2(), operator.getElement2()));
+            }
+            else
+                conditions[i] = new IgnoredCondition(UNKNOWN_OPERATOR);
+        }
+        return new IfInstruction(conditions,
+                compileStatements(title, statement.getThenStatements(), false),
+                compileStatements(title, statement.getElseStatements(), false));
+    }
+}
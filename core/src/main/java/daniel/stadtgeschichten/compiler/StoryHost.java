@@ -0,0 +1,30 @@
+package daniel.stadtgeschichten.compiler;
+
+import daniel.stadtgeschichten.exception.AlreadyPlayingException;
+import daniel.stadtgeschichten.model.PlayStatement;
+
+/**
+ * A story host carries out the effects of a compiled story that reach beyond its variables.
+ */
+public interface StoryHost
+{
+    /**
+     * Play back the audio file of the given statement.
+     * @param title title of the circle the statement belongs to, may be null or empty
+     * @param statement play statement
+     * @throws AlreadyPlayingException if the host is already playing, which stops the execution
+     * of the current circle
+     */
+    void play(String title, PlayStatement statement) throws AlreadyPlayingException;
+
+    /**
+     * End the story.
+     */
+    void end();
+
+    /**
+     * Report that a part of the story has been ignored.
+     * @param message description of the ignored part
+     */
+    void warn(String message);
+}
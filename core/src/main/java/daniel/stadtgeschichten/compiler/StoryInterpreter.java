@@ -0,0 +1,188 @@
+package daniel.stadtgeschichten.compiler;
+
+import daniel.stadtgeschichten.helper.CircleOccupancyTracker;
+import daniel.stadtgeschichten.helper.VariableHelper;
+import daniel.stadtgeschichten.model.Circle;
+import daniel.stadtgeschichten.model.PlayStatement;
+import daniel.stadtgeschichten.model.Story;
+
+/**
+ * This interpreter executes the statements of the circles of a story as they are entered. A
+ * circle entered while audio is playing is deferred until the player has finished, as long as it
+ * stays occupied, and the audio of the circle that is executed next is prefetched. It does not
+ * depend on Android, so that the same logic drives the service and a replay of a recorded trace.
+ */
+public class StoryInterpreter implements CircleOccupancyTracker.OnOccupancyListener, StoryHost
+{
+    /**
+     * Player playing back the audio files
+     */
+    private final Player player;
+
+    /**
+     * Listener that is informed about the story
+     */
+    private final OnInterpreterListener listener;
+
+    /**
+     * Variable helper used to manage the used variables
+     */
+    private final VariableHelper variableHelper = new VariableHelper();
+
+    /**
+     * Story compiled for execution, null if no story has been started
+     */
+    private CompiledStory compiledStory;
+
+    /**
+     * Entered circle whose statements have not been executed yet since the player has been
+     * playing, null if there is none
+     */
+    private Circle pendingCircle;
+
+    /**
+     * True if an end tag has been read, false otherwise
+     */
+    private boolean isEndTagRead = false;
+
+    /**
+     * Interface of the player playing back the audio files of the executed play statements
+     */
+    public interface Player
+    {
+        /**
+         * Append a play statement to the queue. It is started at once if the queue is empty.
+         * @param title title of the circle the statement belongs to, may be null or empty
+         * @param statement play statement
+         */
+        void enqueue(String title, PlayStatement statement);
+
+        /**
+         * Prepare the audio file of the given play statement in advance, since it is predicted to
+         * be queued next.
+         * @param statement play statement, null to keep the current prediction
+         */
+        void prefetch(PlayStatement statement);
+
+        /**
+         * @return true if an item is playing or about to play, false if the queue is empty
+         */
+        boolean isBusy();
+    }
+
+    /**
+     * Interface of the listener that is informed about the story
+     */
+    public interface OnInterpreterListener
+    {
+        /**
+         * Called when an end tag has been read.
+         */
+        void onEndRead();
+
+        /**
+         * Called when a part of the story has been ignored.
+         * @param message description of the ignored part
+         */
+        void onWarning(String message);
+    }
+
+    public StoryInterpreter(Player player, OnInterpreterListener listener)
+    {
+        this.player = player;
+        this.listener = listener;
+    }
+
+    /**
+     * Start the given story by processing its initialisation statements.
+     * @param story story
+     * @param compiledStory story compiled for execution
+     */
+    public void start(Story story, CompiledStory compiledStory)
+    {
+        this.compiledStory = compiledStory;
+        variableHelper.reset(story.getSymbolTable());
+        variableHelper.processStatements(story.getInitStatements());
+        pendingCircle = null;
+        isEndTagRead = false;
+    }
+
+    /**
+     * @return true if an end tag has been read, false otherwise
+     */
+    public boolean isEndTagRead()
+    {
+        return isEndTagRead;
+    }
+
+    @Override
+    public void onCircleEntered(Circle circle)
+    {
+        // Defer the circle's statements until the player has finished playing.
+        if (player.isBusy())
+        {
+            pendingCircle = circle;
+            player.prefetch(compiledStory.predictPlay(circle, variableHelper));
+            return;
+        }
+
+        // Execute the circle's compiled statements.
+        pendingCircle = null;
+        compiledStory.execute(circle, variableHelper, this);
+    }
+
+    @Override
+    public void onCircleDwelling(Circle circle, long dwellTime)
+    {
+        // Execute the statements of a deferred circle once the player has finished playing.
+        if (circle == pendingCircle && !player.isBusy())
+        {
+            pendingCircle = null;
+            compiledStory.execute(circle, variableHelper, this);
+        }
+    }
+
+    @Override
+    public void onCircleExited(Circle circle)
+    {
+        // Drop the circle's statements if they have been deferred.
+        if (circle == pendingCircle)
+            pendingCircle = null;
+    }
+
+    /**
+     * Prefetch the audio of the circle that is most likely executed next.
+     * @param circles predicted circles, most likely first
+     * @param count number of predicted circles
+     */
+    public void onCirclesPredicted(Circle[] circles, int count)
+    {
+        // The deferred circle is executed next, otherwise the first predicted one that plays.
+        PlayStatement statement = null;
+        if (pendingCircle != null)
+            statement = compiledStory.predictPlay(pendingCircle, variableHelper);
+        for (int i = 0; i < count && statement == null; i++)
+            statement = compiledStory.predictPlay(circles[i], variableHelper);
+        player.prefetch(statement);
+    }
+
+    @Override
+    public void play(String title, PlayStatement statement)
+    {
+        // Queue the statement behind the ones of the same circle.
+        player.enqueue(title, statement);
+    }
+
+    @Override
+    public void end()
+    {
+        isEndTagRead = true;
+        listener.onEndRead();
+    }
+
+    @Override
+    public void warn(String message)
+    {
+        listener.onWarning(message);
+    }
+}
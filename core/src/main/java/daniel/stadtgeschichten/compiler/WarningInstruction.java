@@ -0,0 +1,25 @@
+package daniel.stadtgeschichten.compiler;
+
+import daniel.stadtgeschichten.helper.VariableHelper;
+
+/**
+ * This instruction stands for an ignored statement and reports it to the host when executed.
+ */
+public class WarningInstruction extends AbsInstruction
+{
+    /**
+     * Description of the ignored statement
+     */
+    private final String message;
+
+    public WarningInstruction(String message)
+    {
+        this.message = message;
+    }
+
+    @Override
+    void execute(VariableHelper variables, StoryHost host)
+    {
+        host.warn(message);
+    }
+}
@@ -0,0 +1,872 @@
+package daniel.stadtgeschichten.generator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Random;
+
+import daniel.stadtgeschichten.helper.DistanceEngine;
+import daniel.stadtgeschichten.replay.AudioDurations;
+import daniel.stadtgeschichten.replay.Trace;
+
+import static daniel.stadtgeschichten.parser.StoryXmlParser.*;
+
+/**
+ * This generator writes synthetic stories in the XML format read by the story parsers, together
+ * with a manifest of the durations of their audio files and walking traces through them, so that
+ * the parsing, matching and interpretation can be measured and soak tested with stories of any
+ * size. The same seed and settings always give the same story, manifest and trace.
+ *
+ * <p>The spots are placed uniformly, in clusters or along a grid of streets in a square around
+ * the centre. Their circles are sized so that a given number of outermost circles covers a point
+ * of the square on average.</p>
+ *
+ * <p>Every circle executes its statements in this order: a chain of if statements, assignments
+ * filling up the remaining statements, and a play statement. Since if statements cannot be nested
+ * in the format, the nesting is expressed by chaining: every if statement tests the variable that
+ * both branches of the previous one have set, so the branch taken depends on all previous ones.</p>
+ *
+ * <p>It can be run from the command line to write story.xml, durations.csv and trace.csv into a
+ * folder, with options such as spots=100000 or distribution=streets:</p>
+ * <pre>
+ * java daniel.stadtgeschichten.generator.StoryGenerator folder [option=value...]
+ * </pre>
+ */
+public class StoryGenerator
+{
+    /**
+     * Spots placed uniformly in the square
+     */
+    public static final int DISTRIBUTION_UNIFORM = 0;
+
+    /**
+     * Spots placed in clusters around centres placed uniformly in the square
+     */
+    public static final int DISTRIBUTION_CLUSTERED = 1;
+
+    /**
+     * Spots placed along a grid of streets
+     */
+    public static final int DISTRIBUTION_STREETS = 2;
+
+    /**
+     * Default latitude of the centre of the story, in degrees
+     */
+    public static final double DEFAULT_LATITUDE = 49.2354;
+
+    /**
+     * Default longitude of the centre of the story, in degrees
+     */
+    public static final double DEFAULT_LONGITUDE = 6.9969;
+
+    /**
+     * Name of the intro's audio file
+     */
+    public static final String INTRO_FILE = "intro.mp3";
+
+    /**
+     * Name of the story file written by the command line tool
+     */
+    public static final String STORY_FILE = "story.xml";
+
+    /**
+     * Name of the trace file written by the command line tool
+     */
+    public static final String TRACE_FILE = "trace.csv";
+
+    /**
+     * Smallest radius of a circle, in meters
+     */
+    private static final int MINIMUM_RADIUS = 10;
+
+    /**
+     * Number of distinct values assigned to and compared with the variables
+     */
+    private static final int VALUE_COUNT = 3;
+
+    /**
+     * Walking speed of the traces, in meters per second
+     */
+    private static final double WALKING_SPEED = 1.4;
+
+    /**
+     * Time the traces stay at every visited spot, in milliseconds
+     */
+    private static final long DWELL_TIME = 30000;
+
+    /**
+     * Accuracy reported by the fixes of the traces, in meters
+     */
+    private static final double FIX_ACCURACY = 5;
+
+    /**
+     * Standard deviation of the error of the fixes of the traces, in meters
+     */
+    private static final double FIX_ERROR = 3;
+
+    /**
+     * Seed of the random numbers
+     */
+    private final long seed;
+
+    /**
+     * Number of spots
+     */
+    private int spotCount = 100;
+
+    /**
+     * Number of circles of every spot
+     */
+    private int circlesPerSpot = 2;
+
+    /**
+     * Number of top-level statements of every circle, including its play statement
+     */
+    private int statementsPerCircle = 4;
+
+    /**
+     * Number of chained if statements of every circle
+     */
+    private int branchDepth = 1;
+
+    /**
+     * Number of variables
+     */
+    private int variableCount = 4;
+
+    /**
+     * Placement of the spots, one of the DISTRIBUTION constants
+     */
+    private int distribution = DISTRIBUTION_UNIFORM;
+
+    /**
+     * Average number of outermost circles covering a point of the square
+     */
+    private double overlap = 0.3;
+
+    /**
+     * Number of clusters of clustered spots
+     */
+    private int clusterCount = 10;
+
+    /**
+     * Standard deviation of the distance of clustered spots from their cluster's centre, in
+     * meters
+     */
+    private double clusterRadius = 100;
+
+    /**
+     * Distance between neighbouring streets, in meters
+     */
+    private double streetSpacing = 100;
+
+    /**
+     * Side length of the square the spots are placed in, in meters
+     */
+    private double extent = 2000;
+
+    /**
+     * Latitude of the centre of the story, in degrees
+     */
+    private double latitude = DEFAULT_LATITUDE;
+
+    /**
+     * Longitude of the centre of the story, in degrees
+     */
+    private double longitude = DEFAULT_LONGITUDE;
+
+    /**
+     * Shortest duration of the audio files, in milliseconds
+     */
+    private long minimumAudioDuration = 20000;
+
+    /**
+     * Longest duration of the audio files, in milliseconds
+     */
+    private long maximumAudioDuration = 120000;
+
+    /**
+     * Number of spots visited by the traces
+     */
+    private int visitCount = 20;
+
+    /**
+     * Interval between the fixes of the traces, in milliseconds
+     */
+    private long fixInterval = Trace.DEFAULT_INTERVAL;
+
+    /**
+     * Distances of the spots north of the centre, in meters, null until placed
+     */
+    private double[] norths;
+
+    /**
+     * Distances of the spots east of the centre, in meters, null until placed
+     */
+    private double[] easts;
+
+    /**
+     * Initialize a StoryGenerator object.
+     * @param seed seed of the random numbers
+     */
+    public StoryGenerator(long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * @param spotCount {@link StoryGenerator#spotCount}
+     */
+    public void setSpotCount(int spotCount)
+    {
+        this.spotCount = spotCount;
+        norths = null;
+    }
+
+    /**
+     * @param circlesPerSpot {@link StoryGenerator#circlesPerSpot}
+     */
+    public void setCirclesPerSpot(int circlesPerSpot)
+    {
+        this.circlesPerSpot = circlesPerSpot;
+    }
+
+    /**
+     * @param statementsPerCircle {@link StoryGenerator#statementsPerCircle}
+     */
+    public void setStatementsPerCircle(int statementsPerCircle)
+    {
+        this.statementsPerCircle = statementsPerCircle;
+    }
+
+    /**
+     * Set the number of chained if statements of every circle. It is limited by the number of
+     * statements, of which the last one is the play statement, and needs at least one variable.
+     * @param branchDepth number of chained if statements
+     */
+    public void setBranchDepth(int branchDepth)
+    {
+        this.branchDepth = branchDepth;
+    }
+
+    /**
+     * @param variableCount {@link StoryGenerator#variableCount}
+     */
+    public void setVariableCount(int variableCount)
+    {
+        this.variableCount = variableCount;
+    }
+
+    /**
+     * @param distribution {@link StoryGenerator#distribution}
+     */
+    public void setDistribution(int distribution)
+    {
+        this.distribution = distribution;
+        norths = null;
+    }
+
+    /**
+     * Set how densely the circles overlap. The outermost circles get the radius at which the
+     * given number of them covers a point of the square on average, and the inner circles of a
+     * spot divide that radius evenly, but no circle is smaller than 10 meters.
+     * @param overlap average number of outermost circles covering a point
+     */
+    public void setOverlap(double overlap)
+    {
+        this.overlap = overlap;
+    }
+
+    /**
+     * Set the clusters of clustered spots.
+     * @param clusterCount number of clusters
+     * @param clusterRadius standard deviation of the distance of the spots from their cluster's
+     *                      centre, in meters
+     */
+    public void setClusters(int clusterCount, double clusterRadius)
+    {
+        this.clusterCount = clusterCount;
+        this.clusterRadius = clusterRadius;
+        norths = null;
+    }
+
+    /**
+     * @param streetSpacing {@link StoryGenerator#streetSpacing}
+     */
+    public void setStreetSpacing(double streetSpacing)
+    {
+        this.streetSpacing = streetSpacing;
+        norths = null;
+    }
+
+    /**
+     * @param extent {@link StoryGenerator#extent}
+     */
+    public void setExtent(double extent)
+    {
+        this.extent = extent;
+        norths = null;
+    }
+
+    /**
+     * Set the centre of the story.
+     * @param latitude latitude, in degrees
+     * @param longitude longitude, in degrees
+     */
+    public void setCentre(double latitude, double longitude)
+    {
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    /**
+     * Set the range of the durations written to the manifest.
+     * @param minimumAudioDuration shortest duration, in milliseconds
+     * @param maximumAudioDuration longest duration, in milliseconds
+     */
+    public void setAudioDurations(long minimumAudioDuration, long maximumAudioDuration)
+    {
+        this.minimumAudioDuration = minimumAudioDuration;
+        this.maximumAudioDuration = maximumAudioDuration;
+    }
+
+    /**
+     * @param visitCount {@link StoryGenerator#visitCount}
+     */
+    public void setVisitCount(int visitCount)
+    {
+        this.visitCount = visitCount;
+    }
+
+    /**
+     * @param fixInterval {@link StoryGenerator#fixInterval}
+     */
+    public void setFixInterval(long fixInterval)
+    {
+        this.fixInterval = fixInterval;
+    }
+
+    /**
+     * Generate the story.
+     * @return XML of the story
+     */
+    public String generateXml()
+    {
+        StringWriter out = new StringWriter();
+        try
+        {
+            writeXml(out);
+        }
+        catch (IOException e)
+        {
+            // A string writer does not throw.
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Generate the story.
+     * @param out writer the XML of the story is written to
+     * @throws IOException if the writer fails
+     */
+    public void writeXml(Writer out) throws IOException
+    {
+        placeSpots();
+        Random random = new Random(seed + 1);
+
+        out.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+        out.write(String.format(Locale.US, "<%s %s=\"Synthetic %d\" %s=\"%s\" %s=\"\">\n",
+                TAG_STORY, TAG_STORY_ATTR_TITLE, seed, TAG_STORY_ATTR_INTRO_FILE, INTRO_FILE,
+                TAG_STORY_ATTR_INTRO_TEXT));
+
+        // Start with all variables set to 0.
+        if (variableCount > 0)
+        {
+            out.write("  <" + TAG_INIT + ">\n");
+            for (int i = 0; i < variableCount; i++)
+                writeAssignment(out, "    ", i, 0);
+            out.write("  </" + TAG_INIT + ">\n");
+        }
+
+        int[] radii = getRadii();
+        for (int i = 0; i < spotCount; i++)
+        {
+            out.write(String.format(Locale.US, "  <%s %s=\"%.6f\" %s=\"%.6f\">\n", TAG_SPOT,
+                    TAG_SPOT_LATITUDE, toLatitude(norths[i]), TAG_SPOT_LONGITUDE,
+                    toLongitude(easts[i])));
+            writeCircles(out, random, i, radii);
+            out.write("  </" + TAG_SPOT + ">\n");
+        }
+
+        out.write("</" + TAG_STORY + ">\n");
+        out.flush();
+    }
+
+    /**
+     * Write the manifest listing a duration for every audio file of the story, in the format read
+     * by {@link AudioDurations}.
+     * @param out writer the manifest is written to
+     * @throws IOException if the writer fails
+     */
+    public void writeManifest(Writer out) throws IOException
+    {
+        Random random = new Random(seed + 2);
+        out.write("File,Duration\n");
+        out.write(INTRO_FILE + "," + nextAudioDuration(random) + "\n");
+        for (int i = 0; i < spotCount; i++)
+            for (int j = 0; j < circlesPerSpot; j++)
+                out.write(getAudioFileName(i, j) + "," + nextAudioDuration(random) + "\n");
+        out.flush();
+    }
+
+    /**
+     * Generate a walk that starts at a random spot, always goes on to the closest spot it has not
+     * visited yet and stays at every spot for a while. Between spots placed along streets, it
+     * follows the streets. The fixes scatter around the walk like real ones.
+     * @return trace
+     */
+    public Trace generateTrace()
+    {
+        placeSpots();
+        Random random = new Random(seed + 3);
+        Trace trace = new Trace();
+        if (spotCount == 0)
+            return trace;
+
+        boolean[] isVisited = new boolean[spotCount];
+        int spot = random.nextInt(spotCount);
+        long time = 0;
+        for (int visit = 0; visit < visitCount && spot >= 0; visit++)
+        {
+            isVisited[spot] = true;
+
+            // Stay at the spot.
+            for (long end = time + DWELL_TIME; time < end; time += fixInterval)
+                addFix(trace, random, norths[spot], easts[spot], 0, time);
+
+            // Walk to the closest spot that has not been visited yet.
+            int next = findClosestSpot(spot, isVisited);
+            if (next < 0 || visit + 1 == visitCount)
+                break;
+            if (distribution == DISTRIBUTION_STREETS)
+            {
+                // Walk to the closest crossing, along the streets to the crossing closest to the
+                // next spot, and to the spot.
+                double[] start = getClosestCrossing(spot);
+                double[] end = getClosestCrossing(next);
+                time = walk(trace, random, norths[spot], easts[spot], start[0], start[1], time);
+                time = walk(trace, random, start[0], start[1], start[0], end[1], time);
+                time = walk(trace, random, start[0], end[1], end[0], end[1], time);
+                time = walk(trace, random, end[0], end[1], norths[next], easts[next], time);
+            }
+            else
+                time = walk(trace, random, norths[spot], easts[spot], norths[next], easts[next],
+                        time);
+            spot = next;
+        }
+        return trace;
+    }
+
+    /**
+     * Place the spots unless they have been placed with the current settings.
+     */
+    private void placeSpots()
+    {
+        if (norths != null)
+            return;
+
+        Random random = new Random(seed);
+        norths = new double[spotCount];
+        easts = new double[spotCount];
+        double[] clusterNorths = new double[clusterCount];
+        double[] clusterEasts = new double[clusterCount];
+        for (int i = 0; i < clusterCount; i++)
+        {
+            clusterNorths[i] = (random.nextDouble() - 0.5) * extent;
+            clusterEasts[i] = (random.nextDouble() - 0.5) * extent;
+        }
+        for (int i = 0; i < spotCount; i++)
+        {
+            double north = (random.nextDouble() - 0.5) * extent;
+            double east = (random.nextDouble() - 0.5) * extent;
+            switch (distribution)
+            {
+                case DISTRIBUTION_CLUSTERED:
+                    // Scatter the spot around a cluster's centre.
+                    int cluster = random.nextInt(clusterCount);
+                    north = clusterNorths[cluster] + random.nextGaussian() * clusterRadius;
+                    east = clusterEasts[cluster] + random.nextGaussian() * clusterRadius;
+                    break;
+                case DISTRIBUTION_STREETS:
+                    // Move the spot onto the closest street running north or east.
+                    if (random.nextBoolean())
+                        north = Math.round(north / streetSpacing) * streetSpacing;
+                    else
+                        east = Math.round(east / streetSpacing) * streetSpacing;
+                    break;
+            }
+            norths[i] = north;
+            easts[i] = east;
+        }
+    }
+
+    /**
+     * Get the radii of the circles of every spot, so that the outermost circles overlap as often
+     * as desired.
+     * @return radii, in meters, innermost first
+     */
+    private int[] getRadii()
+    {
+        double outerRadius = spotCount == 0 ? 0
+                : Math.sqrt(overlap * extent * extent / (Math.PI * spotCount));
+        int[] radii = new int[circlesPerSpot];
+        for (int i = 0; i < radii.length; i++)
+            radii[i] = Math.max(MINIMUM_RADIUS,
+                    (int) Math.round(outerRadius * (i + 1) / circlesPerSpot));
+        return radii;
+    }
+
+    /**
+     * Write the circles of a spot, in random order, so that they have to be sorted.
+     * @param out writer
+     * @param random random numbers
+     * @param spot index of the spot
+     * @param radii radii of the circles, innermost first
+     * @throws IOException if the writer fails
+     */
+    private void writeCircles(Writer out, Random random, int spot, int[] radii)
+            throws IOException
+    {
+        int[] order = new int[circlesPerSpot];
+        for (int i = 0; i < order.length; i++)
+        {
+            int j = random.nextInt(i + 1);
+            order[i] = order[j];
+            order[j] = i;
+        }
+
+        for (int circle : order)
+        {
+            out.write("    <" + TAG_CIRCLE + " " + TAG_CIRCLE_ATTR_RADIUS + "=\"" + radii[circle]
+                    + "\" " + TAG_CIRCLE_ATTR_TITLE + "=\"S" + spot + "." + circle + "\">\n");
+            writeStatements(out, random, spot, circle);
+            out.write("    </" + TAG_CIRCLE + ">\n");
+        }
+    }
+
+    /**
+     * Write the statements of a circle.
+     * @param out writer
+     * @param random random numbers
+     * @param spot index of the spot
+     * @param circle index of the circle
+     * @throws IOException if the writer fails
+     */
+    private void writeStatements(Writer out, Random random, int spot, int circle)
+            throws IOException
+    {
+        if (statementsPerCircle <= 0)
+            return;
+
+        // Chain the if statements through consecutive variables.
+        int fillerCount = variableCount > 0 ? statementsPerCircle - 1 : 0;
+        int depth = Math.min(branchDepth, fillerCount);
+        int variable = variableCount > 0 ? random.nextInt(variableCount) : 0;
+        for (int i = 0; i < depth; i++)
+        {
+            int next = (variable + 1) % variableCount;
+            writeIf(out, random, variable, next);
+            variable = next;
+        }
+
+        // Fill up with assignments.
+        for (int i = depth; i < fillerCount; i++)
+            writeAssignment(out, "      ", random.nextInt(variableCount),
+                    random.nextInt(VALUE_COUNT));
+
+        out.write("      <" + TAG_PLAY + " " + TAG_PLAY_ATTR_FILE + "=\""
+                + getAudioFileName(spot, circle) + "\" " + TAG_PLAY_ATTR_TEXT + "=\"Spot " + spot
+                + ", circle " + circle + "\"/>\n");
+    }
+
+    /**
+     * Write an if statement testing a variable and setting another one in both branches.
+     * @param out writer
+     * @param random random numbers
+     * @param tested index of the tested variable
+     * @param set index of the set variable
+     * @throws IOException if the writer fails
+     */
+    private static void writeIf(Writer out, Random random, int tested, int set)
+            throws IOException
+    {
+        out.write("      <" + TAG_IF + ">\n");
+        out.write("        <" + TAG_CONDITION + "><" + TAG_EQUALS + " " + TAG_EQUALS_ATTR_ELEMENT_1
+                + "=\"" + getVariableName(tested) + "\" " + TAG_EQUALS_ATTR_ELEMENT_2 + "=\""
+                + random.nextInt(VALUE_COUNT) + "\"/></" + TAG_CONDITION + ">\n");
+        out.write("        <" + TAG_THEN + "><" + TAG_INCREMENT + " " + TAG_INCREMENT_ATTR_VARIABLE
+                + "=\"" + getVariableName(set) + "\"/></" + TAG_THEN + ">\n");
+        out.write("        <" + TAG_ELSE + "><" + TAG_ASSIGN + " " + TAG_ASSIGN_ATTR_VARIABLE
+                + "=\"" + getVariableName(set) + "\" " + TAG_ASSIGN_ATTR_VALUE + "=\""
+                + random.nextInt(VALUE_COUNT) + "\"/></" + TAG_ELSE + ">\n");
+        out.write("      </" + TAG_IF + ">\n");
+    }
+
+    /**
+     * Write an assignment statement.
+     * @param out writer
+     * @param indent indentation of the line
+     * @param variable index of the variable
+     * @param value assigned value
+     * @throws IOException if the writer fails
+     */
+    private static void writeAssignment(Writer out, String indent, int variable, int value)
+            throws IOException
+    {
+        out.write(indent + "<" + TAG_ASSIGN + " " + TAG_ASSIGN_ATTR_VARIABLE + "=\""
+                + getVariableName(variable) + "\" " + TAG_ASSIGN_ATTR_VALUE + "=\"" + value
+                + "\"/>\n");
+    }
+
+    /**
+     * Draw the duration of an audio file.
+     * @param random random numbers
+     * @return duration, in milliseconds
+     */
+    private long nextAudioDuration(Random random)
+    {
+        return minimumAudioDuration
+                + (long) (random.nextDouble() * (maximumAudioDuration - minimumAudioDuration));
+    }
+
+    /**
+     * Find the closest spot that has not been visited yet.
+     * @param spot index of the current spot
+     * @param isVisited true for every visited spot
+     * @return index of the closest spot, -1 if all spots have been visited
+     */
+    private int findClosestSpot(int spot, boolean[] isVisited)
+    {
+        int closest = -1;
+        double minimumDistance = Double.MAX_VALUE;
+        for (int i = 0; i < spotCount; i++)
+        {
+            if (isVisited[i])
+                continue;
+            double north = norths[i] - norths[spot];
+            double east = easts[i] - easts[spot];
+            double distance = distribution == DISTRIBUTION_STREETS
+                    ? Math.abs(north) + Math.abs(east) : north * north + east * east;
+            if (distance < minimumDistance)
+            {
+                closest = i;
+                minimumDistance = distance;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Get the crossing closest to a spot along its street.
+     * @param spot index of a spot placed along the streets
+     * @return distances of the crossing north and east of the centre, in meters
+     */
+    private double[] getClosestCrossing(int spot)
+    {
+        double north = Math.round(norths[spot] / streetSpacing) * streetSpacing;
+        double east = Math.round(easts[spot] / streetSpacing) * streetSpacing;
+
+        // Stay on the street the spot is on, which runs north if the spot is on a line of
+        // constant east.
+        if (Math.abs(easts[spot] - east) < Math.abs(norths[spot] - north))
+            return new double[] {north, easts[spot]};
+        return new double[] {norths[spot], east};
+    }
+
+    /**
+     * Walk along a straight line and add a fix at every interval.
+     * @param trace trace
+     * @param random random numbers
+     * @param fromNorth distance of the start north of the centre, in meters
+     * @param fromEast distance of the start east of the centre, in meters
+     * @param toNorth distance of the end north of the centre, in meters
+     * @param toEast distance of the end east of the centre, in meters
+     * @param time time of the first fix, in milliseconds
+     * @return time of the fix after the end has been reached, in milliseconds
+     */
+    private long walk(Trace trace, Random random, double fromNorth, double fromEast,
+                      double toNorth, double toEast, long time)
+    {
+        double length = Math.hypot(toNorth - fromNorth, toEast - fromEast);
+        double step = WALKING_SPEED * fixInterval / 1000;
+        for (double distance = 0; distance < length; distance += step, time += fixInterval)
+            addFix(trace, random, fromNorth + (toNorth - fromNorth) * distance / length,
+                    fromEast + (toEast - fromEast) * distance / length, WALKING_SPEED, time);
+        return time;
+    }
+
+    /**
+     * Add a fix scattered around the true location.
+     * @param trace trace
+     * @param random random numbers
+     * @param north distance of the location north of the centre, in meters
+     * @param east distance of the location east of the centre, in meters
+     * @param speed speed, in meters per second
+     * @param time time, in milliseconds
+     */
+    private void addFix(Trace trace, Random random, double north, double east, double speed,
+                        long time)
+    {
+        trace.add(toLatitude(north + random.nextGaussian() * FIX_ERROR),
+                toLongitude(east + random.nextGaussian() * FIX_ERROR), FIX_ACCURACY, speed, time);
+    }
+
+    /**
+     * @param north distance north of the centre, in meters
+     * @return latitude, in degrees
+     */
+    private double toLatitude(double north)
+    {
+        return latitude + north / DistanceEngine.METERS_PER_DEGREE;
+    }
+
+    /**
+     * @param east distance east of the centre, in meters
+     * @return longitude, in degrees
+     */
+    private double toLongitude(double east)
+    {
+        return longitude + east
+                / (DistanceEngine.METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+    }
+
+    /**
+     * Get the name of the audio file a circle plays.
+     * @param spot index of the spot
+     * @param circle index of the circle
+     * @return file name
+     */
+    public static String getAudioFileName(int spot, int circle)
+    {
+        return "spot" + spot + "-" + circle + ".mp3";
+    }
+
+    /**
+     * Get the name of a variable.
+     * @param variable index of the variable
+     * @return name
+     */
+    public static String getVariableName(int variable)
+    {
+        return "v" + variable;
+    }
+
+    /**
+     * Write a story, its manifest and a trace into a folder.
+     * @param args path of the folder, optionally followed by options of the form name=value:
+     *             seed, spots, circles, statements, depth, variables, overlap, extent, visits and
+     *             distribution, which is uniform, clustered or streets
+     * @throws IOException if a file cannot be written
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            System.err.println("Usage: StoryGenerator folder [option=value...]");
+            System.exit(1);
+        }
+
+        // Read the options.
+        long seed = 0;
+        for (int i = 1; i < args.length; i++)
+            if (args[i].startsWith("seed="))
+                seed = Long.parseLong(args[i].substring(5));
+        StoryGenerator generator = new StoryGenerator(seed);
+        for (int i = 1; i < args.length; i++)
+        {
+            int equals = args[i].indexOf('=');
+            String name = equals < 0 ? args[i] : args[i].substring(0, equals);
+            String value = args[i].substring(equals + 1);
+            switch (name)
+            {
+                case "seed":
+                    break;
+                case "spots":
+                    generator.setSpotCount(Integer.parseInt(value));
+                    break;
+                case "circles":
+                    generator.setCirclesPerSpot(Integer.parseInt(value));
+                    break;
+                case "statements":
+                    generator.setStatementsPerCircle(Integer.parseInt(value));
+                    break;
+                case "depth":
+                    generator.setBranchDepth(Integer.parseInt(value));
+                    break;
+                case "variables":
+                    generator.setVariableCount(Integer.parseInt(value));
+                    break;
+                case "overlap":
+                    generator.setOverlap(Double.parseDouble(value));
+                    break;
+                case "extent":
+                    generator.setExtent(Double.parseDouble(value));
+                    break;
+                case "visits":
+                    generator.setVisitCount(Integer.parseInt(value));
+                    break;
+                case "distribution":
+                    if (value.equals("uniform"))
+                        generator.setDistribution(DISTRIBUTION_UNIFORM);
+                    else if (value.equals("clustered"))
+                        generator.setDistribution(DISTRIBUTION_CLUSTERED);
+                    else if (value.equals("streets"))
+                        generator.setDistribution(DISTRIBUTION_STREETS);
+                    else
+                        throw new IllegalArgumentException("Unknown distribution: " + value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        // Write the files.
+        File folder = new File(args[0]);
+        if (!folder.isDirectory() && !folder.mkdirs())
+            throw new IOException("The folder cannot be created: " + folder);
+        Writer out = new OutputStreamWriter(new FileOutputStream(new File(folder, STORY_FILE)),
+                "UTF-8");
+        try
+        {
+            generator.writeXml(out);
+        }
+        finally
+        {
+            out.close();
+        }
+        out = new OutputStreamWriter(new FileOutputStream(new File(folder,
+                AudioDurations.MANIFEST_FILE)), "UTF-8");
+        try
+        {
+            generator.writeManifest(out);
+        }
+        finally
+        {
+            out.close();
+        }
+        out = new OutputStreamWriter(new FileOutputStream(new File(folder, TRACE_FILE)), "UTF-8");
+        try
+        {
+            generator.generateTrace().write(out);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
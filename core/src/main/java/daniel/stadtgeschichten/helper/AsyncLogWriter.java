@@ -0,0 +1,562 @@
+package daniel.stadtgeschichten.helper;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This writer appends lines to a file on a background thread. Lines are put into a bounded ring
+ * buffer and written in batches into one writer that stays open. The writer is flushed when enough
+ * lines have been written, when some time has passed since the last flush and when this writer is
+ * closed. When the buffer is full, new lines are either dropped or the caller is blocked until
+ * there is space again. Optionally, the file is rotated when it grows too big: the file
+ * {@code name.ext} is renamed to {@code name.1.ext} (or compressed to {@code name.1.ext.gz}),
+ * older segments are shifted by one and the oldest segment is deleted.
+ */
+public class AsyncLogWriter
+{
+    /**
+     * Line separator appended to every line
+     */
+    private static final String LINE_SEPARATOR = "\r\n";
+
+    /**
+     * Default capacity of the ring buffer, in lines
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Default number of written lines after which the file is flushed
+     */
+    public static final int DEFAULT_FLUSH_LINES = 64;
+
+    /**
+     * Default time after which written lines are flushed, in milliseconds
+     */
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+    /**
+     * File extension of compressed segments
+     */
+    private static final String COMPRESSED_EXTENSION = ".gz";
+
+    /**
+     * Listener interface to be informed about failed writes
+     */
+    public interface OnErrorListener
+    {
+        /**
+         * Called on the writer thread when writing to the file failed.
+         * @param e exception that has been thrown
+         */
+        void onWriteError(IOException e);
+    }
+
+    /**
+     * File to append the lines to
+     */
+    private final File file;
+
+    /**
+     * Lines waiting to be written
+     */
+    private final String[] buffer;
+
+    /**
+     * True if callers should wait for free space in a full buffer, false if lines should be dropped
+     */
+    private final boolean isBlockingOnOverflow;
+
+    /**
+     * Number of written lines after which the file is flushed
+     */
+    private final int flushLines;
+
+    /**
+     * Time after which written lines are flushed, in milliseconds
+     */
+    private final long flushInterval;
+
+    /**
+     * Size in bytes after which the file is rotated, 0 if it should never be rotated
+     */
+    private final long maxFileSize;
+
+    /**
+     * Number of rotated segments to keep besides the file itself
+     */
+    private final int maxSegments;
+
+    /**
+     * True if rotated segments should be compressed with gzip
+     */
+    private final boolean isCompressingSegments;
+
+    /**
+     * Lock guarding the buffer and the counters
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Position of the oldest line in the buffer
+     */
+    private int head = 0;
+
+    /**
+     * Number of lines in the buffer
+     */
+    private int size = 0;
+
+    /**
+     * Number of lines that have been accepted into the buffer
+     */
+    private long appendedLines = 0;
+
+    /**
+     * Number of lines that have been written and flushed to the file
+     */
+    private long flushedLines = 0;
+
+    /**
+     * Number of lines that have been dropped because the buffer was full
+     */
+    private long droppedLines = 0;
+
+    /**
+     * Number of lines that could not be written because of an error
+     */
+    private long failedLines = 0;
+
+    /**
+     * True if a caller waits for the file to be flushed
+     */
+    private boolean isFlushRequested = false;
+
+    /**
+     * True if this writer has been closed
+     */
+    private boolean isClosed = false;
+
+    /**
+     * Listener informed about failed writes, may be null
+     */
+    private volatile OnErrorListener errorListener;
+
+    /**
+     * Thread draining the buffer
+     */
+    private final Thread thread;
+
+    /**
+     * Create a writer with the default settings that drops lines on overflow and start its thread.
+     * @param file file to append the lines to
+     */
+    public AsyncLogWriter(File file)
+    {
+        this(file, DEFAULT_CAPACITY, false, DEFAULT_FLUSH_LINES, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    /**
+     * Create a writer and start its thread.
+     * @param file file to append the lines to
+     * @param capacity capacity of the ring buffer, in lines
+     * @param isBlockingOnOverflow true if callers should wait for free space in a full buffer,
+     *                             false if lines should be dropped
+     * @param flushLines number of written lines after which the file is flushed
+     * @param flushInterval time after which written lines are flushed, in milliseconds
+     */
+    public AsyncLogWriter(File file, int capacity, boolean isBlockingOnOverflow, int flushLines,
+                          long flushInterval)
+    {
+        this(file, capacity, isBlockingOnOverflow, flushLines, flushInterval, 0, 0, false);
+    }
+
+    /**
+     * Create a writer that rotates its file and start its thread.
+     * @param file file to append the lines to
+     * @param capacity capacity of the ring buffer, in lines
+     * @param isBlockingOnOverflow true if callers should wait for free space in a full buffer,
+     *                             false if lines should be dropped
+     * @param flushLines number of written lines after which the file is flushed
+     * @param flushInterval time after which written lines are flushed, in milliseconds
+     * @param maxFileSize size in bytes after which the file is rotated, 0 if it should never be
+     *                    rotated
+     * @param maxSegments number of rotated segments to keep besides the file itself
+     * @param isCompressingSegments true if rotated segments should be compressed with gzip
+     */
+    public AsyncLogWriter(File file, int capacity, boolean isBlockingOnOverflow, int flushLines,
+                          long flushInterval, long maxFileSize, int maxSegments,
+                          boolean isCompressingSegments)
+    {
+        this.maxFileSize = maxFileSize;
+        this.maxSegments = maxSegments;
+        this.isCompressingSegments = isCompressingSegments;
+        this.file = file;
+        this.buffer = new String[capacity];
+        this.isBlockingOnOverflow = isBlockingOnOverflow;
+        this.flushLines = flushLines;
+        this.flushInterval = flushInterval;
+
+        thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                drain();
+            }
+        }, "AsyncLogWriter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return {@link AsyncLogWriter#file}
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * @param errorListener listener informed about failed writes, may be null
+     */
+    public void setOnErrorListener(OnErrorListener errorListener)
+    {
+        this.errorListener = errorListener;
+    }
+
+    /**
+     * Queue a line for writing. A line separator is appended when the line is written.
+     * @param line line to write
+     * @return true if the line has been queued, false if it has been dropped
+     */
+    public boolean append(String line)
+    {
+        synchronized (lock)
+        {
+            while (size == buffer.length && !isClosed)
+            {
+                if (!isBlockingOnOverflow)
+                {
+                    droppedLines++;
+                    return false;
+                }
+                try
+                {
+                    lock.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    droppedLines++;
+                    return false;
+                }
+            }
+            if (isClosed)
+            {
+                droppedLines++;
+                return false;
+            }
+
+            buffer[(head + size) % buffer.length] = line;
+            size++;
+            appendedLines++;
+
+            // Wake up the writer thread, which only waits while the buffer is empty.
+            if (size == 1)
+                lock.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * Block until all lines queued so far have been written and flushed, or dropped because of
+     * an error.
+     * @throws InterruptedException if the calling thread has been interrupted while waiting
+     */
+    public void flush() throws InterruptedException
+    {
+        synchronized (lock)
+        {
+            long target = appendedLines;
+            isFlushRequested = true;
+            lock.notifyAll();
+            while (flushedLines + failedLines < target && thread.isAlive())
+                lock.wait();
+        }
+    }
+
+    /**
+     * Write and flush all queued lines, close the file and stop the thread. Lines appended
+     * afterwards are dropped.
+     * @throws InterruptedException if the calling thread has been interrupted while waiting
+     */
+    public void close() throws InterruptedException
+    {
+        synchronized (lock)
+        {
+            isClosed = true;
+            lock.notifyAll();
+        }
+        thread.join();
+    }
+
+    /**
+     * @return number of lines that have been dropped because the buffer was full or the writer
+     * was closed
+     */
+    public long getDroppedLines()
+    {
+        synchronized (lock)
+        {
+            return droppedLines;
+        }
+    }
+
+    /**
+     * @return number of lines that could not be written because of an error
+     */
+    public long getFailedLines()
+    {
+        synchronized (lock)
+        {
+            return failedLines;
+        }
+    }
+
+    /**
+     * @return number of lines that have been written and flushed to the file
+     */
+    public long getFlushedLines()
+    {
+        synchronized (lock)
+        {
+            return flushedLines;
+        }
+    }
+
+    /**
+     * Take lines from the buffer and write them until this writer is closed.
+     */
+    private void drain()
+    {
+        String[] batch = new String[buffer.length];
+        Writer writer = null;
+        long fileSize = 0;
+        int unflushedLines = 0;
+        long lastFlushTime = System.currentTimeMillis();
+        while (true)
+        {
+            // Wait for lines, a flush request, the flush interval or the end.
+            int count;
+            boolean isFlushing;
+            boolean isEnding;
+            synchronized (lock)
+            {
+                long now = System.currentTimeMillis();
+                while (size == 0 && !isClosed && !isFlushRequested
+                        && (unflushedLines == 0 || now - lastFlushTime < flushInterval))
+                {
+                    try
+                    {
+                        if (unflushedLines == 0)
+                            lock.wait();
+                        else
+                            lock.wait(Math.max(1, flushInterval - (now - lastFlushTime)));
+                    }
+                    catch (InterruptedException e)
+                    {
+                        isClosed = true;
+                    }
+                    now = System.currentTimeMillis();
+                }
+
+                // Move the lines out of the ring buffer.
+                count = size;
+                for (int i = 0; i < count; i++)
+                {
+                    batch[i] = buffer[(head + i) % buffer.length];
+                    buffer[(head + i) % buffer.length] = null;
+                }
+                head = (head + count) % buffer.length;
+                size = 0;
+                isFlushing = isFlushRequested;
+                isFlushRequested = false;
+                isEnding = isClosed;
+                lock.notifyAll();
+            }
+
+            // Write the lines outside of the lock.
+            IOException error = null;
+            unflushedLines += count;
+            try
+            {
+                if (writer == null && unflushedLines > 0)
+                {
+                    writer = new BufferedWriter(new OutputStreamWriter(
+                            new FileOutputStream(file, true)));
+                    fileSize = file.length();
+                }
+                for (int i = 0; i < count; i++)
+                {
+                    writer.write(batch[i]);
+                    writer.write(LINE_SEPARATOR);
+
+                    // Count characters, which equals the bytes for the mostly ASCII log lines.
+                    fileSize += batch[i].length() + LINE_SEPARATOR.length();
+                }
+
+                long now = System.currentTimeMillis();
+                if (writer != null && unflushedLines > 0 && (isFlushing || isEnding
+                        || unflushedLines >= flushLines || now - lastFlushTime >= flushInterval))
+                {
+                    writer.flush();
+                    lastFlushTime = now;
+                    synchronized (lock)
+                    {
+                        flushedLines += unflushedLines;
+                        lock.notifyAll();
+                    }
+                    unflushedLines = 0;
+                }
+
+                // Rotate the file once it has grown too big.
+                if (writer != null && maxFileSize > 0 && fileSize >= maxFileSize
+                        && unflushedLines == 0)
+                {
+                    writer = closeQuietly(writer);
+                    rotate();
+                }
+            }
+            catch (IOException e)
+            {
+                error = e;
+                synchronized (lock)
+                {
+                    failedLines += unflushedLines;
+                    lock.notifyAll();
+                }
+                unflushedLines = 0;
+                writer = closeQuietly(writer);
+            }
+            Arrays.fill(batch, 0, count, null);
+            if (error != null && errorListener != null)
+                errorListener.onWriteError(error);
+
+            if (isEnding)
+            {
+                closeQuietly(writer);
+                synchronized (lock)
+                {
+                    lock.notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Shift the rotated segments by one, delete the oldest one and turn the file into the newest
+     * segment.
+     * @throws IOException if the file could not be turned into a segment
+     */
+    private void rotate() throws IOException
+    {
+        if (maxSegments <= 0)
+        {
+            if (!file.delete())
+                throw new IOException("Could not delete " + file);
+            return;
+        }
+
+        // Delete the oldest segment and shift the others.
+        File oldest = getSegment(maxSegments);
+        if (oldest.exists() && !oldest.delete())
+            throw new IOException("Could not delete " + oldest);
+        for (int i = maxSegments - 1; i >= 1; i--)
+        {
+            File segment = getSegment(i);
+            if (segment.exists() && !segment.renameTo(getSegment(i + 1)))
+                throw new IOException("Could not rename " + segment);
+        }
+
+        // Turn the file into the newest segment.
+        File newest = getSegment(1);
+        if (!isCompressingSegments)
+        {
+            if (!file.renameTo(newest))
+                throw new IOException("Could not rename " + file);
+            return;
+        }
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            OutputStream out = new GZIPOutputStream(new FileOutputStream(newest));
+            try
+            {
+                byte[] bytes = new byte[8192];
+                int length;
+                while ((length = in.read(bytes)) > 0)
+                    out.write(bytes, 0, length);
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        if (!file.delete())
+            throw new IOException("Could not delete " + file);
+    }
+
+    /**
+     * Get the file of a rotated segment.
+     * @param number number of the segment, starting at 1 for the newest one
+     * @return file of the segment
+     */
+    private File getSegment(int number)
+    {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String segmentName;
+        if (dot < 0)
+            segmentName = name + "." + number;
+        else
+            segmentName = name.substring(0, dot) + "." + number + name.substring(dot);
+        if (isCompressingSegments)
+            segmentName += COMPRESSED_EXTENSION;
+        return new File(file.getParentFile(), segmentName);
+    }
+
+    /**
+     * Close the given writer and ignore any error.
+     * @param writer writer to close, may be null
+     * @return null
+     */
+    private static Writer closeQuietly(Writer writer)
+    {
+        if (writer != null)
+        {
+            try
+            {
+                writer.close();
+            }
+            catch (IOException e)
+            {
+                // Nothing more can be done.
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,421 @@
+package daniel.stadtgeschichten.helper;
+
+import java.util.Arrays;
+
+import daniel.stadtgeschichten.model.Circle;
+import daniel.stadtgeschichten.model.Spot;
+
+/**
+ * This spatial index puts the bounding boxes of all circles into a uniform latitude / longitude
+ * grid, so that only the circles whose bounding box may contain a location have to be checked.
+ * Circles are numbered in the order of the spots and, within a spot, in the order of the spot's
+ * circles. Every cell lists its circles in ascending order of these numbers.
+ */
+public class CircleGridIndex
+{
+    /**
+     * Relative margin added to the bounding boxes to absorb rounding errors
+     */
+    private static final double BOUNDING_BOX_MARGIN = 1.01;
+
+    /**
+     * Smallest cosine of a latitude used to widen bounding boxes close to the poles
+     */
+    private static final double MINIMUM_COSINE = 0.01;
+
+    /**
+     * Smallest size of a cell, in degrees
+     */
+    private static final double MINIMUM_CELL_SIZE = 0.0005;
+
+    /**
+     * Minimum number of cells the grid may grow to before the cells are made bigger
+     */
+    private static final int MINIMUM_MAXIMUM_CELLS = 1024;
+
+    /**
+     * Circles indexed by their number
+     */
+    private final Circle[] circles;
+
+    /**
+     * Index of the spot of every circle
+     */
+    private final int[] spotIndices;
+
+    /**
+     * Squared radius of every circle, in square meters
+     */
+    private final double[] squaredRadii;
+
+    /**
+     * Latitude of every spot, in radians
+     */
+    private final double[] spotLatitudes;
+
+    /**
+     * Longitude of every spot, in radians
+     */
+    private final double[] spotLongitudes;
+
+    /**
+     * Cosine of the latitude of every spot
+     */
+    private final double[] spotCosLatitudes;
+
+    /**
+     * Southern border of every circle's bounding box, in degrees
+     */
+    private final double[] minLatitudes;
+
+    /**
+     * Northern border of every circle's bounding box, in degrees
+     */
+    private final double[] maxLatitudes;
+
+    /**
+     * Western border of every circle's bounding box, in degrees
+     */
+    private final double[] minLongitudes;
+
+    /**
+     * Eastern border of every circle's bounding box, in degrees
+     */
+    private final double[] maxLongitudes;
+
+    /**
+     * Latitude of the grid's south-west corner
+     */
+    private double gridLatitude;
+
+    /**
+     * Longitude of the grid's south-west corner
+     */
+    private double gridLongitude;
+
+    /**
+     * Edge length of a cell, in degrees
+     */
+    private double cellSize;
+
+    /**
+     * Number of rows of the grid
+     */
+    private int rows;
+
+    /**
+     * Number of columns of the grid
+     */
+    private int columns;
+
+    /**
+     * Position of the first entry of every cell in {@link CircleGridIndex#entries}, followed by
+     * the total number of entries
+     */
+    private int[] cellStarts;
+
+    /**
+     * Circle numbers of all cells, stored one cell after another
+     */
+    private int[] entries;
+
+    /**
+     * Build the index for the given spots.
+     * @param spots spots whose circles should be indexed
+     */
+    public CircleGridIndex(Spot[] spots)
+    {
+        // Number the circles.
+        int count = 0;
+        for (Spot spot : spots)
+            count += spot.getCircles().length;
+        circles = new Circle[count];
+        spotIndices = new int[count];
+        squaredRadii = new double[count];
+        spotLatitudes = new double[spots.length];
+        spotLongitudes = new double[spots.length];
+        spotCosLatitudes = new double[spots.length];
+        minLatitudes = new double[count];
+        maxLatitudes = new double[count];
+        minLongitudes = new double[count];
+        maxLongitudes = new double[count];
+
+        // Compute the bounding boxes.
+        double[] sizes = new double[count];
+        int id = 0;
+        for (int i = 0; i < spots.length; i++)
+        {
+            Spot spot = spots[i];
+            spotLatitudes[i] = Math.toRadians(spot.getLatitude());
+            spotLongitudes[i] = Math.toRadians(spot.getLongitude());
+            spotCosLatitudes[i] = Math.cos(spotLatitudes[i]);
+            for (Circle circle : spot.getCircles())
+            {
+                double latitudeExtent = circle.getRadius() / DistanceEngine.METERS_PER_DEGREE
+                        * BOUNDING_BOX_MARGIN;
+                double cosine = Math.max(MINIMUM_COSINE, Math.cos(Math.toRadians(
+                        Math.min(90.0, Math.abs(spot.getLatitude()) + latitudeExtent))));
+                double longitudeExtent = latitudeExtent / cosine;
+
+                circles[id] = circle;
+                spotIndices[id] = i;
+                squaredRadii[id] = (double) circle.getRadius() * circle.getRadius();
+                minLatitudes[id] = spot.getLatitude() - latitudeExtent;
+                maxLatitudes[id] = spot.getLatitude() + latitudeExtent;
+                minLongitudes[id] = spot.getLongitude() - longitudeExtent;
+                maxLongitudes[id] = spot.getLongitude() + longitudeExtent;
+                sizes[id] = 2 * latitudeExtent;
+                id++;
+            }
+        }
+
+        buildGrid(sizes);
+    }
+
+    /**
+     * Lay the grid over the bounding boxes and fill its cells.
+     * @param sizes latitude extent of every bounding box, in degrees
+     */
+    private void buildGrid(double[] sizes)
+    {
+        if (circles.length == 0)
+        {
+            rows = 0;
+            columns = 0;
+            cellSize = 1.0;
+            cellStarts = new int[1];
+            entries = new int[0];
+            return;
+        }
+
+        // Get the area covered by all bounding boxes.
+        double south = Double.MAX_VALUE;
+        double north = -Double.MAX_VALUE;
+        double west = Double.MAX_VALUE;
+        double east = -Double.MAX_VALUE;
+        for (int i = 0; i < circles.length; i++)
+        {
+            south = Math.min(south, minLatitudes[i]);
+            north = Math.max(north, maxLatitudes[i]);
+            west = Math.min(west, minLongitudes[i]);
+            east = Math.max(east, maxLongitudes[i]);
+        }
+        gridLatitude = south;
+        gridLongitude = west;
+
+        // Use the median circle size as cell size, but enlarge the cells as long as there would be
+        // too many of them.
+        double[] sortedSizes = sizes.clone();
+        Arrays.sort(sortedSizes);
+        cellSize = Math.max(MINIMUM_CELL_SIZE, sortedSizes[sortedSizes.length / 2]);
+        long maximumCells = Math.max(MINIMUM_MAXIMUM_CELLS, 4L * circles.length);
+        while (true)
+        {
+            rows = (int) Math.floor((north - south) / cellSize) + 1;
+            columns = (int) Math.floor((east - west) / cellSize) + 1;
+            if ((long) rows * columns <= maximumCells)
+                break;
+            cellSize *= 2;
+        }
+
+        // Count the entries per cell.
+        cellStarts = new int[rows * columns + 1];
+        for (int i = 0; i < circles.length; i++)
+            for (int row = getRow(minLatitudes[i]); row <= getRow(maxLatitudes[i]); row++)
+                for (int column = getColumn(minLongitudes[i]);
+                     column <= getColumn(maxLongitudes[i]); column++)
+                    cellStarts[row * columns + column + 1]++;
+        for (int cell = 0; cell < rows * columns; cell++)
+            cellStarts[cell + 1] += cellStarts[cell];
+
+        // Fill the cells in ascending circle order.
+        entries = new int[cellStarts[rows * columns]];
+        int[] positions = Arrays.copyOf(cellStarts, rows * columns);
+        for (int i = 0; i < circles.length; i++)
+            for (int row = getRow(minLatitudes[i]); row <= getRow(maxLatitudes[i]); row++)
+                for (int column = getColumn(minLongitudes[i]);
+                     column <= getColumn(maxLongitudes[i]); column++)
+                    entries[positions[row * columns + column]++] = i;
+    }
+
+    /**
+     * Get the row of the grid the given latitude falls into.
+     * @param latitude latitude
+     * @return row, which may lie outside the grid
+     */
+    public int getRow(double latitude)
+    {
+        return (int) Math.floor((latitude - gridLatitude) / cellSize);
+    }
+
+    /**
+     * Get the column of the grid the given longitude falls into.
+     * @param longitude longitude
+     * @return column, which may lie outside the grid
+     */
+    public int getColumn(double longitude)
+    {
+        return (int) Math.floor((longitude - gridLongitude) / cellSize);
+    }
+
+    /**
+     * Get the cell containing the given location.
+     * @param latitude latitude of the location
+     * @param longitude longitude of the location
+     * @return cell, -1 if the location is not covered by any bounding box
+     */
+    public int getCell(double latitude, double longitude)
+    {
+        return getCell(getRow(latitude), getColumn(longitude));
+    }
+
+    /**
+     * Get the cell in the given row and column.
+     * @param row row, which may lie outside the grid
+     * @param column column, which may lie outside the grid
+     * @return cell, -1 if the row or the column lies outside the grid
+     */
+    public int getCell(int row, int column)
+    {
+        if (row < 0 || row >= rows || column < 0 || column >= columns)
+            return -1;
+        return row * columns + column;
+    }
+
+    /**
+     * Get the position of the first entry of the given cell.
+     * @param cell cell returned by {@link CircleGridIndex#getCell(double, double)}
+     * @return position to pass to {@link CircleGridIndex#getEntry(int)}
+     */
+    public int getCellStart(int cell)
+    {
+        return cellStarts[cell];
+    }
+
+    /**
+     * Get the position behind the last entry of the given cell.
+     * @param cell cell returned by {@link CircleGridIndex#getCell(double, double)}
+     * @return position behind the last entry
+     */
+    public int getCellEnd(int cell)
+    {
+        return cellStarts[cell + 1];
+    }
+
+    /**
+     * Get the number of the circle stored at the given position.
+     * @param position position between a cell's start and end
+     * @return circle number
+     */
+    public int getEntry(int position)
+    {
+        return entries[position];
+    }
+
+    /**
+     * Check whether the bounding box of the given circle contains the given location.
+     * @param id circle number
+     * @param latitude latitude of the location
+     * @param longitude longitude of the location
+     * @return true if that is the case, false otherwise
+     */
+    public boolean isInBoundingBox(int id, double latitude, double longitude)
+    {
+        return latitude >= minLatitudes[id] && latitude <= maxLatitudes[id]
+                && longitude >= minLongitudes[id] && longitude <= maxLongitudes[id];
+    }
+
+    /**
+     * @param id circle number
+     * @return circle with the given number
+     */
+    public Circle getCircle(int id)
+    {
+        return circles[id];
+    }
+
+    /**
+     * @param id circle number
+     * @return index of the spot the circle with the given number belongs to
+     */
+    public int getSpotIndex(int id)
+    {
+        return spotIndices[id];
+    }
+
+    /**
+     * @param id circle number
+     * @return squared radius of the circle with the given number, in square meters
+     */
+    public double getSquaredRadius(int id)
+    {
+        return squaredRadii[id];
+    }
+
+    /**
+     * @param spotIndex index of a spot
+     * @return latitude of the spot, in radians
+     */
+    public double getSpotLatitude(int spotIndex)
+    {
+        return spotLatitudes[spotIndex];
+    }
+
+    /**
+     * @param spotIndex index of a spot
+     * @return longitude of the spot, in radians
+     */
+    public double getSpotLongitude(int spotIndex)
+    {
+        return spotLongitudes[spotIndex];
+    }
+
+    /**
+     * @param spotIndex index of a spot
+     * @return cosine of the latitude of the spot
+     */
+    public double getSpotCosLatitude(int spotIndex)
+    {
+        return spotCosLatitudes[spotIndex];
+    }
+
+    /**
+     * @return number of indexed spots
+     */
+    public int getSpotCount()
+    {
+        return spotLatitudes.length;
+    }
+
+    /**
+     * @return number of rows of the grid
+     */
+    public int getRowCount()
+    {
+        return rows;
+    }
+
+    /**
+     * @return number of columns of the grid
+     */
+    public int getColumnCount()
+    {
+        return columns;
+    }
+
+    /**
+     * @return edge length of a cell, in degrees
+     */
+    public double getCellSize()
+    {
+        return cellSize;
+    }
+
+    /**
+     * @return number of indexed circles
+     */
+    public int getCircleCount()
+    {
+        return circles.length;
+    }
+}
@@ -0,0 +1,290 @@
+package daniel.stadtgeschichten.helper;
+
+import daniel.stadtgeschichten.model.Circle;
+
+/**
+ * This tracker turns the circles matched by consecutive location fixes into discrete enter, dwell
+ * and exit events. A circle is entered as soon as a fix lies in its radius, but it is only left
+ * when a fix lies outside its radius enlarged by a hysteresis margin, so that jitter at the border
+ * of a circle does not cause flapping. Moreover, every transition has to be confirmed by a number
+ * of consecutive fixes over a minimum time span before it is reported.
+ */
+public class CircleOccupancyTracker
+{
+    /**
+     * Default hysteresis margin, in meters
+     */
+    public static final double DEFAULT_HYSTERESIS_MARGIN = 10.0;
+
+    /**
+     * Default number of consecutive fixes confirming a transition
+     */
+    public static final int DEFAULT_DEBOUNCE_FIXES = 2;
+
+    /**
+     * Default time span confirming a transition, in milliseconds
+     */
+    public static final long DEFAULT_DEBOUNCE_TIME = 0;
+
+    /**
+     * Number used for no circle
+     */
+    private static final int NONE = -1;
+
+    /**
+     * Listener that is informed about the occupancy
+     */
+    private final OnOccupancyListener listener;
+
+    /**
+     * Spatial index over the circles
+     */
+    private CircleGridIndex circleIndex;
+
+    /**
+     * Squared radii of the circles enlarged by the hysteresis margin, in square meters
+     */
+    private double[] outerSquaredRadii;
+
+    /**
+     * Distance engine used to compare locations
+     */
+    private DistanceEngine distanceEngine = new EquirectangularDistanceEngine();
+
+    /**
+     * Hysteresis margin, in meters
+     */
+    private double hysteresisMargin = DEFAULT_HYSTERESIS_MARGIN;
+
+    /**
+     * Number of consecutive fixes confirming a transition
+     */
+    private int debounceFixes = DEFAULT_DEBOUNCE_FIXES;
+
+    /**
+     * Time span confirming a transition, in milliseconds
+     */
+    private long debounceTime = DEFAULT_DEBOUNCE_TIME;
+
+    /**
+     * Number of the occupied circle, NONE if no circle is occupied
+     */
+    private int currentId = NONE;
+
+    /**
+     * Time when the occupied circle has been entered, in milliseconds
+     */
+    private long enterTime;
+
+    /**
+     * Number of the circle that may be occupied next, currentId if there is no transition pending
+     */
+    private int candidateId = NONE;
+
+    /**
+     * Number of consecutive fixes that have proposed the candidate
+     */
+    private int candidateFixes;
+
+    /**
+     * Time of the first fix that has proposed the candidate, in milliseconds
+     */
+    private long candidateTime;
+
+    /**
+     * Listener interface to implement by callee
+     */
+    public interface OnOccupancyListener
+    {
+        /**
+         * Called when a circle has been entered.
+         * @param circle entered circle
+         */
+        void onCircleEntered(Circle circle);
+
+        /**
+         * Called for every fix that keeps the occupied circle.
+         * @param circle occupied circle
+         * @param dwellTime time since the circle has been entered, in milliseconds
+         */
+        void onCircleDwelling(Circle circle, long dwellTime);
+
+        /**
+         * Called when a circle has been left. If another circle has been entered at the same
+         * time, this is called before its onCircleEntered.
+         * @param circle left circle
+         */
+        void onCircleExited(Circle circle);
+    }
+
+    public CircleOccupancyTracker(CircleGridIndex circleIndex, OnOccupancyListener listener)
+    {
+        this.listener = listener;
+        setCircleIndex(circleIndex);
+    }
+
+    /**
+     * Set the circles to track. The occupancy is reset without informing the listener.
+     * @param circleIndex spatial index over the circles
+     */
+    public void setCircleIndex(CircleGridIndex circleIndex)
+    {
+        this.circleIndex = circleIndex;
+        computeOuterSquaredRadii();
+        reset();
+    }
+
+    /**
+     * Forget the occupied circle and any pending transition without informing the listener.
+     */
+    public void reset()
+    {
+        currentId = NONE;
+        candidateId = NONE;
+        candidateFixes = 0;
+    }
+
+    /**
+     * Set the distance engine used to compare locations.
+     * @param distanceEngine distance engine
+     */
+    public void setDistanceEngine(DistanceEngine distanceEngine)
+    {
+        this.distanceEngine = distanceEngine;
+    }
+
+    /**
+     * Set the margin by which the radius of the occupied circle is enlarged before the circle is
+     * left.
+     * @param hysteresisMargin hysteresis margin, in meters
+     */
+    public void setHysteresisMargin(double hysteresisMargin)
+    {
+        this.hysteresisMargin = hysteresisMargin;
+        computeOuterSquaredRadii();
+    }
+
+    /**
+     * Set how long a transition has to be proposed before it is reported. Both conditions have to
+     * be met.
+     * @param debounceFixes number of consecutive fixes, at least 1
+     * @param debounceTime time span between the first and the last fix, in milliseconds
+     */
+    public void setDebounce(int debounceFixes, long debounceTime)
+    {
+        this.debounceFixes = Math.max(1, debounceFixes);
+        this.debounceTime = debounceTime;
+    }
+
+    /**
+     * @return number of the occupied circle in the circle index, -1 if no circle is occupied
+     */
+    public int getCurrentId()
+    {
+        return currentId;
+    }
+
+    /**
+     * @return occupied circle, null if no circle is occupied
+     */
+    public Circle getCurrentCircle()
+    {
+        return currentId == NONE ? null : circleIndex.getCircle(currentId);
+    }
+
+    /**
+     * Process a location fix.
+     * @param matchedId number of the smallest circle whose radius contains the location, a
+     *                  negative number if there is none
+     * @param latitude latitude of the location, in radians
+     * @param longitude longitude of the location, in radians
+     * @param cosLatitude cosine of the latitude of the location
+     * @param time time of the fix, in milliseconds
+     */
+    public void update(int matchedId, double latitude, double longitude, double cosLatitude,
+                       long time)
+    {
+        if (matchedId < 0)
+            matchedId = NONE;
+
+        // Keep the occupied circle while the location is in its outer radius, unless a smaller
+        // circle has been matched.
+        int targetId = matchedId;
+        if (currentId != NONE && matchedId != currentId
+                && (matchedId == NONE || circleIndex.getSquaredRadius(matchedId)
+                        >= circleIndex.getSquaredRadius(currentId))
+                && isInOuterRadius(latitude, longitude, cosLatitude, currentId))
+            targetId = currentId;
+
+        // Drop a pending transition that has not been confirmed.
+        if (targetId == currentId)
+        {
+            candidateId = currentId;
+            candidateFixes = 0;
+            notifyDwelling(time);
+            return;
+        }
+
+        // Debounce the transition.
+        if (targetId != candidateId)
+        {
+            candidateId = targetId;
+            candidateFixes = 0;
+            candidateTime = time;
+        }
+        candidateFixes++;
+        if (candidateFixes < debounceFixes || time - candidateTime < debounceTime)
+        {
+            notifyDwelling(time);
+            return;
+        }
+
+        // Leave the occupied circle and enter the new one.
+        if (currentId != NONE)
+            listener.onCircleExited(circleIndex.getCircle(currentId));
+        currentId = targetId;
+        enterTime = time;
+        candidateFixes = 0;
+        if (currentId != NONE)
+            listener.onCircleEntered(circleIndex.getCircle(currentId));
+    }
+
+    /**
+     * Inform the listener that the occupied circle is kept, if there is one.
+     * @param time time of the fix, in milliseconds
+     */
+    private void notifyDwelling(long time)
+    {
+        if (currentId != NONE)
+            listener.onCircleDwelling(circleIndex.getCircle(currentId), time - enterTime);
+    }
+
+    /**
+     * Check whether the given location is strictly in the outer radius of the given circle.
+     * @param latitude latitude of the location, in radians
+     * @param longitude longitude of the location, in radians
+     * @param cosLatitude cosine of the latitude of the location
+     * @param id number of the circle in the circle index
+     * @return true if that is the case, false otherwise
+     */
+    private boolean isInOuterRadius(double latitude, double longitude, double cosLatitude, int id)
+    {
+        int spotIndex = circleIndex.getSpotIndex(id);
+        return distanceEngine.isInRadius(latitude, longitude, cosLatitude,
+                circleIndex.getSpotLatitude(spotIndex), circleIndex.getSpotLongitude(spotIndex),
+                circleIndex.getSpotCosLatitude(spotIndex), outerSquaredRadii[id]);
+    }
+
+    /**
+     * Compute the outer squared radii of all circles.
+     */
+    private void computeOuterSquaredRadii()
+    {
+        outerSquaredRadii = new double[circleIndex.getCircleCount()];
+        for (int id = 0; id < outerSquaredRadii.length; id++)
+        {
+            double outerRadius = Math.sqrt(circleIndex.getSquaredRadius(id)) + hysteresisMargin;
+            outerSquaredRadii[id] = outerRadius * outerRadius;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package daniel.stadtgeschichten.helper;
+
+import java.util.Arrays;
+
+import daniel.stadtgeschichten.model.Circle;
+
+/**
+ * This predictor ranks the circles by how soon the listener is likely to enter them, so that the
+ * audio of the next circle can be prepared in advance. Every circle that does not contain the
+ * listener is ranked by the distance to its border divided by the speed at which the listener
+ * approaches its centre. Hence, a circle ahead is preferred to a closer circle behind, and all
+ * circles are ranked by distance while the listener is standing.
+ */
+public class CirclePredictor
+{
+    /**
+     * Maximum number of predicted circles
+     */
+    public static final int MAXIMUM_CANDIDATES = 3;
+
+    /**
+     * Distance beyond which circles are not predicted, in meters
+     */
+    private static final double MAXIMUM_RANGE = 500.0;
+
+    /**
+     * Lowest approaching speed taken into account, in meters per second
+     */
+    private static final double MINIMUM_APPROACHING_SPEED = 0.2;
+
+    /**
+     * Relative margin added to the searched area to absorb rounding errors
+     */
+    private static final double RANGE_MARGIN = 1.01;
+
+    /**
+     * Spatial index over the circles
+     */
+    private CircleGridIndex circleIndex;
+
+    /**
+     * Numbers of the predicted circles, most likely first
+     */
+    private final int[] ids = new int[MAXIMUM_CANDIDATES];
+
+    /**
+     * Numbers of the circles predicted before
+     */
+    private final int[] previousIds = new int[MAXIMUM_CANDIDATES];
+
+    /**
+     * Expected times until the predicted circles are entered, in seconds
+     */
+    private final double[] scores = new double[MAXIMUM_CANDIDATES];
+
+    /**
+     * Predicted circles, most likely first
+     */
+    private final Circle[] circles = new Circle[MAXIMUM_CANDIDATES];
+
+    /**
+     * Number of predicted circles
+     */
+    private int count;
+
+    /**
+     * Number of the last prediction that has ranked every circle
+     */
+    private int[] rankedPredictions;
+
+    /**
+     * Number of the current prediction
+     */
+    private int prediction;
+
+    public CirclePredictor(CircleGridIndex circleIndex)
+    {
+        setCircleIndex(circleIndex);
+    }
+
+    /**
+     * Set the circles to predict. The prediction is cleared.
+     * @param circleIndex spatial index over the circles
+     */
+    public void setCircleIndex(CircleGridIndex circleIndex)
+    {
+        this.circleIndex = circleIndex;
+        rankedPredictions = new int[circleIndex.getCircleCount()];
+        prediction = 0;
+        count = 0;
+        Arrays.fill(circles, null);
+    }
+
+    /**
+     * Predict the circles that are entered next. Only the cells of the circle index within the
+     * maximum range of the location are searched.
+     * @param latitude latitude of the location, in radians
+     * @param longitude longitude of the location, in radians
+     * @param cosLatitude cosine of the latitude of the location
+     * @param velocityEast velocity towards the east, in meters per second
+     * @param velocityNorth velocity towards the north, in meters per second
+     * @param occupiedId number of the occupied circle, which is not predicted, a negative number
+     *                   if there is none
+     * @param matchedId number of the circle that contains the location, which is predicted first
+     *                  unless it is occupied already, a negative number if there is none
+     * @return true if the predicted circles or their order have changed, false otherwise
+     */
+    public boolean predict(double latitude, double longitude, double cosLatitude,
+                           double velocityEast, double velocityNorth, int occupiedId,
+                           int matchedId)
+    {
+        int previousCount = count;
+        System.arraycopy(ids, 0, previousIds, 0, count);
+
+        count = 0;
+        prediction++;
+
+        // Get the cells covering the maximum range around the location.
+        double latitudeDegrees = Math.toDegrees(latitude);
+        double longitudeDegrees = Math.toDegrees(longitude);
+        double latitudeRange = MAXIMUM_RANGE / DistanceEngine.METERS_PER_DEGREE * RANGE_MARGIN;
+        double longitudeRange = latitudeRange / cosLatitude;
+        int firstRow = Math.max(0, circleIndex.getRow(latitudeDegrees - latitudeRange));
+        int lastRow = Math.min(circleIndex.getRowCount() - 1,
+                circleIndex.getRow(latitudeDegrees + latitudeRange));
+        int firstColumn = Math.max(0, circleIndex.getColumn(longitudeDegrees - longitudeRange));
+        int lastColumn = Math.min(circleIndex.getColumnCount() - 1,
+                circleIndex.getColumn(longitudeDegrees + longitudeRange));
+        for (int row = firstRow; row <= lastRow; row++)
+            for (int column = firstColumn; column <= lastColumn; column++)
+            {
+                int cell = circleIndex.getCell(row, column);
+                for (int i = circleIndex.getCellStart(cell); i < circleIndex.getCellEnd(cell); i++)
+                    rank(circleIndex.getEntry(i), latitude, longitude, cosLatitude, velocityEast,
+                            velocityNorth, occupiedId, matchedId);
+            }
+
+        // Compare the prediction with the previous one.
+        boolean hasChanged = count != previousCount;
+        for (int i = 0; i < MAXIMUM_CANDIDATES; i++)
+        {
+            circles[i] = i < count ? circleIndex.getCircle(ids[i]) : null;
+            if (i < count && ids[i] != previousIds[i])
+                hasChanged = true;
+        }
+        return hasChanged;
+    }
+
+    /**
+     * Rank a circle unless the current prediction has ranked it already, since a circle may be
+     * listed in several cells.
+     * @param id number of the circle
+     * @param latitude latitude of the location, in radians
+     * @param longitude longitude of the location, in radians
+     * @param cosLatitude cosine of the latitude of the location
+     * @param velocityEast velocity towards the east, in meters per second
+     * @param velocityNorth velocity towards the north, in meters per second
+     * @param occupiedId number of the occupied circle, a negative number if there is none
+     * @param matchedId number of the circle that contains the location, a negative number if
+     *                  there is none
+     */
+    private void rank(int id, double latitude, double longitude, double cosLatitude,
+                      double velocityEast, double velocityNorth, int occupiedId, int matchedId)
+    {
+        if (rankedPredictions[id] == prediction || id == occupiedId)
+            return;
+        rankedPredictions[id] = prediction;
+
+        // The matched circle is entered as soon as the occupancy has been confirmed.
+        if (id == matchedId)
+        {
+            insert(id, 0);
+            return;
+        }
+
+        // Skip circles that contain the location or are too far away.
+        int spotIndex = circleIndex.getSpotIndex(id);
+        double east = (circleIndex.getSpotLongitude(spotIndex) - longitude) * cosLatitude
+                * DistanceEngine.EARTH_RADIUS;
+        double north = (circleIndex.getSpotLatitude(spotIndex) - latitude)
+                * DistanceEngine.EARTH_RADIUS;
+        double distance = Math.sqrt(east * east + north * north);
+        double gap = distance - Math.sqrt(circleIndex.getSquaredRadius(id));
+        if (gap <= 0 || gap > MAXIMUM_RANGE)
+            return;
+
+        // Divide the gap by the speed towards the circle's centre.
+        double approachingSpeed = (velocityEast * east + velocityNorth * north) / distance;
+        insert(id, gap / Math.max(approachingSpeed, MINIMUM_APPROACHING_SPEED));
+    }
+
+    /**
+     * Insert a circle into the ranking if it is among the most likely ones.
+     * @param id number of the circle
+     * @param score expected time until the circle is entered, in seconds
+     */
+    private void insert(int id, double score)
+    {
+        int position = count;
+        while (position > 0 && scores[position - 1] > score)
+            position--;
+        if (position >= MAXIMUM_CANDIDATES)
+            return;
+        int end = Math.min(count, MAXIMUM_CANDIDATES - 1);
+        System.arraycopy(ids, position, ids, position + 1, end - position);
+        System.arraycopy(scores, position, scores, position + 1, end - position);
+        ids[position] = id;
+        scores[position] = score;
+        if (count < MAXIMUM_CANDIDATES)
+            count++;
+    }
+
+    /**
+     * @return predicted circles, most likely first, followed by null; the array is reused by the
+     * next prediction
+     */
+    public Circle[] getCircles()
+    {
+        return circles;
+    }
+
+    /**
+     * @return number of predicted circles
+     */
+    public int getCount()
+    {
+        return count;
+    }
+}
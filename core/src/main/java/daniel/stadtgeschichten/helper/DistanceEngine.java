@@ -0,0 +1,48 @@
+package daniel.stadtgeschichten.helper;
+
+/**
+ * A distance engine measures distances between locations on the earth. Locations are passed in
+ * radians together with the cosine of their latitude, so callers can compute these values once
+ * per location instead of once per comparison. Distances are squared, so that no square root has
+ * to be drawn when comparing them against precomputed squared radii.
+ */
+public interface DistanceEngine
+{
+    /**
+     * Radius of the earth
+     */
+    double EARTH_RADIUS = 6371000.0; // meters
+
+    /**
+     * Length of one degree of latitude
+     */
+    double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180.0; // meters
+
+    /**
+     * Get the squared distance between two locations.
+     * @param latitude1 latitude of the first location, in radians
+     * @param longitude1 longitude of the first location, in radians
+     * @param cosLatitude1 cosine of the latitude of the first location
+     * @param latitude2 latitude of the second location, in radians
+     * @param longitude2 longitude of the second location, in radians
+     * @param cosLatitude2 cosine of the latitude of the second location
+     * @return squared distance, in square meters
+     */
+    double getSquaredDistance(double latitude1, double longitude1, double cosLatitude1,
+                              double latitude2, double longitude2, double cosLatitude2);
+
+    /**
+     * Check whether the first location is strictly in the circle around the second location.
+     * @param latitude1 latitude of the location, in radians
+     * @param longitude1 longitude of the location, in radians
+     * @param cosLatitude1 cosine of the latitude of the location
+     * @param latitude2 latitude of the circle's center, in radians
+     * @param longitude2 longitude of the circle's center, in radians
+     * @param cosLatitude2 cosine of the latitude of the circle's center
+     * @param squaredRadius squared radius of the circle, in square meters
+     * @return true if that is the case, false otherwise
+     */
+    boolean isInRadius(double latitude1, double longitude1, double cosLatitude1,
+                       double latitude2, double longitude2, double cosLatitude2,
+                       double squaredRadius);
+}
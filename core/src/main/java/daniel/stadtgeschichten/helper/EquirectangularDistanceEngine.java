@@ -0,0 +1,51 @@
+package daniel.stadtgeschichten.helper;
+
+/**
+ * This distance engine approximates distances by projecting both locations onto a plane
+ * (equirectangular projection). The approximation needs neither trigonometric functions nor square
+ * roots. When a location lies close to the border of a circle, the containment check falls back to
+ * the exact Haversine formula, so the result is the same as the one of
+ * {@link HaversineDistanceEngine}.
+ */
+public class EquirectangularDistanceEngine implements DistanceEngine
+{
+    /**
+     * Relative band around the squared radius in which the exact formula is used
+     */
+    private static final double BOUNDARY_TOLERANCE = 0.01;
+
+    /**
+     * Engine used close to circle borders
+     */
+    private final HaversineDistanceEngine exactEngine = new HaversineDistanceEngine();
+
+    @Override
+    public double getSquaredDistance(double latitude1, double longitude1, double cosLatitude1,
+                                     double latitude2, double longitude2, double cosLatitude2)
+    {
+        double dLng = longitude2 - longitude1;
+
+        // Take the shorter way around the antimeridian.
+        if (dLng > Math.PI)
+            dLng -= 2 * Math.PI;
+        else if (dLng < -Math.PI)
+            dLng += 2 * Math.PI;
+
+        double x = dLng * (cosLatitude1 + cosLatitude2) / 2;
+        double y = latitude2 - latitude1;
+        return EARTH_RADIUS * EARTH_RADIUS * (x * x + y * y);
+    }
+
+    @Override
+    public boolean isInRadius(double latitude1, double longitude1, double cosLatitude1,
+                              double latitude2, double longitude2, double cosLatitude2,
+                              double squaredRadius)
+    {
+        double squaredDistance = getSquaredDistance(latitude1, longitude1, cosLatitude1,
+                latitude2, longitude2, cosLatitude2);
+        if (Math.abs(squaredDistance - squaredRadius) > squaredRadius * BOUNDARY_TOLERANCE)
+            return squaredDistance < squaredRadius;
+        return exactEngine.isInRadius(latitude1, longitude1, cosLatitude1, latitude2, longitude2,
+                cosLatitude2, squaredRadius);
+    }
+}
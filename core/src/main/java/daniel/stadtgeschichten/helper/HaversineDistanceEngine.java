@@ -0,0 +1,27 @@
+package daniel.stadtgeschichten.helper;
+
+/**
+ * This distance engine computes exact great-circle distances using the Haversine formula.
+ */
+public class HaversineDistanceEngine implements DistanceEngine
+{
+    @Override
+    public double getSquaredDistance(double latitude1, double longitude1, double cosLatitude1,
+                                     double latitude2, double longitude2, double cosLatitude2)
+    {
+        double sindLat = Math.sin((latitude2 - latitude1) / 2);
+        double sindLng = Math.sin((longitude2 - longitude1) / 2);
+        double a = sindLat * sindLat + sindLng * sindLng * cosLatitude1 * cosLatitude2;
+        double distance = EARTH_RADIUS * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        return distance * distance;
+    }
+
+    @Override
+    public boolean isInRadius(double latitude1, double longitude1, double cosLatitude1,
+                              double latitude2, double longitude2, double cosLatitude2,
+                              double squaredRadius)
+    {
+        return getSquaredDistance(latitude1, longitude1, cosLatitude1, latitude2, longitude2,
+                cosLatitude2) < squaredRadius;
+    }
+}
@@ -0,0 +1,609 @@
+package daniel.stadtgeschichten.helper;
+
+import daniel.stadtgeschichten.model.Circle;
+import daniel.stadtgeschichten.model.Spot;
+
+/**
+ * This matcher holds the part of the location tracking that does not depend on Android: it
+ * smooths the location fixes, waits until they have stabilised, matches them against the circles
+ * of a story and reports entered, occupied and left circles as well as the circles that are most
+ * likely entered next. Fixes are passed in as plain numbers, so that recorded or synthetic traces
+ * can be replayed on any JVM.
+ */
+public class LocationMatcher
+{
+    /**
+     * Distance by which the safe margin is reduced to absorb the approximations of the distance
+     * engine, in meters
+     */
+    private static final double SAFE_MARGIN_TOLERANCE = 1.0;
+
+    /**
+     * Relative margin by which the distance covered by the cells is underestimated to absorb the
+     * curvature of the earth and rounding errors
+     */
+    private static final double CELL_LENGTH_MARGIN = 1.01;
+
+    /**
+     * Listener that is informed about the matched circles
+     */
+    private final OnMatchListener listener;
+
+    /**
+     * Detector deciding when the locations have stabilised after tracking has been started
+     */
+    private final WarmUpDetector warmUpDetector = new WarmUpDetector();
+
+    /**
+     * Filter smoothing the received locations and rejecting outliers
+     */
+    private final PositionFilter positionFilter = new PositionFilter();
+
+    /**
+     * Possible spots
+     */
+    private Spot[] spots = new Spot[0];
+
+    /**
+     * Spatial index over the circles of the possible spots
+     */
+    private CircleGridIndex circleIndex = new CircleGridIndex(spots);
+
+    /**
+     * Tracker turning the matched circles into enter, dwell and exit events
+     */
+    private final CircleOccupancyTracker occupancyTracker;
+
+    /**
+     * Predictor of the circles that are most likely entered next
+     */
+    private final CirclePredictor circlePredictor = new CirclePredictor(circleIndex);
+
+    /**
+     * Distance engine used to compare locations
+     */
+    private DistanceEngine distanceEngine = new EquirectangularDistanceEngine();
+
+    /**
+     * Latitude of the location of the last full match, in radians
+     */
+    private double matchedLatitude;
+
+    /**
+     * Longitude of the location of the last full match, in radians
+     */
+    private double matchedLongitude;
+
+    /**
+     * Cosine of the latitude of the location of the last full match
+     */
+    private double matchedCosLatitude;
+
+    /**
+     * Cell of the location of the last full match
+     */
+    private int matchedCell;
+
+    /**
+     * Result of the last full match
+     */
+    private int matchedId = -1;
+
+    /**
+     * Distance from the location of the last full match to the closest circle border in its cell,
+     * in meters, negative if there is no valid match to reuse
+     */
+    private double safeMargin = -1;
+
+    /**
+     * Distance from the location of the last full match to the closest circle border, in meters
+     */
+    private double matchedBorderDistance;
+
+    /**
+     * Distance from the last matched location to the closest circle border, in meters, at least
+     */
+    private double borderDistance = Double.POSITIVE_INFINITY;
+
+    /**
+     * Distance beyond the accuracy of the location up to which the closest circle border is
+     * searched, in meters; further borders are only known to be at least this far away
+     */
+    private double maximumBorderDistance = Double.POSITIVE_INFINITY;
+
+    /**
+     * True if the listener has been informed about the first location, false otherwise
+     */
+    private boolean isFirstLocationReported = false;
+
+    /**
+     * Number of matches requested since the counters have been reset
+     */
+    private long matchCount;
+
+    /**
+     * Number of matches answered by reusing the last full match since the counters have been reset
+     */
+    private long reusedMatchCount;
+
+    /**
+     * Number of locations rejected by the position filter since the counters have been reset
+     */
+    private long rejectedLocationCount;
+
+    /**
+     * Listener interface to implement by callee
+     */
+    public interface OnMatchListener extends CircleOccupancyTracker.OnOccupancyListener
+    {
+        /**
+         * Called when the first location is matched.
+         */
+        void onFirstLocation();
+
+        /**
+         * Called when the circles that are most likely entered next have changed.
+         * @param circles predicted circles, most likely first; the array is reused
+         * @param count number of predicted circles
+         */
+        void onCirclesPredicted(Circle[] circles, int count);
+    }
+
+    public LocationMatcher(OnMatchListener listener)
+    {
+        this.listener = listener;
+        occupancyTracker = new CircleOccupancyTracker(circleIndex, listener);
+    }
+
+    /**
+     * Set the possible spots and index their circles.
+     * @param spots possible spots
+     */
+    public void setSpots(Spot[] spots)
+    {
+        this.spots = spots;
+        circleIndex = new CircleGridIndex(spots);
+        occupancyTracker.setCircleIndex(circleIndex);
+        circlePredictor.setCircleIndex(circleIndex);
+        matchedId = -1;
+        safeMargin = -1;
+        borderDistance = Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Pass a location fix through the position filter.
+     * @param latitude latitude of the fix, in degrees
+     * @param longitude longitude of the fix, in degrees
+     * @param accuracy accuracy of the fix, in meters, 0 if unknown
+     * @param speed reported speed, in meters per second, NaN if unknown
+     * @param time time of the fix, in milliseconds
+     * @return true if the fix has been accepted, false if it has been rejected
+     */
+    public boolean filter(double latitude, double longitude, double accuracy, double speed,
+                          long time)
+    {
+        if (positionFilter.update(latitude, longitude, accuracy, speed, time))
+            return true;
+        rejectedLocationCount++;
+        return false;
+    }
+
+    /**
+     * Check whether the locations have stabilised, including the provided fix.
+     * @param latitude latitude of the fix, in degrees
+     * @param longitude longitude of the fix, in degrees
+     * @param accuracy accuracy of the fix, in meters, 0 if unknown
+     * @param time time of the fix, in milliseconds
+     * @param isAccepted true if the fix has been accepted by the position filter, false otherwise
+     * @return true if that is the case, false otherwise
+     */
+    public boolean isWarmedUp(double latitude, double longitude, double accuracy, long time,
+                              boolean isAccepted)
+    {
+        if (warmUpDetector.isStable())
+            return true;
+
+        // An outlier shows that the locations have not stabilised yet.
+        if (!isAccepted)
+        {
+            warmUpDetector.discardFixes();
+            return false;
+        }
+        return warmUpDetector.update(latitude, longitude, accuracy, time);
+    }
+
+    /**
+     * @return true if the locations have stabilised, false otherwise
+     */
+    public boolean isWarmedUp()
+    {
+        return warmUpDetector.isStable();
+    }
+
+    /**
+     * @return true if the position filter has accepted a location, false otherwise
+     */
+    public boolean hasFilteredLocation()
+    {
+        return positionFilter.isInitialized();
+    }
+
+    /**
+     * Match the filtered location and inform the listener about the first location, the entered,
+     * occupied and left circles, and the circles that are most likely entered next.
+     * @param time current time, in milliseconds
+     */
+    public void match(long time)
+    {
+        // Inform listener about first location that is taken into account.
+        if (!isFirstLocationReported)
+        {
+            isFirstLocationReported = true;
+            listener.onFirstLocation();
+        }
+
+        // Inform the listener about entered, occupied and left circles.
+        double latitude = Math.toRadians(positionFilter.getLatitude());
+        double longitude = Math.toRadians(positionFilter.getLongitude());
+        double cosLatitude = Math.cos(latitude);
+        int id = getMatchedCircleId(latitude, longitude, cosLatitude);
+        occupancyTracker.update(id, latitude, longitude, cosLatitude, time);
+
+        // Inform the listener about the circles that are most likely entered next.
+        if (circlePredictor.predict(latitude, longitude, cosLatitude,
+                positionFilter.getVelocityEast(), positionFilter.getVelocityNorth(),
+                occupancyTracker.getCurrentId(), id))
+            listener.onCirclesPredicted(circlePredictor.getCircles(), circlePredictor.getCount());
+    }
+
+    /**
+     * Get the number of the smallest circle that contains the filtered location. The last full
+     * match is reused if the location has stayed in its cell and cannot have crossed any circle
+     * border, even at the far side of its accuracy radius.
+     * @param latitude latitude of the location, in radians
+     * @param longitude longitude of the location, in radians
+     * @param cosLatitude cosine of the latitude of the location
+     * @return number of the matched circle in the circle index, -1 if there has been no match
+     */
+    private int getMatchedCircleId(double latitude, double longitude, double cosLatitude)
+    {
+        matchCount++;
+        int cell = circleIndex.getCell(positionFilter.getLatitude(), positionFilter.getLongitude());
+        if (safeMargin >= 0 && cell == matchedCell)
+        {
+            double margin = safeMargin - positionFilter.getAccuracy();
+            double squaredDistance = distanceEngine.getSquaredDistance(latitude, longitude,
+                    cosLatitude, matchedLatitude, matchedLongitude, matchedCosLatitude);
+            if (margin > 0 && squaredDistance < margin * margin)
+            {
+                reusedMatchCount++;
+                borderDistance = matchedBorderDistance - Math.sqrt(squaredDistance);
+                return matchedId;
+            }
+        }
+
+        // Match the location and remember how far it may move without changing the result.
+        matchedId = matchCircle(cell, latitude, longitude, cosLatitude);
+        matchedCell = cell;
+        matchedLatitude = latitude;
+        matchedLongitude = longitude;
+        matchedCosLatitude = cosLatitude;
+        safeMargin = getBorderDistance(cell, latitude, longitude, cosLatitude)
+                - SAFE_MARGIN_TOLERANCE;
+        matchedBorderDistance = getBorderDistance(latitude, longitude, cosLatitude);
+        borderDistance = matchedBorderDistance;
+        return matchedId;
+    }
+
+    /**
+     * Get the number of the smallest circle that contains the filtered location. Only the
+     * circles whose bounding box contains the location are checked.
+     * @param cell cell of the location
+     * @param latitude latitude of the location, in radians
+     * @param longitude longitude of the location, in radians
+     * @param cosLatitude cosine of the latitude of the location
+     * @return number of the matched circle in the circle index, -1 if there has been no match
+     */
+    private int matchCircle(int cell, double latitude, double longitude, double cosLatitude)
+    {
+        Circle result = null;
+        int resultId = -1;
+        if (cell >= 0)
+        {
+            int matchedSpotIndex = -1;
+            for (int i = circleIndex.getCellStart(cell); i < circleIndex.getCellEnd(cell); i++)
+            {
+                int id = circleIndex.getEntry(i);
+                int spotIndex = circleIndex.getSpotIndex(id);
+
+                // As the circles of a spot are ordered, the smallest one will always be taken.
+                if (spotIndex == matchedSpotIndex
+                        || !circleIndex.isInBoundingBox(id, positionFilter.getLatitude(),
+                        positionFilter.getLongitude()))
+                    continue;
+
+                Circle circle = circleIndex.getCircle(id);
+                if (distanceEngine.isInRadius(latitude, longitude, cosLatitude,
+                        circleIndex.getSpotLatitude(spotIndex),
+                        circleIndex.getSpotLongitude(spotIndex),
+                        circleIndex.getSpotCosLatitude(spotIndex),
+                        circleIndex.getSquaredRadius(id)))
+                {
+                    matchedSpotIndex = spotIndex;
+
+                    // Check if there is an smaller circle of one spot that may be overlapped by a
+                    // bigger circle of another spot.
+                    if (result == null || circle.getRadius() <= result.getRadius())
+                    {
+                        result = circle;
+                        resultId = id;
+                    }
+                }
+            }
+        }
+        return resultId;
+    }
+
+    /**
+     * Get the distance from the provided location to the closest border of the circles in the
+     * given cell. Circles of other cells cannot contain any location of this cell.
+     * @param cell cell, -1 if the location is not covered by any bounding box
+     * @param latitude latitude of the location, in radians
+     * @param longitude longitude of the location, in radians
+     * @param cosLatitude cosine of the latitude of the location
+     * @return distance, in meters, infinity if the cell has no circles
+     */
+    private double getBorderDistance(int cell, double latitude, double longitude,
+                                     double cosLatitude)
+    {
+        double result = Double.POSITIVE_INFINITY;
+        if (cell >= 0)
+            for (int i = circleIndex.getCellStart(cell); i < circleIndex.getCellEnd(cell); i++)
+                result = Math.min(result, getCircleBorderDistance(circleIndex.getEntry(i),
+                        latitude, longitude, cosLatitude));
+        return result;
+    }
+
+    /**
+     * Get the distance from the provided location to the closest border of all circles. The cells
+     * are searched in rings around the cell of the location. A circle that has not been found in
+     * the rings searched so far lies outside of them, so the search stops as soon as the rings
+     * reach further than the closest border found or than the maximum border distance.
+     * @param latitude latitude of the location, in radians
+     * @param longitude longitude of the location, in radians
+     * @param cosLatitude cosine of the latitude of the location
+     * @return distance, in meters, at least; infinity if there are no circles
+     */
+    private double getBorderDistance(double latitude, double longitude, double cosLatitude)
+    {
+        double result = Double.POSITIVE_INFINITY;
+        int rows = circleIndex.getRowCount();
+        int columns = circleIndex.getColumnCount();
+        if (circleIndex.getCircleCount() == 0)
+            return result;
+
+        // Start with the first ring that overlaps the grid and stop with the one covering it.
+        int row = circleIndex.getRow(positionFilter.getLatitude());
+        int column = circleIndex.getColumn(positionFilter.getLongitude());
+        int firstRing = Math.max(Math.max(-row, row - rows + 1),
+                Math.max(-column, column - columns + 1));
+        int lastRing = Math.max(Math.max(row, rows - 1 - row),
+                Math.max(column, columns - 1 - column));
+        double cellLength = circleIndex.getCellSize() * DistanceEngine.METERS_PER_DEGREE
+                * cosLatitude / CELL_LENGTH_MARGIN;
+        double limit = maximumBorderDistance + positionFilter.getAccuracy();
+        for (int ring = Math.max(0, firstRing); ring <= lastRing; ring++)
+        {
+            // The rings searched so far reach at least this far from the location.
+            double reach = (ring - 1) * cellLength;
+            if (reach >= result || reach >= limit)
+                return Math.min(result, reach);
+
+            for (int r = Math.max(0, row - ring); r <= Math.min(rows - 1, row + ring); r++)
+            {
+                // Take all cells of the first and the last row of the ring, and the first and
+                // the last cell of the rows in between.
+                boolean isEdgeRow = r == row - ring || r == row + ring;
+                int step = isEdgeRow ? 1 : 2 * ring;
+                int c = isEdgeRow ? Math.max(0, column - ring) : column - ring;
+                int lastColumn = isEdgeRow ? Math.min(columns - 1, column + ring) : column + ring;
+                for (; c <= lastColumn; c += step)
+                {
+                    int cell = circleIndex.getCell(r, c);
+                    if (cell >= 0)
+                        result = Math.min(result, getBorderDistance(cell, latitude, longitude,
+                                cosLatitude));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the distance from the provided location to the border of the circle with the given
+     * number.
+     * @param id number of the circle in the circle index
+     * @param latitude latitude of the location, in radians
+     * @param longitude longitude of the location, in radians
+     * @param cosLatitude cosine of the latitude of the location
+     * @return distance, in meters
+     */
+    private double getCircleBorderDistance(int id, double latitude, double longitude,
+                                           double cosLatitude)
+    {
+        int spotIndex = circleIndex.getSpotIndex(id);
+        double distance = Math.sqrt(distanceEngine.getSquaredDistance(latitude, longitude,
+                cosLatitude, circleIndex.getSpotLatitude(spotIndex),
+                circleIndex.getSpotLongitude(spotIndex),
+                circleIndex.getSpotCosLatitude(spotIndex)));
+        return Math.abs(distance - Math.sqrt(circleIndex.getSquaredRadius(id)));
+    }
+
+    /**
+     * Get the spot closest to the given location.
+     * @param latitude latitude of the location, in degrees
+     * @param longitude longitude of the location, in degrees
+     * @return closest spot, null if there are no spots
+     */
+    public Spot getClosestSpot(double latitude, double longitude)
+    {
+        Spot nearestSpot = null;
+        double minSquaredDistance = Double.MAX_VALUE;
+        latitude = Math.toRadians(latitude);
+        longitude = Math.toRadians(longitude);
+        double cosLatitude = Math.cos(latitude);
+        for (int i = 0; i < spots.length; i++)
+        {
+            double currentSquaredDistance = distanceEngine.getSquaredDistance(
+                    circleIndex.getSpotLatitude(i), circleIndex.getSpotLongitude(i),
+                    circleIndex.getSpotCosLatitude(i), latitude, longitude, cosLatitude);
+            if (currentSquaredDistance < minSquaredDistance)
+            {
+                nearestSpot = spots[i];
+                minSquaredDistance = currentSquaredDistance;
+            }
+        }
+        return nearestSpot;
+    }
+
+    /**
+     * @return smallest circle that contains the last matched location, null if there is none
+     */
+    public Circle getMatchedCircle()
+    {
+        return matchedId < 0 ? null : circleIndex.getCircle(matchedId);
+    }
+
+    /**
+     * @return distance from the last matched location to the closest circle border, in meters,
+     * at least; infinity if no location has been matched
+     */
+    public double getBorderDistance()
+    {
+        return borderDistance;
+    }
+
+    /**
+     * @return accuracy of the filtered location, in meters
+     */
+    public double getAccuracy()
+    {
+        return positionFilter.getAccuracy();
+    }
+
+    /**
+     * @return speed at the filtered location, in meters per second
+     */
+    public double getSpeed()
+    {
+        return positionFilter.getSpeed();
+    }
+
+    /**
+     * @return number of matches requested since the counters have been reset
+     */
+    public long getMatchCount()
+    {
+        return matchCount;
+    }
+
+    /**
+     * @return number of matches answered by reusing the last full match since the counters have
+     * been reset
+     */
+    public long getReusedMatchCount()
+    {
+        return reusedMatchCount;
+    }
+
+    /**
+     * @return number of locations rejected by the position filter since the counters have been
+     * reset
+     */
+    public long getRejectedLocationCount()
+    {
+        return rejectedLocationCount;
+    }
+
+    /**
+     * @return time from the first location to the location that has stabilised the position, in
+     * milliseconds, -1 if the position has not stabilised yet
+     */
+    public long getWarmUpTime()
+    {
+        return warmUpDetector.getWarmUpTime();
+    }
+
+    /**
+     * Reset the match counters.
+     */
+    public void resetMatchCounters()
+    {
+        matchCount = 0;
+        reusedMatchCount = 0;
+        rejectedLocationCount = 0;
+    }
+
+    /**
+     * Set the distance engine used to compare locations.
+     * @param distanceEngine distance engine
+     */
+    public void setDistanceEngine(DistanceEngine distanceEngine)
+    {
+        this.distanceEngine = distanceEngine;
+        occupancyTracker.setDistanceEngine(distanceEngine);
+        safeMargin = -1;
+    }
+
+    /**
+     * Switch the position filter on or off, e.g. to compare the circles matched with raw and with
+     * filtered locations.
+     * @param isFiltering true if locations are smoothed and outliers are rejected, false if every
+     *                    location is matched as it is
+     */
+    public void setFiltering(boolean isFiltering)
+    {
+        positionFilter.setFiltering(isFiltering);
+    }
+
+    /**
+     * Set when the position filter rejects locations.
+     * @param maximumAccuracy accuracy above which locations are rejected, in meters
+     * @param maximumSpeed reported speed above which locations are rejected, in meters per second
+     * @param gate squared Mahalanobis distance from the predicted position above which locations
+     *             are rejected
+     * @param maximumRejections number of consecutive rejected locations after which the filter
+     *                          starts over
+     */
+    public void setOutlierRejection(double maximumAccuracy, double maximumSpeed, double gate,
+                                    int maximumRejections)
+    {
+        positionFilter.setOutlierRejection(maximumAccuracy, maximumSpeed, gate,
+                maximumRejections);
+    }
+
+    /**
+     * Set how far the closest circle border is searched. Borders further away are reported to be
+     * at least this far away, which keeps full matches from searching the whole grid while the
+     * distance does not matter anymore.
+     * @param maximumBorderDistance distance beyond the accuracy of the location, in meters
+     */
+    public void setMaximumBorderDistance(double maximumBorderDistance)
+    {
+        this.maximumBorderDistance = maximumBorderDistance;
+    }
+
+    /**
+     * Set the hysteresis margin and the debounce of the circle occupancy.
+     * @param hysteresisMargin margin by which the radius of the occupied circle is enlarged
+     *                         before the circle is left, in meters
+     * @param debounceFixes number of consecutive fixes confirming a transition
+     * @param debounceTime time span confirming a transition, in milliseconds
+     */
+    public void setOccupancyParameters(double hysteresisMargin, int debounceFixes,
+                                       long debounceTime)
+    {
+        occupancyTracker.setHysteresisMargin(hysteresisMargin);
+        occupancyTracker.setDebounce(debounceFixes, debounceTime);
+    }
+}
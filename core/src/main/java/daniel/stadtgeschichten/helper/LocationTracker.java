@@ -0,0 +1,273 @@
+package daniel.stadtgeschichten.helper;
+
+/**
+ * This tracker decides what happens to every location fix: it passes the fix through the
+ * location matcher, waits for the locations to warm up, keeps them without matching while the
+ * processing is suspended and adapts the rate of location updates to the distance to the closest
+ * circle border. Where the fixes come from is left to a {@link LocationSource}, so that the
+ * location helper and the trace replayer share the same behaviour.
+ */
+public class LocationTracker
+{
+    /**
+     * Suspension mode in which no locations are requested
+     */
+    public static final int SUSPEND_PAUSE = 0;
+
+    /**
+     * Suspension mode in which locations are requested at a low rate, but not matched
+     */
+    public static final int SUSPEND_KEEP_WARM = 1;
+
+    /**
+     * Outcome of a fix that has been ignored, since the locations are still warming up
+     */
+    public static final int FIX_WARMING_UP = 0;
+
+    /**
+     * Outcome of a fix that has been kept without matching, since the processing is suspended
+     */
+    public static final int FIX_SUSPENDED = 1;
+
+    /**
+     * Outcome of a fix that has been rejected by the position filter
+     */
+    public static final int FIX_REJECTED = 2;
+
+    /**
+     * Outcome of a fix that has been matched
+     */
+    public static final int FIX_MATCHED = 3;
+
+    /**
+     * Number used when location processing is not suspended
+     */
+    private static final int NOT_SUSPENDED = -1;
+
+    /**
+     * Source of the location fixes
+     */
+    private final LocationSource source;
+
+    /**
+     * Scheduler telling the time of the matched locations
+     */
+    private final Scheduler scheduler;
+
+    /**
+     * Matcher turning the fixes into circle events
+     */
+    private final LocationMatcher matcher;
+
+    /**
+     * Policy choosing the interval and minimum distance between location updates
+     */
+    private final SamplingPolicy samplingPolicy = new SamplingPolicy();
+
+    /**
+     * True if location updates are requested, false otherwise
+     */
+    private boolean isTracking = false;
+
+    /**
+     * Current suspension mode, NOT_SUSPENDED if locations are processed
+     */
+    private int suspendMode = NOT_SUSPENDED;
+
+    /**
+     * Source interface to implement by callee
+     */
+    public interface LocationSource
+    {
+        /**
+         * Called to request location updates, replacing any previous request.
+         * @param interval interval between updates, in milliseconds
+         * @param minimumDistance distance between updates, in meters
+         */
+        void requestUpdates(long interval, float minimumDistance);
+
+        /**
+         * Called to stop location updates.
+         */
+        void removeUpdates();
+
+        /**
+         * Called when the processing is resumed. The freshest fix that has not been delivered yet,
+         * if there is one, is to be passed to {@link LocationTracker#filter}.
+         */
+        void deliverFreshestFix();
+    }
+
+    /**
+     * Initialize a LocationTracker object.
+     * @param source source of the location fixes
+     * @param scheduler scheduler telling the time of the matched locations
+     * @param listener listener that is informed about the matched circles
+     */
+    public LocationTracker(LocationSource source, Scheduler scheduler,
+                           LocationMatcher.OnMatchListener listener)
+    {
+        this.source = source;
+        this.scheduler = scheduler;
+        matcher = new LocationMatcher(listener);
+    }
+
+    /**
+     * @return matcher, which may be configured
+     */
+    public LocationMatcher getMatcher()
+    {
+        return matcher;
+    }
+
+    /**
+     * @return policy choosing the interval and minimum distance between location updates
+     */
+    public SamplingPolicy getSamplingPolicy()
+    {
+        return samplingPolicy;
+    }
+
+    /**
+     * Start requesting location updates at the fastest rate, since the listener may have moved in
+     * the meantime.
+     */
+    public void start()
+    {
+        samplingPolicy.reset();
+        isTracking = true;
+        requestUpdates();
+    }
+
+    /**
+     * Stop requesting location updates.
+     */
+    public void stop()
+    {
+        source.removeUpdates();
+        isTracking = false;
+    }
+
+    /**
+     * Process a location fix delivered by the source.
+     * @param latitude latitude of the fix, in degrees
+     * @param longitude longitude of the fix, in degrees
+     * @param accuracy accuracy of the fix, in meters, 0 if unknown
+     * @param speed reported speed, in meters per second, NaN if unknown
+     * @param time time of the fix, in milliseconds
+     * @return outcome of the fix, one of the FIX constants
+     */
+    public int onFix(double latitude, double longitude, double accuracy, double speed, long time)
+    {
+        boolean isAccepted = filter(latitude, longitude, accuracy, speed, time);
+        if (!matcher.isWarmedUp(latitude, longitude, accuracy, time, isAccepted))
+            return FIX_WARMING_UP;
+        if (suspendMode != NOT_SUSPENDED)
+            return FIX_SUSPENDED;
+        if (!isAccepted)
+            return FIX_REJECTED;
+        processLocation();
+        return FIX_MATCHED;
+    }
+
+    /**
+     * Pass a location fix through the position filter without matching it.
+     * @param latitude latitude of the fix, in degrees
+     * @param longitude longitude of the fix, in degrees
+     * @param accuracy accuracy of the fix, in meters, 0 if unknown
+     * @param speed reported speed, in meters per second, NaN if unknown
+     * @param time time of the fix, in milliseconds
+     * @return true if the fix has been accepted, false if it has been rejected
+     */
+    public boolean filter(double latitude, double longitude, double accuracy, double speed,
+                          long time)
+    {
+        return matcher.filter(latitude, longitude, accuracy, speed, time);
+    }
+
+    /**
+     * Match the filtered location and adapt the rate of location updates.
+     */
+    private void processLocation()
+    {
+        matcher.match(scheduler.getTime());
+
+        // Adapt the rate of location updates to the distance to the closest border, which only
+        // has to be searched as far as it can change the rate.
+        boolean isLevelChanged = samplingPolicy.update(
+                matcher.getBorderDistance() - matcher.getAccuracy(), matcher.getSpeed());
+        matcher.setMaximumBorderDistance(samplingPolicy.getMaximumUsefulDistance());
+        if (isLevelChanged && isTracking)
+            requestUpdates();
+    }
+
+    /**
+     * Request location updates at the rate chosen by the sampling policy, or by the suspension
+     * mode.
+     */
+    private void requestUpdates()
+    {
+        if (suspendMode == SUSPEND_PAUSE)
+            source.removeUpdates();
+        else if (suspendMode == SUSPEND_KEEP_WARM)
+            source.requestUpdates(SamplingPolicy.KEEP_WARM_INTERVAL, 0);
+        else
+            source.requestUpdates(samplingPolicy.getInterval(),
+                    samplingPolicy.getMinimumDistance());
+    }
+
+    /**
+     * Stop matching locations, for example while audio is playing, until
+     * {@link LocationTracker#resume()} is called.
+     * @param mode SUSPEND_PAUSE to stop requesting locations, SUSPEND_KEEP_WARM to request them
+     *             at a low rate
+     * @return true if the suspension mode has changed, false otherwise
+     */
+    public boolean suspend(int mode)
+    {
+        if (suspendMode == mode)
+            return false;
+        suspendMode = mode;
+        if (isTracking)
+            requestUpdates();
+        return true;
+    }
+
+    /**
+     * Resume matching locations. The freshest fix is processed at once, and locations are
+     * requested at the fastest rate again, since the listener may have moved in the meantime.
+     * @return true if the processing has been suspended, false otherwise
+     */
+    public boolean resume()
+    {
+        if (suspendMode == NOT_SUSPENDED)
+            return false;
+        suspendMode = NOT_SUSPENDED;
+        if (!isTracking)
+            return true;
+        samplingPolicy.reset();
+
+        // Re-evaluate the freshest location instead of waiting for the next update.
+        source.deliverFreshestFix();
+        requestUpdates();
+        if (matcher.hasFilteredLocation() && matcher.isWarmedUp())
+            processLocation();
+        return true;
+    }
+
+    /**
+     * @return true if location updates are requested, false otherwise
+     */
+    public boolean isTracking()
+    {
+        return isTracking;
+    }
+
+    /**
+     * @return true if location processing is suspended, false otherwise
+     */
+    public boolean isSuspended()
+    {
+        return suspendMode != NOT_SUSPENDED;
+    }
+}
@@ -0,0 +1,407 @@
+package daniel.stadtgeschichten.helper;
+
+/**
+ * This Kalman filter smooths a stream of location fixes before they are matched against circles.
+ * Positions are tracked in meters on a plane tangent to the earth at a reference location, with a
+ * constant velocity model on both axes. Since the accuracy of a fix is the same in both directions,
+ * both axes share one covariance matrix, so every fix is processed in constant time without any
+ * allocation. Fixes that are too inaccurate, report an implausible speed or lie too far from the
+ * predicted position are rejected. If too many fixes in a row are rejected, the listener has most
+ * likely really moved that far, so the filter starts over at the next acceptable fix. The
+ * filtering can be switched off to compare the raw fixes with the filtered ones.
+ */
+public class PositionFilter
+{
+    /**
+     * Default accuracy above which fixes are rejected, in meters
+     */
+    public static final double DEFAULT_MAXIMUM_ACCURACY = 50.0;
+
+    /**
+     * Default speed above which fixes are rejected, in meters per second
+     */
+    public static final double DEFAULT_MAXIMUM_SPEED = 15.0;
+
+    /**
+     * Default squared Mahalanobis distance from the predicted position above which fixes are
+     * rejected, which is the 99.9% quantile of the chi-squared distribution with two degrees of
+     * freedom
+     */
+    public static final double DEFAULT_GATE = 13.8;
+
+    /**
+     * Default number of consecutive rejected fixes after which the filter starts over
+     */
+    public static final int DEFAULT_MAXIMUM_REJECTIONS = 5;
+
+    /**
+     * Default standard deviation of the acceleration, in meters per square second
+     */
+    public static final double DEFAULT_ACCELERATION = 1.0;
+
+    /**
+     * Accuracy assumed for fixes without accuracy, in meters
+     */
+    private static final double UNKNOWN_ACCURACY = 20.0;
+
+    /**
+     * Standard deviation of the velocity when the filter starts, in meters per second
+     */
+    private static final double INITIAL_SPEED_DEVIATION = 2.0;
+
+    /**
+     * Distance from the reference location after which the plane is moved, in meters
+     */
+    private static final double MAXIMUM_REFERENCE_DISTANCE = 1000.0;
+
+    /**
+     * Accuracy above which fixes are rejected, in meters
+     */
+    private double maximumAccuracy = DEFAULT_MAXIMUM_ACCURACY;
+
+    /**
+     * Speed above which fixes are rejected, in meters per second
+     */
+    private double maximumSpeed = DEFAULT_MAXIMUM_SPEED;
+
+    /**
+     * Squared Mahalanobis distance above which fixes are rejected
+     */
+    private double gate = DEFAULT_GATE;
+
+    /**
+     * Number of consecutive rejected fixes after which the filter starts over
+     */
+    private int maximumRejections = DEFAULT_MAXIMUM_REJECTIONS;
+
+    /**
+     * Variance of the acceleration, in square meters per second to the fourth
+     */
+    private double accelerationVariance = DEFAULT_ACCELERATION * DEFAULT_ACCELERATION;
+
+    /**
+     * True if fixes are smoothed and outliers are rejected, false if every fix is taken as it is
+     */
+    private boolean isFiltering = true;
+
+    /**
+     * True if the filter has a position, false otherwise
+     */
+    private boolean isInitialized = false;
+
+    /**
+     * Number of consecutive rejected fixes
+     */
+    private int rejections;
+
+    /**
+     * Latitude of the reference location, in degrees
+     */
+    private double referenceLatitude;
+
+    /**
+     * Longitude of the reference location, in degrees
+     */
+    private double referenceLongitude;
+
+    /**
+     * Length of one degree of longitude at the reference location, in meters
+     */
+    private double metersPerLongitudeDegree;
+
+    /**
+     * Time of the last accepted fix, in milliseconds
+     */
+    private long time;
+
+    /**
+     * Position east of the reference location, in meters
+     */
+    private double x;
+
+    /**
+     * Position north of the reference location, in meters
+     */
+    private double y;
+
+    /**
+     * Velocity towards the east, in meters per second
+     */
+    private double velocityX;
+
+    /**
+     * Velocity towards the north, in meters per second
+     */
+    private double velocityY;
+
+    /**
+     * Variance of the position on each axis
+     */
+    private double positionVariance;
+
+    /**
+     * Covariance of position and velocity on each axis
+     */
+    private double covariance;
+
+    /**
+     * Variance of the velocity on each axis
+     */
+    private double velocityVariance;
+
+    /**
+     * Forget the position, so that the next acceptable fix is taken as it is.
+     */
+    public void reset()
+    {
+        isInitialized = false;
+        rejections = 0;
+    }
+
+    /**
+     * Set when fixes are rejected.
+     * @param maximumAccuracy accuracy above which fixes are rejected, in meters
+     * @param maximumSpeed reported speed above which fixes are rejected, in meters per second
+     * @param gate squared Mahalanobis distance from the predicted position above which fixes are
+     *             rejected
+     * @param maximumRejections number of consecutive rejected fixes after which the filter
+     *                          starts over
+     */
+    public void setOutlierRejection(double maximumAccuracy, double maximumSpeed, double gate,
+                                    int maximumRejections)
+    {
+        this.maximumAccuracy = maximumAccuracy;
+        this.maximumSpeed = maximumSpeed;
+        this.gate = gate;
+        this.maximumRejections = maximumRejections;
+    }
+
+    /**
+     * Set how quickly the listener is expected to change the velocity.
+     * @param acceleration standard deviation of the acceleration, in meters per square second
+     */
+    public void setAcceleration(double acceleration)
+    {
+        accelerationVariance = acceleration * acceleration;
+    }
+
+    /**
+     * Switch the filtering on or off. The filter starts over at the next fix.
+     * @param isFiltering true if fixes are smoothed and outliers are rejected, false if every fix
+     *                    is taken as it is
+     */
+    public void setFiltering(boolean isFiltering)
+    {
+        this.isFiltering = isFiltering;
+        reset();
+    }
+
+    /**
+     * Process a fix.
+     * @param latitude latitude of the fix, in degrees
+     * @param longitude longitude of the fix, in degrees
+     * @param accuracy accuracy of the fix, in meters, 0 if unknown
+     * @param speed reported speed, in meters per second, NaN if unknown
+     * @param time time of the fix, in milliseconds
+     * @return true if the fix has been accepted, false if it has been rejected
+     */
+    public boolean update(double latitude, double longitude, double accuracy, double speed,
+                          long time)
+    {
+        if (accuracy <= 0)
+            accuracy = UNKNOWN_ACCURACY;
+        if (!isFiltering)
+        {
+            takeRaw(latitude, longitude, accuracy * accuracy, time);
+            return true;
+        }
+
+        // Reject fixes that are inaccurate, implausibly fast or not newer than the last one.
+        if (accuracy > maximumAccuracy || speed > maximumSpeed
+                || (isInitialized && time <= this.time))
+            return reject();
+
+        // Start over at the fix.
+        double variance = accuracy * accuracy;
+        if (!isInitialized)
+        {
+            initialize(latitude, longitude, variance, time);
+            return true;
+        }
+
+        // Predict the position at the time of the fix.
+        double dt = (time - this.time) / 1000.0;
+        double predictedX = x + velocityX * dt;
+        double predictedY = y + velocityY * dt;
+        double dt2 = dt * dt;
+        double predictedPositionVariance = positionVariance
+                + dt * (2 * covariance + dt * velocityVariance)
+                + accelerationVariance * dt2 * dt2 / 4;
+        double predictedCovariance = covariance + dt * velocityVariance
+                + accelerationVariance * dt2 * dt / 2;
+        double predictedVelocityVariance = velocityVariance + accelerationVariance * dt2;
+
+        // Reject fixes that are too far from the predicted position.
+        double innovationX = (longitude - referenceLongitude) * metersPerLongitudeDegree
+                - predictedX;
+        double innovationY = (latitude - referenceLatitude) * DistanceEngine.METERS_PER_DEGREE
+                - predictedY;
+        double innovationVariance = predictedPositionVariance + variance;
+        if ((innovationX * innovationX + innovationY * innovationY) / innovationVariance > gate)
+        {
+            if (rejections + 1 < maximumRejections)
+                return reject();
+            initialize(latitude, longitude, variance, time);
+            return true;
+        }
+
+        // Correct the prediction.
+        double positionGain = predictedPositionVariance / innovationVariance;
+        double velocityGain = predictedCovariance / innovationVariance;
+        x = predictedX + positionGain * innovationX;
+        y = predictedY + positionGain * innovationY;
+        velocityX += velocityGain * innovationX;
+        velocityY += velocityGain * innovationY;
+        positionVariance = (1 - positionGain) * predictedPositionVariance;
+        covariance = (1 - positionGain) * predictedCovariance;
+        velocityVariance = predictedVelocityVariance - velocityGain * predictedCovariance;
+        this.time = time;
+        rejections = 0;
+
+        // Keep the plane close to the position.
+        if (Math.abs(x) > MAXIMUM_REFERENCE_DISTANCE || Math.abs(y) > MAXIMUM_REFERENCE_DISTANCE)
+            setReference(getLatitude(), getLongitude());
+        return true;
+    }
+
+    /**
+     * Take the given fix as it is. The velocity is derived from the previous fix.
+     * @param latitude latitude of the fix, in degrees
+     * @param longitude longitude of the fix, in degrees
+     * @param variance variance of the fix, in square meters
+     * @param time time of the fix, in milliseconds
+     */
+    private void takeRaw(double latitude, double longitude, double variance, long time)
+    {
+        if (!isInitialized || time <= this.time)
+        {
+            initialize(latitude, longitude, variance, time);
+            return;
+        }
+        double dt = (time - this.time) / 1000.0;
+        velocityX = (longitude - referenceLongitude) * metersPerLongitudeDegree / dt;
+        velocityY = (latitude - referenceLatitude) * DistanceEngine.METERS_PER_DEGREE / dt;
+        setReference(latitude, longitude);
+        positionVariance = variance;
+        this.time = time;
+    }
+
+    /**
+     * Count a rejected fix.
+     * @return false
+     */
+    private boolean reject()
+    {
+        rejections++;
+        return false;
+    }
+
+    /**
+     * Start over at the given fix.
+     * @param latitude latitude of the fix, in degrees
+     * @param longitude longitude of the fix, in degrees
+     * @param variance variance of the fix, in square meters
+     * @param time time of the fix, in milliseconds
+     */
+    private void initialize(double latitude, double longitude, double variance, long time)
+    {
+        setReference(latitude, longitude);
+        velocityX = 0;
+        velocityY = 0;
+        positionVariance = variance;
+        covariance = 0;
+        velocityVariance = INITIAL_SPEED_DEVIATION * INITIAL_SPEED_DEVIATION;
+        this.time = time;
+        rejections = 0;
+        isInitialized = true;
+    }
+
+    /**
+     * Move the plane to the given reference location, keeping the position.
+     * @param latitude latitude of the reference location, in degrees
+     * @param longitude longitude of the reference location, in degrees
+     */
+    private void setReference(double latitude, double longitude)
+    {
+        referenceLatitude = latitude;
+        referenceLongitude = longitude;
+        metersPerLongitudeDegree = DistanceEngine.METERS_PER_DEGREE
+                * Math.cos(Math.toRadians(latitude));
+        x = 0;
+        y = 0;
+    }
+
+    /**
+     * @return true if the filter has a position, false otherwise
+     */
+    public boolean isInitialized()
+    {
+        return isInitialized;
+    }
+
+    /**
+     * @return latitude of the filtered position, in degrees
+     */
+    public double getLatitude()
+    {
+        return referenceLatitude + y / DistanceEngine.METERS_PER_DEGREE;
+    }
+
+    /**
+     * @return longitude of the filtered position, in degrees
+     */
+    public double getLongitude()
+    {
+        return referenceLongitude + x / metersPerLongitudeDegree;
+    }
+
+    /**
+     * @return accuracy of the filtered position, in meters
+     */
+    public double getAccuracy()
+    {
+        return Math.sqrt(positionVariance);
+    }
+
+    /**
+     * @return filtered speed, in meters per second
+     */
+    public double getSpeed()
+    {
+        return Math.sqrt(velocityX * velocityX + velocityY * velocityY);
+    }
+
+    /**
+     * @return filtered velocity towards the east, in meters per second
+     */
+    public double getVelocityEast()
+    {
+        return velocityX;
+    }
+
+    /**
+     * @return filtered velocity towards the north, in meters per second
+     */
+    public double getVelocityNorth()
+    {
+        return velocityY;
+    }
+
+    /**
+     * @return time of the last accepted fix, in milliseconds
+     */
+    public long getTime()
+    {
+        return time;
+    }
+}
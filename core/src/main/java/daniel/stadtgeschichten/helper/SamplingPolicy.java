@@ -0,0 +1,139 @@
+package daniel.stadtgeschichten.helper;
+
+/**
+ * This policy chooses how often locations are requested. The further the listener is away from
+ * the closest circle border and the slower the listener walks, the longer the interval and the
+ * minimum distance between location updates may be. The policy is conservative: only a fraction
+ * of the distance to the border may be covered between two updates, so it returns to the fast
+ * rate well before a border is reached. It goes back to a faster rate at once, but only slows down
+ * by one level per update, so that a single outlier does not stretch the interval too much.
+ */
+public class SamplingPolicy
+{
+    /**
+     * Interval between location updates while locations are kept warm but not matched, for
+     * example while audio is playing, in milliseconds
+     */
+    public static final long KEEP_WARM_INTERVAL = 10000;
+
+    /**
+     * Intervals between location updates of all levels, from fast to slow, in milliseconds
+     */
+    private static final long[] INTERVALS = {500, 1000, 2000, 5000, 10000, 20000};
+
+    /**
+     * Minimum distances between location updates of all levels, in meters
+     */
+    private static final float[] MINIMUM_DISTANCES = {0, 0, 2, 5, 10, 20};
+
+    /**
+     * Fraction of the distance to the closest border that may be covered between two updates
+     */
+    private static final double SAFETY_FACTOR = 0.5;
+
+    /**
+     * Speed assumed before any speed has been observed, in meters per second
+     */
+    private static final double DEFAULT_SPEED = 1.4;
+
+    /**
+     * Lowest speed taken into account, in meters per second
+     */
+    private static final double MINIMUM_SPEED = 0.5;
+
+    /**
+     * Weight of a new speed observation in the smoothed speed
+     */
+    private static final double SPEED_SMOOTHING = 0.3;
+
+    /**
+     * Current level
+     */
+    private int level;
+
+    /**
+     * Smoothed observed speed, in meters per second
+     */
+    private double speed;
+
+    public SamplingPolicy()
+    {
+        reset();
+    }
+
+    /**
+     * Go back to the fastest level and forget the observed speed.
+     */
+    public void reset()
+    {
+        level = 0;
+        speed = DEFAULT_SPEED;
+    }
+
+    /**
+     * Process a location update and choose the level for the next ones.
+     * @param borderDistance distance to the closest circle border, in meters, already reduced by
+     *                       the accuracy of the location
+     * @param observedSpeed speed observed at the location, in meters per second, NaN if unknown
+     * @return true if the level has changed, false otherwise
+     */
+    public boolean update(double borderDistance, double observedSpeed)
+    {
+        // Smooth the observed speed, but follow an acceleration at once.
+        if (!Double.isNaN(observedSpeed) && !Double.isInfinite(observedSpeed))
+            speed = Math.max(observedSpeed,
+                    speed + SPEED_SMOOTHING * (observedSpeed - speed));
+
+        // Find the slowest level that covers at most a fraction of the distance to the border.
+        double budget = SAFETY_FACTOR * borderDistance;
+        double assumedSpeed = Math.max(speed, MINIMUM_SPEED);
+        int allowedLevel = 0;
+        while (allowedLevel + 1 < INTERVALS.length
+                && assumedSpeed * INTERVALS[allowedLevel + 1] / 1000.0
+                + MINIMUM_DISTANCES[allowedLevel + 1] <= budget)
+            allowedLevel++;
+
+        // Speed up at once, but slow down step by step.
+        int newLevel = allowedLevel < level ? allowedLevel : Math.min(level + 1, allowedLevel);
+        if (newLevel == level)
+            return false;
+        level = newLevel;
+        return true;
+    }
+
+    /**
+     * @return distance to the closest border, reduced by the accuracy of the location, from which
+     * on the slowest level is allowed at the current speed, in meters; larger distances do not
+     * change the chosen level
+     */
+    public double getMaximumUsefulDistance()
+    {
+        int slowestLevel = INTERVALS.length - 1;
+        return (Math.max(speed, MINIMUM_SPEED) * INTERVALS[slowestLevel] / 1000.0
+                + MINIMUM_DISTANCES[slowestLevel]) / SAFETY_FACTOR;
+    }
+
+    /**
+     * @return interval between location updates to request, in milliseconds
+     */
+    public long getInterval()
+    {
+        return INTERVALS[level];
+    }
+
+    /**
+     * @return minimum distance between location updates to request, in meters
+     */
+    public float getMinimumDistance()
+    {
+        return MINIMUM_DISTANCES[level];
+    }
+
+    /**
+     * @return smoothed observed speed, in meters per second
+     */
+    public double getSpeed()
+    {
+        return speed;
+    }
+}
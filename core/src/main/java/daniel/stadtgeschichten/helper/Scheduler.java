@@ -0,0 +1,27 @@
+package daniel.stadtgeschichten.helper;
+
+/**
+ * A scheduler tells the time and runs tasks after a delay. On the device, it is backed by the
+ * system clock and the main thread; in a simulation, it is a virtual clock that jumps from one
+ * task to the next, so that hours of walking are replayed in moments and always in the same order.
+ */
+public interface Scheduler
+{
+    /**
+     * @return current time, in milliseconds; only differences between times are meaningful
+     */
+    long getTime();
+
+    /**
+     * Run the given task after the given delay.
+     * @param task task
+     * @param delay delay, in milliseconds
+     */
+    void schedule(Runnable task, long delay);
+
+    /**
+     * Remove all pending runs of the given task.
+     * @param task task
+     */
+    void cancel(Runnable task);
+}
@@ -0,0 +1,283 @@
+package daniel.stadtgeschichten.helper;
+
+import java.util.Arrays;
+
+import daniel.stadtgeschichten.model.AssignmentStatement;
+import daniel.stadtgeschichten.model.SymbolTable;
+
+/**
+ * This helper class is used to manage used variables. The values are stored in an array indexed by
+ * the slots of the story's {@link SymbolTable}, so no lookups by name and no boxing are needed
+ * while a story is played. The methods taking variable names are meant for debugging.
+ */
+public class VariableHelper
+{
+    /**
+     * Number of changes the journal of a dry run can hold before it grows
+     */
+    private static final int INITIAL_JOURNAL_SIZE = 8;
+
+    /**
+     * Symbol table mapping variable names to slots
+     */
+    private SymbolTable symbolTable = new SymbolTable();
+
+    /**
+     * Value of every variable, indexed by slot
+     */
+    private int[] values = new int[0];
+
+    /**
+     * Indicates for every slot whether its variable has a value
+     */
+    private boolean[] hasValues = new boolean[0];
+
+    /**
+     * True if changes are recorded to be undone at the end of a dry run, false otherwise
+     */
+    private boolean isDryRun = false;
+
+    /**
+     * Slot of every change recorded during the dry run, in the order of the changes
+     */
+    private int[] journalSlots = new int[INITIAL_JOURNAL_SIZE];
+
+    /**
+     * Value of the changed variable before every recorded change
+     */
+    private int[] journalValues = new int[INITIAL_JOURNAL_SIZE];
+
+    /**
+     * Indicates for every recorded change whether the changed variable had a value before
+     */
+    private boolean[] journalHasValues = new boolean[INITIAL_JOURNAL_SIZE];
+
+    /**
+     * Number of changes recorded during the dry run
+     */
+    private int journalLength;
+
+    /**
+     * This snapshot holds the values of all variables at one point in time.
+     */
+    public static class Snapshot
+    {
+        /**
+         * Copied values
+         */
+        private final int[] values;
+
+        /**
+         * Copied indicators whether the variables have a value
+         */
+        private final boolean[] hasValues;
+
+        private Snapshot(int[] values, boolean[] hasValues)
+        {
+            this.values = values;
+            this.hasValues = hasValues;
+        }
+    }
+
+    /**
+     * Use the slots of the given symbol table and delete all variables.
+     * @param symbolTable symbol table of the story to play
+     */
+    public void reset(SymbolTable symbolTable)
+    {
+        this.symbolTable = symbolTable;
+        values = new int[symbolTable.size()];
+        hasValues = new boolean[symbolTable.size()];
+    }
+
+    /**
+     * @return {@link VariableHelper#symbolTable}
+     */
+    public SymbolTable getSymbolTable()
+    {
+        return symbolTable;
+    }
+
+    /**
+     * Get the value of the variable in the given slot.
+     * @param slot slot of a variable that has a value
+     * @return value of the variable
+     */
+    public int getValue(int slot)
+    {
+        return values[slot];
+    }
+
+    /**
+     * Set the value of the variable in the given slot.
+     * @param slot slot of the variable
+     * @param value value
+     */
+    public void setValue(int slot, int value)
+    {
+        if (isDryRun)
+            record(slot);
+        values[slot] = value;
+        hasValues[slot] = true;
+    }
+
+    /**
+     * Raise the variable in the given slot by the given value. A variable without a value is
+     * treated as 0.
+     * @param slot slot of the variable
+     * @param value value to add
+     */
+    public void increment(int slot, int value)
+    {
+        if (isDryRun)
+            record(slot);
+        values[slot] = (hasValues[slot] ? values[slot] : 0) + value;
+        hasValues[slot] = true;
+    }
+
+    /**
+     * Check whether the variable in the given slot has a value.
+     * @param slot slot of the variable
+     * @return true if that is the case, false otherwise
+     */
+    public boolean hasValue(int slot)
+    {
+        return hasValues[slot];
+    }
+
+    /**
+     * Get the value associated with the given variable name.
+     * @param variable variable name
+     * @return value associated with the variable name
+     */
+    public int getValue(String variable)
+    {
+        int slot = symbolTable.getSlot(variable);
+        if (slot < 0 || !hasValues[slot])
+            throw new NullPointerException("There is no variable called " + variable);
+        return values[slot];
+    }
+
+    /**
+     * Store the variable name with the value. This may override an existing variable with the same
+     * name. Unknown variable names get a new slot.
+     * @param variable variable name
+     * @param value value
+     */
+    public void setVariable(String variable, int value)
+    {
+        int slot = symbolTable.add(variable);
+        if (slot >= values.length)
+        {
+            values = Arrays.copyOf(values, symbolTable.size());
+            hasValues = Arrays.copyOf(hasValues, symbolTable.size());
+        }
+        setValue(slot, value);
+    }
+
+    /**
+     * Check whether there exists a variable with the given name.
+     * @param variable variable name
+     * @return true if a variable with the given name exists, false otherwise
+     */
+    public boolean hasVariable(String variable)
+    {
+        int slot = symbolTable.getSlot(variable);
+        return slot >= 0 && hasValues[slot];
+    }
+
+    /**
+     * Remove the variable with the given name.
+     * @param variable variable name
+     */
+    public void removeVariable(String variable)
+    {
+        int slot = symbolTable.getSlot(variable);
+        if (slot >= 0)
+        {
+            values[slot] = 0;
+            hasValues[slot] = false;
+        }
+    }
+
+    /**
+     * Delete all variables.
+     */
+    public void clear()
+    {
+        Arrays.fill(values, 0);
+        Arrays.fill(hasValues, false);
+    }
+
+    /**
+     * Copy the values of all variables.
+     * @return snapshot to pass to {@link VariableHelper#restore(Snapshot)}
+     */
+    public Snapshot snapshot()
+    {
+        return new Snapshot(values.clone(), hasValues.clone());
+    }
+
+    /**
+     * Set all variables to the values of the given snapshot.
+     * @param snapshot snapshot taken with the same symbol table
+     */
+    public void restore(Snapshot snapshot)
+    {
+        System.arraycopy(snapshot.values, 0, values, 0, snapshot.values.length);
+        System.arraycopy(snapshot.hasValues, 0, hasValues, 0, snapshot.hasValues.length);
+    }
+
+    /**
+     * Start recording the changes made through {@link VariableHelper#setValue(int, int)} and
+     * {@link VariableHelper#increment(int, int)}, so that they can be undone. Unlike a snapshot,
+     * a dry run only costs as much as the variables it changes.
+     */
+    public void startDryRun()
+    {
+        isDryRun = true;
+        journalLength = 0;
+    }
+
+    /**
+     * Undo the changes recorded since {@link VariableHelper#startDryRun()} and stop recording.
+     */
+    public void endDryRun()
+    {
+        for (int i = journalLength - 1; i >= 0; i--)
+        {
+            values[journalSlots[i]] = journalValues[i];
+            hasValues[journalSlots[i]] = journalHasValues[i];
+        }
+        journalLength = 0;
+        isDryRun = false;
+    }
+
+    /**
+     * Record the value of the variable in the given slot before it is changed.
+     * @param slot slot of the variable
+     */
+    private void record(int slot)
+    {
+        if (journalLength == journalSlots.length)
+        {
+            journalSlots = Arrays.copyOf(journalSlots, 2 * journalLength);
+            journalValues = Arrays.copyOf(journalValues, 2 * journalLength);
+            journalHasValues = Arrays.copyOf(journalHasValues, 2 * journalLength);
+        }
+        journalSlots[journalLength] = slot;
+        journalValues[journalLength] = values[slot];
+        journalHasValues[journalLength] = hasValues[slot];
+        journalLength++;
+    }
+
+    /**
+     * Process assignment statements.
+     * @param statements assignment statements whose slots have been assigned
+     */
+    public void processStatements(AssignmentStatement[] statements)
+    {
+        for (AssignmentStatement statement : statements)
+            setValue(statement.getSlot(), statement.getValue());
+    }
+}
@@ -0,0 +1,233 @@
+package daniel.stadtgeschichten.helper;
+
+/**
+ * This detector decides when the location fixes have stabilised after location tracking has been
+ * started. The position is considered stable as soon as the last few fixes are all accurate enough
+ * and lie close together, allowing for the distance a walker may have covered in the meantime. If
+ * that does not happen within a maximum time, the next fix is taken anyway, so that a story can
+ * still be started under a poor sky view.
+ */
+public class WarmUpDetector
+{
+    /**
+     * Default number of consecutive fixes that have to agree
+     */
+    public static final int DEFAULT_REQUIRED_FIXES = 3;
+
+    /**
+     * Default accuracy every agreeing fix must have, in meters
+     */
+    public static final double DEFAULT_MAXIMUM_ACCURACY = 20.0;
+
+    /**
+     * Default distance the agreeing fixes may lie away from their centre, in meters
+     */
+    public static final double DEFAULT_MAXIMUM_SPREAD = 10.0;
+
+    /**
+     * Default time after which the next fix is taken, in milliseconds
+     */
+    public static final long DEFAULT_MAXIMUM_TIME = 15000;
+
+    /**
+     * Speed of a walker that widens the allowed spread, in meters per second
+     */
+    private static final double WALKING_SPEED = 2.0;
+
+    /**
+     * Number of consecutive fixes that have to agree
+     */
+    private int requiredFixes;
+
+    /**
+     * Accuracy every agreeing fix must have, in meters
+     */
+    private double maximumAccuracy = DEFAULT_MAXIMUM_ACCURACY;
+
+    /**
+     * Distance the agreeing fixes may lie away from their centre, in meters
+     */
+    private double maximumSpread = DEFAULT_MAXIMUM_SPREAD;
+
+    /**
+     * Time after which the next fix is taken, in milliseconds
+     */
+    private long maximumTime = DEFAULT_MAXIMUM_TIME;
+
+    /**
+     * Latitudes of the last fixes, in degrees, used as a ring buffer
+     */
+    private double[] latitudes;
+
+    /**
+     * Longitudes of the last fixes, in degrees, used as a ring buffer
+     */
+    private double[] longitudes;
+
+    /**
+     * Times of the last fixes, in milliseconds, used as a ring buffer
+     */
+    private long[] times;
+
+    /**
+     * Number of consecutive accurate fixes, at most requiredFixes
+     */
+    private int count;
+
+    /**
+     * Position of the next fix in the ring buffer
+     */
+    private int next;
+
+    /**
+     * Time of the first fix since the last reset, in milliseconds, -1 if there has been none
+     */
+    private long startTime;
+
+    /**
+     * Time from the first fix to the fix that has stabilised the position, in milliseconds, -1 if
+     * the position has not stabilised yet
+     */
+    private long warmUpTime;
+
+    public WarmUpDetector()
+    {
+        setRequiredFixes(DEFAULT_REQUIRED_FIXES);
+    }
+
+    /**
+     * Set how many consecutive fixes have to agree. The detector is reset.
+     * @param requiredFixes number of fixes, at least 1
+     */
+    public void setRequiredFixes(int requiredFixes)
+    {
+        this.requiredFixes = Math.max(1, requiredFixes);
+        latitudes = new double[this.requiredFixes];
+        longitudes = new double[this.requiredFixes];
+        times = new long[this.requiredFixes];
+        reset();
+    }
+
+    /**
+     * Set when fixes agree.
+     * @param maximumAccuracy accuracy every agreeing fix must have, in meters
+     * @param maximumSpread distance the agreeing fixes may lie away from their centre, in meters
+     * @param maximumTime time after which the next fix is taken, in milliseconds
+     */
+    public void setThresholds(double maximumAccuracy, double maximumSpread, long maximumTime)
+    {
+        this.maximumAccuracy = maximumAccuracy;
+        this.maximumSpread = maximumSpread;
+        this.maximumTime = maximumTime;
+    }
+
+    /**
+     * Start over, for example after location tracking has been restarted.
+     */
+    public void reset()
+    {
+        count = 0;
+        next = 0;
+        startTime = -1;
+        warmUpTime = -1;
+    }
+
+    /**
+     * Drop the fixes collected so far, for example after a fix has been rejected as an outlier,
+     * but keep the time of the first fix.
+     */
+    public void discardFixes()
+    {
+        count = 0;
+    }
+
+    /**
+     * Process a fix.
+     * @param latitude latitude of the fix, in degrees
+     * @param longitude longitude of the fix, in degrees
+     * @param accuracy accuracy of the fix, in meters, 0 if unknown, which never agrees
+     * @param time time of the fix, in milliseconds
+     * @return true if the position has stabilised, false otherwise
+     */
+    public boolean update(double latitude, double longitude, double accuracy, long time)
+    {
+        if (warmUpTime >= 0)
+            return true;
+        if (startTime < 0)
+            startTime = time;
+
+        // Give up waiting for agreeing fixes.
+        if (time - startTime >= maximumTime)
+            return stabilise(time);
+
+        // Start over at an inaccurate fix.
+        if (accuracy <= 0 || accuracy > maximumAccuracy)
+        {
+            count = 0;
+            return false;
+        }
+
+        // Remember the fix.
+        latitudes[next] = latitude;
+        longitudes[next] = longitude;
+        times[next] = time;
+        next = (next + 1) % requiredFixes;
+        if (count < requiredFixes)
+            count++;
+
+        if (count < requiredFixes)
+            return false;
+
+        // Compare the fixes with their centre.
+        double centreLatitude = 0;
+        double centreLongitude = 0;
+        long firstTime = time;
+        for (int i = 0; i < requiredFixes; i++)
+        {
+            centreLatitude += latitudes[i];
+            centreLongitude += longitudes[i];
+            firstTime = Math.min(firstTime, times[i]);
+        }
+        centreLatitude /= requiredFixes;
+        centreLongitude /= requiredFixes;
+        double metersPerLongitudeDegree = DistanceEngine.METERS_PER_DEGREE
+                * Math.cos(Math.toRadians(centreLatitude));
+        double spread = maximumSpread + WALKING_SPEED * (time - firstTime) / 2000.0;
+        for (int i = 0; i < requiredFixes; i++)
+        {
+            double dx = (longitudes[i] - centreLongitude) * metersPerLongitudeDegree;
+            double dy = (latitudes[i] - centreLatitude) * DistanceEngine.METERS_PER_DEGREE;
+            if (dx * dx + dy * dy > spread * spread)
+                return false;
+        }
+        return stabilise(time);
+    }
+
+    /**
+     * Mark the position as stable.
+     * @param time time of the fix that has stabilised the position, in milliseconds
+     * @return true
+     */
+    private boolean stabilise(long time)
+    {
+        warmUpTime = time - startTime;
+        return true;
+    }
+
+    /**
+     * @return true if the position has stabilised, false otherwise
+     */
+    public boolean isStable()
+    {
+        return warmUpTime >= 0;
+    }
+
+    /**
+     * @return time from the first fix to the fix that has stabilised the position, in
+     * milliseconds, -1 if the position has not stabilised yet
+     */
+    public long getWarmUpTime()
+    {
+        return warmUpTime;
+    }
+}
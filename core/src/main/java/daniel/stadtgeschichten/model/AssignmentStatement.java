@@ -15,6 +15,11 @@ public class AssignmentStatement extends AbsStatement
      */
     private int value;
 
+    /**
+     * Slot of the variable in the story's {@link SymbolTable}, -1 if not assigned yet
+     */
+    private int slot = -1;
+
     public AssignmentStatement(String variable, int value)
     {
         this.variable = variable;
@@ -37,6 +42,19 @@ public class AssignmentStatement extends AbsStatement
         return value;
     }
 
+    /**
+     * @return {@link AssignmentStatement#slot}
+     */
+    public int getSlot()
+    {
+        return slot;
+    }
+
+    public void setSlot(int slot)
+    {
+        this.slot = slot;
+    }
+
     @Override
     public String toString()
     {
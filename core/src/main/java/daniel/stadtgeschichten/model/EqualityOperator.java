@@ -15,6 +15,16 @@ public class EqualityOperator extends AbsOperator
      */
     private String element2;
 
+    /**
+     * Slot of the variable named by the first element, -1 if it does not name a variable
+     */
+    private int slot1 = -1;
+
+    /**
+     * Slot of the variable named by the second element, -1 if it does not name a variable
+     */
+    private int slot2 = -1;
+
     public EqualityOperator(String element1, String element2)
     {
         this.element1 = element1;
@@ -37,6 +47,28 @@ public class EqualityOperator extends AbsOperator
         return element2;
     }
 
+    /**
+     * @return {@link EqualityOperator#slot1}
+     */
+    public int getSlot1()
+    {
+        return slot1;
+    }
+
+    /**
+     * @return {@link EqualityOperator#slot2}
+     */
+    public int getSlot2()
+    {
+        return slot2;
+    }
+
+    public void setSlots(int slot1, int slot2)
+    {
+        this.slot1 = slot1;
+        this.slot2 = slot2;
+    }
+
     @Override
     public String toString()
     {
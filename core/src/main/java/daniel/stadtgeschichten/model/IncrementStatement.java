@@ -15,6 +15,11 @@ public class IncrementStatement extends AbsStatement
      */
     private int value = 1;
 
+    /**
+     * Slot of the variable in the story's {@link SymbolTable}, -1 if not assigned yet
+     */
+    private int slot = -1;
+
     public IncrementStatement(String variable)
     {
         this.variable = variable;
@@ -42,6 +47,19 @@ public class IncrementStatement extends AbsStatement
         return value;
     }
 
+    /**
+     * @return {@link IncrementStatement#slot}
+     */
+    public int getSlot()
+    {
+        return slot;
+    }
+
+    public void setSlot(int slot)
+    {
+        this.slot = slot;
+    }
+
     @Override
     public String toString()
     {
@@ -37,6 +37,11 @@ public class Story
      */
     private Spot[] spots;
 
+    /**
+     * Symbol table of the story's variables
+     */
+    private SymbolTable symbolTable;
+
     public Story(String title, String folderName, String introAudioFileName, String introRecord,
                  Spot[] spots, AssignmentStatement[] initStatements)
     {
@@ -46,6 +51,9 @@ public class Story
         this.introRecord = introRecord;
         this.spots = spots;
         this.initStatements = initStatements;
+
+        // Assign slots to the variables.
+        this.symbolTable = new SymbolTable(initStatements, spots);
     }
 
     /**
@@ -96,6 +104,14 @@ public class Story
         return spots;
     }
 
+    /**
+     * @return {@link Story#symbolTable}
+     */
+    public SymbolTable getSymbolTable()
+    {
+        return symbolTable;
+    }
+
     @Override
     public String toString()
     {
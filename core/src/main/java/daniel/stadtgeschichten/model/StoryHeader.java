@@ -0,0 +1,95 @@
+package daniel.stadtgeschichten.model;
+
+/**
+ * This class represents the attributes of a story's root tag, which are enough to list the story
+ * without parsing all of its spots.
+ */
+public class StoryHeader
+{
+    /**
+     * Title of the story
+     */
+    private String title;
+
+    /**
+     * Name of the folder containing all the files
+     */
+    private String folderName;
+
+    /**
+     * Asset path of the story's XML file
+     */
+    private String assetPath;
+
+    /**
+     * Name of the audio file played as introduction to the story
+     */
+    private String introAudioFileName;
+
+    /**
+     * Written version of the audio file played as introduction to the story
+     */
+    private String introRecord;
+
+    public StoryHeader(String title, String folderName, String assetPath,
+                       String introAudioFileName, String introRecord)
+    {
+        this.title = title;
+        this.folderName = folderName;
+        this.assetPath = assetPath;
+        this.introAudioFileName = introAudioFileName;
+        this.introRecord = introRecord;
+    }
+
+    /**
+     * @return {@link StoryHeader#title}
+     */
+    public String getTitle()
+    {
+        return title;
+    }
+
+    /**
+     * @return {@link StoryHeader#folderName}
+     */
+    public String getFolderName()
+    {
+        return folderName;
+    }
+
+    /**
+     * @return {@link StoryHeader#assetPath}
+     */
+    public String getAssetPath()
+    {
+        return assetPath;
+    }
+
+    /**
+     * @return {@link StoryHeader#introAudioFileName}
+     */
+    public String getIntroAudioFileName()
+    {
+        return introAudioFileName;
+    }
+
+    /**
+     * @return {@link StoryHeader#introRecord}
+     */
+    public String getIntroRecord()
+    {
+        return introRecord;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "StoryHeader{" +
+                "title='" + title + '\'' +
+                ", folderName='" + folderName + '\'' +
+                ", assetPath='" + assetPath + '\'' +
+                ", introAudioFileName='" + introAudioFileName + '\'' +
+                ", introRecord='" + introRecord + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,142 @@
+package daniel.stadtgeschichten.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This symbol table maps the variable names of a story to slots, which are consecutive numbers
+ * starting at 0. When it is built for a story, every statement and operator referring to a variable
+ * learns the slot of the variable.
+ */
+public class SymbolTable
+{
+    /**
+     * Variable names mapped to their slot
+     */
+    private final HashMap<String, Integer> slots = new HashMap<>();
+
+    /**
+     * Variable names indexed by their slot
+     */
+    private final ArrayList<String> names = new ArrayList<>();
+
+    /**
+     * Create an empty symbol table.
+     */
+    public SymbolTable()
+    {
+    }
+
+    /**
+     * Create the symbol table of a story. Every variable that is assigned or incremented gets a
+     * slot, and all statements and operators are told the slots of their variables.
+     * @param initStatements assignment statements executed at the beginning
+     * @param spots spots of the story
+     */
+    public SymbolTable(AssignmentStatement[] initStatements, Spot[] spots)
+    {
+        // Assign slots to all variables that may get a value.
+        for (AssignmentStatement statement : initStatements)
+            statement.setSlot(add(statement.getVariable()));
+        for (Spot spot : spots)
+            for (Circle circle : spot.getCircles())
+                addVariables(circle.getStatements());
+
+        // Resolve the elements of the operators, which may name variables assigned later on.
+        for (Spot spot : spots)
+            for (Circle circle : spot.getCircles())
+                resolveOperators(circle.getStatements());
+    }
+
+    /**
+     * Assign slots to the variables assigned or incremented by the given statements.
+     * @param statements statements
+     */
+    private void addVariables(AbsStatement[] statements)
+    {
+        for (AbsStatement statement : statements)
+        {
+            if (statement instanceof AssignmentStatement)
+            {
+                AssignmentStatement assignment = (AssignmentStatement) statement;
+                assignment.setSlot(add(assignment.getVariable()));
+            }
+            else if (statement instanceof IncrementStatement)
+            {
+                IncrementStatement increment = (IncrementStatement) statement;
+                increment.setSlot(add(increment.getVariable()));
+            }
+            else if (statement instanceof IfStatement)
+            {
+                addVariables(((IfStatement) statement).getThenStatements());
+                addVariables(((IfStatement) statement).getElseStatements());
+            }
+        }
+    }
+
+    /**
+     * Tell the equality operators of the given statements the slots of their elements.
+     * @param statements statements
+     */
+    private void resolveOperators(AbsStatement[] statements)
+    {
+        for (AbsStatement statement : statements)
+        {
+            if (!(statement instanceof IfStatement))
+                continue;
+            for (AbsOperator operator : ((IfStatement) statement).getConditions())
+            {
+                if (operator instanceof EqualityOperator)
+                {
+                    EqualityOperator equalityOperator = (EqualityOperator) operator;
+                    equalityOperator.setSlots(getSlot(equalityOperator.getElement1()),
+                            getSlot(equalityOperator.getElement2()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the slot of the given variable, and assign the next free slot if it has none yet.
+     * @param name variable name
+     * @return slot
+     */
+    public int add(String name)
+    {
+        Integer slot = slots.get(name);
+        if (slot != null)
+            return slot;
+        slots.put(name, names.size());
+        names.add(name);
+        return names.size() - 1;
+    }
+
+    /**
+     * Get the slot of the given variable.
+     * @param name variable name
+     * @return slot, -1 if there is no variable with this name
+     */
+    public int getSlot(String name)
+    {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Get the name of the variable stored in the given slot.
+     * @param slot slot
+     * @return variable name
+     */
+    public String getName(int slot)
+    {
+        return names.get(slot);
+    }
+
+    /**
+     * @return number of slots
+     */
+    public int size()
+    {
+        return names.size();
+    }
+}
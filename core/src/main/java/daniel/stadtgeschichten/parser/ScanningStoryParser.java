@@ -0,0 +1,535 @@
+package daniel.stadtgeschichten.parser;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import daniel.stadtgeschichten.model.AbsOperator;
+import daniel.stadtgeschichten.model.AbsStatement;
+import daniel.stadtgeschichten.model.AssignmentStatement;
+import daniel.stadtgeschichten.model.Circle;
+import daniel.stadtgeschichten.model.EndStatement;
+import daniel.stadtgeschichten.model.EqualityOperator;
+import daniel.stadtgeschichten.model.IfStatement;
+import daniel.stadtgeschichten.model.IncrementStatement;
+import daniel.stadtgeschichten.model.PlayStatement;
+import daniel.stadtgeschichten.model.Spot;
+import daniel.stadtgeschichten.model.Story;
+import daniel.stadtgeschichten.model.StoryHeader;
+
+import static daniel.stadtgeschichten.parser.StoryXmlParser.*;
+
+/**
+ * This parser transforms the story described in an xml file based on our own format into an object
+ * by scanning the file's bytes with an {@link XmlScanner}. It walks through the file exactly like
+ * {@link StoryXmlParser} does, so that both produce the same objects, but it compares tag names by
+ * their interned ids and parses numbers directly from the bytes.
+ */
+public class ScanningStoryParser implements StoryParser
+{
+    /**
+     * Names interned by the scanner; the index of a name is its id
+     */
+    private static final String[] NAMES = {TAG_STORY, TAG_STORY_ATTR_TITLE,
+            TAG_STORY_ATTR_INTRO_FILE, TAG_STORY_ATTR_INTRO_TEXT, TAG_INIT, TAG_SPOT,
+            TAG_SPOT_LATITUDE, TAG_SPOT_LONGITUDE, TAG_CIRCLE, TAG_CIRCLE_ATTR_RADIUS, TAG_ASSIGN,
+            TAG_ASSIGN_ATTR_VARIABLE, TAG_ASSIGN_ATTR_VALUE, TAG_PLAY, TAG_PLAY_ATTR_FILE,
+            TAG_PLAY_ATTR_TEXT, TAG_PLAY_ATTR_VOLUME, TAG_IF, TAG_CONDITION, TAG_THEN, TAG_ELSE,
+            TAG_EQUALS, TAG_EQUALS_ATTR_ELEMENT_1, TAG_EQUALS_ATTR_ELEMENT_2, TAG_INCREMENT,
+            TAG_END};
+
+    private static final int ID_STORY = 0;
+    private static final int ID_TITLE = 1;
+    private static final int ID_INTRO_FILE = 2;
+    private static final int ID_INTRO_TEXT = 3;
+    private static final int ID_INIT = 4;
+    private static final int ID_SPOT = 5;
+    private static final int ID_LATITUDE = 6;
+    private static final int ID_LONGITUDE = 7;
+    private static final int ID_CIRCLE = 8;
+    private static final int ID_RADIUS = 9;
+    private static final int ID_ASSIGN = 10;
+    private static final int ID_VARIABLE = 11;
+    private static final int ID_VALUE = 12;
+    private static final int ID_PLAY = 13;
+    private static final int ID_FILE = 14;
+    private static final int ID_TEXT = 15;
+    private static final int ID_VOLUME = 16;
+    private static final int ID_IF = 17;
+    private static final int ID_CONDITION = 18;
+    private static final int ID_THEN = 19;
+    private static final int ID_ELSE = 20;
+    private static final int ID_EQUALS = 21;
+    private static final int ID_ELEMENT_1 = 22;
+    private static final int ID_ELEMENT_2 = 23;
+    private static final int ID_INCREMENT = 24;
+    private static final int ID_END = 25;
+
+    @Override
+    public Story parse(InputStream in, String folderName)
+            throws XmlPullParserException, IOException
+    {
+        try
+        {
+            XmlScanner scanner = new XmlScanner(NAMES);
+            scanner.setInput(in);
+            scanner.nextTag();
+
+            // Require <story> root start tag.
+            scanner.require(XmlScanner.START_TAG, TAG_STORY);
+
+            // Get attributes.
+            String title = scanner.getAttributeValue(ID_TITLE);
+            String introAudioFileName = scanner.getAttributeValue(ID_INTRO_FILE);
+            String introRecord = scanner.getAttributeValue(ID_INTRO_TEXT);
+
+            // Get content.
+            List<AssignmentStatement> initStatements = null;
+            ArrayList<Spot> spots = new ArrayList<>();
+            while (scanner.next() != XmlScanner.END_TAG)
+            {
+                if (scanner.getEventType() != XmlScanner.START_TAG)
+                    continue;
+
+                switch (scanner.getNameId())
+                {
+                    case ID_INIT:
+                        initStatements = readInit(scanner);
+                        break;
+                    case ID_SPOT:
+                        spots.add(readSpot(scanner));
+                        break;
+                    default:
+                        throw new XmlPullParserException(
+                                "There is an unknown tag beneath the story tag: "
+                                        + scanner.getName());
+                }
+            }
+
+            AssignmentStatement[] initStatementsArray;
+            if (initStatements == null)
+                initStatementsArray = new AssignmentStatement[0];
+            else
+                initStatementsArray = initStatements.toArray(
+                        new AssignmentStatement[initStatements.size()]);
+            return new Story(title, folderName, introAudioFileName, introRecord,
+                    spots.toArray(new Spot[spots.size()]), initStatementsArray);
+        }
+        finally
+        {
+            // Close the input stream in case of a thrown exception.
+            in.close();
+        }
+    }
+
+    @Override
+    public StoryHeader parseHeader(InputStream in, String folderName, String assetPath)
+            throws XmlPullParserException, IOException
+    {
+        try
+        {
+            XmlScanner scanner = new XmlScanner(NAMES);
+            scanner.setInput(in);
+            scanner.nextTag();
+
+            // Require <story> root start tag.
+            scanner.require(XmlScanner.START_TAG, TAG_STORY);
+
+            // Get attributes.
+            return new StoryHeader(scanner.getAttributeValue(ID_TITLE), folderName, assetPath,
+                    scanner.getAttributeValue(ID_INTRO_FILE),
+                    scanner.getAttributeValue(ID_INTRO_TEXT));
+        }
+        finally
+        {
+            // Close the input stream in case of a thrown exception.
+            in.close();
+        }
+    }
+
+    /**
+     * Read an init tag.
+     * @param scanner scanner
+     * @return contained statements
+     * @throws XmlPullParserException
+     */
+    private static List<AssignmentStatement> readInit(XmlScanner scanner)
+            throws XmlPullParserException
+    {
+        ArrayList<AssignmentStatement> statements = new ArrayList<>();
+
+        // Require opening tag.
+        scanner.require(XmlScanner.START_TAG, TAG_INIT);
+
+        // Get content.
+        while (scanner.next() != XmlScanner.END_TAG)
+        {
+            if (scanner.getEventType() != XmlScanner.START_TAG)
+                continue;
+
+            switch (scanner.getNameId())
+            {
+                case ID_ASSIGN:
+                    statements.add(readAssignmentStatement(scanner));
+                    break;
+                default:
+                    throw new XmlPullParserException(
+                            "There is an unknown tag beneath an init tag: " + scanner.getName());
+            }
+        }
+
+        // Require closing tag.
+        scanner.require(XmlScanner.END_TAG, TAG_INIT);
+
+        return statements;
+    }
+
+    /**
+     * Read a spot tag.
+     * @param scanner scanner
+     * @return spot
+     * @throws XmlPullParserException
+     */
+    private static Spot readSpot(XmlScanner scanner) throws XmlPullParserException
+    {
+        // Require opening tag.
+        scanner.require(XmlScanner.START_TAG, TAG_SPOT);
+
+        // Get attributes.
+        double latitude = scanner.getDoubleAttribute(ID_LATITUDE);
+        double longitude = scanner.getDoubleAttribute(ID_LONGITUDE);
+
+        // Get content.
+        ArrayList<Circle> circles = new ArrayList<>();
+        while (scanner.next() != XmlScanner.END_TAG)
+        {
+            if (scanner.getEventType() != XmlScanner.START_TAG)
+                continue;
+
+            switch (scanner.getNameId())
+            {
+                case ID_CIRCLE:
+                    circles.add(readCircle(scanner));
+                    break;
+                default:
+                    throw new XmlPullParserException("There is an unknown tag beneath a spot tag: "
+                            + scanner.getName());
+            }
+        }
+
+        // Require closing tag.
+        scanner.require(XmlScanner.END_TAG, TAG_SPOT);
+
+        // Make every circle know it's spot.
+        Spot spot = new Spot(latitude, longitude, circles.toArray(new Circle[circles.size()]));
+        for (Circle circle : circles)
+            circle.setSpot(spot);
+
+        return spot;
+    }
+
+    /**
+     * Read an assignment statement's tag.
+     * @param scanner scanner
+     * @return assignment statement
+     * @throws XmlPullParserException
+     */
+    private static AssignmentStatement readAssignmentStatement(XmlScanner scanner)
+            throws XmlPullParserException
+    {
+        // Require opening tag.
+        scanner.require(XmlScanner.START_TAG, TAG_ASSIGN);
+
+        // Get attributes.
+        String variable = scanner.getAttributeValue(ID_VARIABLE);
+        int value = scanner.getIntAttribute(ID_VALUE);
+
+        // Require closing tag.
+        scanner.next();
+        scanner.require(XmlScanner.END_TAG, TAG_ASSIGN);
+
+        return new AssignmentStatement(variable, value);
+    }
+
+    /**
+     * Read an end statement's tag.
+     * @param scanner scanner
+     * @return end statement
+     * @throws XmlPullParserException
+     */
+    private static EndStatement readEndStatement(XmlScanner scanner) throws XmlPullParserException
+    {
+        // Require opening tag.
+        scanner.require(XmlScanner.START_TAG, TAG_END);
+
+        // Require closing tag.
+        scanner.next();
+        scanner.require(XmlScanner.END_TAG, TAG_END);
+
+        return new EndStatement();
+    }
+
+    /**
+     * Read an increment statement's tag.
+     * @param scanner scanner
+     * @return increment statement
+     * @throws XmlPullParserException
+     */
+    private static IncrementStatement readIncrementStatement(XmlScanner scanner)
+            throws XmlPullParserException
+    {
+        // Require opening tag.
+        scanner.require(XmlScanner.START_TAG, TAG_INCREMENT);
+
+        // Get attributes.
+        String variable = scanner.getAttributeValue(ID_VARIABLE);
+        IncrementStatement incrementStatement;
+        if (scanner.getAttributeIndex(ID_VALUE) < 0)
+            incrementStatement = new IncrementStatement(variable);
+        else
+            incrementStatement = new IncrementStatement(variable,
+                    scanner.getIntAttribute(ID_VALUE));
+
+        // Require closing tag.
+        scanner.next();
+        scanner.require(XmlScanner.END_TAG, TAG_INCREMENT);
+
+        return incrementStatement;
+    }
+
+    /**
+     * Read a circle's tag.
+     * @param scanner scanner
+     * @return circle
+     * @throws XmlPullParserException
+     */
+    private static Circle readCircle(XmlScanner scanner) throws XmlPullParserException
+    {
+        // Require opening tag.
+        scanner.require(XmlScanner.START_TAG, TAG_CIRCLE);
+
+        // Get attributes.
+        int radius = scanner.getIntAttribute(ID_RADIUS);
+        String title = scanner.getAttributeValue(ID_TITLE);
+
+        // Get content.
+        ArrayList<AbsStatement> statements = new ArrayList<>();
+        while (scanner.next() != XmlScanner.END_TAG)
+        {
+            if (scanner.getEventType() != XmlScanner.START_TAG)
+                continue;
+
+            switch (scanner.getNameId())
+            {
+                case ID_ASSIGN:
+                    statements.add(readAssignmentStatement(scanner));
+                    break;
+                case ID_END:
+                    statements.add(readEndStatement(scanner));
+                    break;
+                case ID_PLAY:
+                    statements.add(readPlayStatement(scanner));
+                    break;
+                case ID_IF:
+                    statements.add(readIfStatement(scanner));
+                    break;
+                default:
+                    throw new XmlPullParserException(
+                            "There is an unknown tag beneath a circle tag: " + scanner.getName());
+            }
+        }
+
+        // Require closing tag.
+        scanner.require(XmlScanner.END_TAG, TAG_CIRCLE);
+
+        return new Circle(radius, title, statements.toArray(new AbsStatement[statements.size()]));
+    }
+
+    /**
+     * Read an equality operator's tag.
+     * @param scanner scanner
+     * @return equality operator
+     * @throws XmlPullParserException
+     */
+    private static EqualityOperator readEqualityOperator(XmlScanner scanner)
+            throws XmlPullParserException
+    {
+        // Require opening tag.
+        scanner.require(XmlScanner.START_TAG, TAG_EQUALS);
+
+        // Get attributes.
+        String element1 = scanner.getAttributeValue(ID_ELEMENT_1);
+        String element2 = scanner.getAttributeValue(ID_ELEMENT_2);
+
+        // Require closing tag.
+        scanner.next();
+        scanner.require(XmlScanner.END_TAG, TAG_EQUALS);
+
+        return new EqualityOperator(element1, element2);
+    }
+
+    /**
+     * Read an if statement's tag.
+     * @param scanner scanner
+     * @return if statement
+     * @throws XmlPullParserException
+     */
+    private static IfStatement readIfStatement(XmlScanner scanner) throws XmlPullParserException
+    {
+        // Require opening tag.
+        scanner.require(XmlScanner.START_TAG, TAG_IF);
+
+        // Get content.
+        List<AbsOperator> conditions = null;
+        List<AbsStatement> thenStatements = null;
+        List<AbsStatement> elseStatements = null;
+        scanner.nextTag();
+        if (scanner.getNameId() == ID_CONDITION)
+            conditions = readConditions(scanner);
+        scanner.nextTag();
+        if (scanner.getNameId() == ID_THEN)
+            thenStatements = readStatements(scanner, TAG_THEN);
+        scanner.nextTag();
+        if (scanner.getNameId() == ID_ELSE)
+        {
+            elseStatements = readStatements(scanner, TAG_ELSE);
+            scanner.nextTag();
+        }
+
+        // Require closing tag.
+        scanner.require(XmlScanner.END_TAG, TAG_IF);
+
+        AbsOperator[] conditionsArray;
+        if (conditions == null)
+            conditionsArray = new AbsOperator[0];
+        else
+            conditionsArray = conditions.toArray(new AbsOperator[conditions.size()]);
+        AbsStatement[] thenStatementsArray;
+        if (thenStatements == null)
+            thenStatementsArray = new AbsStatement[0];
+        else
+            thenStatementsArray = thenStatements.toArray(new AbsStatement[thenStatements.size()]);
+        AbsStatement[] elseStatementsArray;
+        if (elseStatements == null)
+            elseStatementsArray = new AbsStatement[0];
+        else
+            elseStatementsArray = elseStatements.toArray(new AbsStatement[elseStatements.size()]);
+        return new IfStatement(conditionsArray, thenStatementsArray, elseStatementsArray);
+    }
+
+    /**
+     * Read a condition's tag containing conditions.
+     * @param scanner scanner
+     * @return list of operators
+     * @throws XmlPullParserException
+     */
+    private static ArrayList<AbsOperator> readConditions(XmlScanner scanner)
+            throws XmlPullParserException
+    {
+        // Require opening tag.
+        scanner.require(XmlScanner.START_TAG, TAG_CONDITION);
+
+        // Get content.
+        ArrayList<AbsOperator> operators = new ArrayList<>();
+        while (scanner.next() != XmlScanner.END_TAG)
+        {
+            if (scanner.getEventType() != XmlScanner.START_TAG)
+                continue;
+
+            switch (scanner.getNameId())
+            {
+                case ID_EQUALS:
+                    operators.add(readEqualityOperator(scanner));
+                    break;
+                default:
+                    throw new XmlPullParserException(
+                            "There is an unknown tag beneath a condition tag: "
+                                    + scanner.getName());
+            }
+        }
+
+        // Require closing tag.
+        scanner.require(XmlScanner.END_TAG, TAG_CONDITION);
+
+        return operators;
+    }
+
+    /**
+     * Read the statements contained in the given tag.
+     * @param scanner scanner
+     * @param tag name of the tag the statements are contained in
+     * @return list of statements
+     * @throws XmlPullParserException
+     */
+    private static ArrayList<AbsStatement> readStatements(XmlScanner scanner, String tag)
+            throws XmlPullParserException
+    {
+        // Require opening tag.
+        scanner.require(XmlScanner.START_TAG, tag);
+
+        // Get content.
+        ArrayList<AbsStatement> statements = new ArrayList<>();
+        while (scanner.next() != XmlScanner.END_TAG)
+        {
+            if (scanner.getEventType() != XmlScanner.START_TAG)
+                continue;
+
+            switch (scanner.getNameId())
+            {
+                case ID_ASSIGN:
+                    statements.add(readAssignmentStatement(scanner));
+                    break;
+                case ID_END:
+                    statements.add(readEndStatement(scanner));
+                    break;
+                case ID_INCREMENT:
+                    statements.add(readIncrementStatement(scanner));
+                    break;
+                case ID_PLAY:
+                    statements.add(readPlayStatement(scanner));
+                    break;
+                default:
+                    throw new XmlPullParserException(
+                            "There is an unknown tag beneath a " + tag + " tag: "
+                                    + scanner.getName());
+            }
+        }
+
+        // Require closing tag.
+        scanner.require(XmlScanner.END_TAG, tag);
+
+        return statements;
+    }
+
+    /**
+     * Read the play statement's tag.
+     * @param scanner scanner
+     * @return play statement
+     * @throws XmlPullParserException
+     */
+    private static PlayStatement readPlayStatement(XmlScanner scanner)
+            throws XmlPullParserException
+    {
+        // Require opening tag.
+        scanner.require(XmlScanner.START_TAG, TAG_PLAY);
+
+        // Get attributes.
+        String fileName = scanner.getAttributeValue(ID_FILE);
+        String text = scanner.getAttributeValue(ID_TEXT);
+        PlayStatement playStatement;
+        if (scanner.getAttributeIndex(ID_VOLUME) < 0)
+            playStatement = new PlayStatement(fileName, text);
+        else
+            playStatement = new PlayStatement(fileName, text,
+                    scanner.getFloatAttribute(ID_VOLUME));
+
+        // Require closing tag.
+        scanner.next();
+        scanner.require(XmlScanner.END_TAG, TAG_PLAY);
+
+        return playStatement;
+    }
+}
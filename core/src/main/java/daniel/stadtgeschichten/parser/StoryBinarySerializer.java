@@ -0,0 +1,324 @@
+package daniel.stadtgeschichten.parser;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import daniel.stadtgeschichten.model.AbsOperator;
+import daniel.stadtgeschichten.model.AbsStatement;
+import daniel.stadtgeschichten.model.AssignmentStatement;
+import daniel.stadtgeschichten.model.Circle;
+import daniel.stadtgeschichten.model.EndStatement;
+import daniel.stadtgeschichten.model.EqualityOperator;
+import daniel.stadtgeschichten.model.IfStatement;
+import daniel.stadtgeschichten.model.IncrementStatement;
+import daniel.stadtgeschichten.model.PlayStatement;
+import daniel.stadtgeschichten.model.Spot;
+import daniel.stadtgeschichten.model.Story;
+
+/**
+ * This serializer writes a parsed story in a compact binary format and reads it back, which is
+ * much faster than parsing the story's XML file again. The folder name is not stored, since it is
+ * given by the location of the XML file.
+ */
+public class StoryBinarySerializer
+{
+    /**
+     * Version of the format, which has to be raised whenever the format changes
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final byte STATEMENT_ASSIGN = 0;
+    private static final byte STATEMENT_END = 1;
+    private static final byte STATEMENT_IF = 2;
+    private static final byte STATEMENT_INCREMENT = 3;
+    private static final byte STATEMENT_PLAY = 4;
+    private static final byte OPERATOR_EQUALS = 0;
+
+    /**
+     * Encoding of all strings
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Write the given story.
+     * @param story story
+     * @param out output stream
+     * @throws IOException if the story contains an unknown statement or operator, or if writing
+     * fails
+     */
+    public static void write(Story story, DataOutputStream out) throws IOException
+    {
+        writeString(story.getTitle(), out);
+        writeString(story.getIntroAudioFileName(), out);
+        writeString(story.getIntroRecord(), out);
+
+        AssignmentStatement[] initStatements = story.getInitStatements();
+        out.writeInt(initStatements.length);
+        for (AssignmentStatement statement : initStatements)
+            writeStatement(statement, out);
+
+        Spot[] spots = story.getSpots();
+        out.writeInt(spots.length);
+        for (Spot spot : spots)
+        {
+            out.writeDouble(spot.getLatitude());
+            out.writeDouble(spot.getLongitude());
+            Circle[] circles = spot.getCircles();
+            out.writeInt(circles.length);
+            for (Circle circle : circles)
+            {
+                out.writeInt(circle.getRadius());
+                writeString(circle.getTitle(), out);
+                writeStatements(circle.getStatements(), out);
+            }
+        }
+    }
+
+    /**
+     * Read a story written by {@link StoryBinarySerializer#write(Story, DataOutputStream)}.
+     * @param in input stream
+     * @param folderName name of the folder that contains the story's files
+     * @return story
+     * @throws IOException if the data is malformed or reading fails
+     */
+    public static Story read(DataInputStream in, String folderName) throws IOException
+    {
+        String title = readString(in);
+        String introAudioFileName = readString(in);
+        String introRecord = readString(in);
+
+        AssignmentStatement[] initStatements = new AssignmentStatement[readLength(in)];
+        for (int i = 0; i < initStatements.length; i++)
+        {
+            AbsStatement statement = readStatement(in);
+            if (!(statement instanceof AssignmentStatement))
+                throw new IOException("There is a statement other than an assignment in init.");
+            initStatements[i] = (AssignmentStatement) statement;
+        }
+
+        Spot[] spots = new Spot[readLength(in)];
+        for (int i = 0; i < spots.length; i++)
+        {
+            double latitude = in.readDouble();
+            double longitude = in.readDouble();
+            Circle[] circles = new Circle[readLength(in)];
+            for (int j = 0; j < circles.length; j++)
+            {
+                int radius = in.readInt();
+                String circleTitle = readString(in);
+                circles[j] = new Circle(radius, circleTitle, readStatements(in));
+            }
+
+            // Make every circle know it's spot.
+            spots[i] = new Spot(latitude, longitude, circles);
+            for (Circle circle : circles)
+                circle.setSpot(spots[i]);
+        }
+
+        return new Story(title, folderName, introAudioFileName, introRecord, spots,
+                initStatements);
+    }
+
+    /**
+     * Write a list of statements.
+     * @param statements statements
+     * @param out output stream
+     * @throws IOException
+     */
+    private static void writeStatements(AbsStatement[] statements, DataOutputStream out)
+            throws IOException
+    {
+        out.writeInt(statements.length);
+        for (AbsStatement statement : statements)
+            writeStatement(statement, out);
+    }
+
+    /**
+     * Write a statement preceded by its type.
+     * @param statement statement
+     * @param out output stream
+     * @throws IOException
+     */
+    private static void writeStatement(AbsStatement statement, DataOutputStream out)
+            throws IOException
+    {
+        if (statement instanceof AssignmentStatement)
+        {
+            AssignmentStatement assignment = (AssignmentStatement) statement;
+            out.writeByte(STATEMENT_ASSIGN);
+            writeString(assignment.getVariable(), out);
+            out.writeInt(assignment.getValue());
+        }
+        else if (statement instanceof EndStatement)
+            out.writeByte(STATEMENT_END);
+        else if (statement instanceof IfStatement)
+        {
+            IfStatement ifStatement = (IfStatement) statement;
+            out.writeByte(STATEMENT_IF);
+            out.writeInt(ifStatement.getConditions().length);
+            for (AbsOperator operator : ifStatement.getConditions())
+                writeOperator(operator, out);
+            writeStatements(ifStatement.getThenStatements(), out);
+            writeStatements(ifStatement.getElseStatements(), out);
+        }
+        else if (statement instanceof IncrementStatement)
+        {
+            IncrementStatement increment = (IncrementStatement) statement;
+            out.writeByte(STATEMENT_INCREMENT);
+            writeString(increment.getVariable(), out);
+            out.writeInt(increment.getValue());
+        }
+        else if (statement instanceof PlayStatement)
+        {
+            PlayStatement play = (PlayStatement) statement;
+            out.writeByte(STATEMENT_PLAY);
+            writeString(play.getAudioFileName(), out);
+            writeString(play.getText(), out);
+            out.writeFloat(play.getVolume());
+        }
+        else
+            throw new IOException("There is an unknown statement: " + statement);
+    }
+
+    /**
+     * Write an operator preceded by its type.
+     * @param operator operator
+     * @param out output stream
+     * @throws IOException
+     */
+    private static void writeOperator(AbsOperator operator, DataOutputStream out)
+            throws IOException
+    {
+        if (operator instanceof EqualityOperator)
+        {
+            EqualityOperator equalityOperator = (EqualityOperator) operator;
+            out.writeByte(OPERATOR_EQUALS);
+            writeString(equalityOperator.getElement1(), out);
+            writeString(equalityOperator.getElement2(), out);
+        }
+        else
+            throw new IOException("There is an unknown operator: " + operator);
+    }
+
+    /**
+     * Read a list of statements.
+     * @param in input stream
+     * @return statements
+     * @throws IOException
+     */
+    private static AbsStatement[] readStatements(DataInputStream in) throws IOException
+    {
+        AbsStatement[] statements = new AbsStatement[readLength(in)];
+        for (int i = 0; i < statements.length; i++)
+            statements[i] = readStatement(in);
+        return statements;
+    }
+
+    /**
+     * Read a statement preceded by its type.
+     * @param in input stream
+     * @return statement
+     * @throws IOException
+     */
+    private static AbsStatement readStatement(DataInputStream in) throws IOException
+    {
+        byte type = in.readByte();
+        switch (type)
+        {
+            case STATEMENT_ASSIGN:
+            {
+                String variable = readString(in);
+                return new AssignmentStatement(variable, in.readInt());
+            }
+            case STATEMENT_END:
+                return new EndStatement();
+            case STATEMENT_IF:
+            {
+                AbsOperator[] conditions = new AbsOperator[readLength(in)];
+                for (int i = 0; i < conditions.length; i++)
+                    conditions[i] = readOperator(in);
+                AbsStatement[] thenStatements = readStatements(in);
+                return new IfStatement(conditions, thenStatements, readStatements(in));
+            }
+            case STATEMENT_INCREMENT:
+            {
+                String variable = readString(in);
+                return new IncrementStatement(variable, in.readInt());
+            }
+            case STATEMENT_PLAY:
+            {
+                String audioFileName = readString(in);
+                String text = readString(in);
+                return new PlayStatement(audioFileName, text, in.readFloat());
+            }
+            default:
+                throw new IOException("There is an unknown statement type: " + type);
+        }
+    }
+
+    /**
+     * Read an operator preceded by its type.
+     * @param in input stream
+     * @return operator
+     * @throws IOException
+     */
+    private static AbsOperator readOperator(DataInputStream in) throws IOException
+    {
+        byte type = in.readByte();
+        if (type != OPERATOR_EQUALS)
+            throw new IOException("There is an unknown operator type: " + type);
+        String element1 = readString(in);
+        return new EqualityOperator(element1, readString(in));
+    }
+
+    /**
+     * Read the length of a list.
+     * @param in input stream
+     * @return length
+     * @throws IOException if the length is negative
+     */
+    private static int readLength(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0)
+            throw new IOException("There is a negative length: " + length);
+        return length;
+    }
+
+    /**
+     * Write a string, which may be null.
+     * @param string string
+     * @param out output stream
+     * @throws IOException
+     */
+    private static void writeString(String string, DataOutputStream out) throws IOException
+    {
+        if (string == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a string written by
+     * {@link StoryBinarySerializer#writeString(String, DataOutputStream)}.
+     * @param in input stream
+     * @return string, which may be null
+     * @throws IOException
+     */
+    private static String readString(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
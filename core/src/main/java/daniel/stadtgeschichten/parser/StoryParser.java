@@ -0,0 +1,38 @@
+package daniel.stadtgeschichten.parser;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import daniel.stadtgeschichten.model.Story;
+import daniel.stadtgeschichten.model.StoryHeader;
+
+/**
+ * Interface of the parsers transforming the story described in an xml file based on our own format
+ * into an object. All implementations produce the same objects for the same file.
+ */
+public interface StoryParser
+{
+    /**
+     * Parse the given input stream to get the story as object.
+     * @param in input stream, which is closed afterwards
+     * @param folderName name of the folder that contains the to be parsed file
+     * @return parsed story
+     * @throws XmlPullParserException
+     * @throws IOException
+     */
+    Story parse(InputStream in, String folderName) throws XmlPullParserException, IOException;
+
+    /**
+     * Parse the given input stream to get only the attributes of the story tag.
+     * @param in input stream, which is closed afterwards
+     * @param folderName name of the folder that contains the to be parsed file
+     * @param assetPath asset path of the to be parsed file
+     * @return header of the story
+     * @throws XmlPullParserException
+     * @throws IOException
+     */
+    StoryHeader parseHeader(InputStream in, String folderName, String assetPath)
+            throws XmlPullParserException, IOException;
+}
@@ -1,9 +1,8 @@
 package daniel.stadtgeschichten.parser;
 
-import android.util.Xml;
-
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -21,11 +20,13 @@ import daniel.stadtgeschichten.model.IncrementStatement;
 import daniel.stadtgeschichten.model.PlayStatement;
 import daniel.stadtgeschichten.model.Spot;
 import daniel.stadtgeschichten.model.Story;
+import daniel.stadtgeschichten.model.StoryHeader;
 
 /**
  * This parser transforms the story described in an xml file based on our own format into an object.
+ * It works on any XmlPullParser implementation, which is created by an XmlPullParserFactory.
  */
-public class StoryXmlParser
+public class StoryXmlParser implements StoryParser
 {
     public static final String TAG_STORY = "story";
     public static final String TAG_STORY_ATTR_TITLE = "title";
@@ -57,6 +58,31 @@ public class StoryXmlParser
     public static final String TAG_INCREMENT_ATTR_VALUE = "value";
     public static final String TAG_END = "end";
 
+    /**
+     * Factory creating the pull parsers
+     */
+    private final XmlPullParserFactory factory;
+
+    /**
+     * Create a parser using the default XmlPullParser implementation with namespace processing,
+     * like android.util.Xml does.
+     * @throws XmlPullParserException if there is no XmlPullParser implementation
+     */
+    public StoryXmlParser() throws XmlPullParserException
+    {
+        this(XmlPullParserFactory.newInstance());
+        factory.setNamespaceAware(true);
+    }
+
+    /**
+     * Create a parser using the pull parsers created by the given factory.
+     * @param factory factory creating the pull parsers
+     */
+    public StoryXmlParser(XmlPullParserFactory factory)
+    {
+        this.factory = factory;
+    }
+
     /**
      * Start the parser on the given input stream to get the story as object.
      * @param in input stream
@@ -65,12 +91,13 @@ public class StoryXmlParser
      * @throws XmlPullParserException
      * @throws IOException
      */
-    public static Story parse(InputStream in, String folderName)
+    @Override
+    public Story parse(InputStream in, String folderName)
             throws XmlPullParserException, IOException
     {
         try
         {
-            XmlPullParser parser = Xml.newPullParser();
+            XmlPullParser parser = factory.newPullParser();
             parser.setInput(in, null);
             parser.nextTag();
 
@@ -124,6 +151,42 @@ public class StoryXmlParser
         }
     }
 
+    /**
+     * Start the parser on the given input stream to get only the attributes of the story tag. The
+     * rest of the file is not parsed.
+     * @param in input stream
+     * @param folderName name of the folder that contains the to be parsed file
+     * @param assetPath asset path of the to be parsed file
+     * @return header of the story
+     * @throws XmlPullParserException
+     * @throws IOException
+     */
+    @Override
+    public StoryHeader parseHeader(InputStream in, String folderName, String assetPath)
+            throws XmlPullParserException, IOException
+    {
+        try
+        {
+            XmlPullParser parser = factory.newPullParser();
+            parser.setInput(in, null);
+            parser.nextTag();
+
+            // Require <story> root start tag.
+            parser.require(XmlPullParser.START_TAG, null, TAG_STORY);
+
+            // Get attributes.
+            return new StoryHeader(parser.getAttributeValue(null, TAG_STORY_ATTR_TITLE),
+                    folderName, assetPath,
+                    parser.getAttributeValue(null, TAG_STORY_ATTR_INTRO_FILE),
+                    parser.getAttributeValue(null, TAG_STORY_ATTR_INTRO_TEXT));
+        }
+        finally
+        {
+            // Close the input stream in case of a thrown exception.
+            in.close();
+        }
+    }
+
     /**
      * Read an init tag.
      * @param parser parser
@@ -423,7 +486,10 @@ public class StoryXmlParser
             thenStatements = readStatements(parser, TAG_THEN);
         parser.nextTag();
         if (parser.getName().equals(TAG_ELSE))
+        {
             elseStatements = readStatements(parser, TAG_ELSE);
+            parser.nextTag();
+        }
 
         // Require closing tag.
         parser.require(XmlPullParser.END_TAG, null, TAG_IF);
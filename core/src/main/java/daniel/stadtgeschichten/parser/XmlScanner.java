@@ -0,0 +1,1101 @@
+package daniel.stadtgeschichten.parser;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * This scanner reads an XML document from a byte buffer and reports the same events as the
+ * {@link XmlPullParser#next()} method of a non-validating pull parser with namespace processing.
+ * Names given up front are interned: tags and attributes with such a name are identified by the
+ * name's index, without allocating a String, and attribute values are only turned into Strings or
+ * numbers when they are requested. Documents have to use an encoding that is compatible with
+ * ASCII, which is UTF-8 if not declared otherwise.
+ * <p>
+ * Tags and attributes are reported by their local names, and namespace declarations are not
+ * reported as attributes, as kXML with namespace processing does. Unlike kXML, prefixes are not
+ * resolved, so a prefix that has not been declared is accepted, and the namespace of a name is not
+ * known.
+ */
+public class XmlScanner
+{
+    public static final int START_DOCUMENT = XmlPullParser.START_DOCUMENT;
+    public static final int END_DOCUMENT = XmlPullParser.END_DOCUMENT;
+    public static final int START_TAG = XmlPullParser.START_TAG;
+    public static final int END_TAG = XmlPullParser.END_TAG;
+    public static final int TEXT = XmlPullParser.TEXT;
+
+    /**
+     * Id of names that have not been given up front
+     */
+    public static final int UNKNOWN_NAME = -1;
+
+    /**
+     * Largest number of digits of an integer that cannot overflow
+     */
+    private static final int MAXIMUM_INT_DIGITS = 9;
+
+    /**
+     * Largest number of significant digits of a double that is represented exactly
+     */
+    private static final int MAXIMUM_DOUBLE_DIGITS = 15;
+
+    /**
+     * Largest mantissa of a float that is represented exactly
+     */
+    private static final int MAXIMUM_FLOAT_MANTISSA = 1 << 24;
+
+    /**
+     * Powers of ten that are represented exactly as double
+     */
+    private static final double[] DOUBLE_POWERS = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+            1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    /**
+     * Powers of ten that are represented exactly as float
+     */
+    private static final float[] FLOAT_POWERS = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f,
+            1e8f, 1e9f, 1e10f};
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    /**
+     * Size of the buffer used when the length of the input is unknown
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Interned names
+     */
+    private final String[] names;
+
+    /**
+     * Interned names encoded as ASCII
+     */
+    private final byte[][] nameBytes;
+
+    /**
+     * Open addressing hash table containing the index of every interned name plus 1, 0 if empty
+     */
+    private final int[] nameTable;
+
+    /**
+     * Document
+     */
+    private byte[] buffer;
+
+    /**
+     * Length of the document
+     */
+    private int length;
+
+    /**
+     * Position of the next byte to read
+     */
+    private int position;
+
+    /**
+     * Encoding of the document
+     */
+    private Charset charset = UTF_8;
+
+    /**
+     * Type of the current event
+     */
+    private int eventType = START_DOCUMENT;
+
+    /**
+     * Name of the current tag, null if the current event is no tag
+     */
+    private String name;
+
+    /**
+     * Id of the current tag's name
+     */
+    private int nameId;
+
+    /**
+     * True if the current start tag is an empty element tag, so that the next event is its end tag
+     */
+    private boolean isEmptyElement;
+
+    /**
+     * True if the current text consists of white space only
+     */
+    private boolean isWhitespace;
+
+    /**
+     * Names of the open elements
+     */
+    private String[] openNames = new String[16];
+
+    /**
+     * Ids of the names of the open elements
+     */
+    private int[] openNameIds = new int[16];
+
+    /**
+     * Position of the prefixed name of every open element, which its end tag has to repeat
+     */
+    private int[] openNameStarts = new int[16];
+
+    /**
+     * Position behind the prefixed name of every open element
+     */
+    private int[] openNameEnds = new int[16];
+
+    /**
+     * Number of open elements
+     */
+    private int depth;
+
+    /**
+     * Number of attributes of the current start tag
+     */
+    private int attributeCount;
+
+    /**
+     * Name of every attribute of the current start tag
+     */
+    private String[] attributeNames = new String[8];
+
+    /**
+     * Position of the first byte of every attribute value
+     */
+    private int[] valueStarts = new int[8];
+
+    /**
+     * Position behind the last byte of every attribute value
+     */
+    private int[] valueEnds = new int[8];
+
+    /**
+     * Indicates for every attribute value whether it contains references, line breaks or bytes
+     * other than ASCII, which have to be decoded
+     */
+    private boolean[] isValueEncoded = new boolean[8];
+
+    /**
+     * Index of the attribute of the current start tag with every interned name
+     */
+    private final int[] attributeIndices;
+
+    /**
+     * Number of the start tag every entry of {@link XmlScanner#attributeIndices} belongs to
+     */
+    private final int[] attributeTags;
+
+    /**
+     * Number of the current start tag
+     */
+    private int tagNumber;
+
+    /**
+     * Number of digits behind the decimal point of the last mantissa read
+     */
+    private int fractionDigits;
+
+    /**
+     * True if the last mantissa read has a minus sign
+     */
+    private boolean isMantissaNegative;
+
+    /**
+     * Create a scanner interning the given names.
+     * @param names names consisting of ASCII characters
+     */
+    public XmlScanner(String... names)
+    {
+        this.names = names;
+        nameBytes = new byte[names.length][];
+        int tableSize = Integer.highestOneBit(Math.max(1, names.length) * 4) * 2;
+        nameTable = new int[tableSize];
+        for (int i = 0; i < names.length; i++)
+        {
+            nameBytes[i] = names[i].getBytes(ISO_8859_1);
+            int slot = hash(nameBytes[i], 0, nameBytes[i].length) & (tableSize - 1);
+            while (nameTable[slot] != 0)
+                slot = (slot + 1) & (tableSize - 1);
+            nameTable[slot] = i + 1;
+        }
+        attributeIndices = new int[names.length];
+        attributeTags = new int[names.length];
+    }
+
+    /**
+     * Read the whole input stream and start scanning it.
+     * @param in input stream, which is not closed
+     * @throws IOException
+     * @throws XmlPullParserException if the encoding is not supported
+     */
+    public void setInput(InputStream in) throws IOException, XmlPullParserException
+    {
+        byte[] buffer = new byte[Math.max(in.available() + 1, BUFFER_SIZE)];
+        int length = 0;
+        int count;
+        while ((count = in.read(buffer, length, buffer.length - length)) != -1)
+        {
+            length += count;
+            if (length == buffer.length)
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        setInput(buffer, length);
+    }
+
+    /**
+     * Start scanning the given document.
+     * @param buffer buffer containing the document, which must not be changed while scanning
+     * @param length length of the document
+     * @throws XmlPullParserException if the encoding is not supported
+     */
+    public void setInput(byte[] buffer, int length) throws XmlPullParserException
+    {
+        this.buffer = buffer;
+        this.length = length;
+        position = 0;
+        charset = UTF_8;
+        eventType = START_DOCUMENT;
+        name = null;
+        nameId = UNKNOWN_NAME;
+        isEmptyElement = false;
+        depth = 0;
+        attributeCount = 0;
+
+        // Skip a byte order mark.
+        if (length >= 3 && (buffer[0] & 0xFF) == 0xEF && (buffer[1] & 0xFF) == 0xBB
+                && (buffer[2] & 0xFF) == 0xBF)
+            position = 3;
+        else if (length >= 2 && ((buffer[0] & 0xFF) == 0xFE || (buffer[0] & 0xFF) == 0xFF))
+            throw new XmlPullParserException("The document is not encoded compatibly to ASCII.");
+
+        // Read the encoding from the XML declaration.
+        if (startsWith(position, "<?xml") && position + 5 < length && isSpace(buffer[position + 5]))
+        {
+            int end = indexOf(position, "?>");
+            if (end < 0)
+                throw new XmlPullParserException("The XML declaration is not closed.");
+            int encoding = indexOf(position, "encoding");
+            if (encoding >= 0 && encoding < end)
+            {
+                int start = skipSpaces(encoding + 8);
+                if (start < end && buffer[start] == '=')
+                {
+                    start = skipSpaces(start + 1);
+                    if (start < end && (buffer[start] == '"' || buffer[start] == '\''))
+                    {
+                        int valueEnd = start + 1;
+                        while (valueEnd < end && buffer[valueEnd] != buffer[start])
+                            valueEnd++;
+                        setCharset(new String(buffer, start + 1, valueEnd - start - 1,
+                                ISO_8859_1));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Use the given encoding to decode the document.
+     * @param encoding name of the encoding
+     * @throws XmlPullParserException if the encoding is not supported
+     */
+    private void setCharset(String encoding) throws XmlPullParserException
+    {
+        try
+        {
+            charset = Charset.forName(encoding);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new XmlPullParserException("The encoding is not supported: " + encoding);
+        }
+        if (!Arrays.equals("<?xml".getBytes(charset), "<?xml".getBytes(ISO_8859_1)))
+            throw new XmlPullParserException("The encoding is not compatible to ASCII: "
+                    + encoding);
+    }
+
+    /**
+     * @return type of the current event
+     */
+    public int getEventType()
+    {
+        return eventType;
+    }
+
+    /**
+     * @return name of the current tag, null if the current event is no tag
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return index of the current tag's name among the interned names,
+     * {@link XmlScanner#UNKNOWN_NAME} if it is not interned or the current event is no tag
+     */
+    public int getNameId()
+    {
+        return nameId;
+    }
+
+    /**
+     * @return true if the current text consists of white space only
+     */
+    public boolean isWhitespace()
+    {
+        return isWhitespace;
+    }
+
+    /**
+     * Go to the next start tag, end tag, text or the end of the document. Comments, processing
+     * instructions and the document type declaration are skipped, and adjacent text and CDATA
+     * sections are reported as one text.
+     * @return type of the new event
+     * @throws XmlPullParserException if the document is malformed
+     */
+    public int next() throws XmlPullParserException
+    {
+        attributeCount = 0;
+
+        // An empty element tag is followed by its end tag.
+        if (isEmptyElement)
+        {
+            isEmptyElement = false;
+            depth--;
+            return eventType = END_TAG;
+        }
+
+        name = null;
+        nameId = UNKNOWN_NAME;
+        boolean isText = false;
+        isWhitespace = true;
+        while (true)
+        {
+            if (position >= length)
+            {
+                if (isText)
+                    return eventType = TEXT;
+                if (depth > 0)
+                    throw error("The document ends before the element " + openNames[depth - 1]
+                            + " is closed.");
+                return eventType = END_DOCUMENT;
+            }
+
+            if (buffer[position] != '<')
+            {
+                isText = true;
+                readText();
+                continue;
+            }
+
+            if (startsWith(position, "<!--"))
+                skipPast("-->", position + 4);
+            else if (startsWith(position, "<![CDATA["))
+            {
+                int end = indexOf(position + 9, "]]>");
+                if (end < 0)
+                    throw error("A CDATA section is not closed.");
+                for (int i = position + 9; i < end; i++)
+                    if (!isSpace(buffer[i]))
+                        isWhitespace = false;
+                isText = true;
+                position = end + 3;
+            }
+            else if (startsWith(position, "<!DOCTYPE"))
+                skipDoctype();
+            else if (startsWith(position, "<?"))
+                skipPast("?>", position + 2);
+            else if (isText)
+                return eventType = TEXT;
+            else if (position + 1 < length && buffer[position + 1] == '/')
+            {
+                readEndTag();
+                return eventType = END_TAG;
+            }
+            else
+            {
+                readStartTag();
+                return eventType = START_TAG;
+            }
+        }
+    }
+
+    /**
+     * Go to the next start or end tag, skipping white space.
+     * @return type of the new event
+     * @throws XmlPullParserException if there is something else than white space in front of the
+     * next tag
+     */
+    public int nextTag() throws XmlPullParserException
+    {
+        next();
+        if (eventType == TEXT && isWhitespace)
+            next();
+        if (eventType != START_TAG && eventType != END_TAG)
+            throw error("A start or end tag is expected.");
+        return eventType;
+    }
+
+    /**
+     * Check the current event.
+     * @param type expected type
+     * @param name expected name of the tag, null if it does not matter
+     * @throws XmlPullParserException if the current event is not the expected one
+     */
+    public void require(int type, String name) throws XmlPullParserException
+    {
+        if (type != eventType || (name != null && !name.equals(this.name)))
+            throw error("An event of type " + type + " with name " + name + " is expected.");
+    }
+
+    /**
+     * Get the index of the current start tag's attribute with the given name.
+     * @param nameId index of the attribute's name among the interned names
+     * @return index of the attribute, -1 if there is no such attribute
+     */
+    public int getAttributeIndex(int nameId)
+    {
+        if (attributeTags[nameId] != tagNumber || eventType != START_TAG)
+            return -1;
+        return attributeIndices[nameId];
+    }
+
+    /**
+     * Get the value of the current start tag's attribute with the given name.
+     * @param nameId index of the attribute's name among the interned names
+     * @return value of the attribute, null if there is no such attribute
+     * @throws XmlPullParserException if the value contains an unknown reference
+     */
+    public String getAttributeValue(int nameId) throws XmlPullParserException
+    {
+        int index = getAttributeIndex(nameId);
+        if (index < 0)
+            return null;
+        int start = valueStarts[index];
+        int end = valueEnds[index];
+        if (!isValueEncoded[index])
+            return new String(buffer, start, end - start, ISO_8859_1);
+        return decodeValue(start, end);
+    }
+
+    /**
+     * Get the value of the current start tag's attribute with the given name as integer, like
+     * {@link Integer#parseInt(String)} does.
+     * @param nameId index of the attribute's name among the interned names
+     * @return value of the attribute
+     * @throws XmlPullParserException if the value contains an unknown reference
+     * @throws NumberFormatException if there is no such attribute or it is no integer
+     */
+    public int getIntAttribute(int nameId) throws XmlPullParserException
+    {
+        int index = getAttributeIndex(nameId);
+        if (index >= 0 && !isValueEncoded[index])
+        {
+            int start = valueStarts[index];
+            int end = valueEnds[index];
+            boolean isNegative = start < end && buffer[start] == '-';
+            int digitsStart = start < end && (buffer[start] == '-' || buffer[start] == '+')
+                    ? start + 1 : start;
+            if (digitsStart < end && end - digitsStart <= MAXIMUM_INT_DIGITS)
+            {
+                int value = 0;
+                int i = digitsStart;
+                while (i < end && buffer[i] >= '0' && buffer[i] <= '9')
+                    value = value * 10 + (buffer[i++] - '0');
+                if (i == end)
+                    return isNegative ? -value : value;
+            }
+        }
+
+        // Let the platform handle everything else, including the errors.
+        return Integer.parseInt(getAttributeValue(nameId));
+    }
+
+    /**
+     * Get the value of the current start tag's attribute with the given name as double, like
+     * {@link Double#parseDouble(String)} does.
+     * @param nameId index of the attribute's name among the interned names
+     * @return value of the attribute
+     * @throws XmlPullParserException if the value contains an unknown reference
+     * @throws NumberFormatException if there is no such attribute or it is no number
+     * @throws NullPointerException if there is no such attribute
+     */
+    public double getDoubleAttribute(int nameId) throws XmlPullParserException
+    {
+        int index = getAttributeIndex(nameId);
+        if (index >= 0 && !isValueEncoded[index])
+        {
+            // Decimal numbers with few digits are exactly the quotient of their digits and a power
+            // of ten, and the division is rounded correctly.
+            long mantissa = readMantissa(valueStarts[index], valueEnds[index],
+                    MAXIMUM_DOUBLE_DIGITS);
+            if (mantissa != -1 && fractionDigits < DOUBLE_POWERS.length)
+            {
+                double value = mantissa / DOUBLE_POWERS[fractionDigits];
+                return isMantissaNegative ? -value : value;
+            }
+        }
+
+        // Let the platform handle everything else, including the errors.
+        return Double.parseDouble(getAttributeValue(nameId));
+    }
+
+    /**
+     * Get the value of the current start tag's attribute with the given name as float, like
+     * {@link Float#parseFloat(String)} does.
+     * @param nameId index of the attribute's name among the interned names
+     * @return value of the attribute
+     * @throws XmlPullParserException if the value contains an unknown reference
+     * @throws NumberFormatException if it is no number
+     * @throws NullPointerException if there is no such attribute
+     */
+    public float getFloatAttribute(int nameId) throws XmlPullParserException
+    {
+        int index = getAttributeIndex(nameId);
+        if (index >= 0 && !isValueEncoded[index])
+        {
+            long mantissa = readMantissa(valueStarts[index], valueEnds[index],
+                    MAXIMUM_DOUBLE_DIGITS);
+            if (mantissa != -1 && mantissa <= MAXIMUM_FLOAT_MANTISSA
+                    && fractionDigits < FLOAT_POWERS.length)
+            {
+                float value = mantissa / FLOAT_POWERS[fractionDigits];
+                return isMantissaNegative ? -value : value;
+            }
+        }
+
+        // Let the platform handle everything else, including the errors.
+        return Float.parseFloat(getAttributeValue(nameId));
+    }
+
+    /**
+     * Read a decimal number without exponent as integral mantissa. The number of digits behind
+     * the decimal point is stored in {@link XmlScanner#fractionDigits}, the sign in
+     * {@link XmlScanner#isMantissaNegative}.
+     * @param start position of the first byte
+     * @param end position behind the last byte
+     * @param maximumDigits maximum number of significant digits
+     * @return mantissa, -1 if the number has another format or too many digits
+     */
+    private long readMantissa(int start, int end, int maximumDigits)
+    {
+        isMantissaNegative = start < end && buffer[start] == '-';
+        if (start < end && (buffer[start] == '-' || buffer[start] == '+'))
+            start++;
+
+        long mantissa = 0;
+        int digits = 0;
+        int significantDigits = 0;
+        int pointPosition = -1;
+        for (int i = start; i < end; i++)
+        {
+            byte b = buffer[i];
+            if (b >= '0' && b <= '9')
+            {
+                digits++;
+                if (mantissa != 0 || b != '0')
+                    significantDigits++;
+                if (significantDigits > maximumDigits)
+                    return -1;
+                mantissa = mantissa * 10 + (b - '0');
+            }
+            else if (b == '.' && pointPosition < 0)
+                pointPosition = i;
+            else
+                return -1;
+        }
+        if (digits == 0)
+            return -1;
+        fractionDigits = pointPosition < 0 ? 0 : end - pointPosition - 1;
+        return mantissa;
+    }
+
+    /**
+     * Read text up to the next markup.
+     * @throws XmlPullParserException if the text contains an unknown reference or is outside of
+     * the root element
+     */
+    private void readText() throws XmlPullParserException
+    {
+        while (position < length && buffer[position] != '<')
+        {
+            byte b = buffer[position];
+            if (b == '&')
+            {
+                int end = indexOf(position, ";");
+                if (end < 0)
+                    throw error("A reference is not closed.");
+                char c = decodeReference(position + 1, end);
+                if (!(c == ' ' || c == '\t' || c == '\n' || c == '\r'))
+                    isWhitespace = false;
+                position = end + 1;
+                continue;
+            }
+            if (!isSpace(b))
+            {
+                isWhitespace = false;
+                if (depth == 0)
+                    throw error("There is text outside of the root element.");
+            }
+            position++;
+        }
+    }
+
+    /**
+     * Read a start tag and its attributes.
+     * @throws XmlPullParserException if the tag is malformed
+     */
+    private void readStartTag() throws XmlPullParserException
+    {
+        int nameStart = position + 1;
+        int nameEnd = readName(nameStart);
+        int localStart = skipPrefix(nameStart, nameEnd);
+        nameId = lookUp(localStart, nameEnd);
+        name = nameId == UNKNOWN_NAME
+                ? new String(buffer, localStart, nameEnd - localStart, charset) : names[nameId];
+        tagNumber++;
+
+        // Read the attributes.
+        position = nameEnd;
+        while (true)
+        {
+            position = skipSpaces(position);
+            if (position >= length)
+                throw error("The tag " + name + " is not closed.");
+            byte b = buffer[position];
+            if (b == '>')
+            {
+                position++;
+                break;
+            }
+            if (b == '/')
+            {
+                if (position + 1 >= length || buffer[position + 1] != '>')
+                    throw error("The tag " + name + " is malformed.");
+                position += 2;
+                isEmptyElement = true;
+                break;
+            }
+            if (position == nameEnd)
+                throw error("There is no white space in front of an attribute of " + name + ".");
+            readAttribute();
+        }
+
+        // Open the element.
+        if (depth == openNames.length)
+        {
+            openNames = Arrays.copyOf(openNames, depth * 2);
+            openNameIds = Arrays.copyOf(openNameIds, depth * 2);
+            openNameStarts = Arrays.copyOf(openNameStarts, depth * 2);
+            openNameEnds = Arrays.copyOf(openNameEnds, depth * 2);
+        }
+        openNames[depth] = name;
+        openNameIds[depth] = nameId;
+        openNameStarts[depth] = nameStart;
+        openNameEnds[depth] = nameEnd;
+        depth++;
+    }
+
+    /**
+     * Read an attribute of a start tag.
+     * @throws XmlPullParserException if the attribute is malformed
+     */
+    private void readAttribute() throws XmlPullParserException
+    {
+        int nameStart = position;
+        int nameEnd = readName(nameStart);
+        int localStart = skipPrefix(nameStart, nameEnd);
+        int attributeNameId = lookUp(localStart, nameEnd);
+        String attributeName = attributeNameId == UNKNOWN_NAME
+                ? new String(buffer, localStart, nameEnd - localStart, charset)
+                : names[attributeNameId];
+
+        position = skipSpaces(nameEnd);
+        if (position >= length || buffer[position] != '=')
+            throw error("The attribute " + attributeName + " has no value.");
+        position = skipSpaces(position + 1);
+        if (position >= length || (buffer[position] != '"' && buffer[position] != '\''))
+            throw error("The value of the attribute " + attributeName + " is not quoted.");
+        byte quote = buffer[position];
+        int valueStart = position + 1;
+        boolean isEncoded = false;
+        int i = valueStart;
+        while (i < length && buffer[i] != quote)
+        {
+            byte b = buffer[i];
+            if (b == '<')
+                throw error("The value of the attribute " + attributeName + " contains <.");
+            if (b == '&' || b == '\n' || b == '\r' || b < 0)
+                isEncoded = true;
+            i++;
+        }
+        if (i >= length)
+            throw error("The value of the attribute " + attributeName + " is not closed.");
+        position = i + 1;
+
+        // Namespace declarations are no attributes.
+        if (regionEquals(nameStart, nameEnd, "xmlns")
+                || (localStart - nameStart == 6 && startsWith(nameStart, "xmlns:")))
+            return;
+
+        // Store the attribute. Of a duplicated attribute, the last one is found by its name.
+        if (attributeCount == attributeNames.length)
+        {
+            attributeNames = Arrays.copyOf(attributeNames, attributeCount * 2);
+            valueStarts = Arrays.copyOf(valueStarts, attributeCount * 2);
+            valueEnds = Arrays.copyOf(valueEnds, attributeCount * 2);
+            isValueEncoded = Arrays.copyOf(isValueEncoded, attributeCount * 2);
+        }
+        attributeNames[attributeCount] = attributeName;
+        valueStarts[attributeCount] = valueStart;
+        valueEnds[attributeCount] = i;
+        isValueEncoded[attributeCount] = isEncoded;
+        if (attributeNameId != UNKNOWN_NAME)
+        {
+            attributeIndices[attributeNameId] = attributeCount;
+            attributeTags[attributeNameId] = tagNumber;
+        }
+        attributeCount++;
+    }
+
+    /**
+     * Read an end tag, which has to close the innermost open element.
+     * @throws XmlPullParserException if the tag is malformed or closes another element
+     */
+    private void readEndTag() throws XmlPullParserException
+    {
+        int nameStart = position + 2;
+        int nameEnd = readName(nameStart);
+        position = skipSpaces(nameEnd);
+        if (position >= length || buffer[position] != '>')
+            throw error("An end tag is not closed.");
+        position++;
+
+        if (depth == 0)
+            throw error("There is an end tag without start tag.");
+        depth--;
+        name = openNames[depth];
+        nameId = openNameIds[depth];
+        int openStart = openNameStarts[depth];
+        int openEnd = openNameEnds[depth];
+        if (!regionEquals(nameStart, nameEnd, openStart, openEnd))
+            throw error("The end tag " + new String(buffer, nameStart, nameEnd - nameStart,
+                    charset) + " does not close " + new String(buffer, openStart,
+                    openEnd - openStart, charset) + ".");
+    }
+
+    /**
+     * Skip the prefix of a name, which is not resolved to a namespace.
+     * @param start position of the name
+     * @param end position behind the name
+     * @return position of the local part of the name
+     */
+    private int skipPrefix(int start, int end)
+    {
+        for (int i = start; i < end - 1; i++)
+            if (buffer[i] == ':')
+                return i + 1;
+        return start;
+    }
+
+    /**
+     * Read a name.
+     * @param start position of the name
+     * @return position behind the name
+     * @throws XmlPullParserException if the name is empty
+     */
+    private int readName(int start) throws XmlPullParserException
+    {
+        int end = start;
+        while (end < length)
+        {
+            byte b = buffer[end];
+            if (isSpace(b) || b == '>' || b == '/' || b == '=' || b == '<' || b == '"'
+                    || b == '\'')
+                break;
+            end++;
+        }
+        if (end == start)
+            throw error("A name is expected.");
+        return end;
+    }
+
+    /**
+     * Skip the document type declaration including its internal subset.
+     * @throws XmlPullParserException if the declaration is not closed
+     */
+    private void skipDoctype() throws XmlPullParserException
+    {
+        int nesting = 0;
+        byte quote = 0;
+        for (int i = position + 9; i < length; i++)
+        {
+            byte b = buffer[i];
+            if (quote != 0)
+            {
+                if (b == quote)
+                    quote = 0;
+            }
+            else if (b == '"' || b == '\'')
+                quote = b;
+            else if (b == '[')
+                nesting++;
+            else if (b == ']')
+                nesting--;
+            else if (b == '>' && nesting == 0)
+            {
+                position = i + 1;
+                return;
+            }
+        }
+        throw error("The document type declaration is not closed.");
+    }
+
+    /**
+     * Skip everything up to and including the given terminator.
+     * @param terminator terminator
+     * @param start position to start searching at
+     * @throws XmlPullParserException if the terminator is missing
+     */
+    private void skipPast(String terminator, int start) throws XmlPullParserException
+    {
+        int end = indexOf(start, terminator);
+        if (end < 0)
+            throw error("There is no " + terminator + ".");
+        position = end + terminator.length();
+    }
+
+    /**
+     * Decode an attribute value by resolving its references and turning its line breaks into
+     * spaces. Tabs are kept, as kXML does.
+     * @param start position of the first byte of the value
+     * @param end position behind the last byte of the value
+     * @return value
+     * @throws XmlPullParserException if the value contains an unknown reference
+     */
+    private String decodeValue(int start, int end) throws XmlPullParserException
+    {
+        StringBuilder builder = new StringBuilder(end - start);
+        int chunkStart = start;
+        for (int i = start; i < end; i++)
+        {
+            byte b = buffer[i];
+            if (b != '&' && b != '\n' && b != '\r')
+                continue;
+
+            builder.append(new String(buffer, chunkStart, i - chunkStart, charset));
+            if (b == '&')
+            {
+                int referenceEnd = i + 1;
+                while (referenceEnd < end && buffer[referenceEnd] != ';')
+                    referenceEnd++;
+                if (referenceEnd >= end)
+                    throw error("A reference is not closed.");
+                builder.append(decodeReference(i + 1, referenceEnd));
+                i = referenceEnd;
+            }
+            else
+            {
+                // A line break consisting of a carriage return and a line feed becomes one space.
+                if (b == '\r' && i + 1 < end && buffer[i + 1] == '\n')
+                    i++;
+                builder.append(' ');
+            }
+            chunkStart = i + 1;
+        }
+        builder.append(new String(buffer, chunkStart, end - chunkStart, charset));
+        return builder.toString();
+    }
+
+    /**
+     * Decode a predefined entity or character reference.
+     * @param start position behind the ampersand
+     * @param end position of the semicolon
+     * @return referenced character
+     * @throws XmlPullParserException if the reference is unknown
+     */
+    private char decodeReference(int start, int end) throws XmlPullParserException
+    {
+        if (regionEquals(start, end, "lt"))
+            return '<';
+        if (regionEquals(start, end, "gt"))
+            return '>';
+        if (regionEquals(start, end, "amp"))
+            return '&';
+        if (regionEquals(start, end, "quot"))
+            return '"';
+        if (regionEquals(start, end, "apos"))
+            return '\'';
+        if (start < end && buffer[start] == '#')
+        {
+            try
+            {
+                String digits = new String(buffer, start + 1, end - start - 1, ISO_8859_1);
+                int code = digits.startsWith("x") ? Integer.parseInt(digits.substring(1), 16)
+                        : Integer.parseInt(digits);
+                if (code >= 0 && code <= Character.MAX_VALUE)
+                    return (char) code;
+            }
+            catch (NumberFormatException e)
+            {
+                // The reference is reported below.
+            }
+        }
+        throw error("The reference &" + new String(buffer, start, end - start, charset)
+                + "; is unknown.");
+    }
+
+    /**
+     * Look up the given name among the interned names.
+     * @param start position of the name
+     * @param end position behind the name
+     * @return index of the name, {@link XmlScanner#UNKNOWN_NAME} if it is not interned
+     */
+    private int lookUp(int start, int end)
+    {
+        int mask = nameTable.length - 1;
+        int slot = hash(buffer, start, end) & mask;
+        while (nameTable[slot] != 0)
+        {
+            int id = nameTable[slot] - 1;
+            if (regionEquals(start, end, nameBytes[id]))
+                return id;
+            slot = (slot + 1) & mask;
+        }
+        return UNKNOWN_NAME;
+    }
+
+    /**
+     * Hash the given bytes.
+     * @param bytes bytes
+     * @param start position of the first byte
+     * @param end position behind the last byte
+     * @return hash
+     */
+    private static int hash(byte[] bytes, int start, int end)
+    {
+        int hash = end - start;
+        for (int i = start; i < end; i++)
+            hash = hash * 31 + bytes[i];
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Check whether the bytes of the document in the given region equal the given bytes.
+     * @param start position of the region
+     * @param end position behind the region
+     * @param bytes bytes
+     * @return true if that is the case, false otherwise
+     */
+    private boolean regionEquals(int start, int end, byte[] bytes)
+    {
+        if (end - start != bytes.length)
+            return false;
+        for (int i = 0; i < bytes.length; i++)
+            if (buffer[start + i] != bytes[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * Check whether two regions of the document contain the same bytes.
+     * @param start position of the first region
+     * @param end position behind the first region
+     * @param otherStart position of the second region
+     * @param otherEnd position behind the second region
+     * @return true if that is the case, false otherwise
+     */
+    private boolean regionEquals(int start, int end, int otherStart, int otherEnd)
+    {
+        if (end - start != otherEnd - otherStart)
+            return false;
+        for (int i = 0; i < end - start; i++)
+            if (buffer[start + i] != buffer[otherStart + i])
+                return false;
+        return true;
+    }
+
+    /**
+     * Check whether the bytes of the document in the given region equal the given ASCII text.
+     * @param start position of the region
+     * @param end position behind the region
+     * @param text ASCII text
+     * @return true if that is the case, false otherwise
+     */
+    private boolean regionEquals(int start, int end, String text)
+    {
+        return end - start == text.length() && startsWith(start, text);
+    }
+
+    /**
+     * Check whether the document contains the given ASCII text at the given position.
+     * @param start position
+     * @param text ASCII text
+     * @return true if that is the case, false otherwise
+     */
+    private boolean startsWith(int start, String text)
+    {
+        if (start + text.length() > length)
+            return false;
+        for (int i = 0; i < text.length(); i++)
+            if (buffer[start + i] != text.charAt(i))
+                return false;
+        return true;
+    }
+
+    /**
+     * Search the given ASCII text.
+     * @param start position to start searching at
+     * @param text ASCII text
+     * @return position of the text, -1 if it is not contained
+     */
+    private int indexOf(int start, String text)
+    {
+        byte first = (byte) text.charAt(0);
+        for (int i = start; i <= length - text.length(); i++)
+            if (buffer[i] == first && startsWith(i, text))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Skip white space.
+     * @param start position to start at
+     * @return position of the first byte that is no white space
+     */
+    private int skipSpaces(int start)
+    {
+        while (start < length && isSpace(buffer[start]))
+            start++;
+        return start;
+    }
+
+    /**
+     * @param b byte
+     * @return true if the byte is white space, false otherwise
+     */
+    private static boolean isSpace(byte b)
+    {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    /**
+     * Create an exception for a malformed document, stating the current line.
+     * @param message description of the problem
+     * @return exception
+     */
+    private XmlPullParserException error(String message)
+    {
+        int line = 1;
+        for (int i = 0; i < Math.min(position, length); i++)
+            if (buffer[i] == '\n')
+                line++;
+        return new XmlPullParserException(message + " (line " + line + ")");
+    }
+}
@@ -0,0 +1,346 @@
+package daniel.stadtgeschichten.replay;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * This table tells how long the audio files of a story play, so that a simulated player can
+ * finish them at the right virtual time. Durations are taken from a manifest in the story's
+ * folder if there is one, and otherwise read from the headers of WAV, MP3 and Ogg files without
+ * decoding them. Files whose duration cannot be found play for a default time.
+ */
+public class AudioDurations
+{
+    /**
+     * Name of the manifest file, a CSV file with the columns File and Duration in milliseconds
+     */
+    public static final String MANIFEST_FILE = "durations.csv";
+
+    /**
+     * Number of bytes searched at the beginning and at the end of a file
+     */
+    private static final int SEARCH_LENGTH = 65536;
+
+    /**
+     * Bit rates of MPEG-1 Layer III, in kilobits per second
+     */
+    private static final int[] MPEG1_BIT_RATES =
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 0};
+
+    /**
+     * Bit rates of MPEG-2 and MPEG-2.5 Layer III, in kilobits per second
+     */
+    private static final int[] MPEG2_BIT_RATES =
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160, 0};
+
+    /**
+     * Sample rates of MPEG-1, in hertz; MPEG-2 halves and MPEG-2.5 quarters them
+     */
+    private static final int[] MPEG1_SAMPLE_RATES = {44100, 48000, 32000, 0};
+
+    /**
+     * Sample rate of the granule positions of Opus streams, in hertz
+     */
+    private static final int OPUS_SAMPLE_RATE = 48000;
+
+    /**
+     * Folder containing the audio files, null if there is none
+     */
+    private final File folder;
+
+    /**
+     * Time files of unknown duration play, in milliseconds
+     */
+    private final long defaultDuration;
+
+    /**
+     * Durations of the files that have been looked up, in milliseconds, -1 if unknown
+     */
+    private final HashMap<String, Long> durations = new HashMap<>();
+
+    /**
+     * Create a table for the audio files in the given folder, and read its manifest if there is
+     * one.
+     * @param folder folder containing the audio files, null to play every file for the default
+     *               time
+     * @param defaultDuration time files of unknown duration play, in milliseconds
+     * @throws IOException if the manifest cannot be read or is malformed
+     */
+    public AudioDurations(File folder, long defaultDuration) throws IOException
+    {
+        this.folder = folder;
+        this.defaultDuration = defaultDuration;
+        if (folder != null && new File(folder, MANIFEST_FILE).isFile())
+            readManifest(new File(folder, MANIFEST_FILE));
+    }
+
+    /**
+     * Read the durations listed in a manifest.
+     * @param file manifest file
+     * @throws IOException if the manifest cannot be read or is malformed
+     */
+    private void readManifest(File file) throws IOException
+    {
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try
+        {
+            String line = in.readLine();
+            while ((line = in.readLine()) != null)
+            {
+                if (line.trim().isEmpty())
+                    continue;
+                int comma = line.lastIndexOf(',');
+                try
+                {
+                    durations.put(line.substring(0, comma).trim(),
+                            Long.parseLong(line.substring(comma + 1).trim()));
+                }
+                catch (NumberFormatException | StringIndexOutOfBoundsException e)
+                {
+                    throw new IOException("Malformed manifest line: " + line);
+                }
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Get how long the given audio file plays.
+     * @param fileName name of the audio file in the folder
+     * @return duration, in milliseconds
+     */
+    public long getDuration(String fileName)
+    {
+        Long duration = durations.get(fileName);
+        if (duration == null)
+        {
+            duration = folder == null ? -1 : readDuration(new File(folder, fileName));
+            durations.put(fileName, duration);
+        }
+        return duration < 0 ? defaultDuration : duration;
+    }
+
+    /**
+     * Read the duration of an audio file from its headers.
+     * @param file audio file
+     * @return duration, in milliseconds, -1 if it cannot be read
+     */
+    private static long readDuration(File file)
+    {
+        if (!file.isFile())
+            return -1;
+        String name = file.getName().toLowerCase(Locale.US);
+        try
+        {
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try
+            {
+                if (name.endsWith(".wav"))
+                    return readWavDuration(in);
+                if (name.endsWith(".mp3"))
+                    return readMp3Duration(in);
+                if (name.endsWith(".ogg") || name.endsWith(".oga") || name.endsWith(".opus"))
+                    return readOggDuration(in);
+                return -1;
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * Read the duration of a WAV file from its format and data chunks.
+     * @param in file
+     * @return duration, in milliseconds, -1 if it cannot be read
+     * @throws IOException if the file cannot be read
+     */
+    private static long readWavDuration(RandomAccessFile in) throws IOException
+    {
+        byte[] header = read(in, 0, 12);
+        if (!matches(header, 0, "RIFF") || !matches(header, 8, "WAVE"))
+            return -1;
+
+        // Walk through the chunks.
+        long byteRate = -1;
+        long position = 12;
+        while (position + 8 <= in.length())
+        {
+            byte[] chunk = read(in, position, 8);
+            long size = readLittleEndian(chunk, 4, 4);
+            if (matches(chunk, 0, "fmt "))
+            {
+                // The byte rate follows the format, the number of channels and the sample rate.
+                byte[] format = read(in, position + 8, 12);
+                if (size < 12 || format.length < 12)
+                    return -1;
+                byteRate = readLittleEndian(format, 8, 4);
+            }
+            else if (matches(chunk, 0, "data"))
+                return byteRate > 0 ? size * 1000 / byteRate : -1;
+            position += 8 + size + (size & 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Read the duration of an MP3 file from the Xing or Info header of its first frame, or
+     * estimate it from the bit rate of a file with a constant bit rate.
+     * @param in file
+     * @return duration, in milliseconds, -1 if it cannot be read
+     * @throws IOException if the file cannot be read
+     */
+    private static long readMp3Duration(RandomAccessFile in) throws IOException
+    {
+        // Skip an ID3v2 tag, which may be longer than the searched bytes.
+        byte[] header = read(in, 0, 10);
+        long offset = 0;
+        if (matches(header, 0, "ID3") && header.length >= 10)
+            offset = 10 + ((header[6] & 0x7f) << 21 | (header[7] & 0x7f) << 14
+                    | (header[8] & 0x7f) << 7 | (header[9] & 0x7f))
+                    + ((header[5] & 0x10) != 0 ? 10 : 0);
+        byte[] buffer = read(in, offset, SEARCH_LENGTH);
+
+        // Find the first Layer III frame header.
+        for (int i = 0; i + 4 <= buffer.length; i++)
+        {
+            if ((buffer[i] & 0xff) != 0xff || (buffer[i + 1] & 0xe0) != 0xe0)
+                continue;
+            int version = (buffer[i + 1] >> 3) & 3;
+            int layer = (buffer[i + 1] >> 1) & 3;
+            int bitRateIndex = (buffer[i + 2] >> 4) & 0xf;
+            int sampleRateIndex = (buffer[i + 2] >> 2) & 3;
+            if (version == 1 || layer != 1 || MPEG1_SAMPLE_RATES[sampleRateIndex] == 0)
+                continue;
+            boolean isMpeg1 = version == 3;
+            int bitRate = (isMpeg1 ? MPEG1_BIT_RATES : MPEG2_BIT_RATES)[bitRateIndex];
+            if (bitRate == 0)
+                continue;
+            int sampleRate = MPEG1_SAMPLE_RATES[sampleRateIndex] / (isMpeg1 ? 1
+                    : version == 2 ? 2 : 4);
+            int samplesPerFrame = isMpeg1 ? 1152 : 576;
+            boolean isMono = ((buffer[i + 3] >> 6) & 3) == 3;
+
+            // Take the number of frames of a Xing or Info header.
+            int tag = i + 4 + (isMpeg1 ? (isMono ? 17 : 32) : (isMono ? 9 : 17));
+            if (tag + 12 <= buffer.length && (matches(buffer, tag, "Xing")
+                    || matches(buffer, tag, "Info")) && (buffer[tag + 7] & 1) != 0)
+                return readBigEndian(buffer, tag + 8, 4) * samplesPerFrame * 1000 / sampleRate;
+
+            // Assume a constant bit rate otherwise.
+            return (in.length() - offset - i) * 8 / bitRate;
+        }
+        return -1;
+    }
+
+    /**
+     * Read the duration of a Vorbis or Opus stream in an Ogg file from the granule position of
+     * its last page.
+     * @param in file
+     * @return duration, in milliseconds, -1 if it cannot be read
+     * @throws IOException if the file cannot be read
+     */
+    private static long readOggDuration(RandomAccessFile in) throws IOException
+    {
+        byte[] head = read(in, 0, (int) Math.min(in.length(), SEARCH_LENGTH));
+        long sampleRate = -1;
+        long preSkip = 0;
+        for (int i = 0; i + 19 <= head.length && sampleRate < 0; i++)
+        {
+            if (head[i] == 1 && matches(head, i + 1, "vorbis"))
+                sampleRate = readLittleEndian(head, i + 12, 4);
+            else if (matches(head, i, "OpusHead"))
+            {
+                sampleRate = OPUS_SAMPLE_RATE;
+                preSkip = readLittleEndian(head, i + 10, 2);
+            }
+        }
+        if (sampleRate <= 0)
+            return -1;
+
+        // Find the last page.
+        int length = (int) Math.min(in.length(), SEARCH_LENGTH);
+        byte[] tail = read(in, in.length() - length, length);
+        for (int i = tail.length - 14; i >= 0; i--)
+            if (matches(tail, i, "OggS"))
+                return Math.max(0, readLittleEndian(tail, i + 6, 8) - preSkip) * 1000
+                        / sampleRate;
+        return -1;
+    }
+
+    /**
+     * Read a range of a file.
+     * @param in file
+     * @param position position of the range
+     * @param length length of the range
+     * @return bytes
+     * @throws IOException if the file cannot be read
+     */
+    private static byte[] read(RandomAccessFile in, long position, int length) throws IOException
+    {
+        byte[] buffer = new byte[(int) Math.max(0, Math.min(length, in.length() - position))];
+        in.seek(position);
+        in.readFully(buffer);
+        return buffer;
+    }
+
+    /**
+     * Check whether the given ASCII text occurs at the given position.
+     * @param buffer bytes
+     * @param offset position
+     * @param text text
+     * @return true if that is the case, false otherwise
+     */
+    private static boolean matches(byte[] buffer, int offset, String text)
+    {
+        if (offset < 0 || offset + text.length() > buffer.length)
+            return false;
+        for (int i = 0; i < text.length(); i++)
+            if (buffer[offset + i] != text.charAt(i))
+                return false;
+        return true;
+    }
+
+    /**
+     * Read an unsigned little-endian number.
+     * @param buffer bytes
+     * @param offset position of the number
+     * @param length number of bytes
+     * @return number
+     */
+    private static long readLittleEndian(byte[] buffer, int offset, int length)
+    {
+        long result = 0;
+        for (int i = length - 1; i >= 0; i--)
+            result = result << 8 | (buffer[offset + i] & 0xff);
+        return result;
+    }
+
+    /**
+     * Read an unsigned big-endian number.
+     * @param buffer bytes
+     * @param offset position of the number
+     * @param length number of bytes
+     * @return number
+     */
+    private static long readBigEndian(byte[] buffer, int offset, int length)
+    {
+        long result = 0;
+        for (int i = 0; i < length; i++)
+            result = result << 8 | (buffer[offset + i] & 0xff);
+        return result;
+    }
+}
@@ -0,0 +1,309 @@
+package daniel.stadtgeschichten.replay;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import daniel.stadtgeschichten.model.PlayStatement;
+
+/**
+ * This report holds the outcome of replaying a trace: how fast the fixes have been processed,
+ * how the matcher has behaved and which play statements the story has triggered.
+ */
+public class ReplayReport
+{
+    /**
+     * Time of the first fix, in milliseconds
+     */
+    private final long startTime;
+
+    /**
+     * Number of fixes in the trace
+     */
+    private final int traceSize;
+
+    /**
+     * Processing times of the delivered fixes, in nanoseconds, sorted
+     */
+    private final long[] latencies;
+
+    /**
+     * Time spent on the replay, in nanoseconds
+     */
+    private final long elapsedTime;
+
+    /**
+     * Simulated time from the first fix to the last event, in milliseconds
+     */
+    private final long simulatedTime;
+
+    /**
+     * Triggered play statements, in the order they have been queued
+     */
+    private final List<Play> plays;
+
+    /**
+     * Number of entered circles
+     */
+    private final int enterCount;
+
+    /**
+     * Number of left circles
+     */
+    private final int exitCount;
+
+    /**
+     * Number of requested matches
+     */
+    private final long matchCount;
+
+    /**
+     * Number of matches answered by reusing the last full match
+     */
+    private final long reusedMatchCount;
+
+    /**
+     * Number of fixes rejected by the position filter
+     */
+    private final long rejectedCount;
+
+    /**
+     * Time from the first fix to the fix that has stabilised the position, in milliseconds, -1 if
+     * the position has not stabilised
+     */
+    private final long warmUpTime;
+
+    /**
+     * Number of queued audio files that had been prefetched
+     */
+    private final int prefetchHits;
+
+    /**
+     * True if the story has reached an end tag, false otherwise
+     */
+    private final boolean isEnded;
+
+    /**
+     * This play is a play statement triggered during a replay.
+     */
+    public static class Play
+    {
+        /**
+         * Time of the fix that has triggered the statement, in milliseconds
+         */
+        private final long time;
+
+        /**
+         * Title of the circle the statement belongs to, may be null or empty
+         */
+        private final String title;
+
+        /**
+         * Play statement
+         */
+        private final PlayStatement statement;
+
+        public Play(long time, String title, PlayStatement statement)
+        {
+            this.time = time;
+            this.title = title;
+            this.statement = statement;
+        }
+
+        /**
+         * @return {@link Play#time}
+         */
+        public long getTime()
+        {
+            return time;
+        }
+
+        /**
+         * @return {@link Play#title}
+         */
+        public String getTitle()
+        {
+            return title;
+        }
+
+        /**
+         * @return {@link Play#statement}
+         */
+        public PlayStatement getStatement()
+        {
+            return statement;
+        }
+    }
+
+    public ReplayReport(long startTime, int traceSize, long[] latencies, long elapsedTime,
+                        long simulatedTime, List<Play> plays, int enterCount, int exitCount,
+                        long matchCount, long reusedMatchCount, long rejectedCount,
+                        long warmUpTime, int prefetchHits, boolean isEnded)
+    {
+        this.startTime = startTime;
+        this.traceSize = traceSize;
+        this.latencies = latencies;
+        Arrays.sort(this.latencies);
+        this.elapsedTime = elapsedTime;
+        this.simulatedTime = simulatedTime;
+        this.plays = plays;
+        this.enterCount = enterCount;
+        this.exitCount = exitCount;
+        this.matchCount = matchCount;
+        this.reusedMatchCount = reusedMatchCount;
+        this.rejectedCount = rejectedCount;
+        this.warmUpTime = warmUpTime;
+        this.prefetchHits = prefetchHits;
+        this.isEnded = isEnded;
+    }
+
+    /**
+     * @return number of delivered fixes
+     */
+    public int getFixCount()
+    {
+        return latencies.length;
+    }
+
+    /**
+     * @return {@link ReplayReport#simulatedTime}
+     */
+    public long getSimulatedTime()
+    {
+        return simulatedTime;
+    }
+
+    /**
+     * @return ratio of the simulated time to the time spent on the replay
+     */
+    public double getSpeedUp()
+    {
+        return elapsedTime == 0 ? 0 : simulatedTime * 1e6 / elapsedTime;
+    }
+
+    /**
+     * @return delivered fixes per second of replay
+     */
+    public double getThroughput()
+    {
+        return elapsedTime == 0 ? 0 : latencies.length * 1e9 / elapsedTime;
+    }
+
+    /**
+     * Get a percentile of the processing times of the fixes.
+     * @param percentile percentile, between 0 and 100
+     * @return processing time, in nanoseconds, 0 if no fix has been processed
+     */
+    public long getLatency(double percentile)
+    {
+        if (latencies.length == 0)
+            return 0;
+        int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+        return latencies[Math.max(0, Math.min(latencies.length - 1, index))];
+    }
+
+    /**
+     * @return {@link ReplayReport#plays}
+     */
+    public List<Play> getPlays()
+    {
+        return plays;
+    }
+
+    /**
+     * @return {@link ReplayReport#enterCount}
+     */
+    public int getEnterCount()
+    {
+        return enterCount;
+    }
+
+    /**
+     * @return {@link ReplayReport#exitCount}
+     */
+    public int getExitCount()
+    {
+        return exitCount;
+    }
+
+    /**
+     * @return {@link ReplayReport#matchCount}
+     */
+    public long getMatchCount()
+    {
+        return matchCount;
+    }
+
+    /**
+     * @return {@link ReplayReport#reusedMatchCount}
+     */
+    public long getReusedMatchCount()
+    {
+        return reusedMatchCount;
+    }
+
+    /**
+     * @return {@link ReplayReport#rejectedCount}
+     */
+    public long getRejectedCount()
+    {
+        return rejectedCount;
+    }
+
+    /**
+     * @return {@link ReplayReport#warmUpTime}
+     */
+    public long getWarmUpTime()
+    {
+        return warmUpTime;
+    }
+
+    /**
+     * @return {@link ReplayReport#prefetchHits}
+     */
+    public int getPrefetchHits()
+    {
+        return prefetchHits;
+    }
+
+    /**
+     * @return {@link ReplayReport#isEnded}
+     */
+    public boolean isEnded()
+    {
+        return isEnded;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "Fixes: %d of %d in %.1f ms (%.0f fixes/s)%n",
+                latencies.length, traceSize, elapsedTime / 1e6, getThroughput()));
+        builder.append(String.format(Locale.US, "Simulated: %.1f min (%.0fx real time)%n",
+                simulatedTime / 60000.0, getSpeedUp()));
+        builder.append(String.format(Locale.US,
+                "Latency: p50 %.1f us, p90 %.1f us, p99 %.1f us, max %.1f us%n",
+                getLatency(50) / 1e3, getLatency(90) / 1e3, getLatency(99) / 1e3,
+                getLatency(100) / 1e3));
+        builder.append(String.format(Locale.US, "Matches: %d, reused %d (%d%%)%n", matchCount,
+                reusedMatchCount, matchCount == 0 ? 0 : 100 * reusedMatchCount / matchCount));
+        builder.append(String.format(Locale.US, "Rejected fixes: %d%n", rejectedCount));
+        builder.append(String.format(Locale.US, "Warm-up: %d ms%n", warmUpTime));
+        builder.append(String.format(Locale.US, "Circles: %d entered, %d exited%n", enterCount,
+                exitCount));
+        builder.append(String.format(Locale.US, "Prefetched: %d of %d audio files%n",
+                prefetchHits, plays.size()));
+        builder.append(String.format(Locale.US, "Plays:%s%n", isEnded ? " (ended)" : ""));
+        for (Play play : plays)
+        {
+            long seconds = (play.getTime() - startTime) / 1000;
+            builder.append(String.format(Locale.US, "  %02d:%02d:%02d %s%s%n", seconds / 3600,
+                    seconds / 60 % 60, seconds % 60,
+                    play.getTitle() == null || play.getTitle().isEmpty() ? ""
+                            : play.getTitle() + ": ",
+                    play.getStatement().getAudioFileName()));
+        }
+        return builder.toString();
+    }
+}
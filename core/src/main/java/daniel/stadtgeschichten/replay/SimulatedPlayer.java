@@ -0,0 +1,169 @@
+package daniel.stadtgeschichten.replay;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import daniel.stadtgeschichten.compiler.StoryInterpreter;
+import daniel.stadtgeschichten.helper.Scheduler;
+import daniel.stadtgeschichten.model.PlayStatement;
+
+/**
+ * This player stands in for the playback queue of the service. It plays the queued statements
+ * one after another, each for the duration of its audio file, by scheduling its completion on a
+ * scheduler, and keeps track of the triggered statements and of the prefetch hits.
+ */
+public class SimulatedPlayer implements StoryInterpreter.Player
+{
+    /**
+     * Scheduler finishing the audio files
+     */
+    private final Scheduler scheduler;
+
+    /**
+     * Durations of the audio files
+     */
+    private final AudioDurations durations;
+
+    /**
+     * Listener that is informed about the playback
+     */
+    private final OnPlaybackListener listener;
+
+    /**
+     * Item that is playing, null if the queue is empty
+     */
+    private ReplayReport.Play current;
+
+    /**
+     * Items that are played after the current one
+     */
+    private final ArrayDeque<ReplayReport.Play> queue = new ArrayDeque<>();
+
+    /**
+     * Triggered play statements, in the order they have been queued
+     */
+    private final ArrayList<ReplayReport.Play> plays = new ArrayList<>();
+
+    /**
+     * Play statement whose audio file has been prefetched, null if there is none
+     */
+    private PlayStatement prefetched;
+
+    /**
+     * Number of queued audio files that had been prefetched
+     */
+    private int prefetchHits;
+
+    /**
+     * Task finishing the current item
+     */
+    private final Runnable completion = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            current = queue.poll();
+            if (current == null)
+                listener.onQueueFinished();
+            else
+                start(current);
+        }
+    };
+
+    /**
+     * Interface of the listener that is informed about the playback
+     */
+    public interface OnPlaybackListener
+    {
+        /**
+         * Called when an item has been started.
+         * @param title title of the circle the item belongs to, may be null or empty
+         * @param statement play statement of the item
+         */
+        void onItemStarted(String title, PlayStatement statement);
+
+        /**
+         * Called when the last queued item has completed.
+         */
+        void onQueueFinished();
+    }
+
+    /**
+     * Initialize a SimulatedPlayer object.
+     * @param scheduler scheduler timing the playback
+     * @param durations durations of the audio files
+     * @param listener listener that is informed about the playback
+     */
+    public SimulatedPlayer(Scheduler scheduler, AudioDurations durations,
+                           OnPlaybackListener listener)
+    {
+        this.scheduler = scheduler;
+        this.durations = durations;
+        this.listener = listener;
+    }
+
+    @Override
+    public void enqueue(String title, PlayStatement statement)
+    {
+        ReplayReport.Play item = new ReplayReport.Play(scheduler.getTime(), title, statement);
+        plays.add(item);
+
+        // Take the prefetched audio file if it has been predicted correctly.
+        if (prefetched != null
+                && prefetched.getAudioFileName().equals(statement.getAudioFileName())
+                && prefetched.getVolume() == statement.getVolume())
+        {
+            prefetchHits++;
+            prefetched = null;
+        }
+
+        if (current == null)
+        {
+            current = item;
+            start(item);
+        }
+        else
+            queue.add(item);
+    }
+
+    /**
+     * Start an item and schedule its completion.
+     * @param item item
+     */
+    private void start(ReplayReport.Play item)
+    {
+        listener.onItemStarted(item.getTitle(), item.getStatement());
+        scheduler.schedule(completion,
+                durations.getDuration(item.getStatement().getAudioFileName()));
+    }
+
+    @Override
+    public void prefetch(PlayStatement statement)
+    {
+        if (statement != null)
+            prefetched = statement;
+    }
+
+    @Override
+    public boolean isBusy()
+    {
+        return current != null;
+    }
+
+    /**
+     * @return triggered play statements, in the order they have been queued
+     */
+    public List<ReplayReport.Play> getPlays()
+    {
+        return plays;
+    }
+
+    /**
+     * @return number of queued audio files that had been prefetched
+     */
+    public int getPrefetchHits()
+    {
+        return prefetchHits;
+    }
+}
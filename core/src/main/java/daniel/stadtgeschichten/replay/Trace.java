@@ -0,0 +1,257 @@
+package daniel.stadtgeschichten.replay;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * This trace is a recorded or synthetic sequence of location fixes. The fixes are kept in
+ * parallel arrays, so that replaying them does not allocate anything.
+ */
+public class Trace
+{
+    /**
+     * Interval between fixes of a trace without times, in milliseconds
+     */
+    public static final long DEFAULT_INTERVAL = 1000;
+
+    /**
+     * Name of the column holding the latitudes
+     */
+    public static final String COLUMN_LATITUDE = "Latitude";
+
+    /**
+     * Name of the column holding the longitudes
+     */
+    public static final String COLUMN_LONGITUDE = "Longitude";
+
+    /**
+     * Name of the column holding the accuracies
+     */
+    public static final String COLUMN_ACCURACY = "Accuracy";
+
+    /**
+     * Name of the column holding the times
+     */
+    public static final String COLUMN_TIME = "Time";
+
+    /**
+     * Name of the column holding the speeds
+     */
+    public static final String COLUMN_SPEED = "Speed";
+
+    /**
+     * Initial capacity of the arrays
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Latitudes of the fixes, in degrees
+     */
+    private double[] latitudes = new double[INITIAL_CAPACITY];
+
+    /**
+     * Longitudes of the fixes, in degrees
+     */
+    private double[] longitudes = new double[INITIAL_CAPACITY];
+
+    /**
+     * Accuracies of the fixes, in meters, 0 if unknown
+     */
+    private double[] accuracies = new double[INITIAL_CAPACITY];
+
+    /**
+     * Speeds of the fixes, in meters per second, NaN if unknown
+     */
+    private double[] speeds = new double[INITIAL_CAPACITY];
+
+    /**
+     * Times of the fixes, in milliseconds
+     */
+    private long[] times = new long[INITIAL_CAPACITY];
+
+    /**
+     * Number of fixes
+     */
+    private int size;
+
+    /**
+     * Read a trace in the CSV format exported by the log activity. The first line names the
+     * columns: Latitude and Longitude are required, Accuracy, Time and Speed are optional. Empty
+     * values are taken as unknown.
+     * @param reader reader of the CSV file
+     * @param interval interval between the fixes if there is no Time column, in milliseconds
+     * @return trace
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static Trace read(Reader reader, long interval) throws IOException
+    {
+        BufferedReader in = new BufferedReader(reader);
+        String line = in.readLine();
+        if (line == null)
+            throw new IOException("The trace is empty");
+
+        // Find the columns.
+        String[] columns = line.trim().split(",");
+        int latitudeColumn = findColumn(columns, COLUMN_LATITUDE);
+        int longitudeColumn = findColumn(columns, COLUMN_LONGITUDE);
+        int accuracyColumn = findColumn(columns, COLUMN_ACCURACY);
+        int timeColumn = findColumn(columns, COLUMN_TIME);
+        int speedColumn = findColumn(columns, COLUMN_SPEED);
+        if (latitudeColumn < 0 || longitudeColumn < 0)
+            throw new IOException("The trace has no latitudes or longitudes");
+
+        // Read the fixes.
+        Trace trace = new Trace();
+        int lineNumber = 1;
+        while ((line = in.readLine()) != null)
+        {
+            lineNumber++;
+            if (line.trim().isEmpty())
+                continue;
+            String[] values = line.trim().split(",", -1);
+            try
+            {
+                trace.add(Double.parseDouble(values[latitudeColumn]),
+                        Double.parseDouble(values[longitudeColumn]),
+                        parseValue(values, accuracyColumn, 0),
+                        parseValue(values, speedColumn, Double.NaN),
+                        timeColumn < 0 ? trace.size * interval
+                                : Long.parseLong(values[timeColumn].trim()));
+            }
+            catch (NumberFormatException | ArrayIndexOutOfBoundsException e)
+            {
+                throw new IOException("Malformed fix in line " + lineNumber + ": " + line);
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * Write the trace in the CSV format exported by the log activity, leaving unknown speeds
+     * empty.
+     * @param writer writer of the CSV file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Writer writer) throws IOException
+    {
+        BufferedWriter out = new BufferedWriter(writer);
+        out.write(COLUMN_LATITUDE + "," + COLUMN_LONGITUDE + "," + COLUMN_ACCURACY + ","
+                + COLUMN_TIME + "," + COLUMN_SPEED + "\r\n");
+        for (int i = 0; i < size; i++)
+            out.write(latitudes[i] + "," + longitudes[i] + "," + accuracies[i] + "," + times[i]
+                    + "," + (Double.isNaN(speeds[i]) ? "" : String.valueOf(speeds[i])) + "\r\n");
+        out.flush();
+    }
+
+    /**
+     * Find the column with the given name, ignoring the case.
+     * @param columns names of the columns
+     * @param name name of the column
+     * @return index of the column, -1 if there is none
+     */
+    private static int findColumn(String[] columns, String name)
+    {
+        for (int i = 0; i < columns.length; i++)
+            if (columns[i].trim().equalsIgnoreCase(name))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Parse an optional value.
+     * @param values values of a line
+     * @param column index of the column, -1 if there is none
+     * @param defaultValue value taken if the column or the value is missing
+     * @return value
+     */
+    private static double parseValue(String[] values, int column, double defaultValue)
+    {
+        if (column < 0 || column >= values.length || values[column].trim().isEmpty())
+            return defaultValue;
+        return Double.parseDouble(values[column]);
+    }
+
+    /**
+     * Append a fix.
+     * @param latitude latitude, in degrees
+     * @param longitude longitude, in degrees
+     * @param accuracy accuracy, in meters, 0 if unknown
+     * @param speed speed, in meters per second, NaN if unknown
+     * @param time time, in milliseconds
+     */
+    public void add(double latitude, double longitude, double accuracy, double speed, long time)
+    {
+        if (size == times.length)
+        {
+            int capacity = size * 2;
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            accuracies = Arrays.copyOf(accuracies, capacity);
+            speeds = Arrays.copyOf(speeds, capacity);
+            times = Arrays.copyOf(times, capacity);
+        }
+        latitudes[size] = latitude;
+        longitudes[size] = longitude;
+        accuracies[size] = accuracy;
+        speeds[size] = speed;
+        times[size] = time;
+        size++;
+    }
+
+    /**
+     * @return number of fixes
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @param index index of the fix
+     * @return latitude of the fix, in degrees
+     */
+    public double getLatitude(int index)
+    {
+        return latitudes[index];
+    }
+
+    /**
+     * @param index index of the fix
+     * @return longitude of the fix, in degrees
+     */
+    public double getLongitude(int index)
+    {
+        return longitudes[index];
+    }
+
+    /**
+     * @param index index of the fix
+     * @return accuracy of the fix, in meters, 0 if unknown
+     */
+    public double getAccuracy(int index)
+    {
+        return accuracies[index];
+    }
+
+    /**
+     * @param index index of the fix
+     * @return speed of the fix, in meters per second, NaN if unknown
+     */
+    public double getSpeed(int index)
+    {
+        return speeds[index];
+    }
+
+    /**
+     * @param index index of the fix
+     * @return time of the fix, in milliseconds
+     */
+    public long getTime(int index)
+    {
+        return times[index];
+    }
+}
@@ -0,0 +1,379 @@
+package daniel.stadtgeschichten.replay;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+
+import daniel.stadtgeschichten.compiler.StoryCompiler;
+import daniel.stadtgeschichten.compiler.StoryInterpreter;
+import daniel.stadtgeschichten.helper.LocationMatcher;
+import daniel.stadtgeschichten.helper.LocationTracker;
+import daniel.stadtgeschichten.model.Circle;
+import daniel.stadtgeschichten.model.PlayStatement;
+import daniel.stadtgeschichten.model.Story;
+import daniel.stadtgeschichten.parser.StoryXmlParser;
+
+/**
+ * This replayer feeds a recorded or synthetic trace through the same location matcher and story
+ * interpreter as the service, without Android. Everything runs on a {@link VirtualScheduler}: the
+ * trace is sampled at the interval chosen by the {@link LocationTracker} of the location helper,
+ * like the location manager would deliver it, and a {@link SimulatedPlayer} plays every audio file
+ * for the duration read from its metadata. Like the service, the replayer plays the intro first and
+ * only keeps the locations warm while audio is playing. Hence, a walk of hours is replayed in
+ * milliseconds, and replaying the same trace always gives the same plays. A replayer replays its
+ * trace once.
+ *
+ * <p>It can be run from the command line with an XmlPull implementation, such as kXML, on the
+ * class path, or through the replay task of the core module:</p>
+ * <pre>
+ * java daniel.stadtgeschichten.replay.TraceReplayer story.xml trace.csv [audio ms] [runs]
+ * gradlew :core:replay -Pargs="story.xml trace.csv [audio ms] [runs]"
+ * </pre>
+ */
+public class TraceReplayer implements LocationMatcher.OnMatchListener,
+        LocationTracker.LocationSource, SimulatedPlayer.OnPlaybackListener,
+        StoryInterpreter.OnInterpreterListener
+{
+    /**
+     * Default time audio files of unknown duration play, in milliseconds
+     */
+    public static final long DEFAULT_AUDIO_DURATION = 30000;
+
+    /**
+     * Replayed story
+     */
+    private final Story story;
+
+    /**
+     * Replayed trace
+     */
+    private final Trace trace;
+
+    /**
+     * Scheduler running the simulation
+     */
+    private final VirtualScheduler scheduler;
+
+    /**
+     * Tracker deciding what happens to the delivered fixes
+     */
+    private final LocationTracker tracker;
+
+    /**
+     * Matcher of the tracker turning the fixes into circle events
+     */
+    private final LocationMatcher matcher;
+
+    /**
+     * Player standing in for the playback queue
+     */
+    private final SimulatedPlayer player;
+
+    /**
+     * Interpreter executing the statements of the entered circles
+     */
+    private final StoryInterpreter interpreter;
+
+    /**
+     * Index of the first fix of the trace that lies in the future
+     */
+    private int nextFix;
+
+    /**
+     * Index of the last delivered fix, -1 if there has been none
+     */
+    private int lastFix = -1;
+
+    /**
+     * Requested interval between fixes, in milliseconds, -1 if no fixes are requested
+     */
+    private long interval = -1;
+
+    /**
+     * Time of the last delivered fix, in milliseconds
+     */
+    private long lastDeliveryTime = Long.MIN_VALUE / 2;
+
+    /**
+     * True if the story has ended, false otherwise
+     */
+    private boolean isEnded = false;
+
+    /**
+     * Processing times of the delivered fixes, in nanoseconds
+     */
+    private final long[] latencies;
+
+    /**
+     * Number of delivered fixes
+     */
+    private int fixCount;
+
+    /**
+     * Number of entered circles
+     */
+    private int enterCount;
+
+    /**
+     * Number of left circles
+     */
+    private int exitCount;
+
+    /**
+     * Task delivering the next fix
+     */
+    private final Runnable delivery = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            deliverFix();
+        }
+    };
+
+    /**
+     * Initialize a TraceReplayer object.
+     * @param story story to play
+     * @param trace trace to replay
+     * @param durations durations of the audio files of the story
+     */
+    public TraceReplayer(Story story, Trace trace, AudioDurations durations)
+    {
+        this.story = story;
+        this.trace = trace;
+        scheduler = new VirtualScheduler(trace.size() > 0 ? trace.getTime(0) : 0);
+        tracker = new LocationTracker(this, scheduler, this);
+        matcher = tracker.getMatcher();
+        matcher.setSpots(story.getSpots());
+        player = new SimulatedPlayer(scheduler, durations, this);
+        interpreter = new StoryInterpreter(player, this);
+        latencies = new long[trace.size()];
+    }
+
+    /**
+     * @return matcher, which may be configured before the replay
+     */
+    public LocationMatcher getMatcher()
+    {
+        return matcher;
+    }
+
+    /**
+     * Replay the trace until its end or until the story has ended.
+     * @return report
+     */
+    public ReplayReport replay()
+    {
+        long startTime = scheduler.getTime();
+
+        // Start the story with its intro and start tracking, as the service does.
+        interpreter.start(story, StoryCompiler.compile(story));
+        player.enqueue(null, new PlayStatement(story.getIntroAudioFileName(), null));
+        tracker.start();
+
+        long replayStart = System.nanoTime();
+        scheduler.run();
+        long elapsedTime = System.nanoTime() - replayStart;
+
+        long[] processedLatencies = new long[fixCount];
+        System.arraycopy(latencies, 0, processedLatencies, 0, fixCount);
+        return new ReplayReport(startTime, trace.size(), processedLatencies, elapsedTime,
+                scheduler.getTime() - startTime, player.getPlays(), enterCount, exitCount,
+                matcher.getMatchCount(), matcher.getReusedMatchCount(),
+                matcher.getRejectedLocationCount(), matcher.getWarmUpTime(),
+                player.getPrefetchHits(), isEnded);
+    }
+
+    /**
+     * Deliver the freshest fix of the trace, like the location listener receives it, and request
+     * the next one.
+     */
+    private void deliverFix()
+    {
+        lastDeliveryTime = scheduler.getTime();
+        if (skipToFreshestFix())
+        {
+            long start = System.nanoTime();
+            tracker.onFix(trace.getLatitude(lastFix), trace.getLongitude(lastFix),
+                    trace.getAccuracy(lastFix), trace.getSpeed(lastFix), trace.getTime(lastFix));
+            latencies[fixCount++] = System.nanoTime() - start;
+        }
+        scheduleDelivery();
+    }
+
+    /**
+     * Advance to the freshest fix of the trace that is not in the future.
+     * @return true if it has not been delivered yet, false otherwise
+     */
+    private boolean skipToFreshestFix()
+    {
+        while (nextFix < trace.size() && trace.getTime(nextFix) <= scheduler.getTime())
+            nextFix++;
+        if (nextFix - 1 <= lastFix)
+            return false;
+        lastFix = nextFix - 1;
+        return true;
+    }
+
+    /**
+     * Schedule the delivery of the next fix one requested interval after the last delivery,
+     * unless no fixes are requested or the trace is over.
+     */
+    private void scheduleDelivery()
+    {
+        scheduler.cancel(delivery);
+        if (interval < 0 || nextFix >= trace.size() || isEnded)
+            return;
+        long time = Math.max(lastDeliveryTime + interval, trace.getTime(nextFix));
+        scheduler.schedule(delivery, Math.max(0, time - scheduler.getTime()));
+    }
+
+    @Override
+    public void requestUpdates(long interval, float minimumDistance)
+    {
+        this.interval = interval;
+        scheduleDelivery();
+    }
+
+    @Override
+    public void removeUpdates()
+    {
+        interval = -1;
+        scheduler.cancel(delivery);
+    }
+
+    @Override
+    public void deliverFreshestFix()
+    {
+        lastDeliveryTime = scheduler.getTime();
+        if (skipToFreshestFix())
+            tracker.filter(trace.getLatitude(lastFix), trace.getLongitude(lastFix),
+                    trace.getAccuracy(lastFix), trace.getSpeed(lastFix), trace.getTime(lastFix));
+    }
+
+    @Override
+    public void onFirstLocation()
+    {
+        // Nothing to show.
+    }
+
+    @Override
+    public void onCircleEntered(Circle circle)
+    {
+        enterCount++;
+        interpreter.onCircleEntered(circle);
+    }
+
+    @Override
+    public void onCircleDwelling(Circle circle, long dwellTime)
+    {
+        interpreter.onCircleDwelling(circle, dwellTime);
+    }
+
+    @Override
+    public void onCircleExited(Circle circle)
+    {
+        exitCount++;
+        interpreter.onCircleExited(circle);
+    }
+
+    @Override
+    public void onCirclesPredicted(Circle[] circles, int count)
+    {
+        interpreter.onCirclesPredicted(circles, count);
+    }
+
+    @Override
+    public void onItemStarted(String title, PlayStatement statement)
+    {
+        // Keep the locations warm without matching them.
+        tracker.suspend(LocationTracker.SUSPEND_KEEP_WARM);
+    }
+
+    @Override
+    public void onQueueFinished()
+    {
+        // Stop the simulation when the end tag has been read.
+        if (interpreter.isEndTagRead())
+        {
+            isEnded = true;
+            scheduler.stop();
+            return;
+        }
+
+        // Match the freshest location again at the fastest rate.
+        tracker.resume();
+    }
+
+    @Override
+    public void onEndRead()
+    {
+        // The simulation ends when the player has finished.
+    }
+
+    @Override
+    public void onWarning(String message)
+    {
+        System.err.println("Warning: " + message);
+    }
+
+    /**
+     * Replay a trace and print the report.
+     * @param args path of the story's XML file, path of the trace's CSV file, optionally the
+     *             time audio files of unknown duration play in milliseconds and the number of
+     *             runs
+     * @throws IOException if a file cannot be read
+     * @throws XmlPullParserException if the story cannot be parsed
+     */
+    public static void main(String[] args) throws IOException, XmlPullParserException
+    {
+        if (args.length < 2)
+        {
+            System.err.println("Usage: TraceReplayer story.xml trace.csv [audio ms] [runs]");
+            System.exit(1);
+        }
+        long audioDuration = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_AUDIO_DURATION;
+        int runs = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+        // Read the story and the trace.
+        File storyFile = new File(args[0]);
+        Story story;
+        InputStream in = new FileInputStream(storyFile);
+        try
+        {
+            story = new StoryXmlParser().parse(in, storyFile.getAbsoluteFile().getParentFile()
+                    .getName());
+        }
+        finally
+        {
+            in.close();
+        }
+        Trace trace;
+        Reader reader = new FileReader(args[1]);
+        try
+        {
+            trace = Trace.read(reader, Trace.DEFAULT_INTERVAL);
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        AudioDurations durations = new AudioDurations(storyFile.getAbsoluteFile().getParentFile(),
+                audioDuration);
+
+        // Replay the trace, where the first runs warm up the JIT compiler.
+        for (int run = 1; run <= runs; run++)
+        {
+            ReplayReport report = new TraceReplayer(story, trace, durations).replay();
+            if (run == runs)
+                System.out.print(report);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package daniel.stadtgeschichten.replay;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+import daniel.stadtgeschichten.helper.Scheduler;
+
+/**
+ * This scheduler keeps a virtual time that jumps straight to the next pending task instead of
+ * waiting for it. Tasks due at the same time run in the order they have been scheduled, so a
+ * simulation driven by it runs as fast as the processor allows and always produces the same
+ * result.
+ */
+public class VirtualScheduler implements Scheduler
+{
+    /**
+     * Initial capacity of the task queue
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Pending tasks, the earliest first
+     */
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>(INITIAL_CAPACITY,
+            new Comparator<Task>()
+            {
+                @Override
+                public int compare(Task lhs, Task rhs)
+                {
+                    if (lhs.time != rhs.time)
+                        return lhs.time < rhs.time ? -1 : 1;
+                    return lhs.sequence < rhs.sequence ? -1 : lhs.sequence == rhs.sequence ? 0 : 1;
+                }
+            });
+
+    /**
+     * Virtual time, in milliseconds
+     */
+    private long time;
+
+    /**
+     * Number of tasks scheduled so far, used to order tasks due at the same time
+     */
+    private long sequence;
+
+    /**
+     * True if the scheduler has been stopped, false otherwise
+     */
+    private boolean isStopped = false;
+
+    /**
+     * This task is a runnable due at a virtual time.
+     */
+    private static class Task
+    {
+        /**
+         * Time when the task is due, in milliseconds
+         */
+        private final long time;
+
+        /**
+         * Position of the task in the order of scheduling
+         */
+        private final long sequence;
+
+        /**
+         * Runnable
+         */
+        private final Runnable runnable;
+
+        private Task(long time, long sequence, Runnable runnable)
+        {
+            this.time = time;
+            this.sequence = sequence;
+            this.runnable = runnable;
+        }
+    }
+
+    /**
+     * Initialize a VirtualScheduler object.
+     * @param startTime virtual time to start at, in milliseconds
+     */
+    public VirtualScheduler(long startTime)
+    {
+        time = startTime;
+    }
+
+    @Override
+    public long getTime()
+    {
+        return time;
+    }
+
+    @Override
+    public void schedule(Runnable task, long delay)
+    {
+        tasks.add(new Task(time + Math.max(0, delay), sequence++, task));
+    }
+
+    @Override
+    public void cancel(Runnable task)
+    {
+        Iterator<Task> iterator = tasks.iterator();
+        while (iterator.hasNext())
+            if (iterator.next().runnable == task)
+                iterator.remove();
+    }
+
+    /**
+     * Run the pending tasks one after another, advancing the virtual time to each of them, until
+     * there are none left or the scheduler has been stopped.
+     */
+    public void run()
+    {
+        while (!isStopped && !tasks.isEmpty())
+        {
+            Task task = tasks.poll();
+            time = task.time;
+            task.runnable.run();
+        }
+    }
+
+    /**
+     * Stop running tasks, for example when the simulated story has ended.
+     */
+    public void stop()
+    {
+        isStopped = true;
+    }
+}
@@ -0,0 +1,140 @@
+package daniel.stadtgeschichten.compiler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import daniel.stadtgeschichten.exception.AlreadyPlayingException;
+import daniel.stadtgeschichten.helper.VariableHelper;
+import daniel.stadtgeschichten.model.Circle;
+import daniel.stadtgeschichten.model.PlayStatement;
+import daniel.stadtgeschichten.model.Story;
+import daniel.stadtgeschichten.parser.ScanningStoryParser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests predicting the audio file a circle plays without changing the variables.
+ */
+public class CompiledStoryTest
+{
+    /**
+     * Story whose circle changes variables before and after it plays
+     */
+    private static final String STORY = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<story title=\"Test\" introfile=\"intro.mp3\" introtext=\"\">\n"
+            + "  <init><assign variable=\"a\" value=\"0\"/></init>\n"
+            + "  <spot latitude=\"49.6\" longitude=\"6.1\">\n"
+            + "    <circle radius=\"20\" title=\"C\">\n"
+            + "      <if>\n"
+            + "        <condition><equals element1=\"a\" element2=\"0\"/></condition>\n"
+            + "        <then><increment variable=\"a\"/></then>\n"
+            + "      </if>\n"
+            + "      <assign variable=\"b\" value=\"5\"/>\n"
+            + "      <if>\n"
+            + "        <condition><equals element1=\"a\" element2=\"1\"/></condition>\n"
+            + "        <then><play file=\"first.mp3\" text=\"First\"/></then>\n"
+            + "        <else><play file=\"again.mp3\" text=\"Again\"/></else>\n"
+            + "      </if>\n"
+            + "      <assign variable=\"c\" value=\"7\"/>\n"
+            + "    </circle>\n"
+            + "  </spot>\n"
+            + "  <spot latitude=\"49.7\" longitude=\"6.2\">\n"
+            + "    <circle radius=\"20\" title=\"D\">\n"
+            + "      <assign variable=\"a\" value=\"9\"/>\n"
+            + "    </circle>\n"
+            + "  </spot>\n"
+            + "</story>\n";
+
+    /**
+     * Parsed story
+     */
+    private Story story;
+
+    /**
+     * Compiled story
+     */
+    private CompiledStory compiledStory;
+
+    /**
+     * Variables of the story
+     */
+    private VariableHelper variables;
+
+    @Before
+    public void setUp() throws XmlPullParserException, IOException
+    {
+        story = new ScanningStoryParser().parse(new ByteArrayInputStream(
+                STORY.getBytes(Charset.forName("UTF-8"))), "test");
+        compiledStory = StoryCompiler.compile(story);
+        variables = new VariableHelper();
+        variables.reset(story.getSymbolTable());
+        variables.processStatements(story.getInitStatements());
+    }
+
+    @Test
+    public void testPredictPlayLeavesVariablesUnchanged()
+    {
+        Circle circle = story.getSpots()[0].getCircles()[0];
+        for (int i = 0; i < 3; i++)
+        {
+            PlayStatement statement = compiledStory.predictPlay(circle, variables);
+            assertEquals("first.mp3", statement.getAudioFileName());
+            assertEquals(0, variables.getValue("a"));
+            assertFalse(variables.hasVariable("b"));
+            assertFalse(variables.hasVariable("c"));
+        }
+    }
+
+    @Test
+    public void testPredictPlayFollowsVariables()
+    {
+        Circle circle = story.getSpots()[0].getCircles()[0];
+        variables.setVariable("a", 3);
+        assertEquals("again.mp3", compiledStory.predictPlay(circle, variables).getAudioFileName());
+        assertEquals(3, variables.getValue("a"));
+    }
+
+    @Test
+    public void testPredictPlayWithoutPlayStatement()
+    {
+        assertNull(compiledStory.predictPlay(story.getSpots()[1].getCircles()[0], variables));
+        assertEquals(0, variables.getValue("a"));
+    }
+
+    @Test
+    public void testExecuteStopsAtPlayWhenAlreadyPlaying()
+    {
+        Circle circle = story.getSpots()[0].getCircles()[0];
+        compiledStory.execute(circle, variables, new StoryHost()
+        {
+            @Override
+            public void play(String title, PlayStatement statement)
+                    throws AlreadyPlayingException
+            {
+                throw new AlreadyPlayingException();
+            }
+
+            @Override
+            public void end()
+            {
+            }
+
+            @Override
+            public void warn(String message)
+            {
+            }
+        });
+
+        // The changes before the play statement are kept, the ones after it are not made.
+        assertEquals(1, variables.getValue("a"));
+        assertEquals(5, variables.getValue("b"));
+        assertFalse(variables.hasVariable("c"));
+    }
+}
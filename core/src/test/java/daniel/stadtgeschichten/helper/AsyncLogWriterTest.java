@@ -0,0 +1,256 @@
+package daniel.stadtgeschichten.helper;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the asynchronous log writer against a temporary folder.
+ */
+public class AsyncLogWriterTest
+{
+    /**
+     * Capacity of the ring buffer of the overflow tests, in lines
+     */
+    private static final int CAPACITY = 4;
+
+    /**
+     * Time after which a blocked thread is expected to be waiting, in milliseconds
+     */
+    private static final long WAIT_TIME = 200;
+
+    /**
+     * Folder the log files are written to
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Listener that holds up the writer thread at the first failed write, so that the buffer can
+     * be filled. The folder of the file is created before the thread continues, so that the
+     * following writes succeed.
+     */
+    private static class StallingListener implements AsyncLogWriter.OnErrorListener
+    {
+        /**
+         * Folder of the log file
+         */
+        private final File folder;
+
+        /**
+         * Latch released when the writer thread has been held up
+         */
+        private final CountDownLatch stalled = new CountDownLatch(1);
+
+        /**
+         * Latch to release to let the writer thread continue
+         */
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        private StallingListener(File folder)
+        {
+            this.folder = folder;
+        }
+
+        @Override
+        public void onWriteError(IOException e)
+        {
+            stalled.countDown();
+            try
+            {
+                released.await();
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+            folder.mkdirs();
+        }
+    }
+
+    @Test
+    public void testFullBufferDropsLines() throws InterruptedException, IOException
+    {
+        File file = new File(new File(folder.getRoot(), "missing"), "log.txt");
+        AsyncLogWriter writer = new AsyncLogWriter(file, CAPACITY, false, 1, 1000);
+        StallingListener listener = new StallingListener(file.getParentFile());
+        writer.setOnErrorListener(listener);
+
+        // The first line fails and holds up the writer thread.
+        assertTrue(writer.append("failed"));
+        listener.stalled.await();
+        for (int i = 0; i < CAPACITY; i++)
+            assertTrue(writer.append("line " + i));
+        assertFalse(writer.append("dropped"));
+        assertEquals(1, writer.getDroppedLines());
+
+        listener.released.countDown();
+        writer.close();
+        assertEquals(1, writer.getFailedLines());
+        assertEquals(CAPACITY, writer.getFlushedLines());
+        assertEquals(createLines("line ", 0, CAPACITY), readLines(file));
+    }
+
+    @Test
+    public void testFullBufferBlocksCaller() throws InterruptedException, IOException
+    {
+        File file = new File(new File(folder.getRoot(), "missing"), "log.txt");
+        final AsyncLogWriter writer = new AsyncLogWriter(file, CAPACITY, true, 1, 1000);
+        StallingListener listener = new StallingListener(file.getParentFile());
+        writer.setOnErrorListener(listener);
+
+        assertTrue(writer.append("failed"));
+        listener.stalled.await();
+        for (int i = 0; i < CAPACITY; i++)
+            assertTrue(writer.append("line " + i));
+
+        // Another thread waits for free space instead of dropping its line.
+        final boolean[] isAppended = new boolean[1];
+        Thread caller = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                isAppended[0] = writer.append("line " + CAPACITY);
+            }
+        });
+        caller.start();
+        caller.join(WAIT_TIME);
+        assertTrue(caller.isAlive());
+
+        listener.released.countDown();
+        caller.join();
+        assertTrue(isAppended[0]);
+        writer.close();
+        assertEquals(0, writer.getDroppedLines());
+        assertEquals(createLines("line ", 0, CAPACITY + 1), readLines(file));
+    }
+
+    @Test
+    public void testRotationKeepsCompressedSegments() throws InterruptedException, IOException
+    {
+        // Every line has 10 bytes, so the file is rotated after 5 lines at the latest.
+        File file = new File(folder.getRoot(), "log.txt");
+        AsyncLogWriter writer = new AsyncLogWriter(file, 16, true, 1, 1000, 50, 2, true);
+        int lineCount = 102;
+        for (int i = 0; i < lineCount; i++)
+        {
+            assertTrue(writer.append(String.format("line %03d", i)));
+
+            // Write one line at a time, so that every rotation happens at the same line.
+            writer.flush();
+        }
+        writer.close();
+
+        // Only the newest segments are kept, compressed, and hold the lines before the file.
+        File[] files = folder.getRoot().listFiles();
+        assertEquals(3, files.length);
+        File newest = new File(folder.getRoot(), "log.1.txt.gz");
+        File oldest = new File(folder.getRoot(), "log.2.txt.gz");
+        assertTrue(newest.isFile());
+        assertTrue(oldest.isFile());
+        List<String> lines = readCompressedLines(oldest);
+        lines.addAll(readCompressedLines(newest));
+        lines.addAll(readLines(file));
+        List<String> expected = new ArrayList<String>();
+        for (int i = lineCount - lines.size(); i < lineCount; i++)
+            expected.add(String.format("line %03d", i));
+        assertEquals(expected, lines);
+        assertEquals(5, readCompressedLines(oldest).size());
+        assertEquals(5, readCompressedLines(newest).size());
+        assertEquals(2, readLines(file).size());
+    }
+
+    @Test
+    public void testCloseFlushesLines() throws InterruptedException, IOException
+    {
+        // Neither the number of lines nor the interval triggers a flush.
+        File file = new File(folder.getRoot(), "log.txt");
+        AsyncLogWriter writer = new AsyncLogWriter(file, 64, false, 1000, 3600000);
+        for (int i = 0; i < 10; i++)
+            assertTrue(writer.append("line " + i));
+        writer.close();
+
+        assertEquals(10, writer.getFlushedLines());
+        assertEquals(createLines("line ", 0, 10), readLines(file));
+        assertFalse(writer.append("too late"));
+        assertEquals(1, writer.getDroppedLines());
+    }
+
+    /**
+     * Create numbered lines.
+     * @param prefix prefix of every line
+     * @param first first number
+     * @param end number after the last one
+     * @return lines
+     */
+    private static List<String> createLines(String prefix, int first, int end)
+    {
+        List<String> lines = new ArrayList<String>();
+        for (int i = first; i < end; i++)
+            lines.add(prefix + i);
+        return lines;
+    }
+
+    /**
+     * Read the lines of a file.
+     * @param file file
+     * @return lines
+     * @throws IOException if the file cannot be read
+     */
+    private static List<String> readLines(File file) throws IOException
+    {
+        return readLines(new FileInputStream(file));
+    }
+
+    /**
+     * Read the lines of a file compressed with gzip.
+     * @param file file
+     * @return lines
+     * @throws IOException if the file cannot be read
+     */
+    private static List<String> readCompressedLines(File file) throws IOException
+    {
+        return readLines(new GZIPInputStream(new FileInputStream(file)));
+    }
+
+    /**
+     * Read the lines of a stream and close it.
+     * @param in stream
+     * @return lines
+     * @throws IOException if the stream cannot be read
+     */
+    private static List<String> readLines(InputStream in) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+                Charset.forName("UTF-8")));
+        try
+        {
+            List<String> lines = new ArrayList<String>();
+            String line;
+            while ((line = reader.readLine()) != null)
+                lines.add(line);
+            return lines;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+}
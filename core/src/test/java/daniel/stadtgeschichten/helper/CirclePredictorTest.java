@@ -0,0 +1,150 @@
+package daniel.stadtgeschichten.helper;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import daniel.stadtgeschichten.model.AbsStatement;
+import daniel.stadtgeschichten.model.Circle;
+import daniel.stadtgeschichten.model.Spot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the circle predictor against a ranking of all circles.
+ */
+public class CirclePredictorTest
+{
+    /**
+     * Latitude of the area the spots are placed in, in degrees
+     */
+    private static final double LATITUDE = 49.61;
+
+    /**
+     * Longitude of the area the spots are placed in, in degrees
+     */
+    private static final double LONGITUDE = 6.13;
+
+    /**
+     * Distance beyond which circles are not predicted, in meters
+     */
+    private static final double MAXIMUM_RANGE = 500.0;
+
+    /**
+     * Lowest approaching speed taken into account, in meters per second
+     */
+    private static final double MINIMUM_APPROACHING_SPEED = 0.2;
+
+    @Test
+    public void testPredictionEqualsRankingOfAllCircles()
+    {
+        Random random = new Random(18);
+        Spot[] spots = new Spot[300];
+        for (int i = 0; i < spots.length; i++)
+        {
+            Circle[] circles = new Circle[1 + random.nextInt(3)];
+            for (int j = 0; j < circles.length; j++)
+                circles[j] = new Circle(10 + random.nextInt(40) + 50 * j, "C" + i + "." + j,
+                        new AbsStatement[0]);
+            spots[i] = new Spot(toLatitude((random.nextDouble() - 0.5) * 4000),
+                    toLongitude((random.nextDouble() - 0.5) * 4000), circles);
+        }
+        CircleGridIndex circleIndex = new CircleGridIndex(spots);
+        CirclePredictor predictor = new CirclePredictor(circleIndex);
+
+        for (int i = 0; i < 500; i++)
+        {
+            double latitude = Math.toRadians(toLatitude((random.nextDouble() - 0.5) * 5000));
+            double longitude = Math.toRadians(toLongitude((random.nextDouble() - 0.5) * 5000));
+            double cosLatitude = Math.cos(latitude);
+            double velocityEast = (random.nextDouble() - 0.5) * 4;
+            double velocityNorth = (random.nextDouble() - 0.5) * 4;
+            int occupiedId = random.nextInt(circleIndex.getCircleCount());
+            predictor.predict(latitude, longitude, cosLatitude, velocityEast, velocityNorth,
+                    occupiedId, -1);
+
+            int[] expected = rankAllCircles(circleIndex, latitude, longitude, cosLatitude,
+                    velocityEast, velocityNorth, occupiedId);
+            int count = 0;
+            while (count < expected.length && expected[count] >= 0)
+                count++;
+            assertEquals(count, predictor.getCount());
+            for (int j = 0; j < CirclePredictor.MAXIMUM_CANDIDATES; j++)
+            {
+                if (j < count)
+                    assertSame(circleIndex.getCircle(expected[j]), predictor.getCircles()[j]);
+                else
+                    assertNull(predictor.getCircles()[j]);
+            }
+        }
+    }
+
+    /**
+     * Rank all circles the way the predictor does.
+     * @param circleIndex circle index
+     * @param latitude latitude of the location, in radians
+     * @param longitude longitude of the location, in radians
+     * @param cosLatitude cosine of the latitude of the location
+     * @param velocityEast velocity towards the east, in meters per second
+     * @param velocityNorth velocity towards the north, in meters per second
+     * @param occupiedId number of the occupied circle
+     * @return numbers of the most likely circles, followed by -1
+     */
+    private static int[] rankAllCircles(CircleGridIndex circleIndex, double latitude,
+                                        double longitude, double cosLatitude,
+                                        double velocityEast, double velocityNorth,
+                                        int occupiedId)
+    {
+        int[] ids = {-1, -1, -1};
+        double[] scores = new double[ids.length];
+        for (int id = 0; id < circleIndex.getCircleCount(); id++)
+        {
+            if (id == occupiedId)
+                continue;
+            int spotIndex = circleIndex.getSpotIndex(id);
+            double east = (circleIndex.getSpotLongitude(spotIndex) - longitude) * cosLatitude
+                    * DistanceEngine.EARTH_RADIUS;
+            double north = (circleIndex.getSpotLatitude(spotIndex) - latitude)
+                    * DistanceEngine.EARTH_RADIUS;
+            double distance = Math.sqrt(east * east + north * north);
+            double gap = distance - Math.sqrt(circleIndex.getSquaredRadius(id));
+            if (gap <= 0 || gap > MAXIMUM_RANGE)
+                continue;
+            double approachingSpeed = (velocityEast * east + velocityNorth * north) / distance;
+            double score = gap / Math.max(approachingSpeed, MINIMUM_APPROACHING_SPEED);
+
+            // Insert the circle behind all circles that are as likely.
+            for (int i = 0; i < ids.length; i++)
+                if (ids[i] < 0 || scores[i] > score)
+                {
+                    System.arraycopy(ids, i, ids, i + 1, ids.length - i - 1);
+                    System.arraycopy(scores, i, scores, i + 1, ids.length - i - 1);
+                    ids[i] = id;
+                    scores[i] = score;
+                    break;
+                }
+        }
+        return ids;
+    }
+
+    /**
+     * @param north distance north of the area's centre, in meters
+     * @return latitude, in degrees
+     */
+    private static double toLatitude(double north)
+    {
+        return LATITUDE + north / DistanceEngine.METERS_PER_DEGREE;
+    }
+
+    /**
+     * @param east distance east of the area's centre, in meters
+     * @return longitude, in degrees
+     */
+    private static double toLongitude(double east)
+    {
+        return LONGITUDE + east
+                / (DistanceEngine.METERS_PER_DEGREE * Math.cos(Math.toRadians(LATITUDE)));
+    }
+}
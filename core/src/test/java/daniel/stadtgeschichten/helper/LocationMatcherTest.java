@@ -0,0 +1,251 @@
+package daniel.stadtgeschichten.helper;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import daniel.stadtgeschichten.model.AbsStatement;
+import daniel.stadtgeschichten.model.Circle;
+import daniel.stadtgeschichten.model.Spot;
+import daniel.stadtgeschichten.replay.Trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the location matcher on synthetic spots.
+ */
+public class LocationMatcherTest
+{
+    /**
+     * Latitude of the area the spots are placed in, in degrees
+     */
+    private static final double LATITUDE = 49.61;
+
+    /**
+     * Longitude of the area the spots are placed in, in degrees
+     */
+    private static final double LONGITUDE = 6.13;
+
+    /**
+     * Accuracy of the simulated locations, in meters
+     */
+    private static final double ACCURACY = 5;
+
+    /**
+     * Listener ignoring all events
+     */
+    private static class SilentListener implements LocationMatcher.OnMatchListener
+    {
+        @Override
+        public void onFirstLocation()
+        {
+        }
+
+        @Override
+        public void onCirclesPredicted(Circle[] circles, int count)
+        {
+        }
+
+        @Override
+        public void onCircleEntered(Circle circle)
+        {
+        }
+
+        @Override
+        public void onCircleDwelling(Circle circle, long dwellTime)
+        {
+        }
+
+        @Override
+        public void onCircleExited(Circle circle)
+        {
+        }
+    }
+
+    /**
+     * Listener counting the entered circles
+     */
+    private static class CountingListener extends SilentListener
+    {
+        /**
+         * Number of entered circles
+         */
+        private int enterCount;
+
+        @Override
+        public void onCircleEntered(Circle circle)
+        {
+            enterCount++;
+        }
+    }
+
+    @Test
+    public void testFilteringSuppressesFalseTriggers() throws IOException
+    {
+        // The fixture walks 830 m north past five circles 50 m to the east and into a circle on
+        // the way. Four bursts of two or three outliers jump into the circles to the east.
+        Spot[] spots = new Spot[6];
+        for (int i = 0; i < 5; i++)
+            spots[i] = new Spot(toLatitude(100 + 150 * i), toLongitude(50),
+                    new Circle[] {new Circle(15, "East " + i, new AbsStatement[0])});
+        spots[5] = new Spot(toLatitude(800), toLongitude(0),
+                new Circle[] {new Circle(15, "Ahead", new AbsStatement[0])});
+        Trace trace = readTrace("outliers.csv");
+
+        assertEquals(5, countEnteredCircles(spots, trace, false));
+        assertEquals(1, countEnteredCircles(spots, trace, true));
+    }
+
+    @Test
+    public void testBorderDistanceEqualsClosestBorderOfAllCircles()
+    {
+        Random random = new Random(14);
+        Spot[] spots = createSpots(random, 400, 4000);
+        for (int i = 0; i < 200; i++)
+        {
+            // Also try locations outside of the area covered by the spots.
+            double north = (random.nextDouble() - 0.5) * 6000;
+            double east = (random.nextDouble() - 0.5) * 6000;
+            LocationMatcher matcher = new LocationMatcher(new SilentListener());
+            matcher.setSpots(spots);
+            matcher.filter(toLatitude(north), toLongitude(east), ACCURACY, Double.NaN, 0);
+            matcher.match(0);
+            assertEquals(getClosestBorderDistance(spots, toLatitude(north), toLongitude(east)),
+                    matcher.getBorderDistance(), 1e-6);
+        }
+    }
+
+    @Test
+    public void testBorderDistanceIsSearchedUpToMaximum()
+    {
+        Random random = new Random(15);
+        Spot[] spots = createSpots(random, 400, 4000);
+        for (int i = 0; i < 200; i++)
+        {
+            double north = (random.nextDouble() - 0.5) * 6000;
+            double east = (random.nextDouble() - 0.5) * 6000;
+            LocationMatcher matcher = new LocationMatcher(new SilentListener());
+            matcher.setSpots(spots);
+            matcher.setMaximumBorderDistance(100);
+            matcher.filter(toLatitude(north), toLongitude(east), ACCURACY, Double.NaN, 0);
+            matcher.match(0);
+
+            // Closer borders are found, further ones are reported to be at least that far away.
+            double expected = getClosestBorderDistance(spots, toLatitude(north),
+                    toLongitude(east));
+            double borderDistance = matcher.getBorderDistance();
+            assertTrue(borderDistance <= expected + 1e-6);
+            assertTrue(borderDistance >= Math.min(expected, 100 + ACCURACY) - 1e-6);
+        }
+    }
+
+    /**
+     * Match every fix of a trace and count the entered circles.
+     * @param spots spots
+     * @param trace trace
+     * @param isFiltering true if the position filter is switched on, false otherwise
+     * @return number of entered circles
+     */
+    private static int countEnteredCircles(Spot[] spots, Trace trace, boolean isFiltering)
+    {
+        CountingListener listener = new CountingListener();
+        LocationMatcher matcher = new LocationMatcher(listener);
+        matcher.setSpots(spots);
+        matcher.setFiltering(isFiltering);
+        for (int i = 0; i < trace.size(); i++)
+            if (matcher.filter(trace.getLatitude(i), trace.getLongitude(i), trace.getAccuracy(i),
+                    trace.getSpeed(i), trace.getTime(i)))
+                matcher.match(trace.getTime(i));
+        return listener.enterCount;
+    }
+
+    /**
+     * Read a trace next to this class.
+     * @param name name of the CSV file
+     * @return trace
+     * @throws IOException if the file cannot be read
+     */
+    private static Trace readTrace(String name) throws IOException
+    {
+        Reader reader = new InputStreamReader(LocationMatcherTest.class.getResourceAsStream(name),
+                Charset.forName("UTF-8"));
+        try
+        {
+            return Trace.read(reader, Trace.DEFAULT_INTERVAL);
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Create spots with one to three circles at random places.
+     * @param random random number generator
+     * @param count number of spots
+     * @param extent edge length of the square the spots are placed in, in meters
+     * @return spots
+     */
+    private static Spot[] createSpots(Random random, int count, double extent)
+    {
+        Spot[] spots = new Spot[count];
+        for (int i = 0; i < count; i++)
+        {
+            Circle[] circles = new Circle[1 + random.nextInt(3)];
+            for (int j = 0; j < circles.length; j++)
+                circles[j] = new Circle(10 + random.nextInt(40) + 50 * j, "C" + i + "." + j,
+                        new AbsStatement[0]);
+            spots[i] = new Spot(toLatitude((random.nextDouble() - 0.5) * extent),
+                    toLongitude((random.nextDouble() - 0.5) * extent), circles);
+        }
+        return spots;
+    }
+
+    /**
+     * Get the distance from the given location to the closest border of all circles.
+     * @param spots spots
+     * @param latitude latitude of the location, in degrees
+     * @param longitude longitude of the location, in degrees
+     * @return distance, in meters
+     */
+    private static double getClosestBorderDistance(Spot[] spots, double latitude, double longitude)
+    {
+        DistanceEngine engine = new EquirectangularDistanceEngine();
+        double latitudeRadians = Math.toRadians(latitude);
+        double result = Double.POSITIVE_INFINITY;
+        for (Spot spot : spots)
+        {
+            double spotLatitude = Math.toRadians(spot.getLatitude());
+            double distance = Math.sqrt(engine.getSquaredDistance(latitudeRadians,
+                    Math.toRadians(longitude), Math.cos(latitudeRadians), spotLatitude,
+                    Math.toRadians(spot.getLongitude()), Math.cos(spotLatitude)));
+            for (Circle circle : spot.getCircles())
+                result = Math.min(result, Math.abs(distance - circle.getRadius()));
+        }
+        return result;
+    }
+
+    /**
+     * @param north distance north of the area's centre, in meters
+     * @return latitude, in degrees
+     */
+    private static double toLatitude(double north)
+    {
+        return LATITUDE + north / DistanceEngine.METERS_PER_DEGREE;
+    }
+
+    /**
+     * @param east distance east of the area's centre, in meters
+     * @return longitude, in degrees
+     */
+    private static double toLongitude(double east)
+    {
+        return LONGITUDE + east
+                / (DistanceEngine.METERS_PER_DEGREE * Math.cos(Math.toRadians(LATITUDE)));
+    }
+}
@@ -0,0 +1,120 @@
+package daniel.stadtgeschichten.helper;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the sampling policy on simulated walks towards and along circle borders.
+ */
+public class SamplingPolicyTest
+{
+    /**
+     * Walking speed, in meters per second
+     */
+    private static final double WALKING_SPEED = 1.4;
+
+    /**
+     * Accuracy of the simulated locations, in meters
+     */
+    private static final double ACCURACY = 5;
+
+    /**
+     * Interval of the fixed rate used before the sampling policy, in milliseconds
+     */
+    private static final long FIXED_INTERVAL = 500;
+
+    /**
+     * Fraction of the distance to the border that may be covered between two updates
+     */
+    private static final double SAFETY_FACTOR = 0.5;
+
+    @Test
+    public void testApproachNeedsFewerFixesThanFixedRate()
+    {
+        // Walk 2 km straight towards a circle border at walking pace.
+        SamplingPolicy policy = new SamplingPolicy();
+        double distance = 2000;
+        int fixes = 0;
+        while (distance > 0)
+        {
+            policy.update(distance - ACCURACY, WALKING_SPEED);
+            fixes++;
+            double covered = WALKING_SPEED * policy.getInterval() / 1000.0;
+
+            // Only the fastest level may cover more than the allowed fraction of the distance.
+            if (policy.getInterval() > FIXED_INTERVAL)
+                assertTrue(covered + policy.getMinimumDistance()
+                        <= SAFETY_FACTOR * (distance - ACCURACY));
+            distance -= covered;
+        }
+
+        int fixedRateFixes = (int) Math.ceil(2000 / WALKING_SPEED * 1000 / FIXED_INTERVAL);
+        assertEquals(2858, fixedRateFixes);
+        assertEquals(98, fixes);
+    }
+
+    @Test
+    public void testSpeedsUpAtOnce()
+    {
+        SamplingPolicy policy = new SamplingPolicy();
+        for (int i = 0; i < 10; i++)
+            policy.update(1000, WALKING_SPEED);
+        assertEquals(20000, policy.getInterval());
+
+        // A border close by goes back to the fastest level with the next update.
+        assertTrue(policy.update(1, WALKING_SPEED));
+        assertEquals(FIXED_INTERVAL, policy.getInterval());
+        assertEquals(0, policy.getMinimumDistance(), 0);
+    }
+
+    @Test
+    public void testSlowsDownStepByStep()
+    {
+        SamplingPolicy policy = new SamplingPolicy();
+        long[] intervals = {1000, 2000, 5000, 10000, 20000, 20000};
+        for (long interval : intervals)
+        {
+            policy.update(1000, WALKING_SPEED);
+            assertEquals(interval, policy.getInterval());
+        }
+        assertFalse(policy.update(1000, WALKING_SPEED));
+    }
+
+    @Test
+    public void testFasterListenerSamplesMoreOften()
+    {
+        SamplingPolicy walker = new SamplingPolicy();
+        SamplingPolicy cyclist = new SamplingPolicy();
+        for (int i = 0; i < 10; i++)
+        {
+            walker.update(100, WALKING_SPEED);
+            cyclist.update(100, 5);
+        }
+        assertTrue(cyclist.getInterval() < walker.getInterval());
+
+        // An acceleration is followed at once, a deceleration only gradually.
+        walker.update(100, 5);
+        assertEquals(cyclist.getInterval(), walker.getInterval());
+        cyclist.update(100, WALKING_SPEED);
+        assertTrue(cyclist.getSpeed() > WALKING_SPEED);
+    }
+
+    @Test
+    public void testMaximumUsefulDistance()
+    {
+        // From the maximum useful distance on, the slowest level is reached.
+        SamplingPolicy policy = new SamplingPolicy();
+        policy.update(0, WALKING_SPEED);
+        double distance = policy.getMaximumUsefulDistance();
+        for (int i = 0; i < 10; i++)
+            policy.update(distance, WALKING_SPEED);
+        assertEquals(20000, policy.getInterval());
+
+        // Just below it, it is not.
+        policy.update(distance - 1, WALKING_SPEED);
+        assertTrue(policy.getInterval() < 20000);
+    }
+}
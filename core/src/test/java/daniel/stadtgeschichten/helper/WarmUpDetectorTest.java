@@ -0,0 +1,175 @@
+package daniel.stadtgeschichten.helper;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+import daniel.stadtgeschichten.replay.Trace;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the warm-up detector on recorded starts of the location tracking, where the listener
+ * stands still at a known location. The detector is compared with the fixed count of fixes that
+ * was skipped before it has been introduced.
+ */
+public class WarmUpDetectorTest
+{
+    /**
+     * Latitude of the listener in the traces, in degrees
+     */
+    private static final double LATITUDE = 49.61;
+
+    /**
+     * Longitude of the listener in the traces, in degrees
+     */
+    private static final double LONGITUDE = 6.13;
+
+    /**
+     * Distance from the listener up to which a filtered location is valid, in meters
+     */
+    private static final double VALID_DISTANCE = 10.0;
+
+    /**
+     * Number of fixes that were skipped before the detector has been introduced
+     */
+    private static final int BASELINE_FIXES = 5;
+
+    /**
+     * Outcome of replaying the start of a trace
+     */
+    private static class WarmUp
+    {
+        /**
+         * Time from the first fix to the first valid location that is taken into account, in
+         * milliseconds, -1 if there is none
+         */
+        private long timeToValidFix = -1;
+
+        /**
+         * Number of invalid locations taken into account before the first valid one
+         */
+        private int invalidFixes;
+    }
+
+    @Test
+    public void testOpenSkyIsTakenEarlierThanByBaseline() throws IOException
+    {
+        // The fixes agree at once, so the detector does not wait for the fifth one.
+        Trace trace = readTrace("warm-up-open-sky.csv");
+        assertWarmUp(2000, 0, replay(trace, false));
+        assertWarmUp(4000, 0, replay(trace, true));
+    }
+
+    @Test
+    public void testColdStartTakesFewerInvalidFixesThanBaseline() throws IOException
+    {
+        // The fixes converge from 60 m away. The filtered location still lags behind for two
+        // fixes after they have started to agree.
+        Trace trace = readTrace("warm-up-cold-start.csv");
+        assertWarmUp(8000, 2, replay(trace, false));
+        assertWarmUp(8000, 4, replay(trace, true));
+    }
+
+    @Test
+    public void testUrbanCanyonTakesNoInvalidFix() throws IOException
+    {
+        // Multipath jumps of 35 m during the first seconds are waited out.
+        Trace trace = readTrace("warm-up-urban.csv");
+        assertWarmUp(7000, 0, replay(trace, false));
+        assertWarmUp(6000, 2, replay(trace, true));
+    }
+
+    /**
+     * Check the outcome of replaying the start of a trace.
+     * @param timeToValidFix expected time to the first valid location, in milliseconds
+     * @param invalidFixes expected number of invalid locations taken into account before
+     * @param warmUp outcome
+     */
+    private static void assertWarmUp(long timeToValidFix, int invalidFixes, WarmUp warmUp)
+    {
+        assertEquals(timeToValidFix, warmUp.timeToValidFix);
+        assertEquals(invalidFixes, warmUp.invalidFixes);
+    }
+
+    /**
+     * Replay a trace through the position filter until the first valid location is taken into
+     * account.
+     * @param trace trace starting with the first fix after the tracking has been started
+     * @param isBaseline true if a fixed number of fixes is skipped, false if the warm-up detector
+     *                   decides
+     * @return outcome
+     */
+    private static WarmUp replay(Trace trace, boolean isBaseline)
+    {
+        PositionFilter filter = new PositionFilter();
+        WarmUpDetector detector = new WarmUpDetector();
+        WarmUp warmUp = new WarmUp();
+        for (int i = 0; i < trace.size(); i++)
+        {
+            boolean isAccepted = filter.update(trace.getLatitude(i), trace.getLongitude(i),
+                    trace.getAccuracy(i), trace.getSpeed(i), trace.getTime(i));
+
+            // Skip the fix as the location helper does while warming up.
+            boolean isWarmedUp;
+            if (isBaseline)
+                isWarmedUp = i + 1 >= BASELINE_FIXES;
+            else if (!isAccepted)
+            {
+                detector.discardFixes();
+                isWarmedUp = detector.isStable();
+            }
+            else
+                isWarmedUp = detector.update(trace.getLatitude(i), trace.getLongitude(i),
+                        trace.getAccuracy(i), trace.getTime(i));
+            if (!isWarmedUp || !isAccepted)
+                continue;
+
+            // Check the location that is taken into account.
+            if (getDistance(filter.getLatitude(), filter.getLongitude()) > VALID_DISTANCE)
+                warmUp.invalidFixes++;
+            else
+            {
+                warmUp.timeToValidFix = trace.getTime(i) - trace.getTime(0);
+                break;
+            }
+        }
+        return warmUp;
+    }
+
+    /**
+     * @param latitude latitude, in degrees
+     * @param longitude longitude, in degrees
+     * @return distance from the listener, in meters
+     */
+    private static double getDistance(double latitude, double longitude)
+    {
+        double north = (latitude - LATITUDE) * DistanceEngine.METERS_PER_DEGREE;
+        double east = (longitude - LONGITUDE) * DistanceEngine.METERS_PER_DEGREE
+                * Math.cos(Math.toRadians(LATITUDE));
+        return Math.sqrt(north * north + east * east);
+    }
+
+    /**
+     * Read a trace next to this class.
+     * @param name name of the CSV file
+     * @return trace
+     * @throws IOException if the file cannot be read
+     */
+    private static Trace readTrace(String name) throws IOException
+    {
+        Reader reader = new InputStreamReader(WarmUpDetectorTest.class.getResourceAsStream(name),
+                Charset.forName("UTF-8"));
+        try
+        {
+            return Trace.read(reader, Trace.DEFAULT_INTERVAL);
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package daniel.stadtgeschichten.parser;
+
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import daniel.stadtgeschichten.generator.StoryGenerator;
+import daniel.stadtgeschichten.model.AbsOperator;
+import daniel.stadtgeschichten.model.AbsStatement;
+import daniel.stadtgeschichten.model.AssignmentStatement;
+import daniel.stadtgeschichten.model.Circle;
+import daniel.stadtgeschichten.model.EqualityOperator;
+import daniel.stadtgeschichten.model.IfStatement;
+import daniel.stadtgeschichten.model.IncrementStatement;
+import daniel.stadtgeschichten.model.PlayStatement;
+import daniel.stadtgeschichten.model.Spot;
+import daniel.stadtgeschichten.model.Story;
+import daniel.stadtgeschichten.model.StoryHeader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that the scanning story parser reads every field of a story exactly as the kXML based
+ * story parser does, on generated stories and on edge cases of the XML syntax.
+ */
+public class ParserParityTest
+{
+    /**
+     * Start of every edge case story
+     */
+    private static final String PROLOGUE = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n";
+
+    /**
+     * Body of every edge case story, beneath its story tag
+     */
+    private static final String BODY = "<init><assign variable=\"a\" value=\"0\"/></init>"
+            + "<spot latitude=\"49.6\" longitude=\"6.1\"><circle radius=\"20\" title=\"C\">"
+            + "<play file=\"c.mp3\" text=\"C\"/></circle></spot>";
+
+    @Test
+    public void testGeneratedStories() throws XmlPullParserException, IOException
+    {
+        for (int seed = 0; seed < 4; seed++)
+        {
+            StoryGenerator generator = new StoryGenerator(seed);
+            generator.setSpotCount(20);
+            generator.setCirclesPerSpot(1 + seed % 3);
+            generator.setBranchDepth(seed);
+            generator.setDistribution(seed % 3);
+            assertParity(generator.generateXml());
+        }
+    }
+
+    @Test
+    public void testWhiteSpaceInAttributes() throws XmlPullParserException, IOException
+    {
+        // Tabs are kept, line breaks become one space each, and references are kept as they are.
+        String xml = PROLOGUE + "<story title=\"a\tb\nc\r\nd\re\" introfile=\"intro.mp3\""
+                + " introtext=\"x&#9;y&#10;z&#13;&amp;&lt;&quot;\">" + BODY + "</story>";
+        Story story = assertParity(xml);
+        assertEquals("a\tb c d e", story.getTitle());
+        assertEquals("x\ty\nz\r&<\"", story.getIntroRecord());
+    }
+
+    @Test
+    public void testTextOutsideOfAscii() throws XmlPullParserException, IOException
+    {
+        String xml = PROLOGUE + "<story title=\"Stra\u00dfe &#233;\u20ac\""
+                + " introfile=\"\u00e9.mp3\" introtext=\"\">" + BODY + "</story>";
+        assertEquals("Stra\u00dfe \u00e9\u20ac", assertParity(xml).getTitle());
+    }
+
+    @Test
+    public void testDuplicatedAttributeTakesLast() throws XmlPullParserException, IOException
+    {
+        String xml = PROLOGUE + "<story title=\"A\" title=\"B\" introfile=\"intro.mp3\""
+                + " introtext=\"\">" + BODY + "</story>";
+        assertEquals("B", assertParity(xml).getTitle());
+    }
+
+    @Test
+    public void testPrefixesAreIgnored() throws XmlPullParserException, IOException
+    {
+        // Namespace declarations are no attributes, and names are matched by their local part.
+        String xml = PROLOGUE + "<s:story xmlns=\"urn:story\" xmlns:s=\"urn:s\" title=\"A\""
+                + " s:title=\"B\" introfile=\"intro.mp3\" introtext=\"\">" + BODY
+                + "</s:story>";
+        assertEquals("B", assertParity(xml).getTitle());
+    }
+
+    @Test
+    public void testEndTagWithOtherPrefixIsRejected() throws XmlPullParserException, IOException
+    {
+        String xml = PROLOGUE + "<s:story xmlns:s=\"urn:s\" xmlns:t=\"urn:s\" title=\"A\""
+                + " introfile=\"intro.mp3\" introtext=\"\">" + BODY + "</t:story>";
+        assertRejected(new StoryXmlParser(), xml);
+        assertRejected(new ScanningStoryParser(), xml);
+    }
+
+    @Test
+    public void testCommentsAndCdata() throws XmlPullParserException, IOException
+    {
+        String xml = PROLOGUE + "<!DOCTYPE story>\n<!-- comment -->\n<story title=\"A\""
+                + " introfile='intro.mp3' introtext = \"\" >\n<![CDATA[ ]]><?pi?>" + BODY
+                + "<!-- comment --></story >\n";
+        assertParity(xml);
+    }
+
+    @Test
+    public void testNumbers() throws XmlPullParserException, IOException
+    {
+        String xml = PROLOGUE + "<story title=\"A\" introfile=\"intro.mp3\" introtext=\"\">"
+                + "<init><assign variable=\"a\" value=\"-2147483648\"/>"
+                + "<assign variable=\"b\" value=\"2147483647\"/></init>"
+                + "<spot latitude=\"-49.60000000000000142\" longitude=\"6.1e-3\">"
+                + "<circle radius=\"007\" title=\"C\"><if><condition>"
+                + "<equals element1=\"a\" element2=\"-0\"/></condition>"
+                + "<then><increment variable=\"a\" value=\"-1\"/></then></if>"
+                + "<play file=\"c.mp3\" text=\"C\" volume=\"0.333333333\"/></circle></spot>"
+                + "</story>";
+        assertParity(xml);
+    }
+
+    /**
+     * Parse a story with both parsers and check that they agree on every field.
+     * @param xml story
+     * @return story read by the kXML based parser
+     * @throws XmlPullParserException if a parser fails
+     * @throws IOException if a parser fails
+     */
+    private static Story assertParity(String xml) throws XmlPullParserException, IOException
+    {
+        byte[] bytes = xml.getBytes(Charset.forName("UTF-8"));
+        Story expected = new StoryXmlParser().parse(new ByteArrayInputStream(bytes), "test");
+        Story actual = new ScanningStoryParser().parse(new ByteArrayInputStream(bytes), "test");
+        assertStory(expected, actual);
+
+        StoryHeader expectedHeader = new StoryXmlParser().parseHeader(
+                new ByteArrayInputStream(bytes), "test", "path");
+        StoryHeader actualHeader = new ScanningStoryParser().parseHeader(
+                new ByteArrayInputStream(bytes), "test", "path");
+        assertEquals(expectedHeader.getTitle(), actualHeader.getTitle());
+        assertEquals(expectedHeader.getFolderName(), actualHeader.getFolderName());
+        assertEquals(expectedHeader.getAssetPath(), actualHeader.getAssetPath());
+        assertEquals(expectedHeader.getIntroAudioFileName(),
+                actualHeader.getIntroAudioFileName());
+        assertEquals(expectedHeader.getIntroRecord(), actualHeader.getIntroRecord());
+        return expected;
+    }
+
+    /**
+     * Check that a parser rejects a story.
+     * @param parser parser under test
+     * @param xml story
+     * @throws IOException if the parser fails to read
+     */
+    private static void assertRejected(StoryParser parser, String xml) throws IOException
+    {
+        try
+        {
+            parser.parse(new ByteArrayInputStream(xml.getBytes(Charset.forName("UTF-8"))),
+                    "test");
+            fail("The story has been accepted by " + parser.getClass().getSimpleName() + ".");
+        }
+        catch (XmlPullParserException e)
+        {
+            // The story is expected to be rejected.
+        }
+    }
+
+    /**
+     * @param expected story read by the kXML based parser
+     * @param actual story read by the scanning parser
+     */
+    private static void assertStory(Story expected, Story actual)
+    {
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getFolderName(), actual.getFolderName());
+        assertEquals(expected.getIntroAudioFileName(), actual.getIntroAudioFileName());
+        assertEquals(expected.getIntroRecord(), actual.getIntroRecord());
+        assertStatements(expected.getInitStatements(), actual.getInitStatements());
+        assertEquals(expected.getSpots().length, actual.getSpots().length);
+        for (int i = 0; i < expected.getSpots().length; i++)
+        {
+            Spot expectedSpot = expected.getSpots()[i];
+            Spot actualSpot = actual.getSpots()[i];
+            assertEquals(Double.doubleToLongBits(expectedSpot.getLatitude()),
+                    Double.doubleToLongBits(actualSpot.getLatitude()));
+            assertEquals(Double.doubleToLongBits(expectedSpot.getLongitude()),
+                    Double.doubleToLongBits(actualSpot.getLongitude()));
+            assertEquals(expectedSpot.getCircles().length, actualSpot.getCircles().length);
+            for (int j = 0; j < expectedSpot.getCircles().length; j++)
+            {
+                Circle expectedCircle = expectedSpot.getCircles()[j];
+                Circle actualCircle = actualSpot.getCircles()[j];
+                assertEquals(expectedCircle.getRadius(), actualCircle.getRadius());
+                assertEquals(expectedCircle.getTitle(), actualCircle.getTitle());
+                assertStatements(expectedCircle.getStatements(), actualCircle.getStatements());
+            }
+        }
+        assertEquals(expected.getSymbolTable().size(), actual.getSymbolTable().size());
+        for (int i = 0; i < expected.getSymbolTable().size(); i++)
+            assertEquals(expected.getSymbolTable().getName(i),
+                    actual.getSymbolTable().getName(i));
+    }
+
+    /**
+     * @param expected statements read by the kXML based parser
+     * @param actual statements read by the scanning parser
+     */
+    private static void assertStatements(AbsStatement[] expected, AbsStatement[] actual)
+    {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+        {
+            assertSame(expected[i].getClass(), actual[i].getClass());
+            if (expected[i] instanceof AssignmentStatement)
+            {
+                AssignmentStatement e = (AssignmentStatement) expected[i];
+                AssignmentStatement a = (AssignmentStatement) actual[i];
+                assertEquals(e.getVariable(), a.getVariable());
+                assertEquals(e.getValue(), a.getValue());
+                assertEquals(e.getSlot(), a.getSlot());
+            }
+            else if (expected[i] instanceof IncrementStatement)
+            {
+                IncrementStatement e = (IncrementStatement) expected[i];
+                IncrementStatement a = (IncrementStatement) actual[i];
+                assertEquals(e.getVariable(), a.getVariable());
+                assertEquals(e.getValue(), a.getValue());
+                assertEquals(e.getSlot(), a.getSlot());
+            }
+            else if (expected[i] instanceof PlayStatement)
+            {
+                PlayStatement e = (PlayStatement) expected[i];
+                PlayStatement a = (PlayStatement) actual[i];
+                assertEquals(e.getAudioFileName(), a.getAudioFileName());
+                assertEquals(e.getText(), a.getText());
+                assertEquals(Float.floatToIntBits(e.getVolume()),
+                        Float.floatToIntBits(a.getVolume()));
+            }
+            else if (expected[i] instanceof IfStatement)
+            {
+                IfStatement e = (IfStatement) expected[i];
+                IfStatement a = (IfStatement) actual[i];
+                assertConditions(e.getConditions(), a.getConditions());
+                assertStatements(e.getThenStatements(), a.getThenStatements());
+                assertStatements(e.getElseStatements(), a.getElseStatements());
+            }
+        }
+    }
+
+    /**
+     * @param expected conditions read by the kXML based parser
+     * @param actual conditions read by the scanning parser
+     */
+    private static void assertConditions(AbsOperator[] expected, AbsOperator[] actual)
+    {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+        {
+            assertSame(expected[i].getClass(), actual[i].getClass());
+            EqualityOperator e = (EqualityOperator) expected[i];
+            EqualityOperator a = (EqualityOperator) actual[i];
+            assertEquals(e.getElement1(), a.getElement1());
+            assertEquals(e.getElement2(), a.getElement2());
+            assertEquals(e.getSlot1(), a.getSlot1());
+            assertEquals(e.getSlot2(), a.getSlot2());
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package daniel.stadtgeschichten.parser;
+
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import daniel.stadtgeschichten.model.AbsStatement;
+import daniel.stadtgeschichten.model.AssignmentStatement;
+import daniel.stadtgeschichten.model.IfStatement;
+import daniel.stadtgeschichten.model.IncrementStatement;
+import daniel.stadtgeschichten.model.PlayStatement;
+import daniel.stadtgeschichten.model.Story;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests both story parsers on if statements with and without an else branch.
+ */
+public class StoryParserTest
+{
+    /**
+     * Story with an if-then-else followed by another statement in the same circle
+     */
+    private static final String IF_THEN_ELSE_STORY = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<story title=\"Test\" introfile=\"intro.mp3\" introtext=\"\">\n"
+            + "  <init><assign variable=\"a\" value=\"0\"/></init>\n"
+            + "  <spot latitude=\"49.6\" longitude=\"6.1\">\n"
+            + "    <circle radius=\"20\" title=\"C\">\n"
+            + "      <if>\n"
+            + "        <condition><equals element1=\"a\" element2=\"1\"/></condition>\n"
+            + "        <then><increment variable=\"a\"/></then>\n"
+            + "        <else><assign variable=\"a\" value=\"2\"/></else>\n"
+            + "      </if>\n"
+            + "      <play file=\"c.mp3\" text=\"C\"/>\n"
+            + "    </circle>\n"
+            + "  </spot>\n"
+            + "</story>\n";
+
+    /**
+     * Story with an if-then followed by another statement in the same circle
+     */
+    private static final String IF_THEN_STORY = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<story title=\"Test\" introfile=\"intro.mp3\" introtext=\"\">\n"
+            + "  <init><assign variable=\"a\" value=\"0\"/></init>\n"
+            + "  <spot latitude=\"49.6\" longitude=\"6.1\">\n"
+            + "    <circle radius=\"20\" title=\"C\">\n"
+            + "      <if>\n"
+            + "        <condition><equals element1=\"a\" element2=\"1\"/></condition>\n"
+            + "        <then><increment variable=\"a\"/></then>\n"
+            + "      </if>\n"
+            + "      <play file=\"c.mp3\" text=\"C\"/>\n"
+            + "    </circle>\n"
+            + "  </spot>\n"
+            + "</story>\n";
+
+    @Test
+    public void testIfThenElseWithXmlParser() throws XmlPullParserException, IOException
+    {
+        assertIfThenElse(new StoryXmlParser());
+    }
+
+    @Test
+    public void testIfThenElseWithScanningParser() throws XmlPullParserException, IOException
+    {
+        assertIfThenElse(new ScanningStoryParser());
+    }
+
+    @Test
+    public void testIfThenWithXmlParser() throws XmlPullParserException, IOException
+    {
+        assertIfThen(new StoryXmlParser());
+    }
+
+    @Test
+    public void testIfThenWithScanningParser() throws XmlPullParserException, IOException
+    {
+        assertIfThen(new ScanningStoryParser());
+    }
+
+    /**
+     * Parse the story with the if-then-else and check both branches and the statement after it.
+     * @param parser parser under test
+     * @throws XmlPullParserException
+     * @throws IOException
+     */
+    private static void assertIfThenElse(StoryParser parser)
+            throws XmlPullParserException, IOException
+    {
+        AbsStatement[] statements = parse(parser, IF_THEN_ELSE_STORY);
+        assertEquals(2, statements.length);
+        IfStatement ifStatement = (IfStatement) statements[0];
+        assertEquals(1, ifStatement.getConditions().length);
+        assertEquals(1, ifStatement.getThenStatements().length);
+        assertTrue(ifStatement.getThenStatements()[0] instanceof IncrementStatement);
+        assertEquals(1, ifStatement.getElseStatements().length);
+        AssignmentStatement assignment = (AssignmentStatement) ifStatement.getElseStatements()[0];
+        assertEquals("a", assignment.getVariable());
+        assertEquals(2, assignment.getValue());
+        assertEquals("c.mp3", ((PlayStatement) statements[1]).getAudioFileName());
+    }
+
+    /**
+     * Parse the story with the if-then and check the branch and the statement after it.
+     * @param parser parser under test
+     * @throws XmlPullParserException
+     * @throws IOException
+     */
+    private static void assertIfThen(StoryParser parser) throws XmlPullParserException, IOException
+    {
+        AbsStatement[] statements = parse(parser, IF_THEN_STORY);
+        assertEquals(2, statements.length);
+        IfStatement ifStatement = (IfStatement) statements[0];
+        assertEquals(1, ifStatement.getThenStatements().length);
+        assertEquals(0, ifStatement.getElseStatements().length);
+        assertEquals("c.mp3", ((PlayStatement) statements[1]).getAudioFileName());
+    }
+
+    /**
+     * Parse the given story and return the statements of its only circle.
+     * @param parser parser to use
+     * @param xml story
+     * @return statements of the circle
+     * @throws XmlPullParserException
+     * @throws IOException
+     */
+    private static AbsStatement[] parse(StoryParser parser, String xml)
+            throws XmlPullParserException, IOException
+    {
+        Story story = parser.parse(new ByteArrayInputStream(xml.getBytes(Charset.forName("UTF-8"))),
+                "test");
+        assertEquals(1, story.getSpots().length);
+        assertEquals(1, story.getSpots()[0].getCircles().length);
+        return story.getSpots()[0].getCircles()[0].getStatements();
+    }
+}
@@ -0,0 +1,152 @@
+package daniel.stadtgeschichten.replay;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests reading the durations of audio files from their headers.
+ */
+public class AudioDurationsTest
+{
+    /**
+     * Duration of files whose duration cannot be read, in milliseconds
+     */
+    private static final long DEFAULT_DURATION = 1234;
+
+    /**
+     * Folder the audio files are written to
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWavDurationIsReadFromChunks() throws IOException
+    {
+        // Two seconds of 8 kHz mono audio with 16 bits per sample.
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeWavHeader(out, 16000, 32000);
+        write("complete.wav", out.toByteArray());
+        assertEquals(2000, createDurations().getDuration("complete.wav"));
+    }
+
+    @Test
+    public void testTruncatedWavFormatTakesDefault() throws IOException
+    {
+        // The format chunk ends before its byte rate.
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(ascii("RIFF"));
+        writeLittleEndian(out, 12, 4);
+        out.write(ascii("WAVE"));
+        out.write(ascii("fmt "));
+        writeLittleEndian(out, 16, 4);
+        writeLittleEndian(out, 1, 2);
+        writeLittleEndian(out, 1, 2);
+        write("truncated.wav", out.toByteArray());
+        assertEquals(DEFAULT_DURATION, createDurations().getDuration("truncated.wav"));
+    }
+
+    @Test
+    public void testMp3DurationIsReadAfterLongId3Tag() throws IOException
+    {
+        // An ID3v2 tag of 100 KiB, e.g. with cover art, is followed by 10 s at 128 kbit/s.
+        int tagSize = 100 * 1024;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(ascii("ID3"));
+        out.write(new byte[] {3, 0, 0, (byte) (tagSize >> 21 & 0x7f),
+                (byte) (tagSize >> 14 & 0x7f), (byte) (tagSize >> 7 & 0x7f),
+                (byte) (tagSize & 0x7f)});
+        out.write(new byte[tagSize]);
+        byte[] frames = new byte[160000];
+        frames[0] = (byte) 0xff;
+        frames[1] = (byte) 0xfb;
+        frames[2] = (byte) 0x90;
+        out.write(frames);
+        write("tagged.mp3", out.toByteArray());
+        assertEquals(10000, createDurations().getDuration("tagged.mp3"));
+    }
+
+    /**
+     * @return durations of the audio files in the folder
+     * @throws IOException if the folder cannot be read
+     */
+    private AudioDurations createDurations() throws IOException
+    {
+        return new AudioDurations(folder.getRoot(), DEFAULT_DURATION);
+    }
+
+    /**
+     * Write an audio file into the folder.
+     * @param name name of the file
+     * @param bytes content
+     * @throws IOException if the file cannot be written
+     */
+    private void write(String name, byte[] bytes) throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(new File(folder.getRoot(), name));
+        try
+        {
+            out.write(bytes);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Write the chunks of a WAV file up to the header of its data chunk.
+     * @param out stream
+     * @param byteRate bytes per second
+     * @param dataSize size of the audio data, in bytes
+     * @throws IOException if the stream cannot be written
+     */
+    private static void writeWavHeader(ByteArrayOutputStream out, int byteRate, int dataSize)
+            throws IOException
+    {
+        out.write(ascii("RIFF"));
+        writeLittleEndian(out, 36 + dataSize, 4);
+        out.write(ascii("WAVE"));
+        out.write(ascii("fmt "));
+        writeLittleEndian(out, 16, 4);
+        writeLittleEndian(out, 1, 2);
+        writeLittleEndian(out, 1, 2);
+        writeLittleEndian(out, 8000, 4);
+        writeLittleEndian(out, byteRate, 4);
+        writeLittleEndian(out, 2, 2);
+        writeLittleEndian(out, 16, 2);
+        out.write(ascii("data"));
+        writeLittleEndian(out, dataSize, 4);
+    }
+
+    /**
+     * Write a number in little-endian byte order.
+     * @param out stream
+     * @param value number
+     * @param length number of bytes
+     */
+    private static void writeLittleEndian(ByteArrayOutputStream out, long value, int length)
+    {
+        for (int i = 0; i < length; i++)
+            out.write((int) (value >> (8 * i)) & 0xff);
+    }
+
+    /**
+     * @param text ASCII text
+     * @return bytes of the text
+     */
+    private static byte[] ascii(String text)
+    {
+        byte[] bytes = new byte[text.length()];
+        for (int i = 0; i < text.length(); i++)
+            bytes[i] = (byte) text.charAt(i);
+        return bytes;
+    }
+}
@@ -0,0 +1,102 @@
+package daniel.stadtgeschichten.replay;
+
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.util.List;
+
+import daniel.stadtgeschichten.model.Story;
+import daniel.stadtgeschichten.parser.StoryXmlParser;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the trace replayer on a golden story and trace written by the story generator.
+ */
+public class TraceReplayerTest
+{
+    /**
+     * Times at which the golden trace is expected to play audio files, in milliseconds since the
+     * start
+     */
+    private static final long[] PLAY_TIMES = {0, 156000, 255480, 494000, 601448, 682000, 773000,
+            871036, 985000, 1028355, 1100000, 1157000, 1246608, 1367150};
+
+    /**
+     * Audio files the golden trace is expected to play
+     */
+    private static final String[] PLAY_FILES = {"intro.mp3", "spot1-1.mp3", "spot1-0.mp3",
+            "spot2-1.mp3", "spot2-0.mp3", "spot11-0.mp3", "spot11-1.mp3", "spot6-0.mp3",
+            "spot0-1.mp3", "spot0-0.mp3", "spot0-1.mp3", "spot4-1.mp3", "spot4-0.mp3",
+            "spot3-0.mp3"};
+
+    @Test
+    public void testGoldenTracePlaysExpectedSequence()
+            throws IOException, XmlPullParserException, URISyntaxException
+    {
+        File folder = new File(TraceReplayerTest.class.getResource("golden").toURI());
+        ReplayReport report = new TraceReplayer(readStory(new File(folder, "story.xml")),
+                readTrace(new File(folder, "trace.csv")),
+                new AudioDurations(folder, TraceReplayer.DEFAULT_AUDIO_DURATION)).replay();
+        List<ReplayReport.Play> plays = report.getPlays();
+        assertEquals(PLAY_FILES.length, plays.size());
+        for (int i = 0; i < PLAY_FILES.length; i++)
+        {
+            assertEquals(PLAY_TIMES[i], plays.get(i).getTime());
+            assertEquals(PLAY_FILES[i], plays.get(i).getStatement().getAudioFileName());
+        }
+
+        // Fixes are only delivered at the sampling interval and not matched while playing.
+        assertEquals(13, report.getEnterCount());
+        assertEquals(12, report.getExitCount());
+        assertEquals(337, report.getFixCount());
+        assertEquals(253, report.getMatchCount());
+        assertEquals(20000, report.getWarmUpTime());
+    }
+
+    /**
+     * Read a story.
+     * @param file XML file of the story
+     * @return story
+     * @throws IOException if the file cannot be read
+     * @throws XmlPullParserException if the story cannot be parsed
+     */
+    private static Story readStory(File file) throws IOException, XmlPullParserException
+    {
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            return new StoryXmlParser().parse(in, file.getParentFile().getName());
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Read a trace.
+     * @param file CSV file of the trace
+     * @return trace
+     * @throws IOException if the file cannot be read
+     */
+    private static Trace readTrace(File file) throws IOException
+    {
+        Reader reader = new FileReader(file);
+        try
+        {
+            return Trace.read(reader, Trace.DEFAULT_INTERVAL);
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+}